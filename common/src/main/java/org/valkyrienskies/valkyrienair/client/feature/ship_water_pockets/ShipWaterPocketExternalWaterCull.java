@@ -1101,8 +1101,8 @@ public final class ShipWaterPocketExternalWaterCull {
             }
         }
 
-        final BitSet interiorSnapshot =
-            snapshot.getInterior() == null ? new BitSet() : (BitSet) snapshot.getInterior().clone();
+        // Snapshot masks come from an immutable query view, so the async task can read them directly.
+        final BitSet interiorSnapshot = snapshot.getInterior();
 
         final Supplier<int[]> task = () -> {
             final int[] occWords = ShipWaterPocketAsyncCull.buildOccMaskWords(shapeSnapshot, sizeX, sizeY, sizeZ, SUB);
@@ -0,0 +1,47 @@
+package org.valkyrienskies.valkyrienair.mixin.feature.ship_water_pockets;
+
+import java.util.function.Consumer;
+import net.minecraft.client.multiplayer.ClientChunkCache;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.protocol.game.ClientboundLevelChunkPacketData;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import org.valkyrienskies.mod.common.VSGameUtilsKt;
+import org.valkyrienskies.valkyrienair.config.ValkyrienAirConfig;
+import org.valkyrienskies.valkyrienair.feature.ship_water_pockets.ShipWaterPocketManager;
+
+@Mixin(ClientChunkCache.class)
+public class MixinClientChunkCache {
+
+    @Shadow
+    @Final
+    ClientLevel level;
+
+    @Inject(method = "replaceWithPacketData", at = @At("RETURN"))
+    private void vs$invalidateFluidSurfacesOnChunkReplace(final int x, final int z, final FriendlyByteBuf buf,
+        final CompoundTag tag, final Consumer<ClientboundLevelChunkPacketData.BlockEntityTagOutput> consumer,
+        final CallbackInfoReturnable<LevelChunk> cir) {
+        vs$invalidateFluidSurfaces(x, z);
+    }
+
+    @Inject(method = "drop", at = @At("TAIL"))
+    private void vs$invalidateFluidSurfacesOnChunkDrop(final int x, final int z, final CallbackInfo ci) {
+        vs$invalidateFluidSurfaces(x, z);
+    }
+
+    @Unique
+    private void vs$invalidateFluidSurfaces(final int chunkX, final int chunkZ) {
+        if (!ValkyrienAirConfig.getEnableShipWaterPockets()) return;
+        if (VSGameUtilsKt.isChunkInShipyard(level, chunkX, chunkZ)) return;
+        ShipWaterPocketManager.onWorldChunkChanged(level, chunkX, chunkZ);
+    }
+}
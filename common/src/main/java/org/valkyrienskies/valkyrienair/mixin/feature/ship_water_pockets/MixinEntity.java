@@ -8,7 +8,6 @@ import net.minecraft.world.entity.Entity;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.BlockGetter;
 import net.minecraft.world.level.material.FluidState;
-import net.minecraft.world.level.material.Fluids;
 import net.minecraft.world.phys.AABB;
 import net.minecraft.world.phys.Vec3;
 import org.spongepowered.asm.mixin.Mixin;
@@ -18,6 +17,7 @@ import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 import org.valkyrienskies.valkyrienair.config.ValkyrienAirConfig;
+import org.valkyrienskies.valkyrienair.feature.ship_water_pockets.EntityFluidSamples;
 import org.valkyrienskies.valkyrienair.feature.ship_water_pockets.ShipWaterPocketManager;
 import org.valkyrienskies.valkyrienair.mixinducks.feature.ship_water_pockets.ShipWaterPocketEntityDuck;
 
@@ -41,12 +41,6 @@ public abstract class MixinEntity implements ShipWaterPocketEntityDuck {
     @Shadow
     protected boolean wasTouchingWater;
 
-    @org.spongepowered.asm.mixin.Unique
-    private static final FluidState vs$WATER = Fluids.WATER.defaultFluidState();
-
-    @org.spongepowered.asm.mixin.Unique
-    private static final FluidState vs$EMPTY = Fluids.EMPTY.defaultFluidState();
-
     @org.spongepowered.asm.mixin.Unique
     private long vs$airPocketCacheTick = Long.MIN_VALUE;
 
@@ -82,76 +76,41 @@ public abstract class MixinEntity implements ShipWaterPocketEntityDuck {
         final double eyeY = this.getEyeY() - 0.1111111119389534;
         final double feetY = bb.minY + 0.1;
 
+        final EntityFluidSamples samples = ShipWaterPocketManager.entityFluidSamples();
+        vs$addSamplesAtHeight(samples, eyeY, ox, oz);
+        vs$addSamplesAtHeight(samples, feetY, ox, oz);
+        final long answers = ShipWaterPocketManager.classifyEntityFluidSamples(level, samples);
+
         // If we're in any ship fluid (flooded pocket water, shipyard water blocks, etc) we should behave like we're
         // in water, even if the space above is an air pocket.
-        if (vs$isInShipFluidAtHeight(level, eyeY, ox, oz) || vs$isInShipFluidAtHeight(level, feetY, ox, oz)) {
+        if ((answers & EntityFluidSamples.SHIP_FLUID_BITS) != 0L) {
             return false;
         }
 
-        return vs$isInAirPocketAtHeight(level, eyeY, ox, oz) || vs$isInAirPocketAtHeight(level, feetY, ox, oz);
+        return (answers & EntityFluidSamples.SUPPRESSION_BITS) != 0L;
     }
 
     @org.spongepowered.asm.mixin.Unique
-    private boolean vs$isInAirPocketAtHeight(final Level level, final double y, final double ox, final double oz) {
+    private void vs$addSamplesAtHeight(final EntityFluidSamples samples, final double y, final double ox,
+        final double oz) {
         final double x = this.getX();
         final double z = this.getZ();
 
-        if (vs$isAirPocketAtPoint(level, x, y, z)) return true;
-        if (ox <= 0.0 && oz <= 0.0) return false;
-
+        samples.add(x, y, z);
         if (ox > 0.0) {
-            if (vs$isAirPocketAtPoint(level, x + ox, y, z)) return true;
-            if (vs$isAirPocketAtPoint(level, x - ox, y, z)) return true;
+            samples.add(x + ox, y, z);
+            samples.add(x - ox, y, z);
         }
         if (oz > 0.0) {
-            if (vs$isAirPocketAtPoint(level, x, y, z + oz)) return true;
-            if (vs$isAirPocketAtPoint(level, x, y, z - oz)) return true;
+            samples.add(x, y, z + oz);
+            samples.add(x, y, z - oz);
         }
         if (ox > 0.0 && oz > 0.0) {
-            if (vs$isAirPocketAtPoint(level, x + ox, y, z + oz)) return true;
-            if (vs$isAirPocketAtPoint(level, x + ox, y, z - oz)) return true;
-            if (vs$isAirPocketAtPoint(level, x - ox, y, z + oz)) return true;
-            if (vs$isAirPocketAtPoint(level, x - ox, y, z - oz)) return true;
+            samples.add(x + ox, y, z + oz);
+            samples.add(x + ox, y, z - oz);
+            samples.add(x - ox, y, z + oz);
+            samples.add(x - ox, y, z - oz);
         }
-
-        return false;
-    }
-
-    @org.spongepowered.asm.mixin.Unique
-    private static boolean vs$isAirPocketAtPoint(final Level level, final double x, final double y, final double z) {
-        return ShipWaterPocketManager.isWorldPosInShipWorldFluidSuppressionZone(level, x, y, z);
-    }
-
-    @org.spongepowered.asm.mixin.Unique
-    private boolean vs$isInShipFluidAtHeight(final Level level, final double y, final double ox, final double oz) {
-        final double x = this.getX();
-        final double z = this.getZ();
-
-        if (vs$isShipFluidAtPoint(level, x, y, z)) return true;
-        if (ox <= 0.0 && oz <= 0.0) return false;
-
-        if (ox > 0.0) {
-            if (vs$isShipFluidAtPoint(level, x + ox, y, z)) return true;
-            if (vs$isShipFluidAtPoint(level, x - ox, y, z)) return true;
-        }
-        if (oz > 0.0) {
-            if (vs$isShipFluidAtPoint(level, x, y, z + oz)) return true;
-            if (vs$isShipFluidAtPoint(level, x, y, z - oz)) return true;
-        }
-        if (ox > 0.0 && oz > 0.0) {
-            if (vs$isShipFluidAtPoint(level, x + ox, y, z + oz)) return true;
-            if (vs$isShipFluidAtPoint(level, x + ox, y, z - oz)) return true;
-            if (vs$isShipFluidAtPoint(level, x - ox, y, z + oz)) return true;
-            if (vs$isShipFluidAtPoint(level, x - ox, y, z - oz)) return true;
-        }
-
-        return false;
-    }
-
-    @org.spongepowered.asm.mixin.Unique
-    private static boolean vs$isShipFluidAtPoint(final Level level, final double x, final double y, final double z) {
-        final FluidState overridden = ShipWaterPocketManager.overrideWaterFluidState(level, x, y, z, vs$EMPTY);
-        return !overridden.isEmpty();
     }
 
     @WrapOperation(
@@ -186,7 +145,7 @@ public abstract class MixinEntity implements ShipWaterPocketEntityDuck {
         if (!ValkyrienAirConfig.getEnableShipWaterPockets()) return originalFlow;
         if (!(blockGetter instanceof final Level level)) return originalFlow;
 
-        final Vec3 rotated = ShipWaterPocketManager.computeRotatedShipFluidFlow(level, worldBlockPos);
+        final Vec3 rotated = ShipWaterPocketManager.computeEntityShipFluidFlow(level, worldBlockPos);
         return rotated != null ? rotated : originalFlow;
     }
 
@@ -203,7 +162,7 @@ public abstract class MixinEntity implements ShipWaterPocketEntityDuck {
         if (!ValkyrienAirConfig.getEnableShipWaterPockets()) return originalHeight;
         if (!(blockGetter instanceof final Level level)) return originalHeight;
 
-        final Float shipHeight = ShipWaterPocketManager.computeShipFluidHeight(level, worldBlockPos);
+        final Float shipHeight = ShipWaterPocketManager.computeEntityShipFluidHeight(level, worldBlockPos);
         return shipHeight != null ? shipHeight.floatValue() : originalHeight;
     }
 
@@ -220,7 +179,7 @@ public abstract class MixinEntity implements ShipWaterPocketEntityDuck {
         if (!ValkyrienAirConfig.getEnableShipWaterPockets()) return originalFlow;
         if (!(blockGetter instanceof final Level level)) return originalFlow;
 
-        final Vec3 rotated = ShipWaterPocketManager.computeRotatedShipFluidFlow(level, worldBlockPos);
+        final Vec3 rotated = ShipWaterPocketManager.computeEntityShipFluidFlow(level, worldBlockPos);
         return rotated != null ? rotated : originalFlow;
     }
 
@@ -237,7 +196,7 @@ public abstract class MixinEntity implements ShipWaterPocketEntityDuck {
         if (!ValkyrienAirConfig.getEnableShipWaterPockets()) return originalHeight;
         if (!(blockGetter instanceof final Level level)) return originalHeight;
 
-        final Float shipHeight = ShipWaterPocketManager.computeShipFluidHeight(level, worldBlockPos);
+        final Float shipHeight = ShipWaterPocketManager.computeEntityShipFluidHeight(level, worldBlockPos);
         return shipHeight != null ? shipHeight.floatValue() : originalHeight;
     }
 
@@ -284,7 +243,7 @@ public abstract class MixinEntity implements ShipWaterPocketEntityDuck {
         final Operation<FluidState> getFluidState) {
         final FluidState original = getFluidState.call(level, blockPos);
         if (!ValkyrienAirConfig.getEnableShipWaterPockets()) return original;
-        return ShipWaterPocketManager.overrideWaterFluidState(level, blockPos, original);
+        return ShipWaterPocketManager.overrideEntityFluidState(level, blockPos, original);
     }
 
     @WrapOperation(
@@ -298,7 +257,7 @@ public abstract class MixinEntity implements ShipWaterPocketEntityDuck {
         final Operation<FluidState> getFluidState) {
         final FluidState original = getFluidState.call(level, blockPos);
         if (!ValkyrienAirConfig.getEnableShipWaterPockets()) return original;
-        return ShipWaterPocketManager.overrideWaterFluidState(level, blockPos, original);
+        return ShipWaterPocketManager.overrideEntityFluidState(level, blockPos, original);
     }
 
     @WrapOperation(
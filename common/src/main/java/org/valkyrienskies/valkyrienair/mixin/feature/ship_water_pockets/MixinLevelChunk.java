@@ -1,6 +1,7 @@
 package org.valkyrienskies.valkyrienair.mixin.feature.ship_water_pockets;
 
 import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.material.FluidState;
@@ -10,6 +11,7 @@ import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 import org.valkyrienskies.core.api.ships.Ship;
 import org.valkyrienskies.mod.common.VSGameUtilsKt;
@@ -23,20 +25,39 @@ public abstract class MixinLevelChunk {
     @Final
     private Level level;
 
+    // Server-side chunk load and unload; the client's go through MixinClientChunkCache.
+    @Inject(method = "setLoaded", at = @At("TAIL"))
+    private void vs$invalidateFluidSurfacesOnChunkLoadedChange(final boolean loaded, final CallbackInfo ci) {
+        if (!ValkyrienAirConfig.getEnableShipWaterPockets()) return;
+        if (level.isClientSide) return;
+
+        final ChunkPos chunkPos = ((LevelChunk) (Object) this).getPos();
+        if (VSGameUtilsKt.isChunkInShipyard(level, chunkPos.x, chunkPos.z)) return;
+        ShipWaterPocketManager.onWorldChunkChanged(level, chunkPos.x, chunkPos.z);
+    }
+
     @Inject(method = "setBlockState", at = @At("TAIL"))
     private void vs$markShipWaterPocketDirtyOnChunkSetBlock(final BlockPos pos, final BlockState state,
         final boolean isMoving, final CallbackInfoReturnable<BlockState> cir) {
         if (!ValkyrienAirConfig.getEnableShipWaterPockets()) return;
-        if (level.isClientSide) return;
-        if (ShipWaterPocketManager.isApplyingInternalUpdates()) return;
 
         final BlockState previousState = cir.getReturnValue();
         if (previousState == null || previousState.equals(state)) return;
-        if (!VSGameUtilsKt.isBlockInShipyard(level, pos)) return;
+        if (!VSGameUtilsKt.isBlockInShipyard(level, pos)) {
+            // Only fluid reads depend on world blocks; changes between two dry states can't affect them.
+            if (!previousState.getFluidState().isEmpty() || !state.getFluidState().isEmpty()) {
+                ShipWaterPocketManager.onWorldBlockChanged(level, pos);
+            }
+            return;
+        }
+        if (level.isClientSide) return;
+        if (ShipWaterPocketManager.isApplyingInternalUpdates()) return;
 
         final Ship ship = VSGameUtilsKt.getShipManagingPos(level, pos);
         if (ship == null) return;
 
+        ShipWaterPocketManager.markShipCellFluidDirty(level, ship.getId(), pos);
+
         final boolean geometryDirty = ShipWaterPocketManager.shouldMarkShipGeometryDirtyForBlockChange(
             level,
             pos,
@@ -50,7 +71,7 @@ public abstract class MixinLevelChunk {
             ShipWaterPocketManager.onExternalShipFluidPlacement(level, ship.getId(), pos, placedFluid.getType());
         }
         if (geometryDirty) {
-            ShipWaterPocketManager.markShipDirty(level, ship.getId());
+            ShipWaterPocketManager.markShipBlockDirty(level, ship.getId(), pos);
         }
     }
 }
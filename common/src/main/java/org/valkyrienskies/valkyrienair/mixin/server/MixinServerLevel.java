@@ -0,0 +1,25 @@
+package org.valkyrienskies.valkyrienair.mixin.server;
+
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.ProgressListener;
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.valkyrienskies.valkyrienair.feature.ship_water_pockets.ShipWaterPocketManager;
+
+@Mixin(ServerLevel.class)
+public abstract class MixinServerLevel {
+
+    @Inject(method = "save", at = @At("HEAD"))
+    private void valkyrienair$saveShipWaterPockets(
+        @Nullable final ProgressListener progress,
+        final boolean flush,
+        final boolean skipSave,
+        final CallbackInfo ci
+    ) {
+        if (skipSave) return;
+        ShipWaterPocketManager.onServerLevelSave((ServerLevel) (Object) this, flush);
+    }
+}
@@ -1,5 +1,7 @@
 package org.valkyrienskies.valkyrienair
 
+import org.valkyrienskies.valkyrienair.feature.ship_water_pockets.ShipPocketReplication
+
 /**
  * The common static object that represents the mod. Referenced by both fabric and forge for initialization.
  */
@@ -9,5 +11,6 @@ object ValkyrienAirMod {
     @JvmStatic
     fun init() {
         // Write common init code here.
+        ShipPocketReplication.registerCommon()
     }
 }
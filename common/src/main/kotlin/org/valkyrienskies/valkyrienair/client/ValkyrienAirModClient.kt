@@ -7,6 +7,7 @@ import net.minecraft.util.Mth
 import org.valkyrienskies.mod.common.hooks.VSGameEvents
 import org.valkyrienskies.valkyrienair.client.feature.ship_water_pockets.ShipWaterPocketExternalWaterCullRenderContext
 import org.valkyrienskies.valkyrienair.client.feature.ship_water_pockets.ShipWaterPocketShipWaterTintRenderContext
+import org.valkyrienskies.valkyrienair.feature.ship_water_pockets.ShipPocketReplication
 
 /**
  * The common static client object that represents the mod.
@@ -25,6 +26,8 @@ object ValkyrienAirModClient {
 
     @JvmStatic
     fun initClient() {
+        ShipPocketReplication.registerClient()
+
         VSGameEvents.renderShip.on {
             ShipWaterPocketExternalWaterCullRenderContext.beginShipRender()
             ShipWaterPocketShipWaterTintRenderContext.pushShipWaterTintRgb(computeShipWaterTintRgb(it.ship))
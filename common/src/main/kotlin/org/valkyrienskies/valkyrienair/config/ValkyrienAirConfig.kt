@@ -19,4 +19,59 @@ object ValkyrienAirConfig {
      */
     @JvmStatic
     var shipPocketParticleSpeedMultiplier: Double = 1.0
+
+    /**
+     * Server-thread time budget per level per tick for ship pocket work, in milliseconds.
+     * Work that does not fit is carried over to later ticks.
+     */
+    @JvmStatic
+    var shipPocketServerTickBudgetMs: Double = 8.0
+
+    /**
+     * Worker threads for async pocket jobs. `0` = size from available cores. Read once when the pool starts.
+     */
+    @JvmStatic
+    var shipPocketAsyncThreads: Int = 0
+
+    /**
+     * Rasterize resting ships' suppression/air-pocket cells into world blocks so most world fluid queries near them
+     * are a bit test. Blocks on a hull or shape boundary still use the exact classification.
+     */
+    @JvmStatic
+    var shipPocketWorldRaster: Boolean = false
+
+    /**
+     * Sample world fluid only around a ship's hull shell and openings, and infer the cells inside from the surface
+     * those see. Falls back to sampling every cell when the shell's samples don't agree on one surface.
+     */
+    @JvmStatic
+    var shipPocketShellSubmergenceSampling: Boolean = true
+
+    /**
+     * When a ship's surroundings check out as one flat sea, answer its submergence from the sea plane instead of
+     * sampling world blocks.
+     */
+    @JvmStatic
+    var shipPocketFlatSeaFastPath: Boolean = true
+
+    /**
+     * Sample the world fluid around a ship for its water solve on the worker, from chunk sections copied on the level
+     * thread, instead of on the level thread itself.
+     */
+    @JvmStatic
+    var shipPocketAsyncWorldSampling: Boolean = true
+
+    /**
+     * Let a ship's water solve sleep while its pose, blocks and surrounding world fluid are unchanged since the last
+     * solve, instead of re-solving it every tick.
+     */
+    @JvmStatic
+    var shipPocketSleepingShips: Boolean = true
+
+    /**
+     * Client: take ship pocket state from the server instead of solving it locally. Only used when the server
+     * supports it; ships too large to replicate are still solved on the client.
+     */
+    @JvmStatic
+    var shipPocketServerReplication: Boolean = true
 }
@@ -1,15 +1,22 @@
 package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
 
+import it.unimi.dsi.fastutil.ints.IntArrayList
 import net.minecraft.core.BlockPos
+import net.minecraft.world.level.BlockGetter
+import net.minecraft.world.level.EmptyBlockGetter
 import net.minecraft.world.level.Level
 import net.minecraft.world.level.block.Blocks
 import net.minecraft.world.level.block.LiquidBlock
 import net.minecraft.world.level.block.state.BlockState
 import net.minecraft.world.level.block.state.properties.BlockStateProperties
+import net.minecraft.world.level.chunk.PalettedContainer
 import net.minecraft.world.level.material.FlowingFluid
 import net.minecraft.world.level.material.Fluid
 import net.minecraft.world.level.material.Fluids
 import java.util.BitSet
+import java.util.IdentityHashMap
+import kotlin.math.max
+import kotlin.math.min
 
 internal data class GeometryAsyncSnapshot(
     val generation: Long,
@@ -30,7 +37,50 @@ internal data class GeometryAsyncSnapshot(
     val prevSimulationDomain: BitSet,
     val floodFluid: Fluid,
     val blockStates: Array<BlockState>,
-    val shapeGeometry: Array<ShapeWaterGeometry>,
+    // ShapeTemplateRegistry ids per voxel.
+    val templateIds: IntArray,
+    // When non-null, only the voxels in the patch were re-sampled; blockStates/templateIds are empty.
+    val patch: GeometryPatchSnapshot? = null,
+    // When non-null, voxel arrays are expanded from copied section palettes on the worker; blockStates/templateIds are empty.
+    val deferred: DeferredGeometryCapture? = null,
+)
+
+// Copied palette of one chunk section, clipped to the world-space box that lies inside the capture bounds.
+internal class GeometrySectionCopy(
+    val states: PalettedContainer<BlockState>,
+    val x0: Int,
+    val y0: Int,
+    val z0: Int,
+    val x1: Int,
+    val y1: Int,
+    val z1: Int,
+)
+
+/**
+ * Server-thread half of a full geometry capture. Cells that had to be resolved against the live level are stored
+ * sparsely; everything else is read back from [sections] on the worker.
+ */
+internal class DeferredGeometryCapture(
+    val sections: List<GeometrySectionCopy>,
+    val eagerIndices: IntArray,
+    val eagerStates: Array<BlockState>,
+    val eagerTemplateIds: IntArray,
+)
+
+/**
+ * Incremental geometry input: the changed voxels re-sampled on the server thread plus the last applied voxel fields
+ * they are patched into. Base arrays are treated as read-only by the worker.
+ */
+internal class GeometryPatchSnapshot(
+    val changedIndices: IntArray,
+    val changedPositions: LongArray,
+    val changedStates: Array<BlockState>,
+    val changedTemplateIds: IntArray,
+    val baseBlockStates: Array<BlockState>,
+    val baseOpen: BitSet,
+    val baseFlooded: BitSet,
+    val baseMaterialized: BitSet,
+    val baseTemplateIndexByVoxel: IntArray,
 )
 
 internal data class GeometryAsyncResult(
@@ -60,15 +110,12 @@ internal data class GeometryAsyncResult(
     val voxelInteriorComponentMask: LongArray,
     val voxelSimulationComponentMask: LongArray,
     val componentGraphDegraded: Boolean,
+    val blockStates: Array<BlockState>,
+    // Shipyard positions this result patched, or null for a full rebuild.
+    val patchedPositions: LongArray?,
     val computeNanos: Long,
 )
 
-private val EMPTY_GEOMETRY = ShapeWaterGeometry(
-    fullSolid = false,
-    refined = false,
-    boxes = emptyList(),
-)
-
 private fun canonicalFloodSource(fluid: Fluid): Fluid {
     return if (fluid is FlowingFluid) fluid.source else fluid
 }
@@ -81,9 +128,8 @@ private fun mixHash64(acc: Long, value: Long): Long {
     return h xor (h ushr 29)
 }
 
-private fun geometryStateHash(blockState: BlockState, geom: ShapeWaterGeometry, idx: Int): Long {
+private fun geometryStateHash(blockState: BlockState, geom: ShapeWaterGeometry): Long {
     var h = -7046029254386353131L
-    h = mixHash64(h, idx.toLong())
     h = mixHash64(h, blockState.hashCode().toLong())
     h = mixHash64(h, if (geom.fullSolid) 0xF00DL else 0x0L)
     h = mixHash64(h, if (geom.refined) 0xBEEFL else 0x0L)
@@ -99,6 +145,29 @@ private fun geometryStateHash(blockState: BlockState, geom: ShapeWaterGeometry,
     return h
 }
 
+// Air cells hash to 0 so capture can skip them; everything else mixes the voxel index into the per-state hash.
+private fun geometryCellHash(blockState: BlockState, geom: ShapeWaterGeometry, idx: Int): Long {
+    if (blockState.isAir) return 0L
+    return mixHash64(geometryStateHash(blockState, geom), idx.toLong())
+}
+
+private class CapturedShape(
+    val templateId: Int,
+    val stateHash: Long,
+)
+
+// Signatures are the bounds hash XOR every per-cell hash, so a patch can swap individual cells in and out.
+private fun geometryBoundsHash(minX: Int, minY: Int, minZ: Int, sizeX: Int, sizeY: Int, sizeZ: Int): Long {
+    var h = 0x1234_5678_9ABCL
+    h = mixHash64(h, sizeX.toLong())
+    h = mixHash64(h, sizeY.toLong())
+    h = mixHash64(h, sizeZ.toLong())
+    h = mixHash64(h, minX.toLong())
+    h = mixHash64(h, minY.toLong())
+    h = mixHash64(h, minZ.toLong())
+    return h
+}
+
 private fun isWaterloggableForFlood(state: BlockState, floodFluid: Fluid): Boolean {
     return canonicalFloodSource(floodFluid) == Fluids.WATER && state.hasProperty(BlockStateProperties.WATERLOGGED)
 }
@@ -106,47 +175,6 @@ private fun isWaterloggableForFlood(state: BlockState, floodFluid: Fluid): Boole
 private const val MAX_COMPONENT_GRAPH_NODES = 12_000_000
 private const val MIN_HEURISTIC_PROMOTED_COMPONENT_SIZE = 4
 
-private class ShapeTemplateKey(
-    private val fullSolid: Boolean,
-    private val refined: Boolean,
-    private val boxBits: LongArray,
-) {
-    override fun equals(other: Any?): Boolean {
-        if (this === other) return true
-        if (other !is ShapeTemplateKey) return false
-        if (fullSolid != other.fullSolid) return false
-        if (refined != other.refined) return false
-        return boxBits.contentEquals(other.boxBits)
-    }
-
-    override fun hashCode(): Int {
-        var result = fullSolid.hashCode()
-        result = 31 * result + refined.hashCode()
-        result = 31 * result + boxBits.contentHashCode()
-        return result
-    }
-
-    companion object {
-        fun fromGeometry(geom: ShapeWaterGeometry): ShapeTemplateKey {
-            val bits = LongArray(geom.boxes.size * 6)
-            var i = 0
-            for (box in geom.boxes) {
-                bits[i++] = java.lang.Double.doubleToLongBits(box.minX)
-                bits[i++] = java.lang.Double.doubleToLongBits(box.minY)
-                bits[i++] = java.lang.Double.doubleToLongBits(box.minZ)
-                bits[i++] = java.lang.Double.doubleToLongBits(box.maxX)
-                bits[i++] = java.lang.Double.doubleToLongBits(box.maxY)
-                bits[i++] = java.lang.Double.doubleToLongBits(box.maxZ)
-            }
-            return ShapeTemplateKey(
-                fullSolid = geom.fullSolid,
-                refined = geom.refined,
-                boxBits = bits,
-            )
-        }
-    }
-}
-
 internal fun captureGeometryAsyncSnapshot(
     level: Level,
     generation: Long,
@@ -166,29 +194,75 @@ internal fun captureGeometryAsyncSnapshot(
     prevSimulationDomain: BitSet,
     floodFluid: Fluid,
 ): GeometryAsyncSnapshot {
-    val volume = sizeX * sizeY * sizeZ
-    val blockStates = Array(volume) { Blocks.AIR.defaultBlockState() }
-    val shapeGeometry = Array(volume) { EMPTY_GEOMETRY }
-    var signature = 0x1234_5678_9ABCL
-    signature = mixHash64(signature, sizeX.toLong())
-    signature = mixHash64(signature, sizeY.toLong())
-    signature = mixHash64(signature, sizeZ.toLong())
-    signature = mixHash64(signature, minX.toLong())
-    signature = mixHash64(signature, minY.toLong())
-    signature = mixHash64(signature, minZ.toLong())
+    var signature = geometryBoundsHash(minX, minY, minZ, sizeX, sizeY, sizeZ)
 
+    val maxX = minX + sizeX - 1
+    val maxY = minY + sizeY - 1
+    val maxZ = minZ + sizeZ - 1
     val pos = BlockPos.MutableBlockPos()
-    var idx = 0
-    for (z in 0 until sizeZ) {
-        for (y in 0 until sizeY) {
-            for (x in 0 until sizeX) {
-                pos.set(minX + x, minY + y, minZ + z)
-                val state = level.getBlockState(pos)
-                blockStates[idx] = state
-                val geometry = computeShapeWaterGeometry(level, pos, state)
-                shapeGeometry[idx] = geometry
-                signature = mixHash64(signature, geometryStateHash(state, geometry, idx))
-                idx++
+    val capturedByState = IdentityHashMap<BlockState, CapturedShape>()
+    val sections = ArrayList<GeometrySectionCopy>()
+    val eagerIndices = IntArrayList()
+    val eagerStates = ArrayList<BlockState>()
+    val eagerTemplateIds = IntArrayList()
+
+    // Only cells that need the live level (unloaded chunks, position-dependent shapes) are resolved here.
+    fun captureEagerCell(state: BlockState, x: Int, y: Int, z: Int) {
+        if (state.isAir) return
+        val idx = (x - minX) + sizeX * ((y - minY) + sizeY * (z - minZ))
+        pos.set(x, y, z)
+        val captured = resolveCapturedShape(capturedByState, level, pos, state)
+        eagerIndices.add(idx)
+        eagerStates.add(state)
+        eagerTemplateIds.add(captured.templateId)
+        signature = signature xor mixHash64(captured.stateHash, idx.toLong())
+    }
+
+    for (chunkZ in (minZ shr 4)..(maxZ shr 4)) {
+        val z0 = max(minZ, chunkZ shl 4)
+        val z1 = min(maxZ, (chunkZ shl 4) + 15)
+        for (chunkX in (minX shr 4)..(maxX shr 4)) {
+            val x0 = max(minX, chunkX shl 4)
+            val x1 = min(maxX, (chunkX shl 4) + 15)
+            val chunk = level.chunkSource.getChunkNow(chunkX, chunkZ)
+
+            for (sectionY in (minY shr 4)..(maxY shr 4)) {
+                val y0 = max(minY, sectionY shl 4)
+                val y1 = min(maxY, (sectionY shl 4) + 15)
+                val section = if (chunk != null && sectionY >= level.minSection && sectionY < level.maxSection) {
+                    chunk.getSection(level.getSectionIndexFromSectionY(sectionY))
+                } else {
+                    null
+                }
+
+                if (section == null) {
+                    // Unloaded chunk or outside build height: keep the exact Level.getBlockState semantics.
+                    for (z in z0..z1) {
+                        for (y in y0..y1) {
+                            for (x in x0..x1) {
+                                pos.set(x, y, z)
+                                captureEagerCell(level.getBlockState(pos), x, y, z)
+                            }
+                        }
+                    }
+                    continue
+                }
+                if (section.hasOnlyAir()) continue
+
+                // Palette check only; may report states no longer present in storage, which just keeps us eager.
+                val needsLiveLevel = section.maybeHas { !it.isAir && !isShapeWaterGeometryPositionIndependent(it) }
+                if (needsLiveLevel) {
+                    for (z in z0..z1) {
+                        for (y in y0..y1) {
+                            for (x in x0..x1) {
+                                captureEagerCell(section.getBlockState(x and 15, y and 15, z and 15), x, y, z)
+                            }
+                        }
+                    }
+                    continue
+                }
+
+                sections.add(GeometrySectionCopy(section.states.copy(), x0, y0, z0, x1, y1, z1))
             }
         }
     }
@@ -211,64 +285,296 @@ internal fun captureGeometryAsyncSnapshot(
         prevSizeZ = prevSizeZ,
         prevSimulationDomain = prevSimulationDomain,
         floodFluid = floodFluid,
-        blockStates = blockStates,
-        shapeGeometry = shapeGeometry,
+        blockStates = emptyArray(),
+        templateIds = IntArray(0),
+        deferred = DeferredGeometryCapture(
+            sections = sections,
+            eagerIndices = eagerIndices.toIntArray(),
+            eagerStates = eagerStates.toTypedArray(),
+            eagerTemplateIds = eagerTemplateIds.toIntArray(),
+        ),
     )
 }
 
-internal fun computeGeometryAsync(snapshot: GeometryAsyncSnapshot): GeometryAsyncResult {
-    val startNanos = System.nanoTime()
+private fun resolveCapturedShape(
+    cache: IdentityHashMap<BlockState, CapturedShape>,
+    level: BlockGetter,
+    pos: BlockPos,
+    state: BlockState,
+): CapturedShape {
+    val cached = cache[state]
+    if (cached != null) return cached
+    val templateId = ShapeTemplateRegistry.templateIdFor(level, pos, state)
+    val geometry = ShapeTemplateRegistry.template(templateId).geometry
+    val captured = CapturedShape(templateId, geometryStateHash(state, geometry))
+    if (isShapeWaterGeometryPositionIndependent(state)) {
+        cache[state] = captured
+    }
+    return captured
+}
+
+private class CapturedVoxels(
+    val blockStates: Array<BlockState>,
+    val templateIds: IntArray,
+    val signature: Long,
+)
+
+/**
+ * Worker half of [captureGeometryAsyncSnapshot]: expands the copied section palettes into full-volume arrays.
+ * Copied sections only hold position-independent states, so shapes are resolved without touching the level.
+ */
+private fun resolveCapturedVoxels(snapshot: GeometryAsyncSnapshot, volume: Int): CapturedVoxels {
+    val deferred = snapshot.deferred
+        ?: return CapturedVoxels(snapshot.blockStates, snapshot.templateIds, snapshot.geometrySignature)
 
     val sizeX = snapshot.sizeX
     val sizeY = snapshot.sizeY
-    val sizeZ = snapshot.sizeZ
-    val volume = sizeX * sizeY * sizeZ
+    val minX = snapshot.minX
+    val minY = snapshot.minY
+    val minZ = snapshot.minZ
+    // Air cells keep these defaults and contribute nothing to the signature, so all-air sections are skipped outright.
+    val blockStates = Array(volume) { Blocks.AIR.defaultBlockState() }
+    val templateIds = IntArray(volume) // 0 == ShapeTemplateRegistry.EMPTY_TEMPLATE_ID
+    var signature = snapshot.geometrySignature
 
-    val open = BitSet(volume)
-    val flooded = BitSet(volume)
-    val materialized = BitSet(volume)
-    val faceCondXP = ShortArray(volume)
-    val faceCondYP = ShortArray(volume)
-    val faceCondZP = ShortArray(volume)
-    val templateIndexByVoxel = IntArray(volume)
-    val templatePalette = ArrayList<ShapeCellTemplate>()
-    val templateLookup = HashMap<ShapeTemplateKey, Int>()
+    for (i in deferred.eagerIndices.indices) {
+        val idx = deferred.eagerIndices[i]
+        blockStates[idx] = deferred.eagerStates[i]
+        templateIds[idx] = deferred.eagerTemplateIds[i]
+    }
 
-    var idx = 0
-    for (z in 0 until sizeZ) {
-        for (y in 0 until sizeY) {
-            for (x in 0 until sizeX) {
-                val geom = snapshot.shapeGeometry[idx]
-                val templateKey = ShapeTemplateKey.fromGeometry(geom)
-                val templateIdx = templateLookup.getOrPut(templateKey) {
-                    val next = templatePalette.size
-                    templatePalette.add(buildShapeCellTemplate(geom))
-                    next
-                }
-                templateIndexByVoxel[idx] = templateIdx
-                val template = templatePalette[templateIdx]
-                if (template.hasOpenVolume) {
-                    open.set(idx)
-                }
+    val pos = BlockPos.MutableBlockPos()
+    val capturedByState = IdentityHashMap<BlockState, CapturedShape>()
+    for (section in deferred.sections) {
+        var distinctStates = 0
+        var uniformState: BlockState? = null
+        section.states.count { state, _ ->
+            distinctStates++
+            uniformState = state
+        }
 
-                val bs = snapshot.blockStates[idx]
-                val fluidState = bs.fluidState
-                if (!fluidState.isEmpty && canonicalFloodSource(fluidState.type) == snapshot.floodFluid) {
-                    flooded.set(idx)
-                    if (
-                        bs.block is LiquidBlock ||
-                        (isWaterloggableForFlood(bs, snapshot.floodFluid) &&
-                            bs.getValue(BlockStateProperties.WATERLOGGED))
-                    ) {
-                        materialized.set(idx)
+        val single = uniformState
+        if (distinctStates == 1 && single != null) {
+            if (single.isAir) continue
+            pos.set(section.x0, section.y0, section.z0)
+            val captured = resolveCapturedShape(capturedByState, EmptyBlockGetter.INSTANCE, pos, single)
+            for (z in section.z0..section.z1) {
+                for (y in section.y0..section.y1) {
+                    var idx = (section.x0 - minX) + sizeX * ((y - minY) + sizeY * (z - minZ))
+                    for (x in section.x0..section.x1) {
+                        blockStates[idx] = single
+                        templateIds[idx] = captured.templateId
+                        signature = signature xor mixHash64(captured.stateHash, idx.toLong())
+                        idx++
                     }
                 }
+            }
+            continue
+        }
 
-                idx++
+        for (z in section.z0..section.z1) {
+            for (y in section.y0..section.y1) {
+                var idx = (section.x0 - minX) + sizeX * ((y - minY) + sizeY * (z - minZ))
+                for (x in section.x0..section.x1) {
+                    val state = section.states.get(x and 15, y and 15, z and 15)
+                    if (!state.isAir) {
+                        pos.set(x, y, z)
+                        val captured = resolveCapturedShape(capturedByState, EmptyBlockGetter.INSTANCE, pos, state)
+                        blockStates[idx] = state
+                        templateIds[idx] = captured.templateId
+                        signature = signature xor mixHash64(captured.stateHash, idx.toLong())
+                    }
+                    idx++
+                }
             }
         }
     }
 
+    return CapturedVoxels(blockStates, templateIds, signature)
+}
+
+/**
+ * Re-samples only [dirtyPositions] against the last applied geometry in [state]. Positions outside the current
+ * bounds are ignored; callers fall back to [captureGeometryAsyncSnapshot] whenever bounds change.
+ */
+internal fun captureGeometryPatchSnapshot(
+    level: Level,
+    state: ShipPocketState,
+    generation: Long,
+    invalidationStamp: Long,
+    dirtyPositions: LongArray,
+    floodFluid: Fluid,
+): GeometryAsyncSnapshot {
+    val sizeX = state.sizeX
+    val sizeY = state.sizeY
+    val sizeZ = state.sizeZ
+    val baseBlockStates = state.geometryBlockStates
+    val baseTemplateIndexByVoxel = state.templateIndexByVoxel
+
+    val changedIndices = IntArray(dirtyPositions.size)
+    val changedPositions = LongArray(dirtyPositions.size)
+    val changedStates = arrayOfNulls<BlockState>(dirtyPositions.size)
+    val changedTemplateIds = IntArray(dirtyPositions.size)
+    var signature = state.geometrySignature
+    var count = 0
+
+    val pos = BlockPos.MutableBlockPos()
+    for (packed in dirtyPositions) {
+        pos.set(packed)
+        val lx = pos.x - state.minX
+        val ly = pos.y - state.minY
+        val lz = pos.z - state.minZ
+        if (lx !in 0 until sizeX || ly !in 0 until sizeY || lz !in 0 until sizeZ) continue
+        val idx = lx + sizeX * (ly + sizeY * lz)
+
+        val blockState = level.getBlockState(pos)
+        val templateId = ShapeTemplateRegistry.templateIdFor(level, pos, blockState)
+        val geometry = ShapeTemplateRegistry.template(templateId).geometry
+        val oldGeometry = ShapeTemplateRegistry.template(baseTemplateIndexByVoxel[idx]).geometry
+        signature = signature xor geometryCellHash(baseBlockStates[idx], oldGeometry, idx)
+        signature = signature xor geometryCellHash(blockState, geometry, idx)
+
+        changedIndices[count] = idx
+        changedPositions[count] = packed
+        changedStates[count] = blockState
+        changedTemplateIds[count] = templateId
+        count++
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    val patch = GeometryPatchSnapshot(
+        changedIndices = changedIndices.copyOf(count),
+        changedPositions = changedPositions.copyOf(count),
+        changedStates = changedStates.copyOf(count) as Array<BlockState>,
+        changedTemplateIds = changedTemplateIds.copyOf(count),
+        baseBlockStates = baseBlockStates,
+        baseOpen = state.open,
+        // Flood masks are mutated in place on the server thread, so the worker gets its own copies.
+        baseFlooded = state.flooded.clone() as BitSet,
+        baseMaterialized = state.materializedWater.clone() as BitSet,
+        baseTemplateIndexByVoxel = baseTemplateIndexByVoxel,
+    )
+
+    return GeometryAsyncSnapshot(
+        generation = generation,
+        invalidationStamp = invalidationStamp,
+        geometrySignature = signature,
+        minX = state.minX,
+        minY = state.minY,
+        minZ = state.minZ,
+        sizeX = sizeX,
+        sizeY = sizeY,
+        sizeZ = sizeZ,
+        prevMinX = state.minX,
+        prevMinY = state.minY,
+        prevMinZ = state.minZ,
+        prevSizeX = sizeX,
+        prevSizeY = sizeY,
+        prevSizeZ = sizeZ,
+        prevSimulationDomain = state.simulationDomain.clone() as BitSet,
+        floodFluid = floodFluid,
+        blockStates = emptyArray(),
+        templateIds = IntArray(0),
+        patch = patch,
+    )
+}
+
+private class GeometryVoxelFields(
+    val blockStates: Array<BlockState>,
+    val open: BitSet,
+    val flooded: BitSet,
+    val materialized: BitSet,
+    val templatePalette: List<ShapeCellTemplate>,
+    val templateIndexByVoxel: IntArray,
+)
+
+private fun applyVoxelFloodFlags(bs: BlockState, floodFluid: Fluid, idx: Int, flooded: BitSet, materialized: BitSet) {
+    val fluidState = bs.fluidState
+    if (!fluidState.isEmpty && canonicalFloodSource(fluidState.type) == floodFluid) {
+        flooded.set(idx)
+        if (
+            bs.block is LiquidBlock ||
+            (isWaterloggableForFlood(bs, floodFluid) &&
+                bs.getValue(BlockStateProperties.WATERLOGGED))
+        ) {
+            materialized.set(idx)
+        }
+    }
+}
+
+private fun buildGeometryVoxelFields(
+    snapshot: GeometryAsyncSnapshot,
+    captured: CapturedVoxels,
+    volume: Int,
+): GeometryVoxelFields {
+    val open = BitSet(volume)
+    val flooded = BitSet(volume)
+    val materialized = BitSet(volume)
+    val templatePalette = ShapeTemplateRegistry.palette()
+    val templateIndexByVoxel = captured.templateIds
+
+    for (idx in 0 until volume) {
+        if (templatePalette[templateIndexByVoxel[idx]].hasOpenVolume) {
+            open.set(idx)
+        }
+        applyVoxelFloodFlags(captured.blockStates[idx], snapshot.floodFluid, idx, flooded, materialized)
+    }
+
+    return GeometryVoxelFields(captured.blockStates, open, flooded, materialized, templatePalette, templateIndexByVoxel)
+}
+
+private fun patchGeometryVoxelFields(
+    snapshot: GeometryAsyncSnapshot,
+    patch: GeometryPatchSnapshot,
+): GeometryVoxelFields {
+    val templatePalette = ShapeTemplateRegistry.palette()
+    val blockStates = patch.baseBlockStates.copyOf()
+    val templateIndexByVoxel = patch.baseTemplateIndexByVoxel.copyOf()
+    val open = patch.baseOpen.clone() as BitSet
+    val flooded = patch.baseFlooded
+    val materialized = patch.baseMaterialized
+
+    for (i in patch.changedIndices.indices) {
+        val idx = patch.changedIndices[i]
+        val templateIdx = patch.changedTemplateIds[i]
+        val bs = patch.changedStates[i]
+        templateIndexByVoxel[idx] = templateIdx
+        open.set(idx, templatePalette[templateIdx].hasOpenVolume)
+        blockStates[idx] = bs
+        flooded.clear(idx)
+        materialized.clear(idx)
+        applyVoxelFloodFlags(bs, snapshot.floodFluid, idx, flooded, materialized)
+    }
+
+    return GeometryVoxelFields(blockStates, open, flooded, materialized, templatePalette, templateIndexByVoxel)
+}
+
+internal fun computeGeometryAsync(snapshot: GeometryAsyncSnapshot): GeometryAsyncResult {
+    val startNanos = System.nanoTime()
+
+    val sizeX = snapshot.sizeX
+    val sizeY = snapshot.sizeY
+    val sizeZ = snapshot.sizeZ
+    val volume = sizeX * sizeY * sizeZ
+
+    val patch = snapshot.patch
+    var geometrySignature = snapshot.geometrySignature
+    val fields = if (patch != null) {
+        patchGeometryVoxelFields(snapshot, patch)
+    } else {
+        val captured = resolveCapturedVoxels(snapshot, volume)
+        geometrySignature = captured.signature
+        buildGeometryVoxelFields(snapshot, captured, volume)
+    }
+    val open = fields.open
+    val flooded = fields.flooded
+    val materialized = fields.materialized
+    val templatePalette = fields.templatePalette
+    val templateIndexByVoxel = fields.templateIndexByVoxel
+    val faceCondXP = ShortArray(volume)
+    val faceCondYP = ShortArray(volume)
+    val faceCondZP = ShortArray(volume)
+
     val strideY = sizeX
     val strideZ = sizeX * sizeY
     val nodeBaseByVoxel = IntArray(volume) { -1 }
@@ -339,7 +645,7 @@ internal fun computeGeometryAsync(snapshot: GeometryAsyncSnapshot): GeometryAsyn
         }
     }
 
-    idx = 0
+    var idx = 0
     for (z in 0 until sizeZ) {
         for (y in 0 until sizeY) {
             for (x in 0 until sizeX) {
@@ -747,7 +1053,7 @@ internal fun computeGeometryAsync(snapshot: GeometryAsyncSnapshot): GeometryAsyn
     return GeometryAsyncResult(
         generation = snapshot.generation,
         invalidationStamp = snapshot.invalidationStamp,
-        geometrySignature = snapshot.geometrySignature,
+        geometrySignature = geometrySignature,
         minX = snapshot.minX,
         minY = snapshot.minY,
         minZ = snapshot.minZ,
@@ -771,6 +1077,8 @@ internal fun computeGeometryAsync(snapshot: GeometryAsyncSnapshot): GeometryAsyn
         voxelInteriorComponentMask = voxelInteriorComponentMask,
         voxelSimulationComponentMask = voxelSimulationComponentMask,
         componentGraphDegraded = componentGraphDegraded,
+        blockStates = fields.blockStates,
+        patchedPositions = patch?.changedPositions,
         computeNanos = System.nanoTime() - startNanos,
     )
 }
@@ -1,23 +1,55 @@
 package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
 
+import org.valkyrienskies.valkyrienair.config.ValkyrienAirConfig
+import java.util.concurrent.CancellationException
 import java.util.concurrent.CompletableFuture
-import java.util.concurrent.ExecutorService
-import java.util.concurrent.Executors
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.PriorityBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
 import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
 import java.util.function.Supplier
 
-internal enum class ShipPocketAsyncSubsystem {
-    GEOMETRY,
-    WATER_SOLVER,
-    CLIENT_CULL,
+/** Async job kinds; queued jobs with a higher [priority] run first. */
+internal enum class ShipPocketAsyncSubsystem(val priority: Int) {
+    GEOMETRY(1),
+    WATER_SOLVER(2),
+    CLIENT_CULL(0),
+}
+
+/**
+ * Cooperative cancellation flag for a running async job. Long-running tasks poll [throwIfCancelled] at phase
+ * boundaries so superseded or abandoned work stops early instead of finishing only to be discarded.
+ */
+internal class ShipPocketCancellationToken {
+    @Volatile
+    var isCancelled: Boolean = false
+        private set
+
+    fun cancel() {
+        isCancelled = true
+    }
+
+    fun throwIfCancelled() {
+        if (isCancelled) throw CancellationException("Ship pocket async job cancelled")
+    }
 }
 
 internal object ShipPocketAsyncRuntime {
-    private const val MAX_PENDING_JOBS = 64
+    private const val MIN_PENDING_JOBS = 64
+    private const val PENDING_JOBS_PER_THREAD = 16
+    private const val MAX_AUTO_THREADS = 8
+
+    private const val JOB_QUEUED = 0
+    private const val JOB_RUNNING = 1
+    private const val JOB_SUPERSEDED = 2
 
     private val pendingJobs = AtomicInteger(0)
     private val threadCounter = AtomicLong(0)
+    private val jobSequence = AtomicLong(0)
 
     private val submittedBySubsystem =
         Array(ShipPocketAsyncSubsystem.entries.size) { AtomicLong(0) }
@@ -27,11 +59,91 @@ internal object ShipPocketAsyncRuntime {
         Array(ShipPocketAsyncSubsystem.entries.size) { AtomicLong(0) }
     private val discardedBySubsystem =
         Array(ShipPocketAsyncSubsystem.entries.size) { AtomicLong(0) }
+    private val coalescedBySubsystem =
+        Array(ShipPocketAsyncSubsystem.entries.size) { AtomicLong(0) }
+    private val cancelledBySubsystem =
+        Array(ShipPocketAsyncSubsystem.entries.size) { AtomicLong(0) }
+    private val queueWaitNanosBySubsystem =
+        Array(ShipPocketAsyncSubsystem.entries.size) { AtomicLong(0) }
+    private val queueWaitMaxNanosBySubsystem =
+        Array(ShipPocketAsyncSubsystem.entries.size) { AtomicLong(0) }
+    private val startedBySubsystem =
+        Array(ShipPocketAsyncSubsystem.entries.size) { AtomicLong(0) }
+
+    // Latest still-queued job per (subsystem, owner); a newer submission for the same owner supersedes it.
+    private val queuedByOwner = ConcurrentHashMap<CoalesceKey, QueuedJob>()
 
-    val executor: ExecutorService by lazy {
-        val processors = Runtime.getRuntime().availableProcessors()
-        val threads = maxOf(1, minOf(2, processors - 1))
-        Executors.newFixedThreadPool(threads) { runnable ->
+    private class CoalesceKey(val subsystem: ShipPocketAsyncSubsystem, val owner: Any) {
+        override fun equals(other: Any?): Boolean =
+            other is CoalesceKey && subsystem == other.subsystem && owner === other.owner
+
+        override fun hashCode(): Int = 31 * subsystem.hashCode() + System.identityHashCode(owner)
+    }
+
+    private class QueuedJob(
+        val subsystem: ShipPocketAsyncSubsystem,
+        val coalesceKey: CoalesceKey?,
+        // A replacement inherits the superseded job's sequence (and wait start), so it keeps its queue position.
+        val sequence: Long,
+        val enqueuedNanos: Long,
+        val token: ShipPocketCancellationToken,
+        val body: () -> Unit,
+        val cancelQueued: () -> Unit,
+        // Fork helpers are not jobs of their own, so they stay out of the queue-wait stats.
+        val recordsWait: Boolean = true,
+    ) : Runnable, Comparable<QueuedJob> {
+        val state = AtomicInteger(JOB_QUEUED)
+
+        fun trySupersede(): Boolean {
+            if (!state.compareAndSet(JOB_QUEUED, JOB_SUPERSEDED)) return false
+            // Dead entries would otherwise sit in the queue, ahead of live work, until a worker polls them.
+            executor.remove(this)
+            cancelQueued()
+            return true
+        }
+
+        override fun run() {
+            if (!state.compareAndSet(JOB_QUEUED, JOB_RUNNING)) return
+            if (coalesceKey != null) {
+                queuedByOwner.remove(coalesceKey, this)
+            }
+            if (token.isCancelled) {
+                cancelQueued()
+                return
+            }
+            if (recordsWait) recordQueueWait(subsystem, System.nanoTime() - enqueuedNanos)
+            body()
+        }
+
+        override fun compareTo(other: QueuedJob): Int {
+            val byPriority = other.subsystem.priority.compareTo(subsystem.priority)
+            if (byPriority != 0) return byPriority
+            return sequence.compareTo(other.sequence)
+        }
+    }
+
+    private val threadCount: Int by lazy {
+        val configured = ValkyrienAirConfig.shipPocketAsyncThreads
+        if (configured > 0) {
+            configured
+        } else {
+            // Leave room for the server thread, VS physics and chunk workers.
+            val processors = Runtime.getRuntime().availableProcessors()
+            (processors / 2).coerceIn(1, MAX_AUTO_THREADS)
+        }
+    }
+
+    private val maxPendingJobs: Int by lazy { maxOf(MIN_PENDING_JOBS, threadCount * PENDING_JOBS_PER_THREAD) }
+
+    val executor: ThreadPoolExecutor by lazy {
+        // Only QueuedJob instances are ever handed to execute(), so the priority queue can order them directly.
+        ThreadPoolExecutor(
+            threadCount,
+            threadCount,
+            0L,
+            TimeUnit.MILLISECONDS,
+            PriorityBlockingQueue<Runnable>(),
+        ) { runnable ->
             Thread(runnable, "ValkyrienAir-Async-${threadCounter.incrementAndGet()}").apply {
                 isDaemon = true
             }
@@ -41,18 +153,37 @@ internal object ShipPocketAsyncRuntime {
     private fun subsystemIdx(subsystem: ShipPocketAsyncSubsystem): Int = subsystem.ordinal
 
     private fun tryAcquirePendingSlot(): Boolean {
+        val max = maxPendingJobs
         while (true) {
             val current = pendingJobs.get()
-            if (current >= MAX_PENDING_JOBS) return false
+            if (current >= max) return false
             if (pendingJobs.compareAndSet(current, current + 1)) return true
         }
     }
 
+    private fun recordQueueWait(subsystem: ShipPocketAsyncSubsystem, waitNanos: Long) {
+        val idx = subsystemIdx(subsystem)
+        startedBySubsystem[idx].incrementAndGet()
+        queueWaitNanosBySubsystem[idx].addAndGet(waitNanos)
+        val max = queueWaitMaxNanosBySubsystem[idx]
+        while (true) {
+            val prev = max.get()
+            if (waitNanos <= prev || max.compareAndSet(prev, waitNanos)) break
+        }
+    }
+
     @JvmStatic
     fun pendingJobCount(): Int = pendingJobs.get()
 
+    /** Jobs (fork helpers included) waiting in the executor queue for a worker. */
+    @JvmStatic
+    fun queuedJobCount(): Int = executor.queue.size
+
+    @JvmStatic
+    fun maxPendingJobs(): Int = maxPendingJobs
+
     @JvmStatic
-    fun maxPendingJobs(): Int = MAX_PENDING_JOBS
+    fun threadCount(): Int = threadCount
 
     @JvmStatic
     fun noteDiscard(subsystem: ShipPocketAsyncSubsystem) {
@@ -75,42 +206,185 @@ internal object ShipPocketAsyncRuntime {
     fun discarded(subsystem: ShipPocketAsyncSubsystem): Long =
         discardedBySubsystem[subsystemIdx(subsystem)].get()
 
+    @JvmStatic
+    fun coalesced(subsystem: ShipPocketAsyncSubsystem): Long =
+        coalescedBySubsystem[subsystemIdx(subsystem)].get()
+
+    /** Jobs that ended cancelled: superseded while queued, or stopped via their [ShipPocketCancellationToken]. */
+    @JvmStatic
+    fun cancelled(subsystem: ShipPocketAsyncSubsystem): Long =
+        cancelledBySubsystem[subsystemIdx(subsystem)].get()
+
+    /** Mean time jobs of [subsystem] spent queued before a worker picked them up, in microseconds. */
+    @JvmStatic
+    fun averageQueueWaitMicros(subsystem: ShipPocketAsyncSubsystem): Long {
+        val idx = subsystemIdx(subsystem)
+        val started = startedBySubsystem[idx].get()
+        if (started <= 0L) return 0L
+        return queueWaitNanosBySubsystem[idx].get() / started / 1000L
+    }
+
+    @JvmStatic
+    fun maxQueueWaitMicros(subsystem: ShipPocketAsyncSubsystem): Long =
+        queueWaitMaxNanosBySubsystem[subsystemIdx(subsystem)].get() / 1000L
+
+    /** True while the latest job submitted for [owner] via [trySubmitCoalesced] has not started yet. */
+    @JvmStatic
+    fun hasQueuedJob(subsystem: ShipPocketAsyncSubsystem, owner: Any): Boolean =
+        queuedByOwner[CoalesceKey(subsystem, owner)]?.state?.get() == JOB_QUEUED
+
     @JvmStatic
     fun <T> trySubmit(
         subsystem: ShipPocketAsyncSubsystem,
         task: () -> T,
+    ): CompletableFuture<T>? {
+        return submit(subsystem, coalesceKey = null, superseded = null, task = { task() })
+    }
+
+    /**
+     * Like [trySubmit], but a job for the same [owner] that is still queued is superseded: it never runs, its
+     * future completes cancelled, and the new job takes over its queue position. Only use this when the new task
+     * fully replaces the old one's work.
+     */
+    @JvmStatic
+    fun <T> trySubmitCoalesced(
+        subsystem: ShipPocketAsyncSubsystem,
+        owner: Any,
+        task: () -> T,
+    ): CompletableFuture<T>? {
+        return trySubmitCancellable(subsystem, owner) { task() }
+    }
+
+    /**
+     * Coalescing submit whose task receives its [ShipPocketCancellationToken]. The token is cancelled when the
+     * returned future is cancelled, so callers abandon running work simply by cancelling the future.
+     */
+    @JvmStatic
+    fun <T> trySubmitCancellable(
+        subsystem: ShipPocketAsyncSubsystem,
+        owner: Any,
+        task: (ShipPocketCancellationToken) -> T,
+    ): CompletableFuture<T>? {
+        val key = CoalesceKey(subsystem, owner)
+        var superseded: QueuedJob? = null
+        val previous = queuedByOwner[key]
+        if (previous != null && previous.trySupersede()) {
+            queuedByOwner.remove(key, previous)
+            coalescedBySubsystem[subsystemIdx(subsystem)].incrementAndGet()
+            superseded = previous
+        }
+        return submit(subsystem, coalesceKey = key, superseded = superseded, task = task)
+    }
+
+    @JvmStatic
+    fun <T> trySubmitJava(
+        subsystem: ShipPocketAsyncSubsystem,
+        supplier: Supplier<T>,
+    ): CompletableFuture<T>? {
+        return trySubmit(subsystem = subsystem, task = { supplier.get() })
+    }
+
+    /**
+     * Runs [body] once for every index in `0 until count`, on the calling thread plus up to [threadCount] - 1 helper
+     * jobs queued at [subsystem]'s priority on this runtime's pool. The caller claims indices too, so it only ever
+     * waits on indices a running helper already took; helpers still queued when the work runs out are removed.
+     * Helpers don't take pending-job slots. The first failure is rethrown once every claimed index has finished.
+     */
+    @JvmStatic
+    fun forkEach(subsystem: ShipPocketAsyncSubsystem, count: Int, body: (Int) -> Unit) {
+        if (count <= 0) return
+        val next = AtomicInteger(0)
+        val remaining = CountDownLatch(count)
+        val failure = AtomicReference<Throwable?>()
+
+        fun drain() {
+            while (true) {
+                val i = next.getAndIncrement()
+                if (i >= count) return
+                try {
+                    if (failure.get() == null) body(i)
+                } catch (t: Throwable) {
+                    failure.compareAndSet(null, t)
+                } finally {
+                    remaining.countDown()
+                }
+            }
+        }
+
+        val helpers = Array(minOf(threadCount, count) - 1) {
+            QueuedJob(
+                subsystem = subsystem,
+                coalesceKey = null,
+                sequence = jobSequence.incrementAndGet(),
+                enqueuedNanos = System.nanoTime(),
+                token = ShipPocketCancellationToken(),
+                body = { drain() },
+                cancelQueued = {},
+                recordsWait = false,
+            )
+        }
+        for (helper in helpers) executor.execute(helper)
+
+        drain()
+        for (helper in helpers) {
+            if (helper.state.compareAndSet(JOB_QUEUED, JOB_SUPERSEDED)) executor.remove(helper)
+        }
+        remaining.await()
+        failure.get()?.let { throw it }
+    }
+
+    private fun <T> submit(
+        subsystem: ShipPocketAsyncSubsystem,
+        coalesceKey: CoalesceKey?,
+        superseded: QueuedJob?,
+        task: (ShipPocketCancellationToken) -> T,
     ): CompletableFuture<T>? {
         if (!tryAcquirePendingSlot()) return null
 
         val subsystemIndex = subsystemIdx(subsystem)
         submittedBySubsystem[subsystemIndex].incrementAndGet()
 
-        val sourceFuture = CompletableFuture.supplyAsync(
-            {
-                task()
-            },
-            executor,
-        )
+        val sourceFuture = CompletableFuture<T>()
 
         // Keep slot accounting bound to the source task, not the cancelable view we return to callers.
         sourceFuture.whenComplete { _, throwable ->
             pendingJobs.decrementAndGet()
-            if (throwable == null) {
-                completedBySubsystem[subsystemIndex].incrementAndGet()
-            } else {
-                failedBySubsystem[subsystemIndex].incrementAndGet()
+            when (throwable) {
+                null -> completedBySubsystem[subsystemIndex].incrementAndGet()
+                is CancellationException -> cancelledBySubsystem[subsystemIndex].incrementAndGet()
+                else -> failedBySubsystem[subsystemIndex].incrementAndGet()
             }
         }
 
-        // Return a distinct stage so caller-side cancellation cannot suppress internal accounting callbacks.
-        return sourceFuture.thenApply { it }
-    }
+        val token = ShipPocketCancellationToken()
+        val job = QueuedJob(
+            subsystem = subsystem,
+            coalesceKey = coalesceKey,
+            sequence = superseded?.sequence ?: jobSequence.incrementAndGet(),
+            enqueuedNanos = superseded?.enqueuedNanos ?: System.nanoTime(),
+            token = token,
+            body = {
+                try {
+                    sourceFuture.complete(task(token))
+                } catch (t: Throwable) {
+                    sourceFuture.completeExceptionally(t)
+                }
+            },
+            cancelQueued = { sourceFuture.cancel(false) },
+        )
+        if (coalesceKey != null) {
+            queuedByOwner[coalesceKey] = job
+        }
+        executor.execute(job)
 
-    @JvmStatic
-    fun <T> trySubmitJava(
-        subsystem: ShipPocketAsyncSubsystem,
-        supplier: Supplier<T>,
-    ): CompletableFuture<T>? {
-        return trySubmit(subsystem = subsystem, task = { supplier.get() })
+        // Return a distinct stage so caller-side cancellation cannot suppress internal accounting callbacks.
+        // Cancelling it still reaches the worker, cooperatively, through the token.
+        val view = sourceFuture.thenApply { it }
+        view.whenComplete { _, _ ->
+            if (!view.isCancelled) return@whenComplete
+            token.cancel()
+            if (job.trySupersede() && coalesceKey != null) queuedByOwner.remove(coalesceKey, job)
+        }
+        return view
     }
 }
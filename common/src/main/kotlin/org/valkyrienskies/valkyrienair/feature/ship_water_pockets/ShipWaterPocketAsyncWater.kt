@@ -69,7 +69,11 @@ internal data class WaterSolveResult(
     val floodPlan: FloodPlanResult? = null,
 )
 
-internal fun computeWaterSolveAsync(snapshot: WaterSolveSnapshot): WaterSolveResult {
+internal fun computeWaterSolveAsync(
+    snapshot: WaterSolveSnapshot,
+    cancellation: ShipPocketCancellationToken? = null,
+): WaterSolveResult {
+    cancellation?.throwIfCancelled()
     val startNanos = System.nanoTime()
     val out = BitSet(snapshot.sizeX * snapshot.sizeY * snapshot.sizeZ)
     val buoyancy = BuoyancyMetrics()
@@ -82,7 +86,9 @@ internal fun computeWaterSolveAsync(snapshot: WaterSolveSnapshot): WaterSolveRes
         out = out,
         buoyancyOut = buoyancy,
         floodFluidOut = floodFluidOut,
+        cancellation = cancellation,
     )
+    cancellation?.throwIfCancelled()
 
     val unreachable = snapshot.open.clone() as BitSet
     unreachable.andNot(out)
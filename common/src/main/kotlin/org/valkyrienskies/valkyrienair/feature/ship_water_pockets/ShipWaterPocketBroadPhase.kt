@@ -0,0 +1,126 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import net.minecraft.core.SectionPos
+import net.minecraft.world.level.Level
+import org.valkyrienskies.core.api.ships.Ship
+import org.valkyrienskies.mod.common.dimensionId
+import org.valkyrienskies.mod.common.shipObjectWorld
+import java.util.concurrent.atomic.AtomicLong
+
+// Beyond this a ship is too large to have pocket state (see MAX_SIM_VOLUME), so it is left out of the index.
+private const val MAX_BROAD_PHASE_SECTIONS_PER_SHIP = 65_536
+
+/** A loaded ship and its world AABB as of the tick the owning [ShipPocketBroadPhase] index was built. */
+internal class BroadPhaseShip(
+    val ship: Ship,
+    private val minX: Double,
+    private val minY: Double,
+    private val minZ: Double,
+    private val maxX: Double,
+    private val maxY: Double,
+    private val maxZ: Double,
+) {
+    /** Inclusive overlap with the unit box of block ([x], [y], [z]), like `loadedShips.getIntersecting`. */
+    fun intersectsBlock(x: Int, y: Int, z: Int): Boolean {
+        return maxX >= x && minX <= x + 1.0 &&
+            maxY >= y && minY <= y + 1.0 &&
+            maxZ >= z && minZ <= z + 1.0
+    }
+}
+
+/**
+ * Per-level broad phase for the world-position fluid queries (`Level.getFluidState`/`getBlockState` overrides).
+ *
+ * Maps world chunk-section keys to the ships whose world AABB touches that section. The index is rebuilt at most once
+ * per game tick, by whichever thread queries first, and published as an immutable snapshot; a query far from every
+ * ship is a single hash probe and allocates nothing.
+ */
+internal class ShipPocketBroadPhase {
+    private class Index(
+        val tick: Long,
+        val bySection: Long2ObjectOpenHashMap<Array<BroadPhaseShip>>,
+    )
+
+    @Volatile
+    private var index: Index? = null
+
+    /** Ships whose AABB touches the section of block ([x], [y], [z]), or null if there are none. */
+    fun candidatesAt(level: Level, x: Int, y: Int, z: Int): Array<BroadPhaseShip>? {
+        val tick = level.gameTime
+        var current = index
+        if (current == null || current.tick != tick) {
+            current = rebuild(level, tick)
+        }
+        return current.bySection.get(SectionPos.asLong(x shr 4, y shr 4, z shr 4))
+    }
+
+    private fun rebuild(level: Level, tick: Long): Index {
+        synchronized(this) {
+            index?.let { if (it.tick == tick) return it }
+
+            val lists = Long2ObjectOpenHashMap<ArrayList<BroadPhaseShip>>()
+            val dimensionId = level.dimensionId
+            for (ship in level.shipObjectWorld.loadedShips) {
+                // The ship world spans every dimension; only ships in this level may answer its queries.
+                if (ship.chunkClaimDimension != dimensionId) continue
+                val aabb = ship.worldAABB
+                val minSectionX = SectionPos.blockToSectionCoord(aabb.minX())
+                val minSectionY = SectionPos.blockToSectionCoord(aabb.minY())
+                val minSectionZ = SectionPos.blockToSectionCoord(aabb.minZ())
+                val maxSectionX = SectionPos.blockToSectionCoord(aabb.maxX())
+                val maxSectionY = SectionPos.blockToSectionCoord(aabb.maxY())
+                val maxSectionZ = SectionPos.blockToSectionCoord(aabb.maxZ())
+                val sectionCount = (maxSectionX - minSectionX + 1).toLong() *
+                    (maxSectionY - minSectionY + 1).toLong() *
+                    (maxSectionZ - minSectionZ + 1).toLong()
+                if (sectionCount > MAX_BROAD_PHASE_SECTIONS_PER_SHIP) {
+                    oversizedShipsSkipped.incrementAndGet()
+                    continue
+                }
+
+                val entry = BroadPhaseShip(
+                    ship,
+                    aabb.minX(), aabb.minY(), aabb.minZ(),
+                    aabb.maxX(), aabb.maxY(), aabb.maxZ(),
+                )
+                for (sz in minSectionZ..maxSectionZ) {
+                    for (sy in minSectionY..maxSectionY) {
+                        for (sx in minSectionX..maxSectionX) {
+                            val key = SectionPos.asLong(sx, sy, sz)
+                            var list = lists.get(key)
+                            if (list == null) {
+                                list = ArrayList(2)
+                                lists.put(key, list)
+                            }
+                            list.add(entry)
+                        }
+                    }
+                }
+            }
+
+            val bySection = Long2ObjectOpenHashMap<Array<BroadPhaseShip>>(lists.size)
+            val it = lists.long2ObjectEntrySet().fastIterator()
+            while (it.hasNext()) {
+                val e = it.next()
+                bySection.put(e.longKey, e.value.toTypedArray())
+            }
+
+            val built = Index(tick, bySection)
+            index = built
+            rebuilds.incrementAndGet()
+            return built
+        }
+    }
+
+    companion object {
+        private val rebuilds = AtomicLong(0)
+        private val oversizedShipsSkipped = AtomicLong(0)
+
+        @JvmStatic
+        fun rebuilds(): Long = rebuilds.get()
+
+        @JvmStatic
+        fun oversizedShipsSkipped(): Long = oversizedShipsSkipped.get()
+    }
+}
@@ -4,3 +4,7 @@ package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
 // Treat <4 samples as a micro-gap, not a real hole/vent/wall opening.
 internal const val MIN_OPENING_CONDUCTANCE: Int = 4
 
+// Largest pocket bounds (in cells) a ship may have. Every per-voxel field and the per-solve scratch are allocated at
+// full volume, so this also bounds their memory.
+internal const val MAX_SIM_VOLUME: Int = 2_000_000
+
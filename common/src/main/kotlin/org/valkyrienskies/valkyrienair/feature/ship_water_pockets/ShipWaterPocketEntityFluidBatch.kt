@@ -0,0 +1,139 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import net.minecraft.world.level.Level
+import net.minecraft.world.level.material.FluidState
+import net.minecraft.world.phys.Vec3
+import java.lang.ref.WeakReference
+import java.util.BitSet
+
+/**
+ * Reusable list of world-space sample points for [ShipWaterPocketManager.classifyEntityFluidSamples]. Answers come
+ * back as a long bitmask, so at most [MAX_SAMPLES] points fit in one batch.
+ */
+class EntityFluidSamples internal constructor() {
+    internal val xs = DoubleArray(MAX_SAMPLES)
+    internal val ys = DoubleArray(MAX_SAMPLES)
+    internal val zs = DoubleArray(MAX_SAMPLES)
+
+    var count: Int = 0
+        private set
+
+    fun clear(): EntityFluidSamples {
+        count = 0
+        return this
+    }
+
+    /** Appends a point; returns false (and drops it) once the batch is full. */
+    fun add(x: Double, y: Double, z: Double): Boolean {
+        if (count >= MAX_SAMPLES) return false
+        xs[count] = x
+        ys[count] = y
+        zs[count] = z
+        count++
+        return true
+    }
+
+    companion object {
+        const val MAX_SAMPLES = 32
+
+        /** Bits of the answer mask set where a sample is inside ship fluid (bit `i` for sample `i`). */
+        const val SHIP_FLUID_BITS = 0xFFFF_FFFFL
+
+        /** Bits of the answer mask set where a sample is in a world-fluid suppression zone (bit `32 + i`). */
+        const val SUPPRESSION_BITS = SHIP_FLUID_BITS shl 32
+    }
+}
+
+/**
+ * Per-block pocket answers for the blocks an entity's fluid-pushing pass visits, filled in one pass per intersecting
+ * ship by [ShipWaterPocketManager.beginEntityFluidBlocks].
+ *
+ * Entries are reused while the level, game tick, block box and fingerprint of the ships covering it stay the same, so
+ * the water and lava passes of one entity tick share a single fill.
+ */
+internal class EntityFluidBlocks {
+    var active = false
+    // Weak, so a thread's batch never keeps an unloaded level alive.
+    private var level: WeakReference<Level>? = null
+    var tick = Long.MIN_VALUE
+    var shipStamp = Long.MIN_VALUE
+
+    var minX = 0
+    var minY = 0
+    var minZ = 0
+    var sizeX = 0
+    var sizeY = 0
+    var sizeZ = 0
+
+    // Ship fluid that wins the block-center query (null = none).
+    var shipFluids: Array<FluidState?> = arrayOfNulls(0)
+    // A suppressing ship was hit before any ship fluid.
+    val suppressed = BitSet()
+    // Height/flow of the first ship fluid in any ship, as computeShipFluidHeight/computeRotatedShipFluidFlow see it.
+    var heights = FloatArray(0)
+    var flows: Array<Vec3?> = arrayOfNulls(0)
+
+    fun covers(
+        level: Level,
+        tick: Long,
+        shipStamp: Long,
+        minX: Int,
+        minY: Int,
+        minZ: Int,
+        maxX: Int,
+        maxY: Int,
+        maxZ: Int,
+    ): Boolean {
+        return this.level?.get() === level && this.tick == tick && this.shipStamp == shipStamp &&
+            this.minX == minX && this.minY == minY && this.minZ == minZ &&
+            this.sizeX == maxX - minX && this.sizeY == maxY - minY && this.sizeZ == maxZ - minZ
+    }
+
+    fun reset(
+        level: Level,
+        tick: Long,
+        shipStamp: Long,
+        minX: Int,
+        minY: Int,
+        minZ: Int,
+        maxX: Int,
+        maxY: Int,
+        maxZ: Int,
+    ) {
+        if (this.level?.get() !== level) this.level = WeakReference(level)
+        this.tick = tick
+        this.shipStamp = shipStamp
+        this.minX = minX
+        this.minY = minY
+        this.minZ = minZ
+        sizeX = maxX - minX
+        sizeY = maxY - minY
+        sizeZ = maxZ - minZ
+
+        val volume = sizeX * sizeY * sizeZ
+        if (shipFluids.size < volume) {
+            shipFluids = arrayOfNulls(volume)
+            heights = FloatArray(volume)
+            flows = arrayOfNulls(volume)
+        }
+        shipFluids.fill(null, 0, volume)
+        heights.fill(Float.NaN, 0, volume)
+        flows.fill(null, 0, volume)
+        suppressed.clear()
+    }
+
+    /** Index of world block ([x], [y], [z]), or -1 when it is outside the box or the batch is not active. */
+    fun indexOf(level: Level, x: Int, y: Int, z: Int): Int {
+        if (!active || this.level?.get() !== level) return -1
+        if (x - minX !in 0 until sizeX || y - minY !in 0 until sizeY || z - minZ !in 0 until sizeZ) return -1
+        return localIndex(x, y, z)
+    }
+
+    /** Index of world block ([x], [y], [z]), which must be inside the box. */
+    fun localIndex(x: Int, y: Int, z: Int): Int = (x - minX) + sizeX * ((y - minY) + sizeY * (z - minZ))
+
+    companion object {
+        // Larger boxes (giant modded mobs) keep using the per-block queries.
+        const val MAX_VOLUME = 4096
+    }
+}
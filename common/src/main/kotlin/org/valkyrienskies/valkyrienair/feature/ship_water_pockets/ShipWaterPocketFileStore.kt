@@ -0,0 +1,204 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import net.minecraft.nbt.CompoundTag
+import net.minecraft.nbt.NbtIo
+import org.apache.logging.log4j.LogManager
+import java.io.IOException
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * One persistence file per ship, `<shipId>.dat` in [directory], each holding a single compressed NBT ship entry.
+ *
+ * Flushed snapshots stay in memory until the level saves. Then every ship that changed since the previous save is
+ * encoded and deflated on [io] from its immutable snapshot, written to a temporary file and renamed over the old one,
+ * so a crash leaves either the previous entry or the new one. Ships still stored in the old single-file [legacy] data
+ * are read from it until their first write here has landed, and dropped from it on the save after that.
+ *
+ * Nothing is read at construction. A ship's file is read and decoded the first time it is asked for, on [io] when the
+ * caller [prefetch]es it ahead of time. Once a ship is [release]d its entry is dropped as soon as it has been written.
+ */
+internal class ShipPocketFileStore(
+    private val directory: Path,
+    private val legacy: ShipPocketSavedData?,
+    // Must run tasks one at a time in submission order, so writes of the same ship never overtake each other.
+    private val io: Executor,
+) {
+    // Server thread.
+    private val states = Long2ObjectOpenHashMap<PersistedShipPocketState>()
+    private val dirty = LongOpenHashSet()
+    private val missing = LongOpenHashSet()
+    private val reads = Long2ObjectOpenHashMap<CompletableFuture<PersistedShipPocketState?>>()
+    // Queued writes not yet reported back through [completed], per ship.
+    private val writesInFlight = Long2IntOpenHashMap()
+    private val released = LongOpenHashSet()
+
+    // Handed back from the I/O thread: ships now safely on disk here, ships whose write failed, and every finished
+    // write. A failure is posted before its completion, so draining [completed] first never misses one.
+    private val migrated = ConcurrentLinkedQueue<Long>()
+    private val failed = ConcurrentLinkedQueue<Long>()
+    private val completed = ConcurrentLinkedQueue<Long>()
+
+    fun getState(shipId: Long): PersistedShipPocketState? {
+        released.remove(shipId)
+        states.get(shipId)?.let { return it }
+        if (missing.contains(shipId)) return legacy?.getState(shipId)
+        // Nothing is ever queued for a ship that isn't in [states], so the file is not being written right now.
+        val pending = reads.remove(shipId)
+        val fromFile = if (pending != null) pending.join() else readFile(shipId)
+        if (fromFile == null) {
+            missing.add(shipId)
+            return legacy?.getState(shipId)
+        }
+        states.put(shipId, fromFile)
+        return fromFile
+    }
+
+    /**
+     * Starts reading [shipId]'s file on [io] unless it has been read already. Returns whether [getState] can answer
+     * without waiting on the read.
+     */
+    fun prefetch(shipId: Long): Boolean {
+        released.remove(shipId)
+        if (states.containsKey(shipId) || missing.contains(shipId)) return true
+        val pending = reads.get(shipId)
+            ?: CompletableFuture.supplyAsync({ readFile(shipId) }, io).also { reads.put(shipId, it) }
+        return pending.isDone
+    }
+
+    fun putState(shipId: Long, state: PersistedShipPocketState) {
+        reads.remove(shipId)
+        states.put(shipId, state)
+        dirty.add(shipId)
+    }
+
+    /** [shipId] unloaded: its entry is dropped once it holds nothing that still has to reach disk. */
+    fun release(shipId: Long) {
+        reads.remove(shipId)
+        if (!evictIfClean(shipId)) released.add(shipId)
+    }
+
+    /** Queues every ship changed since the last save for writing; with [awaitWrites], returns once all are on disk. */
+    fun save(awaitWrites: Boolean) {
+        collectFinishedWrites()
+        while (true) {
+            val shipId = migrated.poll() ?: break
+            legacy?.removeState(shipId)
+        }
+
+        val it = dirty.iterator()
+        while (it.hasNext()) {
+            val shipId = it.nextLong()
+            val state = states.get(shipId) ?: continue
+            writesInFlight.addTo(shipId, 1)
+            io.execute { write(shipId, state) }
+        }
+        dirty.clear()
+
+        if (awaitWrites) {
+            awaitPendingWrites()
+            collectFinishedWrites()
+        }
+        val unloaded = released.iterator()
+        while (unloaded.hasNext()) {
+            if (evictIfClean(unloaded.nextLong())) unloaded.remove()
+        }
+        // A prefetch nobody claimed since the last save is for a ship that never loaded; getState would read again.
+        reads.values.removeIf { it.isDone }
+    }
+
+    private fun collectFinishedWrites() {
+        while (true) {
+            val shipId = completed.poll() ?: break
+            if (writesInFlight.addTo(shipId, -1) <= 1) writesInFlight.remove(shipId)
+        }
+        while (true) {
+            val shipId = failed.poll() ?: break
+            if (states.containsKey(shipId)) dirty.add(shipId)
+        }
+    }
+
+    private fun evictIfClean(shipId: Long): Boolean {
+        if (dirty.contains(shipId) || writesInFlight.containsKey(shipId)) return false
+        states.remove(shipId)
+        missing.remove(shipId)
+        return true
+    }
+
+    fun awaitPendingWrites() {
+        CompletableFuture.runAsync({}, io).join()
+    }
+
+    private fun fileFor(shipId: Long): Path = directory.resolve("$shipId$FILE_SUFFIX")
+
+    private fun write(shipId: Long, state: PersistedShipPocketState) {
+        val target = fileFor(shipId)
+        val temp = directory.resolve("$shipId$FILE_SUFFIX$TEMP_SUFFIX")
+        try {
+            val root = CompoundTag()
+            root.putInt(TAG_FORMAT_VERSION, ShipPocketSavedData.FORMAT_VERSION)
+            root.put(TAG_SHIP, ShipPocketSavedData.writeShipTag(shipId, state))
+            Files.createDirectories(directory)
+            Files.newOutputStream(temp).use { NbtIo.writeCompressed(root, it) }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+            } catch (_: AtomicMoveNotSupportedException) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING)
+            }
+            filesWritten.incrementAndGet()
+            bytesWritten.addAndGet(Files.size(target))
+            if (legacy != null) migrated.add(shipId)
+        } catch (e: IOException) {
+            writeFailures.incrementAndGet()
+            failed.add(shipId)
+            log.warn("Failed to write ship pocket state shipId={} to {}", shipId, target, e)
+        } finally {
+            completed.add(shipId)
+        }
+    }
+
+    private fun readFile(shipId: Long): PersistedShipPocketState? {
+        val file = fileFor(shipId)
+        if (!Files.isRegularFile(file)) return null
+        return try {
+            val root = Files.newInputStream(file).use { NbtIo.readCompressed(it) }
+            val version = root.getInt(TAG_FORMAT_VERSION)
+            if (version <= 0 || version > ShipPocketSavedData.FORMAT_VERSION) return null
+            ShipPocketSavedData.readShipTag(root.getCompound(TAG_SHIP), version)
+        } catch (e: IOException) {
+            log.warn("Failed to read ship pocket state from {}", file, e)
+            null
+        }
+    }
+
+    companion object {
+        private const val FILE_SUFFIX = ".dat"
+        private const val TEMP_SUFFIX = ".tmp"
+        private const val TAG_FORMAT_VERSION = "format_version"
+        private const val TAG_SHIP = "ship"
+
+        private val log = LogManager.getLogger("ValkyrienAir ShipWaterPockets")
+
+        private val filesWritten = AtomicLong(0)
+        private val bytesWritten = AtomicLong(0)
+        private val writeFailures = AtomicLong(0)
+
+        @JvmStatic
+        fun filesWritten(): Long = filesWritten.get()
+
+        @JvmStatic
+        fun bytesWritten(): Long = bytesWritten.get()
+
+        @JvmStatic
+        fun writeFailures(): Long = writeFailures.get()
+    }
+}
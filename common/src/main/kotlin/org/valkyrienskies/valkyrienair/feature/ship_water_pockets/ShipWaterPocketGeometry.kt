@@ -1,7 +1,7 @@
 package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
 
 import net.minecraft.core.BlockPos
-import net.minecraft.world.level.Level
+import net.minecraft.world.level.BlockGetter
 import net.minecraft.world.level.block.DoorBlock
 import net.minecraft.world.level.block.FenceGateBlock
 import net.minecraft.world.level.block.TrapDoorBlock
@@ -53,6 +53,8 @@ internal data class ShapeCellTemplate(
     val faceOpenCount: IntArray,
     // Per face sample local component id (0..63), -1 for solid.
     val faceSampleComponent: ByteArray,
+    // Shape this template was built from; used to re-key palettes when patching geometry incrementally.
+    val geometry: ShapeWaterGeometry,
 ) {
     val hasOpenVolume: Boolean
         get() = componentCount > 0
@@ -211,6 +213,7 @@ internal fun buildShapeCellTemplate(geom: ShapeWaterGeometry): ShapeCellTemplate
         faceComponentMask = faceComponentMask,
         faceOpenCount = faceOpenCount,
         faceSampleComponent = faceSampleComponent,
+        geometry = geom,
     )
 }
 
@@ -288,7 +291,7 @@ private fun shapeBlockingScore(shape: VoxelShape): Double {
     return score
 }
 
-private fun resolveFluidOcclusionShape(level: Level, pos: BlockPos, state: BlockState): VoxelShape {
+private fun resolveFluidOcclusionShape(level: BlockGetter, pos: BlockPos, state: BlockState): VoxelShape {
     val collision = state.getCollisionShape(level, pos)
     val occlusion = state.getOcclusionShape(level, pos)
     val union =
@@ -397,7 +400,15 @@ private fun requiresRefinedSampling(shape: VoxelShape, boxes: List<AABB>): Boole
         !isGridAligned(box.minZ) || !isGridAligned(box.maxZ)
 }
 
-internal fun computeShapeWaterGeometry(level: Level, pos: BlockPos, state: BlockState): ShapeWaterGeometry {
+/**
+ * Whether [computeShapeWaterGeometry] only depends on the state itself, so its result can be shared by every voxel
+ * holding that state. Mirrors the conditions vanilla uses to cache a state's collision shape.
+ */
+internal fun isShapeWaterGeometryPositionIndependent(state: BlockState): Boolean {
+    return !state.block.hasDynamicShape() && !state.hasOffsetFunction()
+}
+
+internal fun computeShapeWaterGeometry(level: BlockGetter, pos: BlockPos, state: BlockState): ShapeWaterGeometry {
     if (state.isAir) return ShapeWaterGeometry(fullSolid = false, refined = false, boxes = emptyList())
     if (isGameplaySealedState(state)) {
         return ShapeWaterGeometry(
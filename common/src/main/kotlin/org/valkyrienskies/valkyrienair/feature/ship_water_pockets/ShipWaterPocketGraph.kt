@@ -128,3 +128,142 @@ internal fun floodFillFromSeedsGraph(
 
     return visited
 }
+
+/** Below this volume a single-threaded BFS beats the slab split's setup and merge cost. */
+internal const val PARALLEL_REACHABILITY_MIN_VOLUME: Int = 1 shl 18
+
+internal fun shouldUseParallelReachability(volume: Int, sizeZ: Int): Boolean {
+    return volume >= PARALLEL_REACHABILITY_MIN_VOLUME &&
+        sizeZ >= 2 &&
+        ShipPocketAsyncRuntime.threadCount() > 1
+}
+
+// Union-find parents, reused per solving thread. Only entries of open cells are ever read, and each is written
+// before it is read, so the array needs no clearing between solves.
+private val slabUnionFindParent: ThreadLocal<IntArray> = ThreadLocal.withInitial { IntArray(0) }
+
+private fun findSlabRoot(parent: IntArray, i: Int): Int {
+    var x = i
+    while (parent[x] != x) {
+        // Path halving. Concurrent finds only ever rewrite a link to another ancestor, so races are benign.
+        parent[x] = parent[parent[x]]
+        x = parent[x]
+    }
+    return x
+}
+
+private fun unionSlabRoots(parent: IntArray, a: Int, b: Int) {
+    val ra = findSlabRoot(parent, a)
+    val rb = findSlabRoot(parent, b)
+    if (ra == rb) return
+    if (ra < rb) parent[rb] = ra else parent[ra] = rb
+}
+
+/**
+ * Parallel equivalent of [floodFillFromBoundaryGraph]: returns exactly the cells of [open] connected to the bounds
+ * boundary. [edgeCond] must be symmetric (the face between two cells has the same conductance seen from either
+ * side), which holds for both face-conductance arrays and template face conductance.
+ *
+ * The volume is cut into Z slabs. Each slab builds a union-find over its own cells in parallel; trees never leave
+ * their slab in that phase, so slabs don't contend. Slab interfaces are then merged sequentially, components holding
+ * a boundary cell are flagged by root, and the result words are labelled in parallel again. Parallel phases run on
+ * [ShipPocketAsyncRuntime]'s pool at [subsystem]'s priority.
+ */
+internal fun floodFillFromBoundaryGraphParallel(
+    open: BitSet,
+    sizeX: Int,
+    sizeY: Int,
+    sizeZ: Int,
+    edgeCond: ((idx: Int, lx: Int, ly: Int, lz: Int, dirCode: Int) -> Int)? = null,
+    slabCount: Int = (ShipPocketAsyncRuntime.threadCount() * 2).coerceAtMost(sizeZ),
+    cancellation: ShipPocketCancellationToken? = null,
+    subsystem: ShipPocketAsyncSubsystem = ShipPocketAsyncSubsystem.WATER_SOLVER,
+): BitSet {
+    val volume = sizeX * sizeY * sizeZ
+    val strideY = sizeX
+    val strideZ = sizeX * sizeY
+    val slabs = slabCount.coerceIn(1, maxOf(1, sizeZ))
+    val slabDepth = (sizeZ + slabs - 1) / slabs
+    var parent = slabUnionFindParent.get()
+    if (parent.size < volume) {
+        parent = IntArray(volume)
+        slabUnionFindParent.set(parent)
+    }
+
+    fun canTraverse(idx: Int, lx: Int, ly: Int, lz: Int, dirCode: Int): Boolean {
+        val c = edgeCond ?: return true
+        return c(idx, lx, ly, lz, dirCode) > 0
+    }
+
+    // 1) Per-slab union-find. Cells are visited in index order, so -X/-Y/-Z neighbours are already initialised.
+    ShipPocketAsyncRuntime.forkEach(subsystem, slabs) { slab ->
+        val z0 = slab * slabDepth
+        val z1 = minOf(sizeZ, z0 + slabDepth)
+        if (z0 >= z1) return@forkEach
+        val end = z1 * strideZ
+        var idx = open.nextSetBit(z0 * strideZ)
+        while (idx >= 0 && idx < end) {
+            parent[idx] = idx
+            val lx = idx % sizeX
+            val t = idx / sizeX
+            val ly = t % sizeY
+            val lz = t / sizeY
+            if (lx > 0 && open.get(idx - 1) && canTraverse(idx - 1, lx - 1, ly, lz, 1)) {
+                unionSlabRoots(parent, idx - 1, idx)
+            }
+            if (ly > 0 && open.get(idx - strideY) && canTraverse(idx - strideY, lx, ly - 1, lz, 3)) {
+                unionSlabRoots(parent, idx - strideY, idx)
+            }
+            if (lz > z0 && open.get(idx - strideZ) && canTraverse(idx - strideZ, lx, ly, lz - 1, 5)) {
+                unionSlabRoots(parent, idx - strideZ, idx)
+            }
+            idx = open.nextSetBit(idx + 1)
+        }
+    }
+    cancellation?.throwIfCancelled()
+
+    // 2) Merge across slab interfaces.
+    for (slab in 1 until slabs) {
+        val lz = slab * slabDepth
+        if (lz >= sizeZ) break
+        val begin = lz * strideZ
+        var idx = open.nextSetBit(begin)
+        while (idx >= 0 && idx < begin + strideZ) {
+            val below = idx - strideZ
+            if (open.get(below)) {
+                val lx = idx % sizeX
+                val ly = (idx / sizeX) % sizeY
+                if (canTraverse(below, lx, ly, lz - 1, 5)) {
+                    unionSlabRoots(parent, below, idx)
+                }
+            }
+            idx = open.nextSetBit(idx + 1)
+        }
+    }
+
+    val reachableRoots = BitSet(volume)
+    forEachBoundaryIndexGraph(sizeX, sizeY, sizeZ) { idx ->
+        if (open.get(idx)) reachableRoots.set(findSlabRoot(parent, idx))
+    }
+    if (reachableRoots.isEmpty) return BitSet(volume)
+    cancellation?.throwIfCancelled()
+
+    // 3) Label. BitSet isn't safe for concurrent writers, so the result words are split into disjoint chunks and
+    // each chunk is written straight into one shared word array.
+    val words = LongArray((volume + 63) ushr 6)
+    val chunkWords = (words.size + slabs - 1) / slabs
+    ShipPocketAsyncRuntime.forkEach(subsystem, slabs) { chunk ->
+        val w0 = chunk * chunkWords
+        val w1 = minOf(words.size, w0 + chunkWords)
+        if (w0 >= w1) return@forkEach
+        val end = minOf(volume, w1 shl 6)
+        var idx = open.nextSetBit(w0 shl 6)
+        while (idx >= 0 && idx < end) {
+            if (reachableRoots.get(findSlabRoot(parent, idx))) {
+                words[idx ushr 6] = words[idx ushr 6] or (1L shl idx)
+            }
+            idx = open.nextSetBit(idx + 1)
+        }
+    }
+    return BitSet.valueOf(words)
+}
@@ -8,8 +8,11 @@ import net.minecraft.core.BlockPos
 import net.minecraft.core.particles.BlockParticleOption
 import net.minecraft.core.particles.ParticleTypes
 import net.minecraft.core.particles.ParticleOptions
+import net.minecraft.core.registries.BuiltInRegistries
+import net.minecraft.resources.ResourceLocation
 import net.minecraft.server.level.ServerLevel
 import net.minecraft.util.Mth
+import net.minecraft.world.level.BlockGetter
 import net.minecraft.world.level.Level
 import net.minecraft.world.level.block.BucketPickup
 import net.minecraft.world.level.block.Blocks
@@ -22,10 +25,10 @@ import net.minecraft.world.level.material.Fluids
 import net.minecraft.world.level.material.FlowingFluid
 import net.minecraft.world.phys.shapes.BooleanOp
 import net.minecraft.world.phys.shapes.Shapes
+import net.minecraft.world.phys.AABB
 import net.minecraft.world.phys.Vec3
 import org.apache.logging.log4j.LogManager
 import org.joml.Vector3d
-import org.joml.primitives.AABBd
 import org.valkyrienskies.core.api.ships.LoadedShip
 import org.valkyrienskies.core.api.ships.LoadedServerShip
 import org.valkyrienskies.core.api.ships.Ship
@@ -48,8 +51,8 @@ object ShipWaterPocketManager {
     private val log = LogManager.getLogger("ValkyrienAir ShipWaterPockets")
 
     private const val FLOOD_UPDATE_INTERVAL_TICKS = 1L
-    private const val MAX_SIM_VOLUME = 2_000_000
     private const val POCKET_BOUNDS_PADDING = 1
+    private const val MAX_INCREMENTAL_GEOMETRY_DIRTY_BLOCKS = 4096
     private const val AIR_PRESSURE_Y_EPS = 1e-7
     private const val AIR_PRESSURE_ATM = 1.0
     // Minecraft-ish hydrostatic pressure: ~1 atm per 10 blocks of water depth for "water-density" fluids.
@@ -67,14 +70,21 @@ object ShipWaterPocketManager {
     private const val FLOOD_EXIT_PLANE_EPS = 3e-4
     private const val FLOOD_OPENING_LEVEL_EPS = 1e-5
     private const val SUBMERGED_INGRESS_MIN_COVERAGE = 0.34
+    // Shell surface estimates further apart than this aren't one flat surface; every cell is sampled instead.
+    private const val SUBMERGENCE_SHELL_MAX_SURFACE_SPREAD = 1.0
+    private const val SUBMERGENCE_SHELL_SURFACE_MARGIN = 1e-3
+    // Columns per side probed across a ship's footprint before its surroundings are taken for a flat sea.
+    private const val FLAT_SEA_PROBE_GRID = 3
+    // Client-side submission caps; the server tick is bounded by ShipPocketTickScheduler instead.
     private const val GEOMETRY_ASYNC_SUBMISSIONS_PER_LEVEL_PER_TICK = 2
     private const val WATER_SOLVER_ASYNC_SUBMISSIONS_PER_LEVEL_PER_TICK = 2
-    private const val MAX_SYNC_WATER_SOLVE_PER_LEVEL_PER_TICK = 2
     private const val WATER_SOLVE_STARVATION_SYNC_FALLBACK_TICKS = 3L
     private const val MAX_WATER_SOLVE_RESULT_AGE_TICKS = 4L
     private const val WATER_SOLVE_PENDING_CANCEL_EXTRA_AGE_TICKS = 2L
     private const val ASYNC_DIAG_SUMMARY_INTERVAL_TICKS = 200L
     private const val MATERIALIZED_RESYNC_INTERVAL_TICKS = 2L
+    private const val MATERIALIZED_CONSISTENCY_SWEEP_INTERVAL_TICKS = 200L
+    private const val MATERIALIZED_CONSISTENCY_SWEEP_CELLS_PER_TICK = 8192
     private const val PERSIST_FLUSH_INTERVAL_TICKS = 20L
     @Volatile
     private var applyingInternalUpdates: Boolean = false
@@ -85,8 +95,12 @@ object ShipWaterPocketManager {
         ConcurrentHashMap()
     private val clientStates: ConcurrentHashMap<DimensionId, ConcurrentHashMap<Long, ShipPocketState>> =
         ConcurrentHashMap()
+    private val serverTickSchedulers: ConcurrentHashMap<DimensionId, ShipPocketTickScheduler> = ConcurrentHashMap()
+    private val serverBroadPhases: ConcurrentHashMap<DimensionId, ShipPocketBroadPhase> = ConcurrentHashMap()
+    private val serverSurfaceCaches: ConcurrentHashMap<DimensionId, ShipPocketFluidSurfaceCache> = ConcurrentHashMap()
+    private val clientSurfaceCaches: ConcurrentHashMap<DimensionId, ShipPocketFluidSurfaceCache> = ConcurrentHashMap()
+    private val clientBroadPhases: ConcurrentHashMap<DimensionId, ShipPocketBroadPhase> = ConcurrentHashMap()
 
-    private val tmpQueryAabb: ThreadLocal<AABBd> = ThreadLocal.withInitial { AABBd() }
     private val tmpWorldPos: ThreadLocal<Vector3d> = ThreadLocal.withInitial { Vector3d() }
     private val tmpShipPos: ThreadLocal<Vector3d> = ThreadLocal.withInitial { Vector3d() }
     private val tmpWorldPos2: ThreadLocal<Vector3d> = ThreadLocal.withInitial { Vector3d() }
@@ -111,15 +125,9 @@ object ShipWaterPocketManager {
     private val tmpShipFluidSampleCache: ThreadLocal<ShipFluidSampleCache> =
         ThreadLocal.withInitial { ShipFluidSampleCache() }
 
-    private data class IntersectingShipsCache(
-        var lastLevel: Level? = null,
-        var lastTick: Long = Long.MIN_VALUE,
-        var lastWorldPosLong: Long = Long.MIN_VALUE,
-        var ships: List<Ship> = emptyList(),
-    )
-
-    private val tmpIntersectingShipsCache: ThreadLocal<IntersectingShipsCache> =
-        ThreadLocal.withInitial { IntersectingShipsCache() }
+    private val tmpQueryMemo: ThreadLocal<ShipPocketQueryMemo> = ThreadLocal.withInitial { ShipPocketQueryMemo() }
+    private val tmpEntityFluidSamples: ThreadLocal<EntityFluidSamples> = ThreadLocal.withInitial { EntityFluidSamples() }
+    private val tmpEntityFluidBlocks: ThreadLocal<EntityFluidBlocks> = ThreadLocal.withInitial { EntityFluidBlocks() }
 
     private val tmpFloodQueue: ThreadLocal<IntArray> = ThreadLocal.withInitial { IntArray(0) }
     private val tmpFloodComponentVisited: ThreadLocal<BitSet> = ThreadLocal.withInitial { BitSet() }
@@ -133,6 +141,7 @@ object ShipWaterPocketManager {
     private val tmpPrecomputedSurfaceY: ThreadLocal<DoubleArray> = ThreadLocal.withInitial { DoubleArray(0) }
     private val coverageFallbackDiagCount = AtomicLong(0)
     private val geometryJobsSubmitted = AtomicLong(0)
+    private val geometryJobsIncremental = AtomicLong(0)
     private val geometryJobsCompleted = AtomicLong(0)
     private val geometryJobsDiscarded = AtomicLong(0)
     private val geometryJobsFailed = AtomicLong(0)
@@ -145,11 +154,23 @@ object ShipWaterPocketManager {
     private val waterSolveAgeDiscardCount = AtomicLong(0)
     private val waterSolveStarvationFallbackCount = AtomicLong(0)
     private val waterSolveCancelledOverAgeCount = AtomicLong(0)
+    private val waterSolveCancelledRunningCount = AtomicLong(0)
     private val waterSolveTransformMismatchDiscardCount = AtomicLong(0)
     private val waterSolveApplyAgeBuckets = Array(6) { AtomicLong(0) }
     private val asyncQueueFullSkips = AtomicLong(0)
     private val waterSolveSyncFallbacks = AtomicLong(0)
     private val worldSuppressionHits = AtomicLong(0)
+    private val worldRasterBuilds = AtomicLong(0)
+    private val worldRasterHits = AtomicLong(0)
+    private val submergenceCellsSampled = AtomicLong(0)
+    private val submergenceCellsDerived = AtomicLong(0)
+    private val submergenceShellFallbacks = AtomicLong(0)
+    private val flatSeaSnapshots = AtomicLong(0)
+    private val flatSeaCells = AtomicLong(0)
+    private val waterSolveSleepTicks = AtomicLong(0)
+    private val entitySampleBatches = AtomicLong(0)
+    private val entityBlockBatchFills = AtomicLong(0)
+    private val entityBlockBatchReuses = AtomicLong(0)
     private val floodQueueBacklogHighWater = AtomicLong(0)
     private val microOpeningFilteredCount = AtomicLong(0)
     private val blockedExteriorWaterlogAttempts = AtomicLong(0)
@@ -246,6 +267,24 @@ object ShipWaterPocketManager {
         val incZ: Double,
     )
 
+    // Level-thread half of a water-solve snapshot; see captureWaterSolveInputs.
+    private class WaterSolveInputs(
+        val generation: Long,
+        val captureTick: Long,
+        val state: ShipPocketState,
+        val shipTransform: ShipTransform,
+        val transformKey: Long,
+        val affine: WorldYAffine,
+        val shell: BitSet?,
+        val world: BlockGetter,
+    )
+
+    // World fluid around a ship that is one still sea: source blocks of [fluid] below [surfaceY], none above it.
+    private data class FlatSeaSurface(
+        val fluid: Fluid,
+        val surfaceY: Double,
+    )
+
     private val buoyancyFluidPropsCache: ConcurrentHashMap<Fluid, BuoyancyFluidProps> = ConcurrentHashMap()
 
     private fun getBuoyancyFluidProps(fluid: Fluid): BuoyancyFluidProps {
@@ -339,9 +378,35 @@ object ShipWaterPocketManager {
     @JvmStatic
     fun markShipDirty(level: Level, shipId: Long) {
         if (!ValkyrienAirConfig.enableShipWaterPockets) return
+        val state = getOrCreateStateForDirtyMark(level, shipId)
+        state.geometryFullRebuildRequested = true
+        state.geometryDirtyPositions.clear()
+        markStateGeometryDirty(state)
+    }
+
+    /**
+     * Like [markShipDirty], but records the changed shipyard position so the next geometry job can patch just the
+     * affected voxels instead of re-sampling the whole bounds.
+     */
+    @JvmStatic
+    fun markShipBlockDirty(level: Level, shipId: Long, shipPos: BlockPos) {
+        if (!ValkyrienAirConfig.enableShipWaterPockets) return
+        val state = getOrCreateStateForDirtyMark(level, shipId)
+        if (!state.geometryFullRebuildRequested) {
+            if (state.geometryDirtyPositions.size >= MAX_INCREMENTAL_GEOMETRY_DIRTY_BLOCKS) {
+                state.geometryFullRebuildRequested = true
+                state.geometryDirtyPositions.clear()
+            } else {
+                state.geometryDirtyPositions.add(shipPos.asLong())
+            }
+        }
+        markStateGeometryDirty(state)
+    }
+
+    private fun getOrCreateStateForDirtyMark(level: Level, shipId: Long): ShipPocketState {
         val map = (if (level.isClientSide) clientStates else serverStates)
             .computeIfAbsent(level.dimensionId) { ConcurrentHashMap() }
-        val state = map[shipId] ?: run {
+        return map[shipId] ?: run {
             val created = if (!level.isClientSide && level is ServerLevel) {
                 loadPersistedServerState(level, shipId) ?: ShipPocketState()
             } else {
@@ -350,6 +415,9 @@ object ShipWaterPocketManager {
             map[shipId] = created
             created
         }
+    }
+
+    private fun markStateGeometryDirty(state: ShipPocketState) {
         val wasAlreadyDirty = state.dirty
         val geometryInFlight = (state.pendingGeometryFuture?.isDone == false) || state.geometryJobInFlight
         state.dirty = true
@@ -359,6 +427,27 @@ object ShipWaterPocketManager {
         }
     }
 
+    private fun canPatchGeometryIncrementally(
+        state: ShipPocketState,
+        minX: Int,
+        minY: Int,
+        minZ: Int,
+        sizeX: Int,
+        sizeY: Int,
+        sizeZ: Int,
+    ): Boolean {
+        if (state.geometryFullRebuildRequested || state.restoredFromPersistence) return false
+        val dirtyCount = state.geometryDirtyPositions.size
+        if (dirtyCount == 0) return false
+        if (boundsMismatch(state, minX, minY, minZ, sizeX, sizeY, sizeZ)) return false
+        val volume = sizeX * sizeY * sizeZ
+        // Past this point a linear re-sample is cheaper than patching plus keeping the base arrays around.
+        if (dirtyCount.toLong() * 8L > volume.toLong()) return false
+        return state.shapeTemplatePalette.isNotEmpty() &&
+            state.templateIndexByVoxel.size == volume &&
+            state.geometryBlockStates.size == volume
+    }
+
     private fun clampBitSetToVolume(bits: BitSet, volume: Int): Boolean {
         val firstOutOfRange = bits.nextSetBit(volume)
         if (firstOutOfRange >= 0) {
@@ -507,6 +596,7 @@ object ShipWaterPocketManager {
 
         if (changed) {
             state.persistDirty = true
+            markPocketQueryStateChanged(state)
         }
         return true
     }
@@ -515,15 +605,22 @@ object ShipWaterPocketManager {
         val persisted = ShipWaterPocketPersistence.get(level).getState(shipId) ?: return null
         val restored = ShipPocketState()
         applyPersistedState(restored, persisted)
+        markPocketQueryStateChanged(restored)
         val count = persistedStatesLoaded.incrementAndGet()
         logThrottledDiag(count, "Loaded persisted ship pocket state shipId={} bounds=({}, {}, {} ; {}x{}x{})",
             shipId, restored.minX, restored.minY, restored.minZ, restored.sizeX, restored.sizeY, restored.sizeZ)
         return restored
     }
 
-    private fun flushPersistedServerState(level: ServerLevel, shipId: Long, state: ShipPocketState, force: Boolean, nowTick: Long) {
-        if (!force && !state.persistDirty) return
-        if (!force && nowTick - state.lastPersistFlushTick < PERSIST_FLUSH_INTERVAL_TICKS) return
+    private fun flushPersistedServerState(
+        level: ServerLevel,
+        shipId: Long,
+        state: ShipPocketState,
+        force: Boolean,
+        nowTick: Long,
+    ): Boolean {
+        if (!force && !state.persistDirty) return false
+        if (!force && nowTick - state.lastPersistFlushTick < PERSIST_FLUSH_INTERVAL_TICKS) return false
         val persisted = snapshotStateForPersistence(state)
         ShipWaterPocketPersistence.get(level).putState(shipId, persisted)
         state.persistDirty = false
@@ -537,6 +634,7 @@ object ShipWaterPocketManager {
             state.geometryRevision,
             state.geometrySignature,
         )
+        return true
     }
 
     /**
@@ -635,6 +733,7 @@ object ShipWaterPocketManager {
         val canonical = canonicalFloodSource(fluid)
         if (canonical != state.floodFluid) {
             state.floodFluid = canonical
+            state.geometryFullRebuildRequested = true
             state.dirty = true
         }
 
@@ -643,6 +742,7 @@ object ShipWaterPocketManager {
         state.queuedFloodAdds.clear(idx)
         state.queuedFloodRemoves.clear(idx)
         state.persistDirty = true
+        markPocketQueryStateChanged(state)
     }
 
     private fun logThrottledDiag(counter: Long, message: String, vararg args: Any?) {
@@ -688,29 +788,42 @@ object ShipWaterPocketManager {
         state.requestedGeometryGeneration = generation
         val invalidationStamp = state.geometryInvalidationStamp
 
+        val incremental = canPatchGeometryIncrementally(state, minX, minY, minZ, sizeX, sizeY, sizeZ)
         val snapshot = try {
-            captureGeometryAsyncSnapshot(
-                level = level,
-                generation = generation,
-                invalidationStamp = invalidationStamp,
-                minX = minX,
-                minY = minY,
-                minZ = minZ,
-                sizeX = sizeX,
-                sizeY = sizeY,
-                sizeZ = sizeZ,
-                prevMinX = state.minX,
-                prevMinY = state.minY,
-                prevMinZ = state.minZ,
-                prevSizeX = state.sizeX,
-                prevSizeY = state.sizeY,
-                prevSizeZ = state.sizeZ,
-                prevSimulationDomain = state.simulationDomain.clone() as BitSet,
-                floodFluid = state.floodFluid,
-            )
+            if (incremental) {
+                captureGeometryPatchSnapshot(
+                    level = level,
+                    state = state,
+                    generation = generation,
+                    invalidationStamp = invalidationStamp,
+                    dirtyPositions = state.geometryDirtyPositions.toLongArray(),
+                    floodFluid = state.floodFluid,
+                )
+            } else {
+                captureGeometryAsyncSnapshot(
+                    level = level,
+                    generation = generation,
+                    invalidationStamp = invalidationStamp,
+                    minX = minX,
+                    minY = minY,
+                    minZ = minZ,
+                    sizeX = sizeX,
+                    sizeY = sizeY,
+                    sizeZ = sizeZ,
+                    prevMinX = state.minX,
+                    prevMinY = state.minY,
+                    prevMinZ = state.minZ,
+                    prevSizeX = state.sizeX,
+                    prevSizeY = state.sizeY,
+                    prevSizeZ = state.sizeZ,
+                    prevSimulationDomain = state.simulationDomain.clone() as BitSet,
+                    floodFluid = state.floodFluid,
+                )
+            }
         } catch (t: Throwable) {
             val count = geometryJobsFailed.incrementAndGet()
             logThrottledDiag(count, "Failed to capture ship pocket geometry snapshot", t)
+            state.geometryFullRebuildRequested = true
             state.dirty = true
             return false
         }
@@ -732,13 +845,18 @@ object ShipWaterPocketManager {
         }
         state.pendingGeometryFuture = submittedFuture
         state.geometryJobInFlight = true
+        // The job now owns these changes; a stale discard hands them back (see tryApplyCompletedGeometryJob).
+        state.geometryDirtyPositions.clear()
+        state.geometryFullRebuildRequested = false
+        if (incremental) geometryJobsIncremental.incrementAndGet()
 
         val count = geometryJobsSubmitted.incrementAndGet()
         logThrottledDiag(
             count,
-            "Submitted ship pocket geometry job gen={} invalidation={} bounds=({}, {}, {} ; {}x{}x{})",
+            "Submitted ship pocket geometry job gen={} invalidation={} incremental={} bounds=({}, {}, {} ; {}x{}x{})",
             generation,
             invalidationStamp,
+            incremental,
             minX,
             minY,
             minZ,
@@ -796,6 +914,7 @@ object ShipWaterPocketManager {
         state.voxelInteriorComponentMask = result.voxelInteriorComponentMask
         state.voxelSimulationComponentMask = result.voxelSimulationComponentMask
         state.componentGraphDegraded = result.componentGraphDegraded
+        state.geometryBlockStates = result.blockStates
         state.geometrySignature = result.geometrySignature
         state.waterReachable = BitSet(result.sizeX * result.sizeY * result.sizeZ)
         state.unreachableVoid = state.open.clone() as BitSet
@@ -830,6 +949,7 @@ object ShipWaterPocketManager {
             state.waterReachable.clear()
             state.unreachableVoid = state.open.clone() as BitSet
             state.floodPlaneByComponent.clear()
+            state.geometryFullRebuildRequested = true
             state.dirty = true
         }
 
@@ -842,6 +962,7 @@ object ShipWaterPocketManager {
         state.restoredFromPersistence = false
         state.awaitingGeometryValidation = false
         state.persistDirty = true
+        markPocketQueryStateChanged(state)
     }
 
     private fun tryApplyCompletedGeometryJob(
@@ -865,6 +986,7 @@ object ShipWaterPocketManager {
             val root = t.cause ?: t
             val count = geometryJobsFailed.incrementAndGet()
             logThrottledDiag(count, "Ship pocket geometry job failed", root)
+            state.geometryFullRebuildRequested = true
             state.dirty = true
             return false
         }
@@ -887,6 +1009,12 @@ object ShipWaterPocketManager {
                 result.invalidationStamp,
                 state.geometryInvalidationStamp,
             )
+            val patchedPositions = result.patchedPositions
+            if (patchedPositions == null) {
+                state.geometryFullRebuildRequested = true
+            } else if (!state.geometryFullRebuildRequested) {
+                for (packed in patchedPositions) state.geometryDirtyPositions.add(packed)
+            }
             state.dirty = true
             return false
         }
@@ -942,7 +1070,7 @@ object ShipWaterPocketManager {
     }
 
     private fun sampleCanonicalWorldFluidAtShipPoint(
-        level: Level,
+        level: BlockGetter,
         shipTransform: ShipTransform,
         shipX: Double,
         shipY: Double,
@@ -970,7 +1098,7 @@ object ShipWaterPocketManager {
     }
 
     private fun estimateExteriorFluidSurfaceYAtShipPoint(
-        level: Level,
+        level: BlockGetter,
         shipTransform: ShipTransform,
         shipX: Double,
         shipY: Double,
@@ -990,36 +1118,90 @@ object ShipWaterPocketManager {
                 Mth.floor(worldPosTmp.y),
                 Mth.floor(worldPosTmp.z),
             )
+            scanFluidSurfaceY(level, canonical, worldBlockPos)
+        }
+    }
 
-            var y = worldBlockPos.y
-            var steps = 0
-            var lastSurface = Double.NEGATIVE_INFINITY
-
-            while (steps < AIR_PRESSURE_SURFACE_SCAN_MAX_STEPS && y < level.maxBuildHeight) {
-                val fs = level.getFluidState(worldBlockPos)
-                if (fs.isEmpty || canonicalFloodSource(fs.type) != canonical) break
+    /**
+     * Walks up the world column from [worldBlockPos] through [canonical] fluid and returns the surface it ends at, or
+     * null if the start block isn't that fluid. Moves [worldBlockPos]. Callers bypass the fluid overrides. [level] is
+     * either a live Level or a [ShipPocketWorldFluidRegion] copied from one.
+     */
+    private fun scanFluidSurfaceY(
+        level: BlockGetter,
+        canonical: Fluid,
+        worldBlockPos: BlockPos.MutableBlockPos,
+    ): Double? {
+        val region = level as? ShipPocketWorldFluidRegion
+        val surfaceCache = region?.surfaceCache ?: surfaceCacheFor(level as Level)
+        val cached = surfaceCache.surfaceAt(worldBlockPos.x, worldBlockPos.y, worldBlockPos.z, canonical)
+        if (!cached.isNaN()) return cached
+
+        val startY = worldBlockPos.y
+        var y = startY
+        var steps = 0
+        var lastSurface = Double.NEGATIVE_INFINITY
+        var topY = startY
+
+        while (steps < AIR_PRESSURE_SURFACE_SCAN_MAX_STEPS && y < level.maxBuildHeight) {
+            val fs = level.getFluidState(worldBlockPos)
+            if (fs.isEmpty || canonicalFloodSource(fs.type) != canonical) break
+
+            val h = if (fs.isSource) 1.0 else fs.getHeight(level, worldBlockPos).toDouble()
+            lastSurface = y.toDouble() + h
+            topY = y
+            if (h < 1.0 - 1e-6) break
+
+            worldBlockPos.move(0, 1, 0)
+            y++
+            steps++
+        }
+
+        return if (!lastSurface.isFinite()) {
+            null
+        } else if (steps >= AIR_PRESSURE_SURFACE_SCAN_MAX_STEPS) {
+            maxOf(lastSurface, ((region?.seaLevel ?: (level as Level).seaLevel) + 1).toDouble())
+        } else {
+            surfaceCache.record(
+                worldBlockPos.x,
+                worldBlockPos.z,
+                canonical,
+                startY,
+                topY,
+                lastSurface,
+                asOf = region?.surfaceCacheRevision ?: Long.MAX_VALUE,
+            )
+            lastSurface
+        }
+    }
 
-                val h = if (fs.isSource) 1.0 else fs.getHeight(level, worldBlockPos).toDouble()
-                lastSurface = y.toDouble() + h
-                if (h < 1.0 - 1e-6) break
+    private fun surfaceCacheFor(level: Level): ShipPocketFluidSurfaceCache {
+        return (if (level.isClientSide) clientSurfaceCaches else serverSurfaceCaches)
+            .computeIfAbsent(level.dimensionId) { ShipPocketFluidSurfaceCache() }
+    }
 
-                worldBlockPos.move(0, 1, 0)
-                y++
-                steps++
-            }
+    /**
+     * Called for every block change outside the shipyard that has fluid on either side; drops the column's cached fluid
+     * surface and wakes the ships resting around it.
+     */
+    @JvmStatic
+    fun onWorldBlockChanged(level: Level, pos: BlockPos) {
+        (if (level.isClientSide) clientSurfaceCaches else serverSurfaceCaches)[level.dimensionId]
+            ?.invalidateColumn(pos.x, pos.z)
+    }
 
-            if (!lastSurface.isFinite()) {
-                null
-            } else if (steps >= AIR_PRESSURE_SURFACE_SCAN_MAX_STEPS) {
-                maxOf(lastSurface, (level.seaLevel + 1).toDouble())
-            } else {
-                lastSurface
-            }
-        }
+    /**
+     * Called when a chunk outside the shipyard loads, unloads or is replaced from a packet; none of those go through
+     * setBlockState, so the whole chunk's cached fluid surfaces are dropped here.
+     */
+    @JvmStatic
+    fun onWorldChunkChanged(level: Level, chunkX: Int, chunkZ: Int) {
+        (if (level.isClientSide) clientSurfaceCaches else serverSurfaceCaches)[level.dimensionId]
+            ?.invalidateChunk(chunkX, chunkZ)
     }
 
     private fun estimateExteriorFluidSurfaceY(
-        level: Level,
+        level: BlockGetter,
         shipTransform: ShipTransform,
         shipBlockPos: BlockPos,
         sampleFluid: Fluid,
@@ -1040,6 +1222,109 @@ object ShipWaterPocketManager {
         )
     }
 
+    private fun submergenceShellFor(state: ShipPocketState): BitSet {
+        val cached = state.submergenceShell
+        if (cached != null && state.submergenceShellOpen === state.open &&
+            state.submergenceShellInterior === state.interior
+        ) {
+            return cached
+        }
+        val shell = computeSubmergenceShell(state.open, state.interior, state.sizeX, state.sizeY, state.sizeZ)
+        state.submergenceShell = shell
+        state.submergenceShellOpen = state.open
+        state.submergenceShellInterior = state.interior
+        return shell
+    }
+
+    /** World-space box around the ship's pocket bounds in [shipTransform]. */
+    private fun pocketWorldBounds(
+        state: ShipPocketState,
+        shipTransform: ShipTransform,
+        shipPosTmp: Vector3d,
+        worldPosTmp: Vector3d,
+    ): AABB {
+        var minWX = Double.POSITIVE_INFINITY
+        var minWY = Double.POSITIVE_INFINITY
+        var minWZ = Double.POSITIVE_INFINITY
+        var maxWX = Double.NEGATIVE_INFINITY
+        var maxWY = Double.NEGATIVE_INFINITY
+        var maxWZ = Double.NEGATIVE_INFINITY
+        for (corner in 0 until 8) {
+            shipPosTmp.set(
+                (state.minX + if ((corner and 1) != 0) state.sizeX else 0).toDouble(),
+                (state.minY + if ((corner and 2) != 0) state.sizeY else 0).toDouble(),
+                (state.minZ + if ((corner and 4) != 0) state.sizeZ else 0).toDouble(),
+            )
+            shipTransform.shipToWorld.transformPosition(shipPosTmp, worldPosTmp)
+            minWX = minOf(minWX, worldPosTmp.x)
+            minWY = minOf(minWY, worldPosTmp.y)
+            minWZ = minOf(minWZ, worldPosTmp.z)
+            maxWX = maxOf(maxWX, worldPosTmp.x)
+            maxWY = maxOf(maxWY, worldPosTmp.y)
+            maxWZ = maxOf(maxWZ, worldPosTmp.z)
+        }
+        return AABB(minWX, minWY, minWZ, maxWX, maxWY, maxWZ)
+    }
+
+    /**
+     * Recognises a ship whose pocket bounds sit in open sea. A grid of columns across the bounds' world footprint must
+     * each hold source blocks of one fluid from the bounds' lowest block up to the same whole-block surface, with no
+     * fluid directly above it. The column walks go through the surface cache, so a resting ship pays a few lookups.
+     */
+    private fun detectFlatSea(
+        level: BlockGetter,
+        state: ShipPocketState,
+        shipTransform: ShipTransform,
+        shipPosTmp: Vector3d,
+        worldPosTmp: Vector3d,
+        worldBlockPos: BlockPos.MutableBlockPos,
+    ): FlatSeaSurface? {
+        val bounds = pocketWorldBounds(state, shipTransform, shipPosTmp, worldPosTmp)
+        val minWX = bounds.minX
+        val minWZ = bounds.minZ
+        val maxWX = bounds.maxX
+        val maxWZ = bounds.maxZ
+        val bottomY = Mth.floor(bounds.minY)
+
+        return withBypassedFluidOverrides {
+            var fluid: Fluid? = null
+            var surfaceY = Double.NaN
+            val last = FLAT_SEA_PROBE_GRID - 1
+            for (i in 0..last) {
+                for (k in 0..last) {
+                    val x = Mth.floor(minWX + (maxWX - minWX) * i / last)
+                    val z = Mth.floor(minWZ + (maxWZ - minWZ) * k / last)
+                    worldBlockPos.set(x, bottomY, z)
+                    val bottom = level.getFluidState(worldBlockPos)
+                    if (bottom.isEmpty || !bottom.isSource) return@withBypassedFluidOverrides null
+                    val canonical = canonicalFloodSource(bottom.type)
+                    if (fluid == null) {
+                        fluid = canonical
+                    } else if (fluid != canonical) {
+                        return@withBypassedFluidOverrides null
+                    }
+
+                    val columnSurface = scanFluidSurfaceY(level, canonical, worldBlockPos)
+                        ?: return@withBypassedFluidOverrides null
+                    // A flowing top block or a walk cut short by the step cap doesn't pin down a flat plane.
+                    if (columnSurface != Math.floor(columnSurface) ||
+                        columnSurface - bottomY >= AIR_PRESSURE_SURFACE_SCAN_MAX_STEPS
+                    ) {
+                        return@withBypassedFluidOverrides null
+                    }
+                    if (surfaceY.isNaN()) {
+                        surfaceY = columnSurface
+                    } else if (columnSurface != surfaceY) {
+                        return@withBypassedFluidOverrides null
+                    }
+                    worldBlockPos.set(x, columnSurface.toInt(), z)
+                    if (!level.getFluidState(worldBlockPos).isEmpty) return@withBypassedFluidOverrides null
+                }
+            }
+            fluid?.let { FlatSeaSurface(it, surfaceY) }
+        }
+    }
+
     private fun captureWaterSolveSnapshot(
         level: Level,
         state: ShipPocketState,
@@ -1047,17 +1332,29 @@ object ShipWaterPocketManager {
         generation: Long,
         captureTick: Long,
     ): WaterSolveSnapshot? {
-        val sizeX = state.sizeX
-        val sizeY = state.sizeY
-        val sizeZ = state.sizeZ
-        val volumeLong = sizeX.toLong() * sizeY.toLong() * sizeZ.toLong()
+        val inputs = captureWaterSolveInputs(level, state, shipTransform, generation, captureTick, copyWorld = false)
+            ?: return null
+        return sampleWaterSolveSnapshot(inputs)
+    }
+
+    /**
+     * Level-thread half of a water-solve snapshot: the pose, the submergence shell and the pocket fields as of now, and
+     * the world the sampling reads. With [copyWorld] that is a [ShipPocketWorldFluidRegion], so
+     * [sampleWaterSolveSnapshot] can run on a worker; otherwise it is [level] itself.
+     */
+    private fun captureWaterSolveInputs(
+        level: Level,
+        state: ShipPocketState,
+        shipTransform: ShipTransform,
+        generation: Long,
+        captureTick: Long,
+        copyWorld: Boolean,
+    ): WaterSolveInputs? {
+        val volumeLong = state.sizeX.toLong() * state.sizeY.toLong() * state.sizeZ.toLong()
         if (volumeLong <= 0 || volumeLong > MAX_SIM_VOLUME.toLong()) return null
-        val volume = volumeLong.toInt()
 
         val shipPosTmp = tmpShipPos2.get()
         val worldPosTmp = tmpWorldPos2.get()
-        val shipBlockPos = tmpShipBlockPos.get()
-        val worldBlockPos = BlockPos.MutableBlockPos()
 
         val transformKeyValue = transformKey(
             minX = state.minX,
@@ -1077,6 +1374,60 @@ object ShipWaterPocketManager {
             worldPosTmp = worldPosTmp,
         )
 
+        val world: BlockGetter = if (copyWorld) {
+            val bounds = pocketWorldBounds(state, shipTransform, shipPosTmp, worldPosTmp)
+            // One block of slack covers the opening-face probes just outside the bounds.
+            ShipPocketWorldFluidRegion.capture(
+                level = level,
+                surfaceCache = surfaceCacheFor(level),
+                minX = Mth.floor(bounds.minX) - 1,
+                minY = Mth.floor(bounds.minY) - 1,
+                minZ = Mth.floor(bounds.minZ) - 1,
+                maxX = Mth.floor(bounds.maxX) + 1,
+                maxY = Mth.floor(bounds.maxY) + 1,
+                maxZ = Mth.floor(bounds.maxZ) + 1,
+                scanHeight = AIR_PRESSURE_SURFACE_SCAN_MAX_STEPS,
+            )
+        } else {
+            level
+        }
+
+        return WaterSolveInputs(
+            generation = generation,
+            captureTick = captureTick,
+            // Geometry fields are replaced rather than patched by their writers, so a shallow copy can be read from
+            // any thread; the two masks patched in place are cloned.
+            state = state.copy(
+                outsideVoid = state.outsideVoid.clone() as BitSet,
+                materializedWater = state.materializedWater.clone() as BitSet,
+            ),
+            shipTransform = shipTransform,
+            transformKey = transformKeyValue,
+            affine = affine,
+            shell = if (ValkyrienAirConfig.shipPocketShellSubmergenceSampling) submergenceShellFor(state) else null,
+            world = world,
+        )
+    }
+
+    /**
+     * Samples world submergence, surfaces and openings for [inputs] into a [WaterSolveSnapshot]. Touches nothing but
+     * [inputs], so it runs on whichever thread the inputs' world may be read from.
+     */
+    private fun sampleWaterSolveSnapshot(inputs: WaterSolveInputs): WaterSolveSnapshot {
+        val level = inputs.world
+        val state = inputs.state
+        val shipTransform = inputs.shipTransform
+        val affine = inputs.affine
+        val sizeX = state.sizeX
+        val sizeY = state.sizeY
+        val sizeZ = state.sizeZ
+        val volume = sizeX * sizeY * sizeZ
+
+        val shipPosTmp = tmpShipPos2.get()
+        val worldPosTmp = tmpWorldPos2.get()
+        val shipBlockPos = tmpShipBlockPos.get()
+        val worldBlockPos = BlockPos.MutableBlockPos()
+
         val submerged = BitSet(volume)
         var submergedCoverage = tmpSubmergedCoverage.get()
         if (submergedCoverage.size < volume) {
@@ -1095,17 +1446,53 @@ object ShipWaterPocketManager {
 
         val floodFluidScores = HashMap<Fluid, Double>()
         val open = state.open
-        var idx = open.nextSetBit(0)
-        while (idx >= 0 && idx < volume) {
-            posFromIndex(state, idx, shipBlockPos)
-            val coverage = getShipCellFluidCoverage(
-                level = level,
-                shipTransform = shipTransform,
-                shipBlockPos = shipBlockPos,
-                shipPosTmp = shipPosTmp,
-                worldPosTmp = worldPosTmp,
-                worldBlockPos = worldBlockPos,
+        var sampled = 0L
+        var analytic = 0L
+
+        val flatSea = if (ValkyrienAirConfig.shipPocketFlatSeaFastPath) {
+            detectFlatSea(level, state, shipTransform, shipPosTmp, worldPosTmp, worldBlockPos)
+        } else {
+            null
+        }
+        if (flatSea != null) flatSeaSnapshots.incrementAndGet()
+
+        // getShipCellFluidCoverage's nine probes, answered from the sea plane instead of the world.
+        fun flatSeaCellCoverage(idx: Int, sea: FlatSeaSurface): FluidCoverageSample {
+            val lx = idx % sizeX
+            val t = idx / sizeX
+            val ly = t % sizeY
+            val lz = t / sizeY
+            val probes = cellProbesBelowSurface(
+                baseWorldY = affine.baseWorldY + affine.incX * lx + affine.incY * ly + affine.incZ * lz,
+                incX = affine.incX,
+                incY = affine.incY,
+                incZ = affine.incZ,
+                surfaceY = sea.surfaceY,
+            )
+            val count = Integer.bitCount(probes)
+            return FluidCoverageSample(
+                canonicalFluid = if (count > 0) sea.fluid else null,
+                coverageRatio = count / 9.0,
+                centerSubmerged = (probes and CELL_PROBE_CENTER) != 0,
             )
+        }
+
+        fun sampleCell(idx: Int): FluidCoverageSample {
+            val coverage = if (flatSea != null) {
+                analytic++
+                flatSeaCellCoverage(idx, flatSea)
+            } else {
+                sampled++
+                posFromIndex(state, idx, shipBlockPos)
+                getShipCellFluidCoverage(
+                    level = level,
+                    shipTransform = shipTransform,
+                    shipBlockPos = shipBlockPos,
+                    shipPosTmp = shipPosTmp,
+                    worldPosTmp = worldPosTmp,
+                    worldBlockPos = worldBlockPos,
+                )
+            }
             val fluid = coverage.canonicalFluid
             if (coverage.isSubmergedAny() && fluid != null) {
                 submergedCoverage[idx] = coverage.coverageRatio
@@ -1118,7 +1505,7 @@ object ShipWaterPocketManager {
 
                 if (coverage.isIngressQualified()) {
                     submerged.set(idx)
-                    val surface = estimateExteriorFluidSurfaceY(
+                    val surface = flatSea?.surfaceY ?: estimateExteriorFluidSurfaceY(
                         level = level,
                         shipTransform = shipTransform,
                         shipBlockPos = shipBlockPos,
@@ -1132,8 +1519,100 @@ object ShipWaterPocketManager {
                     }
                 }
             }
-            idx = open.nextSetBit(idx + 1)
+            return coverage
+        }
+
+        val shell = inputs.shell
+        if (shell == null) {
+            var idx = open.nextSetBit(0)
+            while (idx >= 0 && idx < volume) {
+                sampleCell(idx)
+                idx = open.nextSetBit(idx + 1)
+            }
+        } else {
+            // Sample the shell first and see whether it agrees on one fluid surface (or is dry throughout).
+            var shellFluid: Fluid? = null
+            var mixedFluids = false
+            var anyWet = false
+            var surfaceMin = Double.POSITIVE_INFINITY
+            var surfaceMax = Double.NEGATIVE_INFINITY
+            var idx = shell.nextSetBit(0)
+            while (idx >= 0 && idx < volume) {
+                val coverage = sampleCell(idx)
+                if (coverage.isSubmergedAny()) anyWet = true
+                if (coverage.isIngressQualified()) {
+                    val fluid = coverage.canonicalFluid
+                    if (shellFluid == null) shellFluid = fluid else if (shellFluid != fluid) mixedFluids = true
+                    val surface = surfaceYByCell[idx]
+                    if (surface.isFinite()) {
+                        surfaceMin = minOf(surfaceMin, surface)
+                        surfaceMax = maxOf(surfaceMax, surface)
+                    }
+                }
+                idx = shell.nextSetBit(idx + 1)
+            }
+
+            // World Y span of a cell is its min corner's Y plus these, whatever the rotation.
+            val spanLo = minOf(affine.incX, 0.0) + minOf(affine.incY, 0.0) + minOf(affine.incZ, 0.0)
+            val spanHi = maxOf(affine.incX, 0.0) + maxOf(affine.incY, 0.0) + maxOf(affine.incZ, 0.0)
+            fun cellBaseWorldY(idx: Int): Double {
+                val lx = idx % sizeX
+                val t = idx / sizeX
+                return affine.baseWorldY + affine.incX * lx + affine.incY * (t % sizeY) + affine.incZ * (t / sizeY)
+            }
+
+            val surfaceKnown = shellFluid != null && !mixedFluids && surfaceMin.isFinite() &&
+                surfaceMax - surfaceMin <= SUBMERGENCE_SHELL_MAX_SURFACE_SPREAD
+            var consistent = surfaceKnown || !anyWet
+            if (surfaceKnown) {
+                // The surface only stands for the cells inside if the shell matches it: whole cells below it fully in
+                // the fluid, whole cells above it dry. Terrain or a second water body under the hull breaks that.
+                idx = shell.nextSetBit(0)
+                while (consistent && idx >= 0 && idx < volume) {
+                    val base = cellBaseWorldY(idx)
+                    if (base + spanHi < surfaceMin - SUBMERGENCE_SHELL_SURFACE_MARGIN) {
+                        if (submergedCoverage[idx] < 1.0) consistent = false
+                    } else if (base + spanLo > surfaceMax + SUBMERGENCE_SHELL_SURFACE_MARGIN) {
+                        if (submergedCoverage[idx] > 0.0) consistent = false
+                    }
+                    idx = shell.nextSetBit(idx + 1)
+                }
+            }
+            if (!consistent) submergenceShellFallbacks.incrementAndGet()
+
+            val derivedFluid = shellFluid
+            var derived = 0L
+            idx = open.nextSetBit(0)
+            while (idx >= 0 && idx < volume) {
+                if (!shell.get(idx)) {
+                    if (!consistent) {
+                        sampleCell(idx)
+                    } else if (!surfaceKnown || derivedFluid == null) {
+                        // Nothing on the shell touches fluid, so nothing inside it does either.
+                        derived++
+                    } else {
+                        val base = cellBaseWorldY(idx)
+                        if (base + spanHi < surfaceMin - SUBMERGENCE_SHELL_SURFACE_MARGIN) {
+                            submergedCoverage[idx] = 1.0
+                            submerged.set(idx)
+                            surfaceYByCell[idx] = surfaceMax
+                            floodFluidScores[derivedFluid] = (floodFluidScores[derivedFluid] ?: 0.0) +
+                                1.0.coerceAtLeast(SUBMERGED_INGRESS_MIN_COVERAGE)
+                            derived++
+                        } else if (base + spanLo > surfaceMax + SUBMERGENCE_SHELL_SURFACE_MARGIN) {
+                            derived++
+                        } else {
+                            // Straddles the waterline; only the samples can tell how much of it is under.
+                            sampleCell(idx)
+                        }
+                    }
+                }
+                idx = open.nextSetBit(idx + 1)
+            }
+            submergenceCellsDerived.addAndGet(derived)
         }
+        submergenceCellsSampled.addAndGet(sampled)
+        flatSeaCells.addAndGet(analytic)
 
         var dominantFloodFluid: Fluid? = null
         var dominantScore = Double.NEGATIVE_INFINITY
@@ -1373,16 +1852,20 @@ object ShipWaterPocketManager {
                         }
                     }
 
-                    val fluid = sampleCanonicalWorldFluidAtShipPoint(
-                        level = level,
-                        shipTransform = shipTransform,
-                        shipX = state.minX + localX,
-                        shipY = state.minY + localY,
-                        shipZ = state.minZ + localZ,
-                        shipPosTmp = shipPosTmp,
-                        worldPosTmp = worldPosTmp,
-                        worldBlockPos = worldBlockPos,
-                    )
+                    val fluid = if (flatSea != null) {
+                        if (worldYAtLocal(localX, localY, localZ) < flatSea.surfaceY) flatSea.fluid else null
+                    } else {
+                        sampleCanonicalWorldFluidAtShipPoint(
+                            level = level,
+                            shipTransform = shipTransform,
+                            shipX = state.minX + localX,
+                            shipY = state.minY + localY,
+                            shipZ = state.minZ + localZ,
+                            shipPosTmp = shipPosTmp,
+                            worldPosTmp = worldPosTmp,
+                            worldBlockPos = worldBlockPos,
+                        )
+                    }
                     if (isCenter) centerFluid = fluid
                     if (fluid == null) return
 
@@ -1458,7 +1941,7 @@ object ShipWaterPocketManager {
                 }
 
                 val estimatedSurfaceY = if (bestFluid != null) {
-                    estimateExteriorFluidSurfaceYAtShipPoint(
+                    flatSea?.surfaceY ?: estimateExteriorFluidSurfaceYAtShipPoint(
                         level = level,
                         shipTransform = shipTransform,
                         shipX = state.minX + centerLocalX,
@@ -1554,10 +2037,10 @@ object ShipWaterPocketManager {
         }
 
         return WaterSolveSnapshot(
-            generation = generation,
+            generation = inputs.generation,
             geometryRevision = state.geometryRevision,
-            captureTick = captureTick,
-            transformKey = transformKeyValue,
+            captureTick = inputs.captureTick,
+            transformKey = inputs.transformKey,
             minX = state.minX,
             minY = state.minY,
             minZ = state.minZ,
@@ -1567,8 +2050,8 @@ object ShipWaterPocketManager {
             open = state.open,
             interior = state.simulationDomain,
             exterior = state.exterior,
-            outsideVoid = state.outsideVoid.clone() as BitSet,
-            materializedWater = state.materializedWater.clone() as BitSet,
+            outsideVoid = state.outsideVoid,
+            materializedWater = state.materializedWater,
             floodFluid = state.floodFluid,
             faceCondXP = state.faceCondXP,
             faceCondYP = state.faceCondYP,
@@ -1589,38 +2072,116 @@ object ShipWaterPocketManager {
         )
     }
 
+    /**
+     * Fingerprint of everything a water solve reads: the ship's pose, its geometry and query revisions, the flood fluid
+     * and the fluid revision of the world chunks its sampling reaches.
+     */
+    private fun waterSolveInputKey(level: Level, state: ShipPocketState, shipTransform: ShipTransform): Long {
+        val shipPosTmp = tmpShipPos2.get()
+        val worldPosTmp = tmpWorldPos2.get()
+        val bounds = pocketWorldBounds(state, shipTransform, shipPosTmp, worldPosTmp)
+        // Same slack as the world region the sampling reads.
+        val fluidRevision = surfaceCacheFor(level).fluidRevision(
+            minChunkX = (Mth.floor(bounds.minX) - 1) shr 4,
+            minChunkZ = (Mth.floor(bounds.minZ) - 1) shr 4,
+            maxChunkX = (Mth.floor(bounds.maxX) + 1) shr 4,
+            maxChunkZ = (Mth.floor(bounds.maxZ) + 1) shr 4,
+        )
+        var h = transformKey(
+            minX = state.minX,
+            minY = state.minY,
+            minZ = state.minZ,
+            shipTransform = shipTransform,
+            shipPosTmp = shipPosTmp,
+            worldPosTmp = worldPosTmp,
+        )
+        h = mixHash64(h, state.geometryRevision)
+        h = mixHash64(h, state.queryRevision)
+        h = mixHash64(h, BuiltInRegistries.FLUID.getId(state.floodFluid).toLong())
+        return mixHash64(h, fluidRevision)
+    }
+
+    /**
+     * Puts the ship's water solve to sleep while [inputKey] matches the last applied solve, which a new one could only
+     * reproduce, and wakes it once the key moves. A sleeping ship's result counts as current, so it is neither
+     * resubmitted nor picked up by the starvation fallback.
+     */
+    private fun updateWaterSolveSleep(state: ShipPocketState, inputKey: Long, now: Long) {
+        val sleeping = ValkyrienAirConfig.shipPocketSleepingShips &&
+            state.pendingWaterSolveFuture == null &&
+            state.appliedWaterSolveInputKey != 0L &&
+            inputKey == state.appliedWaterSolveInputKey
+        state.waterSolveSleeping = sleeping
+        if (!sleeping) return
+        state.lastWaterReachableUpdateTick = now
+        state.lastWaterSolveApplyTick = now
+        waterSolveSleepTicks.incrementAndGet()
+    }
+
+    /** Loaded ships whose water solve is asleep, over all server levels. */
+    @JvmStatic
+    fun sleepingShipCount(): Int = serverStates.values.sumOf { states -> states.values.count { it.waterSolveSleeping } }
+
     private fun trySubmitWaterSolveJob(
         level: Level,
         state: ShipPocketState,
         shipTransform: ShipTransform,
         captureTick: Long,
+        inputKey: Long,
     ): Boolean {
         val pending = state.pendingWaterSolveFuture
-        if (pending != null && !pending.isDone) {
-            state.waterSolveJobInFlight = true
-            return false
+        // A solve that is still queued gets replaced by a fresher snapshot. A running one is left to finish unless
+        // its result is already doomed to be discarded (too old, or captured against older geometry).
+        if (pending != null &&
+            !pending.isDone &&
+            !ShipPocketAsyncRuntime.hasQueuedJob(ShipPocketAsyncSubsystem.WATER_SOLVER, state)
+        ) {
+            val doomed = captureTick - state.lastWaterSolveSubmitTick > MAX_WATER_SOLVE_RESULT_AGE_TICKS ||
+                state.pendingWaterSolveGeometryRevision != state.geometryRevision
+            if (!doomed) {
+                state.waterSolveJobInFlight = true
+                return false
+            }
+            // Cancelling the future trips the job's cancellation token; the solver stops at its next checkpoint.
+            pending.cancel(true)
+            state.pendingWaterSolveFuture = null
+            state.waterSolveJobInFlight = false
+            val count = waterSolveCancelledRunningCount.incrementAndGet()
+            logThrottledDiag(
+                count,
+                "Cancelled running water solve that would be discarded submitTick={} nowTick={}",
+                state.lastWaterSolveSubmitTick,
+                captureTick,
+            )
         }
 
         val generation = state.requestedWaterSolveGeneration + 1L
         state.requestedWaterSolveGeneration = generation
 
-        val snapshot = try {
-            captureWaterSolveSnapshot(
+        // World sampling normally runs with the solve on the worker, against a copy of the surrounding sections.
+        val sampleOnWorker = ValkyrienAirConfig.shipPocketAsyncWorldSampling
+        val inputs: WaterSolveInputs
+        val snapshot: WaterSolveSnapshot?
+        try {
+            inputs = captureWaterSolveInputs(
                 level = level,
                 state = state,
                 shipTransform = shipTransform,
                 generation = generation,
                 captureTick = captureTick,
-            )
+                copyWorld = sampleOnWorker,
+            ) ?: return false
+            snapshot = if (sampleOnWorker) null else sampleWaterSolveSnapshot(inputs)
         } catch (t: Throwable) {
             val count = waterSolveJobsFailed.incrementAndGet()
             logThrottledDiag(count, "Failed to capture water solve snapshot", t)
             return false
-        } ?: return false
+        }
 
-        val submittedFuture = ShipPocketAsyncRuntime.trySubmit(
+        val submittedFuture = ShipPocketAsyncRuntime.trySubmitCancellable(
             subsystem = ShipPocketAsyncSubsystem.WATER_SOLVER,
-            task = { computeWaterSolveAsync(snapshot) },
+            owner = state,
+            task = { token -> computeWaterSolveAsync(snapshot ?: sampleWaterSolveSnapshot(inputs), token) },
         )
         if (submittedFuture == null) {
             val count = asyncQueueFullSkips.incrementAndGet()
@@ -1634,6 +2195,8 @@ object ShipWaterPocketManager {
         }
 
         state.pendingWaterSolveFuture = submittedFuture
+        state.pendingWaterSolveGeometryRevision = inputs.state.geometryRevision
+        state.pendingWaterSolveInputKey = inputKey
         state.waterSolveJobInFlight = true
         state.lastWaterSolveSubmitTick = captureTick
 
@@ -1642,8 +2205,8 @@ object ShipWaterPocketManager {
             count,
             "Submitted water solve job gen={} geomRev={} tick={}",
             generation,
-            snapshot.geometryRevision,
-            snapshot.captureTick,
+            inputs.state.geometryRevision,
+            captureTick,
         )
         return true
     }
@@ -1653,8 +2216,16 @@ object ShipWaterPocketManager {
         result: WaterSolveResult,
         appliedTick: Long,
     ) {
+        // Solves of a resting ship usually reproduce the same mask; keep memo and raster alive then.
+        val unreachableChanged = result.unreachableVoid != state.unreachableVoid
+        val reachableChanged = result.waterReachable != state.waterReachable
         state.waterReachable = result.waterReachable
         state.unreachableVoid = result.unreachableVoid
+        if (unreachableChanged) {
+            markPocketQueryStateChanged(state)
+        } else if (reachableChanged) {
+            republishQueryView(state)
+        }
         state.buoyancy.submergedAirVolume = result.buoyancy.submergedAirVolume
         state.buoyancy.submergedAirSumX = result.buoyancy.submergedAirSumX
         state.buoyancy.submergedAirSumY = result.buoyancy.submergedAirSumY
@@ -1665,6 +2236,7 @@ object ShipWaterPocketManager {
             val canonical = canonicalFloodSource(floodFluid)
             if (canonical != state.floodFluid) {
                 state.floodFluid = canonical
+                state.geometryFullRebuildRequested = true
                 state.dirty = true
             }
         }
@@ -1758,6 +2330,7 @@ object ShipWaterPocketManager {
             }
         }
 
+        state.appliedWaterSolveInputKey = state.pendingWaterSolveInputKey
         applyWaterSolveResult(state, result, appliedTick = nowTick)
         val ageBucket = when {
             age < 0L -> 0
@@ -1778,19 +2351,39 @@ object ShipWaterPocketManager {
         return true
     }
 
+    /**
+     * Level-save hook: snapshots every ship with unsaved changes and hands them to the persistence I/O thread. With
+     * [flush] (shutdown, `save-all flush`) it returns only once they are on disk.
+     */
+    @JvmStatic
+    fun onServerLevelSave(level: ServerLevel, flush: Boolean) {
+        serverStates[level.dimensionId]?.forEach { (shipId, state) ->
+            if (state.persistDirty) {
+                flushPersistedServerState(level, shipId, state, force = true, nowTick = level.gameTime)
+            }
+        }
+        ShipWaterPocketPersistence.saveLevel(level, flush)
+    }
+
     @JvmStatic
     fun tickServerLevel(level: ServerLevel) {
         if (!ValkyrienAirConfig.enableShipWaterPockets) return
 
         val states = serverStates.computeIfAbsent(level.dimensionId) { ConcurrentHashMap() }
         val loadedShipIds = LongOpenHashSet()
-        var remainingGeometrySubmissions = GEOMETRY_ASYNC_SUBMISSIONS_PER_LEVEL_PER_TICK
-        var remainingWaterSolveSubmissions = WATER_SOLVER_ASYNC_SUBMISSIONS_PER_LEVEL_PER_TICK
-        var remainingWaterSolveSyncFallbacks = MAX_SYNC_WATER_SOLVE_PER_LEVEL_PER_TICK
-
-        level.shipObjectWorld.loadedShips.forEach { ship ->
+        val scheduler = serverTickSchedulers.computeIfAbsent(level.dimensionId) { ShipPocketTickScheduler() }
+        val ships = level.shipObjectWorld.loadedShips.toList()
+        val budgetNanos = (ValkyrienAirConfig.shipPocketServerTickBudgetMs.coerceIn(0.5, 50.0) * 1_000_000.0).toLong()
+        val rotationStart = scheduler.beginTick(budgetNanos, ships.size)
+
+        ships.indices.forEach { order ->
+            val ship = ships[(rotationStart + order) % ships.size]
+            scheduler.beginShip(order)
             loadedShipIds.add(ship.id)
             val state = states[ship.id] ?: run {
+                // The persisted entry is read and decoded on the persistence thread; until it is ready the ship
+                // waits, not the tick.
+                if (!ShipWaterPocketPersistence.get(level).prefetch(ship.id)) return@forEach
                 val restored = loadPersistedServerState(level, ship.id) ?: ShipPocketState()
                 states[ship.id] = restored
                 restored
@@ -1855,10 +2448,10 @@ object ShipWaterPocketManager {
                 // update marks the ship dirty again.
                 if (!areShipyardChunksLoaded(level, baseMinX, baseMinY, baseMinZ, baseSizeX, baseSizeY, baseSizeZ)) {
                     state.dirty = true
-                } else if (remainingGeometrySubmissions > 0 &&
-                    trySubmitGeometryJob(level, state, minX, minY, minZ, sizeX, sizeY, sizeZ)
-                ) {
-                    remainingGeometrySubmissions--
+                } else {
+                    scheduler.runStage(state, ShipPocketTickStage.GEOMETRY_CAPTURE) {
+                        trySubmitGeometryJob(level, state, minX, minY, minZ, sizeX, sizeY, sizeZ)
+                    }
                 }
             }
 
@@ -1873,13 +2466,15 @@ object ShipWaterPocketManager {
             )
 
             if (state.awaitingGeometryValidation && !geometryApplied && !restoredStateUsable) {
-                flushPersistedServerState(
-                    level = level,
-                    shipId = ship.id,
-                    state = state,
-                    force = false,
-                    nowTick = level.gameTime,
-                )
+                scheduler.runStage(state, ShipPocketTickStage.PERSIST_FLUSH) {
+                    flushPersistedServerState(
+                        level = level,
+                        shipId = ship.id,
+                        state = state,
+                        force = false,
+                        nowTick = level.gameTime,
+                    )
+                }
                 return@forEach
             }
 
@@ -1926,16 +2521,16 @@ object ShipWaterPocketManager {
             tickGravityResettle(level, state)
 
             var waterSolveUpdated = tryApplyCompletedWaterSolveJob(state, now, shipTransform)
+            val waterSolveInputKey = waterSolveInputKey(level, state, shipTransform)
+            updateWaterSolveSleep(state, waterSolveInputKey, now)
 
             if ((geometryApplied || now != state.lastWaterReachableUpdateTick) &&
                 state.sizeX > 0 &&
                 state.sizeY > 0 &&
                 state.sizeZ > 0
             ) {
-                if (remainingWaterSolveSubmissions > 0 &&
-                    trySubmitWaterSolveJob(level, state, shipTransform, now)
-                ) {
-                    remainingWaterSolveSubmissions--
+                scheduler.runStage(state, ShipPocketTickStage.WATER_SOLVE_CAPTURE) {
+                    trySubmitWaterSolveJob(level, state, shipTransform, now, waterSolveInputKey)
                 }
 
                 val staleTicks = if (state.lastWaterSolveApplyTick != Long.MIN_VALUE) {
@@ -1945,37 +2540,36 @@ object ShipWaterPocketManager {
                 } else {
                     Long.MAX_VALUE
                 }
-                if (!waterSolveUpdated &&
-                    staleTicks >= WATER_SOLVE_STARVATION_SYNC_FALLBACK_TICKS &&
-                    remainingWaterSolveSyncFallbacks > 0
-                ) {
-                    val generation = state.requestedWaterSolveGeneration + 1L
-                    val snapshot = captureWaterSolveSnapshot(
-                        level = level,
-                        state = state,
-                        shipTransform = shipTransform,
-                        generation = generation,
-                        captureTick = now,
-                    )
-                    if (snapshot != null) {
-                        state.pendingWaterSolveFuture?.cancel(true)
-                        state.pendingWaterSolveFuture = null
-                        state.waterSolveJobInFlight = false
-                        state.requestedWaterSolveGeneration = generation
-                        state.lastWaterSolveSubmitTick = now
-                        val result = computeWaterSolveAsync(snapshot)
-                        applyWaterSolveResult(state, result, appliedTick = now)
-                        remainingWaterSolveSyncFallbacks--
-                        waterSolveUpdated = true
-
-                        val fallbackCount = waterSolveSyncFallbacks.incrementAndGet()
-                        waterSolveStarvationFallbackCount.incrementAndGet()
-                        logThrottledDiag(
-                            fallbackCount,
-                            "Ran synchronous water solve fallback generation={} shipId={}",
-                            generation,
-                            ship.id,
+                if (!waterSolveUpdated && staleTicks >= WATER_SOLVE_STARVATION_SYNC_FALLBACK_TICKS) {
+                    scheduler.runStage(state, ShipPocketTickStage.WATER_SOLVE_SYNC_FALLBACK) {
+                        val generation = state.requestedWaterSolveGeneration + 1L
+                        val snapshot = captureWaterSolveSnapshot(
+                            level = level,
+                            state = state,
+                            shipTransform = shipTransform,
+                            generation = generation,
+                            captureTick = now,
                         )
+                        if (snapshot != null) {
+                            state.pendingWaterSolveFuture?.cancel(true)
+                            state.pendingWaterSolveFuture = null
+                            state.waterSolveJobInFlight = false
+                            state.requestedWaterSolveGeneration = generation
+                            state.lastWaterSolveSubmitTick = now
+                            val result = computeWaterSolveAsync(snapshot)
+                            state.appliedWaterSolveInputKey = waterSolveInputKey
+                            applyWaterSolveResult(state, result, appliedTick = now)
+                            waterSolveUpdated = true
+
+                            val fallbackCount = waterSolveSyncFallbacks.incrementAndGet()
+                            waterSolveStarvationFallbackCount.incrementAndGet()
+                            logThrottledDiag(
+                                fallbackCount,
+                                "Ran synchronous water solve fallback generation={} shipId={}",
+                                generation,
+                                ship.id,
+                            )
+                        }
                     }
                 }
             }
@@ -1985,8 +2579,15 @@ object ShipWaterPocketManager {
             if (state.sizeX > 0 && state.sizeY > 0 && state.sizeZ > 0 &&
                 (geometryApplied || now - state.lastMaterializedResyncTick >= MATERIALIZED_RESYNC_INTERVAL_TICKS)
             ) {
-                syncMaterializedFloodFluidFromWorld(level, state)
-                state.lastMaterializedResyncTick = now
+                if (geometryApplied) {
+                    // Domain/exterior classification may have moved; restart the consistency sweep right away.
+                    state.materializedSweepCursor = 0
+                }
+                scheduler.runStage(state, ShipPocketTickStage.MATERIALIZED_SYNC) {
+                    syncMaterializedFloodFluidFromWorld(level, state, now)
+                    state.lastMaterializedResyncTick = now
+                    true
+                }
             }
             cleanupLeakedShipyardWater(level, state)
             needsRecompute = state.dirty || boundsMismatch(state, minX, minY, minZ, sizeX, sizeY, sizeZ)
@@ -1995,78 +2596,95 @@ object ShipWaterPocketManager {
                 state.sizeY > 0 &&
                 state.sizeZ > 0
             ) {
-                updateFlooding(level, state, shipTransform)
-                state.lastFloodUpdateTick = now
+                scheduler.runStage(state, ShipPocketTickStage.FLOOD_UPDATE) {
+                    updateFlooding(level, state, shipTransform)
+                    state.lastFloodUpdateTick = now
+                    true
+                }
             }
 
-            val flushResult = flushFloodWriteQueue(
-                level = level,
-                state = state,
-                shipTransform = shipTransform,
-                setApplyingInternalUpdates = { applyingInternalUpdates = it },
-                isFloodFluidType = { fluid -> canonicalFloodSource(fluid) == state.floodFluid },
-                isIngressQualifiedForAdd = { pos, transform, shipPosTmp, worldPosTmp, worldBlockPos ->
-                    val pointClass = classifyShipPoint(
-                        state = state,
-                        x = pos.x + 0.5,
-                        y = pos.y + 0.5,
-                        z = pos.z + 0.5,
-                    )
-                    if (!isClassificationInSimulationDomain(state, pointClass)) {
-                        false
-                    } else {
-                        val submergedSample = getShipCellFluidCoverage(
-                            level = level,
-                            shipTransform = transform,
-                            shipBlockPos = pos,
-                            shipPosTmp = shipPosTmp,
-                            worldPosTmp = worldPosTmp,
-                            worldBlockPos = worldBlockPos,
-                        )
-                        val submergedFluid = submergedSample.canonicalFluid
-                        submergedSample.isIngressQualified() &&
-                            submergedFluid != null &&
-                            canonicalFloodSource(submergedFluid) == state.floodFluid
-                    }
-                },
-            )
-            if (flushResult.rejectedAdds > 0) {
-                val count = rejectedFloodQueueAdds.addAndGet(flushResult.rejectedAdds.toLong())
-                logThrottledDiag(count, "Rejected flood-queue adds lacking ingress/simulation-domain validation")
-            }
-            if (flushResult.blockedExteriorWaterlogs > 0) {
-                val count = blockedExteriorWaterlogAttempts.addAndGet(flushResult.blockedExteriorWaterlogs.toLong())
-                logThrottledDiag(count, "Blocked exterior waterlogging attempts during flood queue flush")
-            }
-            if (flushResult.addedSampleIndices.isNotEmpty()) {
-                spawnIngressParticlesServer(level, state, shipTransform, flushResult.addedSampleIndices)
-            }
-            if (flushResult.added > 0 || flushResult.removed > 0) {
-                state.persistDirty = true
-            }
-            if (flushResult.remainingQueued > 0) {
-                while (true) {
-                    val prev = floodQueueBacklogHighWater.get()
-                    val nowBacklog = flushResult.remainingQueued.toLong()
-                    if (nowBacklog <= prev) break
-                    if (floodQueueBacklogHighWater.compareAndSet(prev, nowBacklog)) {
-                        logThrottledDiag(
-                            nowBacklog,
-                            "New ship flood queue high-water backlog={}",
-                            nowBacklog,
+            scheduler.runStage(state, ShipPocketTickStage.FLOOD_WRITE_FLUSH) {
+                val flushResult = flushFloodWriteQueue(
+                    level = level,
+                    state = state,
+                    shipTransform = shipTransform,
+                    setApplyingInternalUpdates = { applyingInternalUpdates = it },
+                    isFloodFluidType = { fluid -> canonicalFloodSource(fluid) == state.floodFluid },
+                    isIngressQualifiedForAdd = { pos, transform, shipPosTmp, worldPosTmp, worldBlockPos ->
+                        val pointClass = classifyShipPoint(
+                            state = state,
+                            x = pos.x + 0.5,
+                            y = pos.y + 0.5,
+                            z = pos.z + 0.5,
                         )
-                        break
+                        if (!isClassificationInSimulationDomain(state, pointClass)) {
+                            false
+                        } else {
+                            val submergedSample = getShipCellFluidCoverage(
+                                level = level,
+                                shipTransform = transform,
+                                shipBlockPos = pos,
+                                shipPosTmp = shipPosTmp,
+                                worldPosTmp = worldPosTmp,
+                                worldBlockPos = worldBlockPos,
+                            )
+                            val submergedFluid = submergedSample.canonicalFluid
+                            submergedSample.isIngressQualified() &&
+                                submergedFluid != null &&
+                                canonicalFloodSource(submergedFluid) == state.floodFluid
+                        }
+                    },
+                )
+                if (flushResult.rejectedAdds > 0) {
+                    val count = rejectedFloodQueueAdds.addAndGet(flushResult.rejectedAdds.toLong())
+                    logThrottledDiag(count, "Rejected flood-queue adds lacking ingress/simulation-domain validation")
+                }
+                if (flushResult.blockedExteriorWaterlogs > 0) {
+                    val count = blockedExteriorWaterlogAttempts.addAndGet(flushResult.blockedExteriorWaterlogs.toLong())
+                    logThrottledDiag(count, "Blocked exterior waterlogging attempts during flood queue flush")
+                }
+                if (flushResult.addedSampleIndices.isNotEmpty()) {
+                    spawnIngressParticlesServer(level, state, shipTransform, flushResult.addedSampleIndices)
+                }
+                if (flushResult.added > 0 || flushResult.removed > 0) {
+                    state.persistDirty = true
+                    markPocketQueryStateChanged(state)
+                }
+                if (flushResult.remainingQueued > 0) {
+                    while (true) {
+                        val prev = floodQueueBacklogHighWater.get()
+                        val nowBacklog = flushResult.remainingQueued.toLong()
+                        if (nowBacklog <= prev) break
+                        if (floodQueueBacklogHighWater.compareAndSet(prev, nowBacklog)) {
+                            logThrottledDiag(
+                                nowBacklog,
+                                "New ship flood queue high-water backlog={}",
+                                nowBacklog,
+                            )
+                            break
+                        }
                     }
                 }
+                flushResult.added > 0 || flushResult.removed > 0 || flushResult.rejectedAdds > 0 ||
+                    flushResult.remainingQueued > 0
             }
 
-            flushPersistedServerState(
-                level = level,
-                shipId = ship.id,
-                state = state,
-                force = false,
-                nowTick = now,
-            )
+            scheduler.runStage(state, ShipPocketTickStage.WORLD_RASTER) {
+                updateWorldRaster(state, shipTransform)
+            }
+            scheduler.runStage(state, ShipPocketTickStage.REPLICATION_SYNC) {
+                ShipPocketReplication.syncShip(level, ship.id, state)
+            }
+
+            scheduler.runStage(state, ShipPocketTickStage.PERSIST_FLUSH) {
+                flushPersistedServerState(
+                    level = level,
+                    shipId = ship.id,
+                    state = state,
+                    force = false,
+                    nowTick = now,
+                )
+            }
         }
 
         // Cleanup unloaded ships
@@ -2079,6 +2697,7 @@ object ShipWaterPocketManager {
                 force = true,
                 nowTick = level.gameTime,
             )
+            ShipWaterPocketPersistence.get(level).release(entry.key)
             entry.value.pendingGeometryFuture?.cancel(true)
             entry.value.pendingGeometryFuture = null
             entry.value.geometryJobInFlight = false
@@ -2087,15 +2706,20 @@ object ShipWaterPocketManager {
             entry.value.waterSolveJobInFlight = false
             true
         }
+        scheduler.endTick(ships.size)
+        ShipPocketReplication.pruneDisconnected(level)
 
         if (log.isDebugEnabled && level.gameTime % ASYNC_DIAG_SUMMARY_INTERVAL_TICKS == 0L) {
             log.debug(
-                "Async water-solver diag: submitted={}, completed={}, discarded={}, ageDiscard={}, overAgeCancel={}, starvationFallbacks={}, applyAgeBuckets=[{}, {}, {}, {}, {}, {}], pending={}, blockedExteriorWaterlogs={}, blockedExteriorPlacements={}, rejectedQueueAdds={}, missingFaceSamples={}, suppressionHits={}",
+                "Async water-solver diag: submitted={}, completed={}, discarded={}, ageDiscard={}, " +
+                    "overAgeCancel={}, runningCancel={}, starvationFallbacks={}, " +
+                    "applyAgeBuckets=[{}, {}, {}, {}, {}, {}], coalesced={}, sleeping=[ships={}, ticks={}]",
                 waterSolveJobsSubmitted.get(),
                 waterSolveJobsCompleted.get(),
                 waterSolveJobsDiscarded.get(),
                 waterSolveAgeDiscardCount.get(),
                 waterSolveCancelledOverAgeCount.get(),
+                waterSolveCancelledRunningCount.get(),
                 waterSolveStarvationFallbackCount.get(),
                 waterSolveApplyAgeBuckets[0].get(),
                 waterSolveApplyAgeBuckets[1].get(),
@@ -2103,12 +2727,84 @@ object ShipWaterPocketManager {
                 waterSolveApplyAgeBuckets[3].get(),
                 waterSolveApplyAgeBuckets[4].get(),
                 waterSolveApplyAgeBuckets[5].get(),
+                ShipPocketAsyncRuntime.coalesced(ShipPocketAsyncSubsystem.WATER_SOLVER),
+                sleepingShipCount(),
+                waterSolveSleepTicks.get(),
+            )
+            log.debug(
+                "Async runtime diag: threads={}, pending={}, queueWaitAvgUs=[water={}, geometry={}, cull={}], " +
+                    "queueWaitMaxUs=[water={}, geometry={}, cull={}], tickStages=[{}], overBudgetTicks={}",
+                ShipPocketAsyncRuntime.threadCount(),
                 ShipPocketAsyncRuntime.pendingJobCount(),
+                ShipPocketAsyncRuntime.averageQueueWaitMicros(ShipPocketAsyncSubsystem.WATER_SOLVER),
+                ShipPocketAsyncRuntime.averageQueueWaitMicros(ShipPocketAsyncSubsystem.GEOMETRY),
+                ShipPocketAsyncRuntime.averageQueueWaitMicros(ShipPocketAsyncSubsystem.CLIENT_CULL),
+                ShipPocketAsyncRuntime.maxQueueWaitMicros(ShipPocketAsyncSubsystem.WATER_SOLVER),
+                ShipPocketAsyncRuntime.maxQueueWaitMicros(ShipPocketAsyncSubsystem.GEOMETRY),
+                ShipPocketAsyncRuntime.maxQueueWaitMicros(ShipPocketAsyncSubsystem.CLIENT_CULL),
+                ShipPocketTickScheduler.diagSummary(),
+                ShipPocketTickScheduler.overBudgetTicks(),
+            )
+            log.debug(
+                "Geometry diag: jobs={}, incremental={}, templateRegistry=[stateHits={}, shapeHits={}, misses={}, " +
+                    "size={}], broadPhase=[rebuilds={}, oversizedSkipped={}]",
+                geometryJobsSubmitted.get(),
+                geometryJobsIncremental.get(),
+                ShapeTemplateRegistry.stateHits(),
+                ShapeTemplateRegistry.shapeHits(),
+                ShapeTemplateRegistry.misses(),
+                ShapeTemplateRegistry.templateCount(),
+                ShipPocketBroadPhase.rebuilds(),
+                ShipPocketBroadPhase.oversizedShipsSkipped(),
+            )
+            log.debug(
+                "World fluid diag: blockedExteriorWaterlogs={}, blockedExteriorPlacements={}, " +
+                    "rejectedQueueAdds={}, missingFaceSamples={}, suppressionHits={}, worldRaster=[builds={}, " +
+                    "hits={}], surfaceCache=[hits={}, misses={}], submergence=[sampled={}, derived={}, " +
+                    "fallbacks={}], flatSea=[snapshots={}, cells={}], worldRegions=[captures={}, sections={}]",
                 blockedExteriorWaterlogAttempts.get(),
                 blockedExteriorPlacementAttempts.get(),
                 rejectedFloodQueueAdds.get(),
                 asyncOpeningFaceFallbackCount.get(),
                 worldSuppressionHits.get(),
+                worldRasterBuilds.get(),
+                worldRasterHits.get(),
+                ShipPocketFluidSurfaceCache.hits(),
+                ShipPocketFluidSurfaceCache.misses(),
+                submergenceCellsSampled.get(),
+                submergenceCellsDerived.get(),
+                submergenceShellFallbacks.get(),
+                flatSeaSnapshots.get(),
+                flatSeaCells.get(),
+                ShipPocketWorldFluidRegion.captures(),
+                ShipPocketWorldFluidRegion.sectionsCopied(),
+            )
+            log.debug(
+                "Query diag: memo=[hits={}, misses={}, hitRate={}%], entityBatches=[samples={}, blockFills={}, " +
+                    "blockReuses={}], views=[published={}, bitSetsCopied={}, bitSetsShared={}]",
+                ShipPocketQueryMemo.hits(),
+                ShipPocketQueryMemo.misses(),
+                "%.1f".format(ShipPocketQueryMemo.hitRatePercent()),
+                entitySampleBatches.get(),
+                entityBlockBatchFills.get(),
+                entityBlockBatchReuses.get(),
+                ShipPocketQueryView.published(),
+                ShipPocketQueryView.bitSetsCopied(),
+                ShipPocketQueryView.bitSetsShared(),
+            )
+            log.debug(
+                "Sync diag: replication=[full={}, water={}, declined={}, bytes={}], maskCodec=[full={}, delta={}, " +
+                    "bytesSaved={}], persistence=[files={}, bytes={}, failures={}]",
+                ShipPocketReplication.fullSends(),
+                ShipPocketReplication.waterSends(),
+                ShipPocketReplication.declinedSends(),
+                ShipPocketReplication.bytesSent(),
+                ShipPocketMaskCodec.fullWrites(),
+                ShipPocketMaskCodec.deltaWrites(),
+                ShipPocketMaskCodec.bytesSaved(),
+                ShipPocketFileStore.filesWritten(),
+                ShipPocketFileStore.bytesWritten(),
+                ShipPocketFileStore.writeFailures(),
             )
         }
     }
@@ -2195,19 +2891,42 @@ object ShipWaterPocketManager {
         applyBlockChanges(level, state, toRemove, toWater = false, pos = BlockPos.MutableBlockPos())
     }
 
-    private fun syncMaterializedFloodFluidFromWorld(level: ServerLevel, state: ShipPocketState) {
+    /**
+     * Records a shipyard block change so the next materialized-fluid resync re-reads that cell. Fed from the chunk
+     * `setBlockState` hook, which every fluid spread, placement and waterlogging write goes through.
+     */
+    @JvmStatic
+    fun markShipCellFluidDirty(level: Level, shipId: Long, shipPos: BlockPos) {
+        if (!ValkyrienAirConfig.enableShipWaterPockets) return
+        if (level.isClientSide) return
+        val state = serverStates[level.dimensionId]?.get(shipId) ?: return
+        if (state.sizeX <= 0 || state.sizeY <= 0 || state.sizeZ <= 0) return
+
+        val lx = shipPos.x - state.minX
+        val ly = shipPos.y - state.minY
+        val lz = shipPos.z - state.minZ
+        if (lx !in 0 until state.sizeX || ly !in 0 until state.sizeY || lz !in 0 until state.sizeZ) return
+        state.materializedResyncCells.set(lx + state.sizeX * (ly + state.sizeY * lz))
+        // Memoized ship-fluid answers around this ship miss from now on; other ships' entries stay.
+        state.shipyardFluidRevision++
+    }
+
+    private fun syncMaterializedFloodFluidFromWorld(level: ServerLevel, state: ShipPocketState, now: Long) {
         val open = state.open
         val volume = state.sizeX * state.sizeY * state.sizeZ
         if (volume <= 0 || open.isEmpty) {
             state.materializedWater.clear()
+            state.materializedResyncCells.clear()
+            state.materializedSweepCursor = -1
             state.persistDirty = true
+            markPocketQueryStateChanged(state)
             return
         }
 
         val materialized = state.materializedWater
-        val beforeMaterialized = materialized.clone() as BitSet
+        val beforeMaterialized = materialized.cardinality()
         materialized.and(open)
-        var changed = beforeMaterialized != materialized
+        var changed = beforeMaterialized != materialized.cardinality()
         var internalUpdatesActive = false
 
         fun beginInternalUpdates() {
@@ -2218,57 +2937,89 @@ object ShipWaterPocketManager {
         }
 
         val pos = BlockPos.MutableBlockPos()
+
+        fun resyncCell(idx: Int) {
+            posFromIndex(state, idx, pos)
+            val current = level.getBlockState(pos)
+            val isWaterloggable = isWaterloggableForFlood(current, state.floodFluid)
+            val inSimulationDomain = state.simulationDomain.get(idx)
+            if (isWaterloggable &&
+                current.getValue(BlockStateProperties.WATERLOGGED) &&
+                shouldPreventExteriorWaterlogging(state, idx)
+            ) {
+                val count = blockedExteriorWaterlogAttempts.incrementAndGet()
+                logThrottledDiag(count, "Drained exterior waterlogged block during materialized-fluid sync")
+                beginInternalUpdates()
+                val drained = current.setValue(BlockStateProperties.WATERLOGGED, false)
+                level.setBlock(pos, drained, 3)
+                level.scheduleTick(pos, Fluids.WATER, 1)
+                if (materialized.get(idx)) {
+                    changed = true
+                    materialized.clear(idx)
+                }
+                return
+            }
+
+            if (!inSimulationDomain) {
+                if (materialized.get(idx)) {
+                    changed = true
+                    materialized.clear(idx)
+                }
+                return
+            }
+
+            val currentFluid = current.fluidState
+            val hasFloodFluid = !currentFluid.isEmpty && canonicalFloodSource(currentFluid.type) == state.floodFluid
+            if (hasFloodFluid &&
+                (current.block is LiquidBlock ||
+                    (isWaterloggable && current.getValue(BlockStateProperties.WATERLOGGED)))
+            ) {
+                if (!materialized.get(idx)) {
+                    changed = true
+                    materialized.set(idx)
+                }
+            } else {
+                if (materialized.get(idx)) {
+                    changed = true
+                    materialized.clear(idx)
+                }
+            }
+        }
+
+        if (state.materializedSweepCursor < 0 &&
+            (state.lastMaterializedSweepCompleteTick == Long.MIN_VALUE ||
+                now - state.lastMaterializedSweepCompleteTick >= MATERIALIZED_CONSISTENCY_SWEEP_INTERVAL_TICKS)
+        ) {
+            state.materializedSweepCursor = 0
+        }
+
         try {
-            var idx = open.nextSetBit(0)
+            // Swap the dirty set out first: draining writes below re-enter the chunk hook and mark cells again.
+            val dirtyCells = state.materializedResyncCells
+            state.materializedResyncCells = BitSet()
+            var idx = dirtyCells.nextSetBit(0)
             while (idx >= 0 && idx < volume) {
-                posFromIndex(state, idx, pos)
-                val current = level.getBlockState(pos)
-                val isWaterloggable = isWaterloggableForFlood(current, state.floodFluid)
-                val inSimulationDomain = state.simulationDomain.get(idx)
-                if (isWaterloggable &&
-                    current.getValue(BlockStateProperties.WATERLOGGED) &&
-                    shouldPreventExteriorWaterlogging(state, idx)
-                ) {
-                    val count = blockedExteriorWaterlogAttempts.incrementAndGet()
-                    logThrottledDiag(count, "Drained exterior waterlogged block during materialized-fluid sync")
-                    beginInternalUpdates()
-                    val drained = current.setValue(BlockStateProperties.WATERLOGGED, false)
-                    level.setBlock(pos, drained, 3)
-                    level.scheduleTick(pos, Fluids.WATER, 1)
-                    if (materialized.get(idx)) {
-                        changed = true
-                        materialized.clear(idx)
-                    }
-                    idx = open.nextSetBit(idx + 1)
-                    continue
+                if (open.get(idx)) {
+                    resyncCell(idx)
                 }
+                idx = dirtyCells.nextSetBit(idx + 1)
+            }
 
-                if (!inSimulationDomain) {
-                    if (materialized.get(idx)) {
-                        changed = true
-                        materialized.clear(idx)
-                    }
+            // Low-frequency consistency sweep, spread over ticks. Catches anything the dirty set missed.
+            var cursor = state.materializedSweepCursor
+            if (cursor >= 0) {
+                var budget = MATERIALIZED_CONSISTENCY_SWEEP_CELLS_PER_TICK
+                idx = open.nextSetBit(cursor)
+                while (idx >= 0 && idx < volume && budget > 0) {
+                    resyncCell(idx)
+                    budget--
                     idx = open.nextSetBit(idx + 1)
-                    continue
                 }
-
-                val currentFluid = current.fluidState
-                val hasFloodFluid = !currentFluid.isEmpty && canonicalFloodSource(currentFluid.type) == state.floodFluid
-                if (hasFloodFluid &&
-                    (current.block is LiquidBlock ||
-                        (isWaterloggable && current.getValue(BlockStateProperties.WATERLOGGED)))
-                ) {
-                    if (!materialized.get(idx)) {
-                        changed = true
-                        materialized.set(idx)
-                    }
-                } else {
-                    if (materialized.get(idx)) {
-                        changed = true
-                        materialized.clear(idx)
-                    }
+                cursor = if (idx >= 0 && idx < volume) idx else -1
+                state.materializedSweepCursor = cursor
+                if (cursor < 0) {
+                    state.lastMaterializedSweepCompleteTick = now
                 }
-                idx = open.nextSetBit(idx + 1)
             }
         } finally {
             if (internalUpdatesActive) {
@@ -2277,6 +3028,7 @@ object ShipWaterPocketManager {
         }
         if (changed) {
             state.persistDirty = true
+            markPocketQueryStateChanged(state)
         }
     }
 
@@ -2291,7 +3043,8 @@ object ShipWaterPocketManager {
 
         // The additional buoyant force from pockets is just the volume of *submerged interior air* that is currently
         // not flooded (i.e. displacing world water).
-        val maxAbs = state.simulationDomain.cardinality().toDouble().coerceAtLeast(1.0)
+        val simulationCells = state.queryView?.simulationDomainCount ?: state.simulationDomain.cardinality()
+        val maxAbs = simulationCells.toDouble().coerceAtLeast(1.0)
         val displaced = state.buoyancy.submergedAirVolume.coerceIn(0.0, maxAbs)
         buoyancyDuck?.`valkyrienair$setDisplacedVolume`(displaced)
 
@@ -2319,10 +3072,25 @@ object ShipWaterPocketManager {
         val loadedShipIds = LongOpenHashSet()
         var remainingGeometrySubmissions = GEOMETRY_ASYNC_SUBMISSIONS_PER_LEVEL_PER_TICK
         var remainingWaterSolveSubmissions = WATER_SOLVER_ASYNC_SUBMISSIONS_PER_LEVEL_PER_TICK
+        val replicate = ShipPocketReplication.isClientActive(level)
 
         level.shipObjectWorld.loadedShips.forEach { ship ->
             loadedShipIds.add(ship.id)
-            val state = states.computeIfAbsent(ship.id) { ShipPocketState() }
+            var state = states.computeIfAbsent(ship.id) { ShipPocketState() }
+
+            if (replicate && !ShipPocketReplication.isClientDeclined(ship.id)) {
+                // The server's masks are applied as they arrive (applyReplicatedClientState); nothing is solved here.
+                ShipPocketReplication.subscribeClient(ship.id)
+                if (state.replicated) {
+                    updateWorldRaster(state, getQueryTransform(ship))
+                }
+                return@forEach
+            }
+            if (state.replicated) {
+                // Replication was switched off or declined for this ship: solve it locally from scratch.
+                state = ShipPocketState()
+                states[ship.id] = state
+            }
 
             val aabb = ship.shipAABB ?: return@forEach
             val baseMinX = aabb.minX()
@@ -2379,17 +3147,20 @@ object ShipWaterPocketManager {
             val now = level.gameTime
             val shipTransform = getQueryTransform(ship)
             tryApplyCompletedWaterSolveJob(state, now, shipTransform)
+            val waterSolveInputKey = waterSolveInputKey(level, state, shipTransform)
+            updateWaterSolveSleep(state, waterSolveInputKey, now)
             if ((geometryApplied || now != state.lastWaterReachableUpdateTick) &&
                 state.sizeX > 0 &&
                 state.sizeY > 0 &&
                 state.sizeZ > 0
             ) {
                 if (remainingWaterSolveSubmissions > 0 &&
-                    trySubmitWaterSolveJob(level, state, shipTransform, now)
+                    trySubmitWaterSolveJob(level, state, shipTransform, now, waterSolveInputKey)
                 ) {
                     remainingWaterSolveSubmissions--
                 }
             }
+            updateWorldRaster(state, shipTransform)
 
             // Server-authoritative ingress particles are emitted from confirmed flood-write adds.
             // Keep client heuristic disabled to avoid duplicate/false-positive leak effects.
@@ -2397,6 +3168,7 @@ object ShipWaterPocketManager {
 
         states.entries.removeIf { entry ->
             if (loadedShipIds.contains(entry.key)) return@removeIf false
+            ShipPocketReplication.releaseClient(entry.key)
             entry.value.pendingGeometryFuture?.cancel(true)
             entry.value.pendingGeometryFuture = null
             entry.value.geometryJobInFlight = false
@@ -2405,6 +3177,38 @@ object ShipWaterPocketManager {
             entry.value.waterSolveJobInFlight = false
             true
         }
+        ShipPocketReplication.flushClient()
+    }
+
+    /** The applied replicated state of [shipId], which is what the server encodes its mask deltas against. */
+    internal fun replicatedClientBaseline(level: Level, shipId: Long): ShipPocketQueryFields? {
+        return clientStates[level.dimensionId]?.get(shipId)?.takeIf { it.replicated }
+    }
+
+    /**
+     * Applies a replication packet from the server to the client state of its ship. Returns false for a water update
+     * against geometry this client no longer holds, so the caller can ask for a full snapshot.
+     */
+    internal fun applyReplicatedClientState(level: Level, replica: ReplicatedPocketState): Boolean {
+        if (!level.isClientSide || !ValkyrienAirConfig.enableShipWaterPockets) return true
+        val states = clientStates.computeIfAbsent(level.dimensionId) { ConcurrentHashMap() }
+        val state = states.computeIfAbsent(replica.shipId) { ShipPocketState() }
+        val floodFluid = ResourceLocation.tryParse(replica.floodFluid)
+            ?.let { BuiltInRegistries.FLUID.get(it) }
+            ?.takeIf { it != Fluids.EMPTY }
+            ?: Fluids.WATER
+        if (!applyReplicatedState(state, replica, canonicalFloodSource(floodFluid))) return false
+
+        // A local solve started before the first packet must not overwrite the server's answer.
+        state.pendingGeometryFuture?.cancel(true)
+        state.pendingGeometryFuture = null
+        state.geometryJobInFlight = false
+        state.pendingWaterSolveFuture?.cancel(true)
+        state.pendingWaterSolveFuture = null
+        state.waterSolveJobInFlight = false
+        clearFloodWriteQueues(state)
+        markPocketQueryStateChanged(state)
+        return true
     }
 
     private fun leakParticleForFluid(fluid: Fluid): ParticleOptions {
@@ -2873,6 +3677,7 @@ object ShipWaterPocketManager {
         return level.hasChunksAt(BlockPos(minX, minY, minZ), BlockPos(maxX, maxY, maxZ))
     }
 
+    /** Client pocket masks for the external water cull. The BitSets are shared with an immutable query view. */
     data class ClientWaterReachableSnapshot(
         val geometryRevision: Long,
         val floodFluid: Fluid,
@@ -2891,24 +3696,79 @@ object ShipWaterPocketManager {
     @JvmStatic
     fun getClientWaterReachableSnapshot(level: Level, shipId: Long): ClientWaterReachableSnapshot? {
         if (!level.isClientSide) return null
-        val state = clientStates[level.dimensionId]?.get(shipId) ?: return null
+        val view = clientStates[level.dimensionId]?.get(shipId)?.queryView ?: return null
         return ClientWaterReachableSnapshot(
-            state.geometryRevision,
-            state.floodFluid,
-            state.minX,
-            state.minY,
-            state.minZ,
-            state.sizeX,
-            state.sizeY,
-            state.sizeZ,
-            state.open,
-            state.simulationDomain,
-            state.waterReachable,
-            state.unreachableVoid,
+            view.geometryRevision,
+            view.floodFluid,
+            view.minX,
+            view.minY,
+            view.minZ,
+            view.sizeX,
+            view.sizeY,
+            view.sizeZ,
+            view.open,
+            view.simulationDomain,
+            view.waterReachable,
+            view.unreachableVoid,
+        )
+    }
+
+    /**
+     * An input of the world-position queries changed: publishes a fresh [ShipPocketState.queryView] (without the
+     * stale world raster) under a new revision, so memoized answers covered by this ship miss.
+     */
+    private fun markPocketQueryStateChanged(state: ShipPocketState) {
+        state.queryRevision++
+        state.queryView = ShipPocketQueryView.capture(state, state.queryView)
+    }
+
+    /**
+     * Only [ShipPocketState.waterReachable] changed. No point query reads it, so the revision, memo and raster stay;
+     * the view is republished for the client cull.
+     */
+    private fun republishQueryView(state: ShipPocketState) {
+        val previous = state.queryView
+        state.queryView = ShipPocketQueryView.capture(state, previous).withWorldRaster(previous?.worldRaster)
+    }
+
+    /**
+     * Keeps [ShipPocketQueryView.worldRaster] in step with the ship. A stale raster is dropped right away, but a new one is
+     * only built once pose and pocket state have held still for a tick, so moving or flooding ships never pay for it.
+     * Returns whether a raster was built.
+     */
+    private fun updateWorldRaster(state: ShipPocketState, shipTransform: ShipTransform): Boolean {
+        var view = state.queryView ?: return false
+        if (!ValkyrienAirConfig.shipPocketWorldRaster || view.sizeX <= 0 || view.sizeY <= 0 || view.sizeZ <= 0) {
+            state.queryView = view.withWorldRaster(null)
+            return false
+        }
+        if (view.worldRaster?.matches(shipTransform, view.queryRevision) == true) return false
+        view = view.withWorldRaster(null)
+        state.queryView = view
+
+        val settleKey = mixHash64(
+            transformKey(
+                minX = state.minX,
+                minY = state.minY,
+                minZ = state.minZ,
+                shipTransform = shipTransform,
+                shipPosTmp = tmpShipPos2.get(),
+                worldPosTmp = tmpWorldPos2.get(),
+            ),
+            state.queryRevision,
         )
+        if (settleKey != state.worldRasterSettleKey) {
+            state.worldRasterSettleKey = settleKey
+            return false
+        }
+
+        val raster = buildShipPocketWorldRaster(view, shipTransform, view.queryRevision) ?: return false
+        state.queryView = view.withWorldRaster(raster)
+        worldRasterBuilds.incrementAndGet()
+        return true
     }
 
-    private fun isSuppressionClassification(state: ShipPocketState, classification: PointVoidClassification): Boolean {
+    private fun isSuppressionClassification(state: ShipPocketQueryFields, classification: PackedPointClassification): Boolean {
         if (classification.kind == PointVoidClass.OUT_OF_BOUNDS || classification.kind == PointVoidClass.SOLID) return false
         val idx = classification.voxelIndex
         if (idx < 0) return false
@@ -2916,7 +3776,7 @@ object ShipWaterPocketManager {
         return isClassificationInSimulationDomain(state, classification)
     }
 
-    private fun isAirPocketClassification(state: ShipPocketState, classification: PointVoidClassification): Boolean {
+    private fun isAirPocketClassification(state: ShipPocketQueryFields, classification: PackedPointClassification): Boolean {
         if (classification.kind != PointVoidClass.INTERIOR_VOID) return false
         val idx = classification.voxelIndex
         if (idx < 0) return false
@@ -2924,33 +3784,6 @@ object ShipWaterPocketManager {
         return state.unreachableVoid.get(idx)
     }
 
-    private fun getIntersectingShipsCached(
-        level: Level,
-        worldBlockPos: BlockPos,
-        queryAabb: AABBd,
-    ): List<Ship> {
-        val cache = tmpIntersectingShipsCache.get()
-        val tick = level.gameTime
-        val posLong = worldBlockPos.asLong()
-        if (cache.lastLevel === level &&
-            cache.lastTick == tick &&
-            cache.lastWorldPosLong == posLong
-        ) {
-            return cache.ships
-        }
-
-        val ships = ArrayList<Ship>()
-        for (ship in level.shipObjectWorld.loadedShips.getIntersecting(queryAabb, level.dimensionId)) {
-            ships.add(ship)
-        }
-
-        cache.lastLevel = level
-        cache.lastTick = tick
-        cache.lastWorldPosLong = posLong
-        cache.ships = ships
-        return ships
-    }
-
     @JvmStatic
     fun overrideWaterFluidState(level: Level, worldBlockPos: BlockPos, original: net.minecraft.world.level.material.FluidState): net.minecraft.world.level.material.FluidState {
         return overrideWaterFluidState(
@@ -2973,45 +3806,122 @@ object ShipWaterPocketManager {
         if (!ValkyrienAirConfig.enableShipWaterPockets) return original
         if (level.isBlockInShipyard(worldX, worldY, worldZ)) return original
 
-        val worldBlockPos = BlockPos.containing(worldX, worldY, worldZ)
-        val queryAabb = tmpQueryAabb.get().apply {
-            minX = worldBlockPos.x.toDouble()
-            minY = worldBlockPos.y.toDouble()
-            minZ = worldBlockPos.z.toDouble()
-            maxX = (worldBlockPos.x + 1).toDouble()
-            maxY = (worldBlockPos.y + 1).toDouble()
-            maxZ = (worldBlockPos.z + 1).toDouble()
-        }
+        val blockX = Mth.floor(worldX)
+        val blockY = Mth.floor(worldY)
+        val blockZ = Mth.floor(worldZ)
+        val candidates = getBroadPhase(level).candidatesAt(level, blockX, blockY, blockZ) ?: return original
+        val memo = getBlockCenterQueryMemo(level, worldX, worldY, worldZ, blockX, blockY, blockZ)
+        val memoKey = BlockPos.asLong(blockX, blockY, blockZ)
+        val memoShipStamp = if (memo != null) queryMemoShipStamp(level, candidates, blockX, blockY, blockZ) else 0L
+        if (memo != null) {
+            val cached = memo.get(memoKey, QUERY_MEMO_FLUID_KNOWN, memoShipStamp)
+            if (cached != QUERY_MEMO_MISS) {
+                val fluidId = (cached ushr QUERY_MEMO_FLUID_ID_SHIFT) - 1
+                val shipFluid = if (fluidId >= 0) Fluid.FLUID_STATE_REGISTRY.byId(fluidId) else null
+                return resolveFluidOverride(original, shipFluid, cached and QUERY_MEMO_FLUID_SUPPRESSED != 0)
+            }
+        }
         val worldPos = tmpWorldPos.get().set(worldX, worldY, worldZ)
         val shipPosTmp = tmpShipPos.get()
         val shipBlockPosTmp = tmpShipBlockPos.get()
 
-        for (ship in getIntersectingShipsCached(level, worldBlockPos, queryAabb)) {
-            val state = getState(level, ship.id) ?: continue
+        // Without a memo the first suppressing ship decides a non-empty query, as before. With one, keep looking for
+        // ship fluid so the stored outcome also answers the same position with an empty original.
+        var suppressed = false
+        var shipFluid: net.minecraft.world.level.material.FluidState? = null
+        for (candidate in candidates) {
+            if (!candidate.intersectsBlock(blockX, blockY, blockZ)) continue
+            val ship = candidate.ship
+            val view = getQueryView(level, ship.id) ?: continue
             val shipTransform = getQueryTransform(ship)
 
             shipTransform.worldToShip.transformPosition(worldPos, shipPosTmp)
-            val classification = classifyShipPointWithEpsilon(
-                state = state,
-                x = shipPosTmp.x,
-                y = shipPosTmp.y,
-                z = shipPosTmp.z,
-                out = shipBlockPosTmp,
-            )
+            val classification = classifyShipPointWithEpsilonPacked(view, shipPosTmp.x, shipPosTmp.y, shipPosTmp.z)
             if (classification.kind == PointVoidClass.OUT_OF_BOUNDS || classification.kind == PointVoidClass.SOLID) {
                 continue
             }
+            classification.voxelPos(view, shipBlockPosTmp)
 
-            val shipFluid = findShipFluidAtShipPoint(level, shipPosTmp, shipBlockPosTmp)
-            if (!shipFluid.isEmpty) return shipFluid
-            if (!original.isEmpty && isSuppressionClassification(state, classification)) {
-                val count = worldSuppressionHits.incrementAndGet()
-                logThrottledDiag(count, "Suppressed world fluid query in ship simulation-domain suppression zone")
-                return Fluids.EMPTY.defaultFluidState()
+            val fluid = findShipFluidAtShipPoint(level, shipPosTmp, shipBlockPosTmp)
+            if (!fluid.isEmpty) {
+                shipFluid = fluid
+                break
+            }
+            if (!suppressed && isSuppressionClassification(view, classification)) {
+                suppressed = true
+                if (memo == null && !original.isEmpty) break
+            }
+        }
+
+        if (memo != null) {
+            val fluidId = if (shipFluid != null) Fluid.FLUID_STATE_REGISTRY.getId(shipFluid) else -1
+            if (shipFluid == null || fluidId >= 0) {
+                var bits = QUERY_MEMO_FLUID_KNOWN or ((fluidId + 1) shl QUERY_MEMO_FLUID_ID_SHIFT)
+                if (suppressed) bits = bits or QUERY_MEMO_FLUID_SUPPRESSED
+                memo.merge(memoKey, bits, memoShipStamp)
             }
         }
+        return resolveFluidOverride(original, shipFluid, suppressed)
+    }
+
+    private fun resolveFluidOverride(
+        original: net.minecraft.world.level.material.FluidState,
+        shipFluid: net.minecraft.world.level.material.FluidState?,
+        suppressed: Boolean,
+    ): net.minecraft.world.level.material.FluidState {
+        if (suppressed && !original.isEmpty) {
+            val count = worldSuppressionHits.incrementAndGet()
+            logThrottledDiag(count, "Suppressed world fluid query in ship simulation-domain suppression zone")
+            return Fluids.EMPTY.defaultFluidState()
+        }
+        return shipFluid ?: original
+    }
+
+    /**
+     * Memo for a query at the exact center of block ([blockX], [blockY], [blockZ]) - the form every `BlockPos` caller
+     * uses - or null for arbitrary points (entity eyes, camera), whose outcome depends on the sub-block position.
+     */
+    private fun getBlockCenterQueryMemo(
+        level: Level,
+        worldX: Double,
+        worldY: Double,
+        worldZ: Double,
+        blockX: Int,
+        blockY: Int,
+        blockZ: Int,
+    ): ShipPocketQueryMemo? {
+        if (worldX != blockX + 0.5 || worldY != blockY + 0.5 || worldZ != blockZ + 0.5) return null
+        val memo = tmpQueryMemo.get()
+        memo.validate(level, level.gameTime)
+        return memo
+    }
+
+    /**
+     * Fingerprint of the ships behind a memoized answer at block ([blockX], [blockY], [blockZ]): the id, query revision
+     * and shipyard fluid revision of every candidate covering it. A change to one ship only misses the entries it
+     * covers.
+     */
+    private fun queryMemoShipStamp(
+        level: Level,
+        candidates: Array<BroadPhaseShip>,
+        blockX: Int,
+        blockY: Int,
+        blockZ: Int,
+    ): Long {
+        val states = (if (level.isClientSide) clientStates else serverStates)[level.dimensionId]
+        var h = 0L
+        for (candidate in candidates) {
+            if (!candidate.intersectsBlock(blockX, blockY, blockZ)) continue
+            h = mixShipQueryStamp(h, states, candidate.ship.id)
+        }
+        return h
+    }
 
-        return original
+    private fun mixShipQueryStamp(acc: Long, states: Map<Long, ShipPocketState>?, shipId: Long): Long {
+        val state = states?.get(shipId)
+        var h = mixHash64(acc, shipId)
+        h = mixHash64(h, state?.queryView?.queryRevision ?: -1L)
+        return mixHash64(h, state?.shipyardFluidRevision ?: -1L)
     }
 
     /**
@@ -3052,14 +3962,10 @@ object ShipWaterPocketManager {
         if (!enabled) return cache
         if (level.isBlockInShipyard(worldBlockPos)) return cache
 
-        val queryAabb = tmpQueryAabb.get().apply {
-            minX = worldBlockPos.x.toDouble()
-            minY = worldBlockPos.y.toDouble()
-            minZ = worldBlockPos.z.toDouble()
-            maxX = (worldBlockPos.x + 1).toDouble()
-            maxY = (worldBlockPos.y + 1).toDouble()
-            maxZ = (worldBlockPos.z + 1).toDouble()
-        }
+        val blockX = worldBlockPos.x
+        val blockY = worldBlockPos.y
+        val blockZ = worldBlockPos.z
+        val candidates = getBroadPhase(level).candidatesAt(level, blockX, blockY, blockZ) ?: return cache
         val worldPos = tmpWorldPos.get().set(
             worldBlockPos.x + 0.5,
             worldBlockPos.y + 0.5,
@@ -3069,22 +3975,19 @@ object ShipWaterPocketManager {
         val shipBlockPosTmp = tmpShipBlockPos.get()
         val dir = tmpShipFlowDir.get()
 
-        for (ship in getIntersectingShipsCached(level, worldBlockPos, queryAabb)) {
+        for (candidate in candidates) {
+            if (!candidate.intersectsBlock(blockX, blockY, blockZ)) continue
+            val ship = candidate.ship
             val shipTransform = getQueryTransform(ship)
 
             shipTransform.worldToShip.transformPosition(worldPos, shipPosTmp)
-            val state = getState(level, ship.id)
-            if (state != null) {
-                val classification = classifyShipPointWithEpsilon(
-                    state = state,
-                    x = shipPosTmp.x,
-                    y = shipPosTmp.y,
-                    z = shipPosTmp.z,
-                    out = shipBlockPosTmp,
-                )
+            val view = getQueryView(level, ship.id)
+            if (view != null) {
+                val classification = classifyShipPointWithEpsilonPacked(view, shipPosTmp.x, shipPosTmp.y, shipPosTmp.z)
                 if (classification.kind == PointVoidClass.OUT_OF_BOUNDS || classification.kind == PointVoidClass.SOLID) {
                     continue
                 }
+                classification.voxelPos(view, shipBlockPosTmp)
             } else {
                 shipBlockPosTmp.set(Mth.floor(shipPosTmp.x), Mth.floor(shipPosTmp.y), Mth.floor(shipPosTmp.z))
             }
@@ -3137,36 +4040,45 @@ object ShipWaterPocketManager {
         if (!ValkyrienAirConfig.enableShipWaterPockets) return false
         if (level.isBlockInShipyard(worldX, worldY, worldZ)) return false
 
-        val worldBlockPos = BlockPos.containing(worldX, worldY, worldZ)
-        val queryAabb = tmpQueryAabb.get().apply {
-            minX = worldBlockPos.x.toDouble()
-            minY = worldBlockPos.y.toDouble()
-            minZ = worldBlockPos.z.toDouble()
-            maxX = (worldBlockPos.x + 1).toDouble()
-            maxY = (worldBlockPos.y + 1).toDouble()
-            maxZ = (worldBlockPos.z + 1).toDouble()
+        val blockX = Mth.floor(worldX)
+        val blockY = Mth.floor(worldY)
+        val blockZ = Mth.floor(worldZ)
+        val candidates = getBroadPhase(level).candidatesAt(level, blockX, blockY, blockZ) ?: return false
+        val memo = getBlockCenterQueryMemo(level, worldX, worldY, worldZ, blockX, blockY, blockZ)
+        val memoKey = BlockPos.asLong(blockX, blockY, blockZ)
+        val memoShipStamp = if (memo != null) queryMemoShipStamp(level, candidates, blockX, blockY, blockZ) else 0L
+        if (memo != null) {
+            val cached = memo.get(memoKey, QUERY_MEMO_SUPPRESSION_KNOWN, memoShipStamp)
+            if (cached != QUERY_MEMO_MISS) return cached and QUERY_MEMO_SUPPRESSION != 0
         }
         val worldPos = tmpWorldPos.get().set(worldX, worldY, worldZ)
         val shipPosTmp = tmpShipPos.get()
-        val shipBlockPosTmp = tmpShipBlockPos.get()
 
-        for (ship in getIntersectingShipsCached(level, worldBlockPos, queryAabb)) {
-            val state = getState(level, ship.id) ?: continue
+        for (candidate in candidates) {
+            if (!candidate.intersectsBlock(blockX, blockY, blockZ)) continue
+            val ship = candidate.ship
+            val view = getQueryView(level, ship.id) ?: continue
             val shipTransform = getQueryTransform(ship)
+            val raster = view.worldRaster
+            if (raster != null && raster.matches(shipTransform, view.queryRevision)) {
+                val rasterAnswer = raster.suppressionAt(blockX, blockY, blockZ)
+                if (rasterAnswer != WORLD_RASTER_MIXED) {
+                    worldRasterHits.incrementAndGet()
+                    if (rasterAnswer == WORLD_RASTER_FALSE) continue
+                    memo?.merge(memoKey, QUERY_MEMO_SUPPRESSION_KNOWN or QUERY_MEMO_SUPPRESSION, memoShipStamp)
+                    return true
+                }
+            }
 
             shipTransform.worldToShip.transformPosition(worldPos, shipPosTmp)
-            val classification = classifyShipPointWithEpsilon(
-                state = state,
-                x = shipPosTmp.x,
-                y = shipPosTmp.y,
-                z = shipPosTmp.z,
-                out = shipBlockPosTmp,
-            )
-            if (isSuppressionClassification(state, classification)) {
+            val classification = classifyShipPointWithEpsilonPacked(view, shipPosTmp.x, shipPosTmp.y, shipPosTmp.z)
+            if (isSuppressionClassification(view, classification)) {
+                memo?.merge(memoKey, QUERY_MEMO_SUPPRESSION_KNOWN or QUERY_MEMO_SUPPRESSION, memoShipStamp)
                 return true
             }
         }
 
+        memo?.merge(memoKey, QUERY_MEMO_SUPPRESSION_KNOWN, memoShipStamp)
         return false
     }
 
@@ -3192,36 +4104,45 @@ object ShipWaterPocketManager {
         if (!ValkyrienAirConfig.enableShipWaterPockets) return false
         if (level.isBlockInShipyard(worldX, worldY, worldZ)) return false
 
-        val worldBlockPos = BlockPos.containing(worldX, worldY, worldZ)
-        val queryAabb = tmpQueryAabb.get().apply {
-            minX = worldBlockPos.x.toDouble()
-            minY = worldBlockPos.y.toDouble()
-            minZ = worldBlockPos.z.toDouble()
-            maxX = (worldBlockPos.x + 1).toDouble()
-            maxY = (worldBlockPos.y + 1).toDouble()
-            maxZ = (worldBlockPos.z + 1).toDouble()
+        val blockX = Mth.floor(worldX)
+        val blockY = Mth.floor(worldY)
+        val blockZ = Mth.floor(worldZ)
+        val candidates = getBroadPhase(level).candidatesAt(level, blockX, blockY, blockZ) ?: return false
+        val memo = getBlockCenterQueryMemo(level, worldX, worldY, worldZ, blockX, blockY, blockZ)
+        val memoKey = BlockPos.asLong(blockX, blockY, blockZ)
+        val memoShipStamp = if (memo != null) queryMemoShipStamp(level, candidates, blockX, blockY, blockZ) else 0L
+        if (memo != null) {
+            val cached = memo.get(memoKey, QUERY_MEMO_AIR_POCKET_KNOWN, memoShipStamp)
+            if (cached != QUERY_MEMO_MISS) return cached and QUERY_MEMO_AIR_POCKET != 0
         }
         val worldPos = tmpWorldPos.get().set(worldX, worldY, worldZ)
         val shipPosTmp = tmpShipPos.get()
-        val shipBlockPosTmp = tmpShipBlockPos.get()
 
-        for (ship in getIntersectingShipsCached(level, worldBlockPos, queryAabb)) {
-            val state = getState(level, ship.id) ?: continue
+        for (candidate in candidates) {
+            if (!candidate.intersectsBlock(blockX, blockY, blockZ)) continue
+            val ship = candidate.ship
+            val view = getQueryView(level, ship.id) ?: continue
             val shipTransform = getQueryTransform(ship)
+            val raster = view.worldRaster
+            if (raster != null && raster.matches(shipTransform, view.queryRevision)) {
+                val rasterAnswer = raster.airPocketAt(blockX, blockY, blockZ)
+                if (rasterAnswer != WORLD_RASTER_MIXED) {
+                    worldRasterHits.incrementAndGet()
+                    if (rasterAnswer == WORLD_RASTER_FALSE) continue
+                    memo?.merge(memoKey, QUERY_MEMO_AIR_POCKET_KNOWN or QUERY_MEMO_AIR_POCKET, memoShipStamp)
+                    return true
+                }
+            }
 
             shipTransform.worldToShip.transformPosition(worldPos, shipPosTmp)
-            val classification = classifyShipPointWithEpsilon(
-                state = state,
-                x = shipPosTmp.x,
-                y = shipPosTmp.y,
-                z = shipPosTmp.z,
-                out = shipBlockPosTmp,
-            )
-            if (isAirPocketClassification(state, classification)) {
+            val classification = classifyShipPointWithEpsilonPacked(view, shipPosTmp.x, shipPosTmp.y, shipPosTmp.z)
+            if (isAirPocketClassification(view, classification)) {
+                memo?.merge(memoKey, QUERY_MEMO_AIR_POCKET_KNOWN or QUERY_MEMO_AIR_POCKET, memoShipStamp)
                 return true
             }
         }
 
+        memo?.merge(memoKey, QUERY_MEMO_AIR_POCKET_KNOWN, memoShipStamp)
         return false
     }
 
@@ -3237,14 +4158,10 @@ object ShipWaterPocketManager {
         if (!ValkyrienAirConfig.enableShipWaterPockets) return null
         if (level.isBlockInShipyard(worldBlockPos)) return null
 
-        val queryAabb = tmpQueryAabb.get().apply {
-            minX = worldBlockPos.x.toDouble()
-            minY = worldBlockPos.y.toDouble()
-            minZ = worldBlockPos.z.toDouble()
-            maxX = (worldBlockPos.x + 1).toDouble()
-            maxY = (worldBlockPos.y + 1).toDouble()
-            maxZ = (worldBlockPos.z + 1).toDouble()
-        }
+        val blockX = worldBlockPos.x
+        val blockY = worldBlockPos.y
+        val blockZ = worldBlockPos.z
+        val candidates = getBroadPhase(level).candidatesAt(level, blockX, blockY, blockZ) ?: return null
         val worldPos = tmpWorldPos.get().set(
             worldBlockPos.x + 0.5,
             worldBlockPos.y + 0.5,
@@ -3253,28 +4170,336 @@ object ShipWaterPocketManager {
         val shipPosTmp = tmpShipPos.get()
         val shipBlockPosTmp = tmpShipBlockPos.get()
 
-        for (ship in getIntersectingShipsCached(level, worldBlockPos, queryAabb)) {
-            val state = getState(level, ship.id) ?: continue
+        for (candidate in candidates) {
+            if (!candidate.intersectsBlock(blockX, blockY, blockZ)) continue
+            val ship = candidate.ship
+            val view = getQueryView(level, ship.id) ?: continue
             val shipTransform = getQueryTransform(ship)
 
             shipTransform.worldToShip.transformPosition(worldPos, shipPosTmp)
-            val classification = classifyShipPointWithEpsilon(
-                state = state,
-                x = shipPosTmp.x,
-                y = shipPosTmp.y,
-                z = shipPosTmp.z,
-                out = shipBlockPosTmp,
-            )
-            if (!isAirPocketClassification(state, classification)) continue
-            return BlockPos(classification.voxelX, classification.voxelY, classification.voxelZ)
+            val classification = classifyShipPointWithEpsilonPacked(view, shipPosTmp.x, shipPosTmp.y, shipPosTmp.z)
+            if (!isAirPocketClassification(view, classification)) continue
+            return posFromIndex(view, classification.voxelIndex, shipBlockPosTmp).immutable()
         }
 
         return null
     }
 
-    private fun getState(level: Level, shipId: Long): ShipPocketState? {
+    /** Thread-local sample list for [classifyEntityFluidSamples]; cleared on every call. */
+    @JvmStatic
+    fun entityFluidSamples(): EntityFluidSamples = tmpEntityFluidSamples.get().clear()
+
+    /**
+     * Batched form of [overrideWaterFluidState] (with an empty original) and [isWorldPosInShipWorldFluidSuppressionZone]
+     * for an entity's sample points.
+     *
+     * Samples are grouped by world chunk section, so each intersecting ship is resolved and its transform fetched once
+     * per group instead of once per point and query. Bit `i` of the result is set when sample `i` is inside ship fluid,
+     * bit `32 + i` when it is in a world-fluid suppression zone (see [EntityFluidSamples.SHIP_FLUID_BITS]).
+     */
+    @JvmStatic
+    fun classifyEntityFluidSamples(level: Level, samples: EntityFluidSamples): Long {
+        if (!ValkyrienAirConfig.enableShipWaterPockets) return 0L
+        val count = samples.count
+        if (count == 0) return 0L
+        entitySampleBatches.incrementAndGet()
+
+        val xs = samples.xs
+        val ys = samples.ys
+        val zs = samples.zs
+        var pending = 0L
+        for (i in 0 until count) {
+            if (!level.isBlockInShipyard(xs[i], ys[i], zs[i])) pending = pending or (1L shl i)
+        }
+
+        val broadPhase = getBroadPhase(level)
+        val worldPos = tmpWorldPos.get()
+        val shipPosTmp = tmpShipPos.get()
+        val shipBlockPosTmp = tmpShipBlockPos.get()
+        var result = 0L
+
+        while (pending != 0L) {
+            val first = java.lang.Long.numberOfTrailingZeros(pending)
+            val firstX = Mth.floor(xs[first])
+            val firstY = Mth.floor(ys[first])
+            val firstZ = Mth.floor(zs[first])
+            var group = 0L
+            for (i in first until count) {
+                if ((pending ushr i) and 1L == 0L) continue
+                if (Mth.floor(xs[i]) shr 4 != firstX shr 4) continue
+                if (Mth.floor(ys[i]) shr 4 != firstY shr 4) continue
+                if (Mth.floor(zs[i]) shr 4 != firstZ shr 4) continue
+                group = group or (1L shl i)
+            }
+            pending = pending and group.inv()
+
+            val candidates = broadPhase.candidatesAt(level, firstX, firstY, firstZ) ?: continue
+            for (candidate in candidates) {
+                var touching = 0L
+                var bits = group
+                while (bits != 0L) {
+                    val i = java.lang.Long.numberOfTrailingZeros(bits)
+                    bits = bits and (bits - 1)
+                    if (candidate.intersectsBlock(Mth.floor(xs[i]), Mth.floor(ys[i]), Mth.floor(zs[i]))) {
+                        touching = touching or (1L shl i)
+                    }
+                }
+                if (touching == 0L) continue
+
+                val ship = candidate.ship
+                val view = getQueryView(level, ship.id) ?: continue
+                val shipTransform = getQueryTransform(ship)
+                val raster = view.worldRaster?.takeIf { it.matches(shipTransform, view.queryRevision) }
+
+                bits = touching
+                while (bits != 0L) {
+                    val i = java.lang.Long.numberOfTrailingZeros(bits)
+                    bits = bits and (bits - 1)
+                    val fluidBit = 1L shl i
+                    val suppressionBit = 1L shl (32 + i)
+                    val needFluid = result and fluidBit == 0L
+                    var needSuppression = result and suppressionBit == 0L
+                    if (needSuppression && raster != null) {
+                        val rasterAnswer = raster.suppressionAt(Mth.floor(xs[i]), Mth.floor(ys[i]), Mth.floor(zs[i]))
+                        if (rasterAnswer != WORLD_RASTER_MIXED) {
+                            worldRasterHits.incrementAndGet()
+                            if (rasterAnswer == WORLD_RASTER_TRUE) result = result or suppressionBit
+                            needSuppression = false
+                        }
+                    }
+                    if (!needFluid && !needSuppression) continue
+
+                    worldPos.set(xs[i], ys[i], zs[i])
+                    shipTransform.worldToShip.transformPosition(worldPos, shipPosTmp)
+                    val classification = classifyShipPointWithEpsilonPacked(view, shipPosTmp.x, shipPosTmp.y, shipPosTmp.z)
+                    if (classification.kind == PointVoidClass.OUT_OF_BOUNDS || classification.kind == PointVoidClass.SOLID) {
+                        continue
+                    }
+                    if (needSuppression && isSuppressionClassification(view, classification)) {
+                        result = result or suppressionBit
+                    }
+                    if (needFluid) {
+                        classification.voxelPos(view, shipBlockPosTmp)
+                        if (!findShipFluidAtShipPoint(level, shipPosTmp, shipBlockPosTmp).isEmpty) {
+                            result = result or fluidBit
+                        }
+                    }
+                }
+            }
+        }
+
+        return result
+    }
+
+    /**
+     * Answers the block-center pocket queries for every block vanilla's `updateFluidHeightAndDoFluidPushing` visits for
+     * an entity with the given bounding box, resolving each intersecting ship once per chunk section. Until
+     * [endEntityFluidBlocks], [overrideEntityFluidState], [computeEntityShipFluidHeight] and
+     * [computeEntityShipFluidFlow] answer from it.
+     */
+    @JvmStatic
+    fun beginEntityFluidBlocks(
+        level: Level,
+        minX: Double,
+        minY: Double,
+        minZ: Double,
+        maxX: Double,
+        maxY: Double,
+        maxZ: Double,
+    ) {
+        val blocks = tmpEntityFluidBlocks.get()
+        blocks.active = false
+        if (!ValkyrienAirConfig.enableShipWaterPockets) return
+
+        // Vanilla deflates the box by 0.001 and visits floor(min) until ceil(max).
+        val blockMinX = Mth.floor(minX + 0.001)
+        val blockMinY = Mth.floor(minY + 0.001)
+        val blockMinZ = Mth.floor(minZ + 0.001)
+        val blockMaxX = Mth.ceil(maxX - 0.001)
+        val blockMaxY = Mth.ceil(maxY - 0.001)
+        val blockMaxZ = Mth.ceil(maxZ - 0.001)
+        if (blockMaxX <= blockMinX || blockMaxY <= blockMinY || blockMaxZ <= blockMinZ) return
+        val volume = (blockMaxX - blockMinX).toLong() * (blockMaxY - blockMinY).toLong() * (blockMaxZ - blockMinZ).toLong()
+        if (volume > EntityFluidBlocks.MAX_VOLUME) return
+
+        val tick = level.gameTime
+        val shipStamp = entityBlocksShipStamp(level, blockMinX, blockMinY, blockMinZ, blockMaxX, blockMaxY, blockMaxZ)
+        if (blocks.covers(level, tick, shipStamp, blockMinX, blockMinY, blockMinZ, blockMaxX, blockMaxY, blockMaxZ)) {
+            entityBlockBatchReuses.incrementAndGet()
+            blocks.active = true
+            return
+        }
+
+        blocks.reset(level, tick, shipStamp, blockMinX, blockMinY, blockMinZ, blockMaxX, blockMaxY, blockMaxZ)
+        fillEntityFluidBlocks(level, blocks, blockMaxX, blockMaxY, blockMaxZ)
+        entityBlockBatchFills.incrementAndGet()
+        blocks.active = true
+    }
+
+    /** Like [queryMemoShipStamp], over every ship indexed in the sections of the box (exclusive max). */
+    private fun entityBlocksShipStamp(
+        level: Level,
+        minX: Int,
+        minY: Int,
+        minZ: Int,
+        maxX: Int,
+        maxY: Int,
+        maxZ: Int,
+    ): Long {
+        val broadPhase = getBroadPhase(level)
+        val states = (if (level.isClientSide) clientStates else serverStates)[level.dimensionId]
+        var h = 0L
+        for (sectionZ in (minZ shr 4)..((maxZ - 1) shr 4)) {
+            for (sectionY in (minY shr 4)..((maxY - 1) shr 4)) {
+                for (sectionX in (minX shr 4)..((maxX - 1) shr 4)) {
+                    val candidates = broadPhase.candidatesAt(
+                        level,
+                        maxOf(minX, sectionX shl 4),
+                        maxOf(minY, sectionY shl 4),
+                        maxOf(minZ, sectionZ shl 4),
+                    ) ?: continue
+                    for (candidate in candidates) h = mixShipQueryStamp(h, states, candidate.ship.id)
+                }
+            }
+        }
+        return h
+    }
+
+    @JvmStatic
+    fun endEntityFluidBlocks() {
+        tmpEntityFluidBlocks.get().active = false
+    }
+
+    private fun fillEntityFluidBlocks(level: Level, blocks: EntityFluidBlocks, maxX: Int, maxY: Int, maxZ: Int) {
+        val broadPhase = getBroadPhase(level)
+        val worldPos = tmpWorldPos.get()
+        val shipPosTmp = tmpShipPos.get()
+        val shipBlockPosTmp = tmpShipBlockPos.get()
+        val dir = tmpShipFlowDir.get()
+
+        for (sectionZ in (blocks.minZ shr 4)..((maxZ - 1) shr 4)) {
+            val z0 = maxOf(blocks.minZ, sectionZ shl 4)
+            val z1 = minOf(maxZ, (sectionZ + 1) shl 4)
+            for (sectionY in (blocks.minY shr 4)..((maxY - 1) shr 4)) {
+                val y0 = maxOf(blocks.minY, sectionY shl 4)
+                val y1 = minOf(maxY, (sectionY + 1) shl 4)
+                for (sectionX in (blocks.minX shr 4)..((maxX - 1) shr 4)) {
+                    val x0 = maxOf(blocks.minX, sectionX shl 4)
+                    val x1 = minOf(maxX, (sectionX + 1) shl 4)
+                    val candidates = broadPhase.candidatesAt(level, x0, y0, z0) ?: continue
+
+                    // Ships in list order for every block, exactly as the single-block queries walk them.
+                    for (candidate in candidates) {
+                        val ship = candidate.ship
+                        val view = getQueryView(level, ship.id)
+                        val shipTransform = getQueryTransform(ship)
+                        for (z in z0 until z1) {
+                            for (y in y0 until y1) {
+                                for (x in x0 until x1) {
+                                    if (!candidate.intersectsBlock(x, y, z)) continue
+                                    if (level.isBlockInShipyard(x + 0.5, y + 0.5, z + 0.5)) continue
+                                    worldPos.set(x + 0.5, y + 0.5, z + 0.5)
+                                    fillEntityFluidBlock(
+                                        level, blocks, blocks.localIndex(x, y, z), view, shipTransform,
+                                        worldPos, shipPosTmp, shipBlockPosTmp, dir,
+                                    )
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private fun fillEntityFluidBlock(
+        level: Level,
+        blocks: EntityFluidBlocks,
+        idx: Int,
+        view: ShipPocketQueryView?,
+        shipTransform: ShipTransform,
+        worldPos: Vector3d,
+        shipPosTmp: Vector3d,
+        shipBlockPosTmp: BlockPos.MutableBlockPos,
+        dir: Vector3d,
+    ) {
+        val fluidDone = blocks.shipFluids[idx] != null
+        val sampleDone = !blocks.heights[idx].isNaN()
+        if (sampleDone && (fluidDone || view == null)) return
+
+        shipTransform.worldToShip.transformPosition(worldPos, shipPosTmp)
+        var classification = PackedPointClassification.OUT_OF_BOUNDS
+        if (view != null) {
+            classification = classifyShipPointWithEpsilonPacked(view, shipPosTmp.x, shipPosTmp.y, shipPosTmp.z)
+            if (classification.kind == PointVoidClass.OUT_OF_BOUNDS || classification.kind == PointVoidClass.SOLID) {
+                return
+            }
+            classification.voxelPos(view, shipBlockPosTmp)
+        } else {
+            shipBlockPosTmp.set(Mth.floor(shipPosTmp.x), Mth.floor(shipPosTmp.y), Mth.floor(shipPosTmp.z))
+        }
+
+        val shipFluid = findShipFluidAtShipPoint(level, shipPosTmp, shipBlockPosTmp)
+        if (shipFluid.isEmpty) {
+            if (view != null && !fluidDone && isSuppressionClassification(view, classification)) {
+                blocks.suppressed.set(idx)
+            }
+            return
+        }
+
+        if (view != null && !fluidDone) blocks.shipFluids[idx] = shipFluid
+        if (sampleDone) return
+        blocks.heights[idx] = shipFluid.getHeight(level, shipBlockPosTmp)
+        val shipFlow = shipFluid.getFlow(level, shipBlockPosTmp)
+        blocks.flows[idx] = if (shipFlow.lengthSqr() < 1.0e-12) {
+            shipFlow
+        } else {
+            dir.set(shipFlow.x, shipFlow.y, shipFlow.z)
+            shipTransform.shipToWorldRotation.transform(dir)
+            Vec3(dir.x, dir.y, dir.z)
+        }
+    }
+
+    /** [overrideWaterFluidState] answered from the active [beginEntityFluidBlocks] batch when it covers the block. */
+    @JvmStatic
+    fun overrideEntityFluidState(
+        level: Level,
+        worldBlockPos: BlockPos,
+        original: net.minecraft.world.level.material.FluidState,
+    ): net.minecraft.world.level.material.FluidState {
+        val blocks = tmpEntityFluidBlocks.get()
+        val idx = blocks.indexOf(level, worldBlockPos.x, worldBlockPos.y, worldBlockPos.z)
+        if (idx < 0) return overrideWaterFluidState(level, worldBlockPos, original)
+        return resolveFluidOverride(original, blocks.shipFluids[idx], blocks.suppressed.get(idx))
+    }
+
+    /** [computeShipFluidHeight] answered from the active [beginEntityFluidBlocks] batch when it covers the block. */
+    @JvmStatic
+    fun computeEntityShipFluidHeight(level: Level, worldBlockPos: BlockPos): Float? {
+        val blocks = tmpEntityFluidBlocks.get()
+        val idx = blocks.indexOf(level, worldBlockPos.x, worldBlockPos.y, worldBlockPos.z)
+        if (idx < 0) return computeShipFluidHeight(level, worldBlockPos)
+        val height = blocks.heights[idx]
+        return if (height.isNaN()) null else height
+    }
+
+    /** [computeRotatedShipFluidFlow] answered from the active [beginEntityFluidBlocks] batch when it covers the block. */
+    @JvmStatic
+    fun computeEntityShipFluidFlow(level: Level, worldBlockPos: BlockPos): Vec3? {
+        val blocks = tmpEntityFluidBlocks.get()
+        val idx = blocks.indexOf(level, worldBlockPos.x, worldBlockPos.y, worldBlockPos.z)
+        if (idx < 0) return computeRotatedShipFluidFlow(level, worldBlockPos)
+        return blocks.flows[idx]
+    }
+
+    private fun getQueryView(level: Level, shipId: Long): ShipPocketQueryView? {
         val map = if (level.isClientSide) clientStates else serverStates
-        return map[level.dimensionId]?.get(shipId)
+        return map[level.dimensionId]?.get(shipId)?.queryView
+    }
+
+    private fun getBroadPhase(level: Level): ShipPocketBroadPhase {
+        val map = if (level.isClientSide) clientBroadPhases else serverBroadPhases
+        return map.computeIfAbsent(level.dimensionId) { ShipPocketBroadPhase() }
     }
 
     private fun getQueryTransform(ship: Ship): ShipTransform {
@@ -3320,6 +4545,9 @@ object ShipWaterPocketManager {
         precomputedOpeningFaceSamples: Long2ObjectOpenHashMap<OpeningFaceCoverageSnapshot>? = null,
         precomputedAffine: WorldYAffine? = null,
         allowWorldSurfaceScan: Boolean = true,
+        cancellation: ShipPocketCancellationToken? = null,
+        // Null picks the slab-parallel flood by volume; tests force either path.
+        parallelReachability: Boolean? = null,
     ): BitSet {
         out.clear()
 
@@ -3331,6 +4559,7 @@ object ShipWaterPocketManager {
         if (open.isEmpty) return out
 
         val volume = volumeLong.toInt()
+        val useParallelReachability = parallelReachability ?: shouldUseParallelReachability(volume, sizeZ)
 
         var componentQueue = tmpFloodQueue.get()
         if (componentQueue.size < volume) {
@@ -3466,6 +4695,17 @@ object ShipWaterPocketManager {
             outsideCandidates.andNot(interior)
             if (outsideCandidates.isEmpty) {
                 BitSet(volume)
+            } else if (useParallelReachability) {
+                floodFillFromBoundaryGraphParallel(
+                    open = outsideCandidates,
+                    sizeX = sizeX,
+                    sizeY = sizeY,
+                    sizeZ = sizeZ,
+                    edgeCond = { idx, lx, ly, lz, dirCode ->
+                        if (edgeCond(idx, lx, ly, lz, dirCode) >= passCond) 1 else 0
+                    },
+                    cancellation = cancellation,
+                )
             } else {
                 val visited = BitSet(volume)
                 var head = 0
@@ -3941,8 +5181,47 @@ object ShipWaterPocketManager {
             }
         }
 
+        // Conductance between two "true outside" cells for exterior reachability; symmetric in its two cells.
+        fun exteriorEdgeCond(cur: Int, lx: Int, ly: Int, lz: Int, dirCode: Int): Int {
+            val n = when (dirCode) {
+                0 -> cur - 1
+                1 -> cur + 1
+                2 -> cur - strideY
+                3 -> cur + strideY
+                4 -> cur - strideZ
+                else -> cur + strideZ
+            }
+            if (!hasTemplateConnectivity) return edgeCond(cur, lx, ly, lz, dirCode)
+            val masks = voxelExteriorComponentMask ?: return edgeCond(cur, lx, ly, lz, dirCode)
+            return filteredEdgeCond(
+                idxCur = cur,
+                idxNeighbor = n,
+                lx = lx,
+                ly = ly,
+                lz = lz,
+                dirCode = dirCode,
+                componentMaskCur = if (cur in masks.indices) masks[cur] else 0L,
+                componentMaskNeighbor = if (n in masks.indices) masks[n] else 0L,
+            )
+        }
+
         // 1) Flood-fill exterior world water. This ensures we never cull ocean water around the ship.
-        run {
+        cancellation?.throwIfCancelled()
+        if (useParallelReachability) {
+            // Same component labelling as the BFS below, split over Z slabs for very large hulls.
+            val exteriorNodes = outsideVoidMask.clone() as BitSet
+            exteriorNodes.and(submerged)
+            out.or(
+                floodFillFromBoundaryGraphParallel(
+                    open = exteriorNodes,
+                    sizeX = sizeX,
+                    sizeY = sizeY,
+                    sizeZ = sizeZ,
+                    edgeCond = { idx, lx, ly, lz, dirCode -> exteriorEdgeCond(idx, lx, ly, lz, dirCode) },
+                    cancellation = cancellation,
+                ),
+            )
+        } else {
             var head = 0
             var tail = 0
 
@@ -3965,31 +5244,11 @@ object ShipWaterPocketManager {
                 val t = cur / sizeX
                 val ly = t % sizeY
                 val lz = t / sizeY
-                val curExteriorMask = voxelExteriorComponentMask?.let { masks ->
-                    if (cur in masks.indices) masks[cur] else 0L
-                } ?: -1L
 
                 fun trySpreadExterior(n: Int, dirCode: Int) {
                     if (n < 0 || n >= volume) return
                     if (!outsideVoidMask.get(n)) return
-                    val cond = if (hasTemplateConnectivity) {
-                        val nExteriorMask = voxelExteriorComponentMask?.let { masks ->
-                            if (n in masks.indices) masks[n] else 0L
-                        } ?: 0L
-                        filteredEdgeCond(
-                            idxCur = cur,
-                            idxNeighbor = n,
-                            lx = lx,
-                            ly = ly,
-                            lz = lz,
-                            dirCode = dirCode,
-                            componentMaskCur = curExteriorMask,
-                            componentMaskNeighbor = nExteriorMask,
-                        )
-                    } else {
-                        edgeCond(cur, lx, ly, lz, dirCode)
-                    }
-                    if (cond > 0) {
+                    if (exteriorEdgeCond(cur, lx, ly, lz, dirCode) > 0) {
                         tryEnqueueExterior(n)
                     }
                 }
@@ -4012,6 +5271,7 @@ object ShipWaterPocketManager {
                 start = interior.nextSetBit(start + 1)
                 continue
             }
+            cancellation?.throwIfCancelled()
 
             var head = 0
             var tail = 0
@@ -4560,6 +5820,8 @@ object ShipWaterPocketManager {
         out: BitSet,
         buoyancyOut: BuoyancyMetrics,
         floodFluidOut: AtomicReference<Fluid?>,
+        cancellation: ShipPocketCancellationToken? = null,
+        parallelReachability: Boolean? = null,
     ) {
         computeWaterReachableWithPressure(
             level = null,
@@ -4597,6 +5859,8 @@ object ShipWaterPocketManager {
                 incZ = snapshot.incZ,
             ),
             allowWorldSurfaceScan = false,
+            cancellation = cancellation,
+            parallelReachability = parallelReachability,
         )
     }
 
@@ -4640,11 +5904,13 @@ object ShipWaterPocketManager {
                 state.floodFluid = canonical
                 // The active flood fluid changed (e.g. ship entered a different liquid). Re-scan shipyard blocks so our
                 // cached flooded/materialized masks stay consistent.
+                state.geometryFullRebuildRequested = true
                 state.dirty = true
             }
         }
         state.unreachableVoid = state.open.clone() as BitSet
         state.unreachableVoid.andNot(reachable)
+        markPocketQueryStateChanged(state)
         return reachable
     }
 
@@ -5418,6 +6684,7 @@ object ShipWaterPocketManager {
             applyingInternalUpdates = false
         }
         state.persistDirty = true
+        markPocketQueryStateChanged(state)
     }
 
     private fun isShipCellSubmergedInWorldFluid(
@@ -5445,7 +6712,7 @@ object ShipWaterPocketManager {
     }
 
     private fun getShipCellFluidCoverage(
-        level: Level,
+        level: BlockGetter,
         shipTransform: ShipTransform,
         shipBlockPos: BlockPos,
         shipPosTmp: Vector3d,
@@ -0,0 +1,333 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import java.io.ByteArrayOutputStream
+import java.io.DataInput
+import java.io.DataInputStream
+import java.io.DataOutput
+import java.io.DataOutputStream
+import java.io.IOException
+import java.util.BitSet
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Compact encoding of voxel masks, either whole or as the XOR against a baseline mask both sides already hold.
+ *
+ * The encoded mask is cut into 4096-bit chunks. Empty chunks are skipped; every other chunk is stored as runs of set
+ * bits or as raw words, whichever is smaller, in the manner of roaring-bitmap containers. Hull-shaped masks are mostly
+ * long runs, and the XOR of two consecutive water solves is a few short runs, so either form scales with the boundary
+ * or the change rather than with the hull's volume.
+ */
+internal object ShipPocketMaskCodec {
+    private const val MODE_FULL = 0
+    private const val MODE_XOR = 1
+
+    private const val CONTAINER_RUNS = 0
+    private const val CONTAINER_WORDS = 1
+
+    private const val CHUNK_WORDS = 64
+    private const val CHUNK_BITS = CHUNK_WORDS * 64
+
+    // A delta is only worth depending on a baseline when it saves at least a quarter of the full form.
+    private const val MAX_DELTA_RATIO = 0.75
+
+    private const val MAX_WORDS = (MAX_SIM_VOLUME + 63) / 64
+
+    private val fullWrites = AtomicLong(0)
+    private val deltaWrites = AtomicLong(0)
+    private val bytesSaved = AtomicLong(0)
+
+    /**
+     * Writes [bits], as an XOR against [baseline] when that is clearly smaller. Returns whether the delta form was
+     * chosen.
+     *
+     * The full form is only encoded when it may be written: a delta is first compared against a lower bound on the
+     * full size, counted from the mask's containers and their runs, and the exact full size is only needed when the
+     * delta does not beat that bound.
+     */
+    fun write(out: DataOutput, bits: BitSet, baseline: BitSet?): Boolean {
+        val words = bits.toLongArray()
+        if (baseline != null) {
+            val delta = encodeContainers(xorWords(words, baseline.toLongArray()))
+            val fullEstimate = estimateContainerBytes(words)
+            val full = if (delta.size <= fullEstimate * MAX_DELTA_RATIO) null else encodeContainers(words)
+            if (full == null || delta.size <= full.size * MAX_DELTA_RATIO) {
+                out.writeByte(MODE_XOR)
+                out.writeInt(baseline.hashCode())
+                out.write(delta)
+                deltaWrites.incrementAndGet()
+                bytesSaved.addAndGet(((full?.size ?: fullEstimate) - delta.size).toLong())
+                return true
+            }
+            writeFull(out, full)
+            return false
+        }
+        writeFull(out, encodeContainers(words))
+        return false
+    }
+
+    private fun writeFull(out: DataOutput, full: ByteArray) {
+        out.writeByte(MODE_FULL)
+        out.write(full)
+        fullWrites.incrementAndGet()
+    }
+
+    /** [write] into a standalone array. */
+    fun encode(bits: BitSet, baseline: BitSet?): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use { write(it, bits, baseline) }
+        return bytes.toByteArray()
+    }
+
+    /** Whether [encoded], as returned by [encode], depends on a baseline. */
+    fun isDelta(encoded: ByteArray): Boolean = encoded.isNotEmpty() && encoded[0].toInt() == MODE_XOR
+
+    /**
+     * A mask as read by [readPending]: whole, or the XOR delta still to be applied to the baseline it was written
+     * against.
+     */
+    class PendingMask internal constructor(private val words: LongArray, private val baselineChecksum: Int?) {
+        /** The mask; null when it is a delta and [baseline] is missing or is not the mask the writer used. */
+        fun resolve(baseline: BitSet?): BitSet? {
+            if (baselineChecksum == null) return BitSet.valueOf(words)
+            if (baseline == null || baseline.hashCode() != baselineChecksum) return null
+            return BitSet.valueOf(xorWords(words, baseline.toLongArray()))
+        }
+    }
+
+    /**
+     * Reads what [write] wrote. Returns null when the mask was written against a baseline and [baseline] is missing
+     * or is not the mask the writer used.
+     */
+    fun read(input: DataInput, baseline: BitSet?): BitSet? = readPending(input)?.resolve(baseline)
+
+    /** Reads what [write] wrote without resolving a delta yet, so the baseline can be looked up elsewhere. */
+    fun readPending(input: DataInput): PendingMask? {
+        return when (input.readUnsignedByte()) {
+            MODE_FULL -> PendingMask(readContainers(input) ?: return null, null)
+            MODE_XOR -> {
+                val checksum = input.readInt()
+                PendingMask(readContainers(input) ?: return null, checksum)
+            }
+            else -> null
+        }
+    }
+
+    /** [read] from a standalone array; null for malformed input as well. */
+    fun decode(bytes: ByteArray, baseline: BitSet?): BitSet? {
+        if (bytes.isEmpty()) return null
+        return try {
+            DataInputStream(bytes.inputStream()).use { read(it, baseline) }
+        } catch (_: IOException) {
+            null
+        }
+    }
+
+    private fun xorWords(a: LongArray, b: LongArray): LongArray {
+        val out = if (a.size >= b.size) a.copyOf() else b.copyOf()
+        val other = if (a.size >= b.size) b else a
+        for (i in other.indices) out[i] = out[i] xor other[i]
+        return out
+    }
+
+    private fun encodeContainers(words: LongArray): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        val out = DataOutputStream(bytes)
+        val chunkCount = (words.size + CHUNK_WORDS - 1) / CHUNK_WORDS
+        var nonEmpty = 0
+        for (chunk in 0 until chunkCount) {
+            if (!isChunkEmpty(words, chunk)) nonEmpty++
+        }
+        writeVarInt(out, nonEmpty)
+
+        val runs = IntArray(CHUNK_BITS)
+        var previousChunk = -1
+        for (chunk in 0 until chunkCount) {
+            if (isChunkEmpty(words, chunk)) continue
+            writeVarInt(out, chunk - previousChunk - 1)
+            previousChunk = chunk
+
+            val start = chunk * CHUNK_WORDS
+            val end = minOf(words.size, start + CHUNK_WORDS)
+            val runCount = collectRuns(words, start, end, runs)
+            // Each run costs at most ~4 bytes as varints; raw words cost 8 bytes each.
+            var runBytes = varIntSize(runCount)
+            var cursor = 0
+            for (r in 0 until runCount) {
+                runBytes += varIntSize(runs[2 * r] - cursor) + varIntSize(runs[2 * r + 1] - 1)
+                cursor = runs[2 * r] + runs[2 * r + 1]
+            }
+            val wordBytes = varIntSize(end - start) + (end - start) * 8
+            if (runBytes <= wordBytes) {
+                out.writeByte(CONTAINER_RUNS)
+                writeVarInt(out, runCount)
+                cursor = 0
+                for (r in 0 until runCount) {
+                    writeVarInt(out, runs[2 * r] - cursor)
+                    writeVarInt(out, runs[2 * r + 1] - 1)
+                    cursor = runs[2 * r] + runs[2 * r + 1]
+                }
+            } else {
+                out.writeByte(CONTAINER_WORDS)
+                writeVarInt(out, end - start)
+                for (i in start until end) out.writeLong(words[i])
+            }
+        }
+        out.flush()
+        return bytes.toByteArray()
+    }
+
+    private fun readContainers(input: DataInput): LongArray? {
+        val chunkCount = readVarInt(input)
+        if (chunkCount < 0 || chunkCount > (MAX_WORDS + CHUNK_WORDS - 1) / CHUNK_WORDS) return null
+        var words = LongArray(0)
+        var chunk = -1
+        for (c in 0 until chunkCount) {
+            val skip = readVarInt(input)
+            if (skip < 0) return null
+            chunk += skip + 1
+            val start = chunk.toLong() * CHUNK_WORDS
+            if (start >= MAX_WORDS) return null
+            when (input.readUnsignedByte()) {
+                CONTAINER_RUNS -> {
+                    val runCount = readVarInt(input)
+                    if (runCount !in 0..CHUNK_BITS / 2) return null
+                    var cursor = 0
+                    for (r in 0 until runCount) {
+                        val runStart = cursor + readVarInt(input)
+                        val runLength = readVarInt(input) + 1
+                        if (runStart < cursor || runLength <= 0 || runStart + runLength > CHUNK_BITS) return null
+                        val lastWord = start.toInt() + (runStart + runLength - 1) / 64
+                        if (lastWord >= words.size) words = words.copyOf(maxOf(lastWord + 1, words.size * 2))
+                        setRun(words, start.toInt() * 64 + runStart, runLength)
+                        cursor = runStart + runLength
+                    }
+                }
+                CONTAINER_WORDS -> {
+                    val count = readVarInt(input)
+                    if (count !in 1..CHUNK_WORDS) return null
+                    val end = start.toInt() + count
+                    if (end > words.size) words = words.copyOf(maxOf(end, words.size * 2))
+                    for (i in start.toInt() until end) words[i] = input.readLong()
+                }
+                else -> return null
+            }
+        }
+        return words
+    }
+
+    /**
+     * Lower bound on `encodeContainers(words).size`: per non-empty container its header, plus the smaller of its word
+     * form and two bytes for each run it holds.
+     */
+    private fun estimateContainerBytes(words: LongArray): Int {
+        val chunkCount = (words.size + CHUNK_WORDS - 1) / CHUNK_WORDS
+        var containers = 0
+        var bytes = 0
+        for (chunk in 0 until chunkCount) {
+            val start = chunk * CHUNK_WORDS
+            val end = minOf(words.size, start + CHUNK_WORDS)
+            var runs = 0
+            var carry = 0L
+            for (i in start until end) {
+                val word = words[i]
+                // A run starts at every set bit whose lower neighbour, within this container, is clear.
+                runs += java.lang.Long.bitCount(word and ((word shl 1) or carry).inv())
+                carry = word ushr 63
+            }
+            if (runs == 0) continue
+            containers++
+            val wordBytes = varIntSize(end - start) + (end - start) * 8
+            // Skip varint and container type, then the body.
+            bytes += 2 + minOf(varIntSize(runs) + 2 * runs, wordBytes)
+        }
+        return varIntSize(containers) + bytes
+    }
+
+    private fun isChunkEmpty(words: LongArray, chunk: Int): Boolean {
+        val start = chunk * CHUNK_WORDS
+        val end = minOf(words.size, start + CHUNK_WORDS)
+        for (i in start until end) if (words[i] != 0L) return false
+        return true
+    }
+
+    /** Fills [out] with (start, length) pairs of set-bit runs relative to word [start]; returns the run count. */
+    private fun collectRuns(words: LongArray, start: Int, end: Int, out: IntArray): Int {
+        var count = 0
+        var bit = 0
+        val limit = (end - start) * 64
+        while (bit < limit) {
+            val word = words[start + (bit ushr 6)] ushr (bit and 63)
+            if (word == 0L) {
+                bit = (bit or 63) + 1
+                continue
+            }
+            bit += java.lang.Long.numberOfTrailingZeros(word)
+            val runStart = bit
+            while (bit < limit) {
+                val rest = words[start + (bit ushr 6)] ushr (bit and 63)
+                val ones = java.lang.Long.numberOfTrailingZeros(rest.inv())
+                val inWord = 64 - (bit and 63)
+                if (ones < inWord) {
+                    bit += ones
+                    break
+                }
+                bit += inWord
+            }
+            out[2 * count] = runStart
+            out[2 * count + 1] = bit - runStart
+            count++
+        }
+        return count
+    }
+
+    private fun setRun(words: LongArray, from: Int, length: Int) {
+        var bit = from
+        val to = from + length
+        while (bit < to) {
+            val inWord = minOf(64 - (bit and 63), to - bit)
+            val mask = if (inWord == 64) -1L else ((1L shl inWord) - 1L) shl (bit and 63)
+            words[bit ushr 6] = words[bit ushr 6] or mask
+            bit += inWord
+        }
+    }
+
+    private fun varIntSize(value: Int): Int {
+        var v = value
+        var size = 1
+        while (v and 0x7F.inv() != 0) {
+            v = v ushr 7
+            size++
+        }
+        return size
+    }
+
+    private fun writeVarInt(out: DataOutput, value: Int) {
+        var v = value
+        while (v and 0x7F.inv() != 0) {
+            out.writeByte((v and 0x7F) or 0x80)
+            v = v ushr 7
+        }
+        out.writeByte(v)
+    }
+
+    private fun readVarInt(input: DataInput): Int {
+        var value = 0
+        var shift = 0
+        while (true) {
+            val b = input.readUnsignedByte()
+            value = value or ((b and 0x7F) shl shift)
+            if (b and 0x80 == 0) return value
+            shift += 7
+            if (shift >= 35) throw IOException("varint too long")
+        }
+    }
+
+    @JvmStatic
+    fun fullWrites(): Long = fullWrites.get()
+
+    @JvmStatic
+    fun deltaWrites(): Long = deltaWrites.get()
+
+    @JvmStatic
+    fun bytesSaved(): Long = bytesSaved.get()
+}
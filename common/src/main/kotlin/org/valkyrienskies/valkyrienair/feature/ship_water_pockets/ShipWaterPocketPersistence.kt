@@ -7,15 +7,20 @@ import net.minecraft.nbt.ListTag
 import net.minecraft.nbt.Tag
 import net.minecraft.resources.ResourceLocation
 import net.minecraft.server.level.ServerLevel
+import net.minecraft.world.level.dimension.DimensionType
 import net.minecraft.world.level.material.Fluid
 import net.minecraft.world.level.material.Fluids
 import net.minecraft.world.level.material.FlowingFluid
 import net.minecraft.world.level.saveddata.SavedData
+import net.minecraft.world.level.storage.LevelResource
 import java.io.ByteArrayInputStream
 import java.io.ByteArrayOutputStream
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
 import java.util.BitSet
+import java.util.WeakHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 import java.util.zip.DeflaterOutputStream
 import java.util.zip.InflaterInputStream
 
@@ -52,68 +57,44 @@ internal data class PersistedShipPocketState(
 internal class ShipPocketSavedData : SavedData() {
     private val persistedStates: MutableMap<Long, PersistedShipPocketState> = HashMap()
 
-    fun getState(shipId: Long): PersistedShipPocketState? = persistedStates[shipId]
+    // Entries as loaded, their masks and arrays still deflated, until something asks for the ship. Most parked ships
+    // are never loaded in a session, so they are never decoded and are saved back as they were read.
+    private val undecoded: MutableMap<Long, CompoundTag> = HashMap()
+    private var undecodedVersion = FORMAT_VERSION
+
+    fun getState(shipId: Long): PersistedShipPocketState? {
+        persistedStates[shipId]?.let { return it }
+        val shipTag = undecoded.remove(shipId) ?: return null
+        val state = readShipTag(shipTag, undecodedVersion) ?: return null
+        persistedStates[shipId] = state
+        return state
+    }
 
     fun putState(shipId: Long, state: PersistedShipPocketState) {
+        undecoded.remove(shipId)
         persistedStates[shipId] = state
         setDirty()
     }
 
     fun removeState(shipId: Long) {
-        if (persistedStates.remove(shipId) != null) {
+        val removedUndecoded = undecoded.remove(shipId) != null
+        if (persistedStates.remove(shipId) != null || removedUndecoded) {
             setDirty()
         }
     }
 
     override fun save(compoundTag: CompoundTag): CompoundTag {
         compoundTag.putInt(TAG_FORMAT_VERSION, FORMAT_VERSION)
+        if (undecodedVersion != FORMAT_VERSION) {
+            // Older entries can't be copied under the current version; upgrade them through a decode.
+            for (shipId in undecoded.keys.toList()) getState(shipId)
+            undecodedVersion = FORMAT_VERSION
+        }
         val ships = ListTag()
         for ((shipId, state) in persistedStates) {
-            val shipTag = CompoundTag()
-            shipTag.putLong(TAG_SHIP_ID, shipId)
-            shipTag.putInt(TAG_MIN_X, state.minX)
-            shipTag.putInt(TAG_MIN_Y, state.minY)
-            shipTag.putInt(TAG_MIN_Z, state.minZ)
-            shipTag.putInt(TAG_SIZE_X, state.sizeX)
-            shipTag.putInt(TAG_SIZE_Y, state.sizeY)
-            shipTag.putInt(TAG_SIZE_Z, state.sizeZ)
-            shipTag.putString(TAG_FLOOD_FLUID, fluidRegistryName(state.floodFluid))
-
-            shipTag.putLong(TAG_GEOMETRY_REVISION, state.geometryRevision)
-            shipTag.putLong(TAG_GEOMETRY_SIGNATURE, state.geometrySignature)
-
-            shipTag.putByteArray(TAG_OPEN, encodeBitSet(state.open))
-            shipTag.putByteArray(TAG_EXTERIOR, encodeBitSet(state.exterior))
-            shipTag.putByteArray(TAG_STRICT_INTERIOR, encodeBitSet(state.strictInterior))
-            shipTag.putByteArray(TAG_SIMULATION_DOMAIN, encodeBitSet(state.simulationDomain))
-            shipTag.putByteArray(TAG_OUTSIDE_VOID, encodeBitSet(state.outsideVoid))
-            shipTag.putByteArray(TAG_INTERIOR, encodeBitSet(state.interior))
-            shipTag.putByteArray(TAG_FLOODED, encodeBitSet(state.flooded))
-            shipTag.putByteArray(TAG_MATERIALIZED_WATER, encodeBitSet(state.materializedWater))
-            shipTag.putByteArray(TAG_WATER_REACHABLE, encodeBitSet(state.waterReachable))
-            shipTag.putByteArray(TAG_UNREACHABLE_VOID, encodeBitSet(state.unreachableVoid))
-
-            shipTag.putByteArray(TAG_FACE_COND_XP, encodeShortArray(state.faceCondXP))
-            shipTag.putByteArray(TAG_FACE_COND_YP, encodeShortArray(state.faceCondYP))
-            shipTag.putByteArray(TAG_FACE_COND_ZP, encodeShortArray(state.faceCondZP))
-            shipTag.putByteArray(TAG_VOXEL_EXTERIOR_COMPONENT_MASK, encodeLongArray(state.voxelExteriorComponentMask))
-            shipTag.putByteArray(TAG_VOXEL_INTERIOR_COMPONENT_MASK, encodeLongArray(state.voxelInteriorComponentMask))
-            shipTag.putByteArray(TAG_VOXEL_SIMULATION_COMPONENT_MASK, encodeLongArray(state.voxelSimulationComponentMask))
-
-            val planeCount = state.floodPlaneByComponent.size
-            val planeKeys = IntArray(planeCount)
-            val planeValues = LongArray(planeCount)
-            var i = 0
-            val it = state.floodPlaneByComponent.int2DoubleEntrySet().iterator()
-            while (it.hasNext()) {
-                val entry = it.next()
-                planeKeys[i] = entry.intKey
-                planeValues[i] = java.lang.Double.doubleToLongBits(entry.doubleValue)
-                i++
-            }
-            shipTag.putIntArray(TAG_FLOOD_PLANE_KEYS, planeKeys)
-            shipTag.putLongArray(TAG_FLOOD_PLANE_VALUES, planeValues)
-
+            ships.add(writeShipTag(shipId, state))
+        }
+        for (shipTag in undecoded.values) {
             ships.add(shipTag)
         }
         compoundTag.put(TAG_SHIPS, ships)
@@ -121,7 +102,7 @@ internal class ShipPocketSavedData : SavedData() {
     }
 
     companion object {
-        private const val FORMAT_VERSION = 3
+        const val FORMAT_VERSION = 3
         private const val TAG_FORMAT_VERSION = "format_version"
         private const val TAG_SHIPS = "ships"
         private const val TAG_SHIP_ID = "ship_id"
@@ -163,143 +144,201 @@ internal class ShipPocketSavedData : SavedData() {
                 return data
             }
 
+            data.undecodedVersion = version
             val ships = compoundTag.getList(TAG_SHIPS, Tag.TAG_COMPOUND.toInt())
             for (i in 0 until ships.size) {
                 val shipTag = ships.getCompound(i)
-                val shipId = shipTag.getLong(TAG_SHIP_ID)
-                val minX = shipTag.getInt(TAG_MIN_X)
-                val minY = shipTag.getInt(TAG_MIN_Y)
-                val minZ = shipTag.getInt(TAG_MIN_Z)
-                val sizeX = shipTag.getInt(TAG_SIZE_X)
-                val sizeY = shipTag.getInt(TAG_SIZE_Y)
-                val sizeZ = shipTag.getInt(TAG_SIZE_Z)
-                if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0) continue
-                val volumeLong = sizeX.toLong() * sizeY.toLong() * sizeZ.toLong()
-                if (volumeLong <= 0L || volumeLong > Int.MAX_VALUE.toLong()) continue
-                val volume = volumeLong.toInt()
-
-                val floodFluid = parseFluid(shipTag.getString(TAG_FLOOD_FLUID))
-                val floodPlanes = Int2DoubleOpenHashMap()
-                val planeKeys = shipTag.getIntArray(TAG_FLOOD_PLANE_KEYS)
-                val planeValues = shipTag.getLongArray(TAG_FLOOD_PLANE_VALUES)
-                val planeCount = minOf(planeKeys.size, planeValues.size)
-                for (planeIdx in 0 until planeCount) {
-                    floodPlanes.put(planeKeys[planeIdx], java.lang.Double.longBitsToDouble(planeValues[planeIdx]))
-                }
+                data.undecoded[shipTag.getLong(TAG_SHIP_ID)] = shipTag
+            }
+            return data
+        }
 
-                val open = decodeBitSet(shipTag.getByteArray(TAG_OPEN))
-                val exterior = decodeBitSet(shipTag.getByteArray(TAG_EXTERIOR))
-                val interiorLegacy = decodeBitSet(shipTag.getByteArray(TAG_INTERIOR))
-                val strictInterior =
-                    if (version >= 2) decodeBitSet(shipTag.getByteArray(TAG_STRICT_INTERIOR)) else interiorLegacy.clone() as BitSet
-                val simulationDomain =
-                    if (version >= 2) decodeBitSet(shipTag.getByteArray(TAG_SIMULATION_DOMAIN)) else interiorLegacy.clone() as BitSet
-                var requiresResave = version < FORMAT_VERSION
-
-                val faceCondXPRaw = decodeShortArray(shipTag.getByteArray(TAG_FACE_COND_XP))
-                val faceCondYPRaw = decodeShortArray(shipTag.getByteArray(TAG_FACE_COND_YP))
-                val faceCondZPRaw = decodeShortArray(shipTag.getByteArray(TAG_FACE_COND_ZP))
-                val faceCondXP = sanitizeFaceConductance(faceCondXPRaw, volume).also {
-                    if (it.size != faceCondXPRaw.size || (faceCondXPRaw.isNotEmpty() && it.isEmpty())) {
-                        requiresResave = true
-                    }
-                }
-                val faceCondYP = sanitizeFaceConductance(faceCondYPRaw, volume).also {
-                    if (it.size != faceCondYPRaw.size || (faceCondYPRaw.isNotEmpty() && it.isEmpty())) {
-                        requiresResave = true
-                    }
-                }
-                val faceCondZP = sanitizeFaceConductance(faceCondZPRaw, volume).also {
-                    if (it.size != faceCondZPRaw.size || (faceCondZPRaw.isNotEmpty() && it.isEmpty())) {
-                        requiresResave = true
-                    }
-                }
+        /** Encodes one ship entry, as read back by [readShipTag]. */
+        internal fun writeShipTag(shipId: Long, state: PersistedShipPocketState): CompoundTag {
+            val shipTag = CompoundTag()
+            shipTag.putLong(TAG_SHIP_ID, shipId)
+            shipTag.putInt(TAG_MIN_X, state.minX)
+            shipTag.putInt(TAG_MIN_Y, state.minY)
+            shipTag.putInt(TAG_MIN_Z, state.minZ)
+            shipTag.putInt(TAG_SIZE_X, state.sizeX)
+            shipTag.putInt(TAG_SIZE_Y, state.sizeY)
+            shipTag.putInt(TAG_SIZE_Z, state.sizeZ)
+            shipTag.putString(TAG_FLOOD_FLUID, fluidRegistryName(state.floodFluid))
+
+            shipTag.putLong(TAG_GEOMETRY_REVISION, state.geometryRevision)
+            shipTag.putLong(TAG_GEOMETRY_SIGNATURE, state.geometrySignature)
+
+            shipTag.putByteArray(TAG_OPEN, encodeBitSet(state.open))
+            shipTag.putByteArray(TAG_EXTERIOR, encodeBitSet(state.exterior))
+            shipTag.putByteArray(TAG_STRICT_INTERIOR, encodeBitSet(state.strictInterior))
+            shipTag.putByteArray(TAG_SIMULATION_DOMAIN, encodeBitSet(state.simulationDomain))
+            shipTag.putByteArray(TAG_OUTSIDE_VOID, encodeBitSet(state.outsideVoid))
+            shipTag.putByteArray(TAG_INTERIOR, encodeBitSet(state.interior))
+            shipTag.putByteArray(TAG_FLOODED, encodeBitSet(state.flooded))
+            shipTag.putByteArray(TAG_MATERIALIZED_WATER, encodeBitSet(state.materializedWater))
+            shipTag.putByteArray(TAG_WATER_REACHABLE, encodeBitSet(state.waterReachable))
+            shipTag.putByteArray(TAG_UNREACHABLE_VOID, encodeBitSet(state.unreachableVoid))
+
+            shipTag.putByteArray(TAG_FACE_COND_XP, encodeShortArray(state.faceCondXP))
+            shipTag.putByteArray(TAG_FACE_COND_YP, encodeShortArray(state.faceCondYP))
+            shipTag.putByteArray(TAG_FACE_COND_ZP, encodeShortArray(state.faceCondZP))
+            shipTag.putByteArray(TAG_VOXEL_EXTERIOR_COMPONENT_MASK, encodeLongArray(state.voxelExteriorComponentMask))
+            shipTag.putByteArray(TAG_VOXEL_INTERIOR_COMPONENT_MASK, encodeLongArray(state.voxelInteriorComponentMask))
+            shipTag.putByteArray(TAG_VOXEL_SIMULATION_COMPONENT_MASK, encodeLongArray(state.voxelSimulationComponentMask))
+
+            val planeCount = state.floodPlaneByComponent.size
+            val planeKeys = IntArray(planeCount)
+            val planeValues = LongArray(planeCount)
+            var i = 0
+            val it = state.floodPlaneByComponent.int2DoubleEntrySet().iterator()
+            while (it.hasNext()) {
+                val entry = it.next()
+                planeKeys[i] = entry.intKey
+                planeValues[i] = java.lang.Double.doubleToLongBits(entry.doubleValue)
+                i++
+            }
+            shipTag.putIntArray(TAG_FLOOD_PLANE_KEYS, planeKeys)
+            shipTag.putLongArray(TAG_FLOOD_PLANE_VALUES, planeValues)
+
+            return shipTag
+        }
+
+        /**
+         * Decodes one ship entry written by [writeShipTag] under save-format [version]. Null when the entry's bounds are
+         * unusable.
+         */
+        internal fun readShipTag(shipTag: CompoundTag, version: Int): PersistedShipPocketState? {
+            val minX = shipTag.getInt(TAG_MIN_X)
+            val minY = shipTag.getInt(TAG_MIN_Y)
+            val minZ = shipTag.getInt(TAG_MIN_Z)
+            val sizeX = shipTag.getInt(TAG_SIZE_X)
+            val sizeY = shipTag.getInt(TAG_SIZE_Y)
+            val sizeZ = shipTag.getInt(TAG_SIZE_Z)
+            if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0) return null
+            val volumeLong = sizeX.toLong() * sizeY.toLong() * sizeZ.toLong()
+            if (volumeLong <= 0L || volumeLong > Int.MAX_VALUE.toLong()) return null
+            val volume = volumeLong.toInt()
+
+            val floodFluid = parseFluid(shipTag.getString(TAG_FLOOD_FLUID))
+            val floodPlanes = Int2DoubleOpenHashMap()
+            val planeKeys = shipTag.getIntArray(TAG_FLOOD_PLANE_KEYS)
+            val planeValues = shipTag.getLongArray(TAG_FLOOD_PLANE_VALUES)
+            val planeCount = minOf(planeKeys.size, planeValues.size)
+            for (planeIdx in 0 until planeCount) {
+                floodPlanes.put(planeKeys[planeIdx], java.lang.Double.longBitsToDouble(planeValues[planeIdx]))
+            }
 
-                val voxelExteriorMaskRaw = decodeLongArray(shipTag.getByteArray(TAG_VOXEL_EXTERIOR_COMPONENT_MASK))
-                val voxelExteriorMask = sanitizeVoxelMasks(voxelExteriorMaskRaw, volume).also {
-                    if (it.size != voxelExteriorMaskRaw.size) requiresResave = true
+            val open = decodeBitSet(shipTag.getByteArray(TAG_OPEN))
+            val exterior = decodeBitSet(shipTag.getByteArray(TAG_EXTERIOR))
+            val interiorLegacy = decodeBitSet(shipTag.getByteArray(TAG_INTERIOR))
+            val strictInterior =
+                if (version >= 2) decodeBitSet(shipTag.getByteArray(TAG_STRICT_INTERIOR)) else interiorLegacy.clone() as BitSet
+            val simulationDomain =
+                if (version >= 2) decodeBitSet(shipTag.getByteArray(TAG_SIMULATION_DOMAIN)) else interiorLegacy.clone() as BitSet
+            var requiresResave = version < FORMAT_VERSION
+
+            val faceCondXPRaw = decodeShortArray(shipTag.getByteArray(TAG_FACE_COND_XP))
+            val faceCondYPRaw = decodeShortArray(shipTag.getByteArray(TAG_FACE_COND_YP))
+            val faceCondZPRaw = decodeShortArray(shipTag.getByteArray(TAG_FACE_COND_ZP))
+            val faceCondXP = sanitizeFaceConductance(faceCondXPRaw, volume).also {
+                if (it.size != faceCondXPRaw.size || (faceCondXPRaw.isNotEmpty() && it.isEmpty())) {
+                    requiresResave = true
                 }
-                val voxelInteriorMaskRaw = decodeLongArray(shipTag.getByteArray(TAG_VOXEL_INTERIOR_COMPONENT_MASK))
-                val voxelInteriorMask = sanitizeVoxelMasks(voxelInteriorMaskRaw, volume).also {
-                    if (it.size != voxelInteriorMaskRaw.size) requiresResave = true
+            }
+            val faceCondYP = sanitizeFaceConductance(faceCondYPRaw, volume).also {
+                if (it.size != faceCondYPRaw.size || (faceCondYPRaw.isNotEmpty() && it.isEmpty())) {
+                    requiresResave = true
                 }
-                val voxelSimulationMaskRaw =
-                    if (version >= 2) decodeLongArray(shipTag.getByteArray(TAG_VOXEL_SIMULATION_COMPONENT_MASK))
-                    else voxelInteriorMask.copyOf()
-                val voxelSimulationMask = sanitizeVoxelMasks(voxelSimulationMaskRaw, volume).also {
-                    if (it.size != voxelSimulationMaskRaw.size) requiresResave = true
+            }
+            val faceCondZP = sanitizeFaceConductance(faceCondZPRaw, volume).also {
+                if (it.size != faceCondZPRaw.size || (faceCondZPRaw.isNotEmpty() && it.isEmpty())) {
+                    requiresResave = true
                 }
+            }
 
-                val flooded = decodeBitSet(shipTag.getByteArray(TAG_FLOODED))
-                val materializedWater = decodeBitSet(shipTag.getByteArray(TAG_MATERIALIZED_WATER))
-                val waterReachable = decodeBitSet(shipTag.getByteArray(TAG_WATER_REACHABLE))
-                val unreachableVoid = decodeBitSet(shipTag.getByteArray(TAG_UNREACHABLE_VOID))
-                val outsideVoid =
-                    if (version >= 3) {
-                        decodeBitSet(shipTag.getByteArray(TAG_OUTSIDE_VOID))
-                    } else {
-                        reconstructOutsideVoidForLegacy(
-                            open = open,
-                            simulationDomain = simulationDomain,
-                            sizeX = sizeX,
-                            sizeY = sizeY,
-                            sizeZ = sizeZ,
-                            faceCondXP = faceCondXP,
-                            faceCondYP = faceCondYP,
-                            faceCondZP = faceCondZP,
-                        ).also {
-                            requiresResave = true
-                        }
-                    }
+            val voxelExteriorMaskRaw = decodeLongArray(shipTag.getByteArray(TAG_VOXEL_EXTERIOR_COMPONENT_MASK))
+            val voxelExteriorMask = sanitizeVoxelMasks(voxelExteriorMaskRaw, volume).also {
+                if (it.size != voxelExteriorMaskRaw.size) requiresResave = true
+            }
+            val voxelInteriorMaskRaw = decodeLongArray(shipTag.getByteArray(TAG_VOXEL_INTERIOR_COMPONENT_MASK))
+            val voxelInteriorMask = sanitizeVoxelMasks(voxelInteriorMaskRaw, volume).also {
+                if (it.size != voxelInteriorMaskRaw.size) requiresResave = true
+            }
+            val voxelSimulationMaskRaw =
+                if (version >= 2) decodeLongArray(shipTag.getByteArray(TAG_VOXEL_SIMULATION_COMPONENT_MASK))
+                else voxelInteriorMask.copyOf()
+            val voxelSimulationMask = sanitizeVoxelMasks(voxelSimulationMaskRaw, volume).also {
+                if (it.size != voxelSimulationMaskRaw.size) requiresResave = true
+            }
 
-                val normalized = normalizePersistedMasks(
-                    volume = volume,
-                    open = open,
-                    exterior = exterior,
-                    strictInterior = strictInterior,
-                    simulationDomain = simulationDomain,
-                    outsideVoid = outsideVoid,
-                    interiorLegacy = interiorLegacy,
-                    flooded = flooded,
-                    materializedWater = materializedWater,
-                    waterReachable = waterReachable,
-                    unreachableVoid = unreachableVoid,
-                )
-                if (normalized) {
-                    requiresResave = true
+            val flooded = decodeBitSet(shipTag.getByteArray(TAG_FLOODED))
+            val materializedWater = decodeBitSet(shipTag.getByteArray(TAG_MATERIALIZED_WATER))
+            val waterReachable = decodeBitSet(shipTag.getByteArray(TAG_WATER_REACHABLE))
+            val unreachableVoid = decodeBitSet(shipTag.getByteArray(TAG_UNREACHABLE_VOID))
+            val outsideVoid =
+                if (version >= 3) {
+                    decodeBitSet(shipTag.getByteArray(TAG_OUTSIDE_VOID))
+                } else {
+                    reconstructOutsideVoidForLegacy(
+                        open = open,
+                        simulationDomain = simulationDomain,
+                        sizeX = sizeX,
+                        sizeY = sizeY,
+                        sizeZ = sizeZ,
+                        faceCondXP = faceCondXP,
+                        faceCondYP = faceCondYP,
+                        faceCondZP = faceCondZP,
+                    ).also {
+                        requiresResave = true
+                    }
                 }
 
-                data.persistedStates[shipId] = PersistedShipPocketState(
-                    minX = minX,
-                    minY = minY,
-                    minZ = minZ,
-                    sizeX = sizeX,
-                    sizeY = sizeY,
-                    sizeZ = sizeZ,
-                    open = open,
-                    exterior = exterior,
-                    strictInterior = strictInterior,
-                    simulationDomain = simulationDomain,
-                    outsideVoid = outsideVoid,
-                    interior = interiorLegacy,
-                    floodFluid = floodFluid,
-                    flooded = flooded,
-                    materializedWater = materializedWater,
-                    waterReachable = waterReachable,
-                    unreachableVoid = unreachableVoid,
-                    faceCondXP = faceCondXP,
-                    faceCondYP = faceCondYP,
-                    faceCondZP = faceCondZP,
-                    voxelExteriorComponentMask = voxelExteriorMask,
-                    voxelInteriorComponentMask = voxelInteriorMask,
-                    voxelSimulationComponentMask = voxelSimulationMask,
-                    floodPlaneByComponent = floodPlanes,
-                    geometryRevision = shipTag.getLong(TAG_GEOMETRY_REVISION),
-                    geometrySignature = shipTag.getLong(TAG_GEOMETRY_SIGNATURE),
-                    requiresResave = requiresResave,
-                )
+            val normalized = normalizePersistedMasks(
+                volume = volume,
+                open = open,
+                exterior = exterior,
+                strictInterior = strictInterior,
+                simulationDomain = simulationDomain,
+                outsideVoid = outsideVoid,
+                interiorLegacy = interiorLegacy,
+                flooded = flooded,
+                materializedWater = materializedWater,
+                waterReachable = waterReachable,
+                unreachableVoid = unreachableVoid,
+            )
+            if (normalized) {
+                requiresResave = true
             }
-            return data
+
+            return PersistedShipPocketState(
+                minX = minX,
+                minY = minY,
+                minZ = minZ,
+                sizeX = sizeX,
+                sizeY = sizeY,
+                sizeZ = sizeZ,
+                open = open,
+                exterior = exterior,
+                strictInterior = strictInterior,
+                simulationDomain = simulationDomain,
+                outsideVoid = outsideVoid,
+                interior = interiorLegacy,
+                floodFluid = floodFluid,
+                flooded = flooded,
+                materializedWater = materializedWater,
+                waterReachable = waterReachable,
+                unreachableVoid = unreachableVoid,
+                faceCondXP = faceCondXP,
+                faceCondYP = faceCondYP,
+                faceCondZP = faceCondZP,
+                voxelExteriorComponentMask = voxelExteriorMask,
+                voxelInteriorComponentMask = voxelInteriorMask,
+                voxelSimulationComponentMask = voxelSimulationMask,
+                floodPlaneByComponent = floodPlanes,
+                geometryRevision = shipTag.getLong(TAG_GEOMETRY_REVISION),
+                geometrySignature = shipTag.getLong(TAG_GEOMETRY_SIGNATURE),
+                requiresResave = requiresResave,
+            )
         }
 
         private fun fluidRegistryName(fluid: Fluid): String {
@@ -316,18 +355,49 @@ internal class ShipPocketSavedData : SavedData() {
 }
 
 internal object ShipWaterPocketPersistence {
+    // Pre-per-ship-files storage; read for ships that have not been saved since, never written to otherwise.
     private const val SAVE_KEY = "valkyrienair_ship_pockets_v1"
+    private const val DIRECTORY_NAME = "valkyrienair_ship_pockets"
 
-    fun get(level: ServerLevel): ShipPocketSavedData {
-        return level.dataStorage.computeIfAbsent(
-            ShipPocketSavedData::load,
-            ShipPocketSavedData::createEmpty,
-            SAVE_KEY,
-        )
+    // Server thread.
+    private val stores = WeakHashMap<ServerLevel, ShipPocketFileStore>()
+
+    // A single thread, which is what keeps each ship's writes in order.
+    val ioExecutor: ExecutorService by lazy {
+        Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, "ValkyrienAir-Persistence").apply { isDaemon = true }
+        }
+    }
+
+    fun get(level: ServerLevel): ShipPocketFileStore {
+        return stores.getOrPut(level) {
+            val dimensionRoot = DimensionType.getStorageFolder(
+                level.dimension(),
+                level.server.getWorldPath(LevelResource.ROOT),
+            )
+            ShipPocketFileStore(
+                directory = dimensionRoot.resolve("data").resolve(DIRECTORY_NAME),
+                legacy = level.dataStorage.get(ShipPocketSavedData::load, SAVE_KEY),
+                io = ioExecutor,
+            )
+        }
+    }
+
+    /** Writes [level]'s changed ships, if it has a store yet; see [ShipPocketFileStore.save]. */
+    fun saveLevel(level: ServerLevel, awaitWrites: Boolean) {
+        stores[level]?.save(awaitWrites)
     }
 }
 
 internal fun snapshotStateForPersistence(state: ShipPocketState): PersistedShipPocketState {
+    // Masks that match the published query view are shared with it (view BitSets are never written) instead of cloned.
+    val view = state.queryView?.takeIf {
+        it.minX == state.minX && it.minY == state.minY && it.minZ == state.minZ &&
+            it.sizeX == state.sizeX && it.sizeY == state.sizeY && it.sizeZ == state.sizeZ
+    }
+    fun frozen(live: BitSet, published: BitSet?): BitSet {
+        return if (published != null && published == live) published else live.clone() as BitSet
+    }
     return PersistedShipPocketState(
         minX = state.minX,
         minY = state.minY,
@@ -335,23 +405,24 @@ internal fun snapshotStateForPersistence(state: ShipPocketState): PersistedShipP
         sizeX = state.sizeX,
         sizeY = state.sizeY,
         sizeZ = state.sizeZ,
-        open = state.open.clone() as BitSet,
+        open = frozen(state.open, view?.open),
         exterior = state.exterior.clone() as BitSet,
-        strictInterior = state.strictInterior.clone() as BitSet,
-        simulationDomain = state.simulationDomain.clone() as BitSet,
+        strictInterior = frozen(state.strictInterior, view?.strictInterior),
+        simulationDomain = frozen(state.simulationDomain, view?.simulationDomain),
         outsideVoid = state.outsideVoid.clone() as BitSet,
         interior = state.interior.clone() as BitSet,
         floodFluid = canonicalFloodSource(state.floodFluid),
         flooded = state.flooded.clone() as BitSet,
-        materializedWater = state.materializedWater.clone() as BitSet,
-        waterReachable = state.waterReachable.clone() as BitSet,
-        unreachableVoid = state.unreachableVoid.clone() as BitSet,
-        faceCondXP = state.faceCondXP.copyOf(),
-        faceCondYP = state.faceCondYP.copyOf(),
-        faceCondZP = state.faceCondZP.copyOf(),
-        voxelExteriorComponentMask = state.voxelExteriorComponentMask.copyOf(),
-        voxelInteriorComponentMask = state.voxelInteriorComponentMask.copyOf(),
-        voxelSimulationComponentMask = state.voxelSimulationComponentMask.copyOf(),
+        materializedWater = frozen(state.materializedWater, view?.materializedWater),
+        waterReachable = frozen(state.waterReachable, view?.waterReachable),
+        unreachableVoid = frozen(state.unreachableVoid, view?.unreachableVoid),
+        // Per-voxel arrays are never written after the geometry job that built them, so they are shared, not copied.
+        faceCondXP = state.faceCondXP,
+        faceCondYP = state.faceCondYP,
+        faceCondZP = state.faceCondZP,
+        voxelExteriorComponentMask = state.voxelExteriorComponentMask,
+        voxelInteriorComponentMask = state.voxelInteriorComponentMask,
+        voxelSimulationComponentMask = state.voxelSimulationComponentMask,
         floodPlaneByComponent = Int2DoubleOpenHashMap(state.floodPlaneByComponent),
         geometryRevision = state.geometryRevision,
         geometrySignature = state.geometrySignature,
@@ -376,18 +447,20 @@ internal fun applyPersistedState(state: ShipPocketState, persisted: PersistedShi
     state.materializedWater = persisted.materializedWater.clone() as BitSet
     state.waterReachable = persisted.waterReachable.clone() as BitSet
     state.unreachableVoid = persisted.unreachableVoid.clone() as BitSet
-    state.faceCondXP = persisted.faceCondXP.copyOf()
-    state.faceCondYP = persisted.faceCondYP.copyOf()
-    state.faceCondZP = persisted.faceCondZP.copyOf()
+    state.faceCondXP = persisted.faceCondXP
+    state.faceCondYP = persisted.faceCondYP
+    state.faceCondZP = persisted.faceCondZP
     state.shapeTemplatePalette = emptyList()
     state.templateIndexByVoxel = IntArray(0)
-    state.voxelExteriorComponentMask = persisted.voxelExteriorComponentMask.copyOf()
-    state.voxelInteriorComponentMask = persisted.voxelInteriorComponentMask.copyOf()
-    state.voxelSimulationComponentMask = persisted.voxelSimulationComponentMask.copyOf()
+    state.voxelExteriorComponentMask = persisted.voxelExteriorComponentMask
+    state.voxelInteriorComponentMask = persisted.voxelInteriorComponentMask
+    state.voxelSimulationComponentMask = persisted.voxelSimulationComponentMask
     state.componentGraphDegraded = true
     state.floodPlaneByComponent = Int2DoubleOpenHashMap(persisted.floodPlaneByComponent)
     state.geometryRevision = persisted.geometryRevision
     state.geometrySignature = persisted.geometrySignature
+    state.geometryBlockStates = emptyArray()
+    state.geometryFullRebuildRequested = true
     state.dirty = true
     state.persistDirty = persisted.requiresResave
     state.restoredFromPersistence = true
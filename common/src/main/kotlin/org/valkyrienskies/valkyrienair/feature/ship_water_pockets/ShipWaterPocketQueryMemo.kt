@@ -0,0 +1,146 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import net.minecraft.world.level.Level
+import java.lang.ref.WeakReference
+import java.util.concurrent.atomic.LongAdder
+
+// Bits of a memo value. Each query kind has a "known" bit so one entry can be filled in lazily per kind.
+internal const val QUERY_MEMO_FLUID_KNOWN = 1
+// A suppressing ship was hit before any ship fluid, so a non-empty world fluid reads as empty.
+internal const val QUERY_MEMO_FLUID_SUPPRESSED = 1 shl 1
+internal const val QUERY_MEMO_SUPPRESSION_KNOWN = 1 shl 2
+internal const val QUERY_MEMO_SUPPRESSION = 1 shl 3
+internal const val QUERY_MEMO_AIR_POCKET_KNOWN = 1 shl 4
+internal const val QUERY_MEMO_AIR_POCKET = 1 shl 5
+// FluidState registry id + 1 of the ship fluid at the position (0 = none).
+internal const val QUERY_MEMO_FLUID_ID_SHIFT = 8
+
+/** Returned by [ShipPocketQueryMemo.get] when the position has no current answer for that query kind. */
+internal const val QUERY_MEMO_MISS = 0
+
+/**
+ * Bounded per-thread memo of world-position pocket queries (`overrideWaterFluidState`,
+ * `isWorldPosInShipWorldFluidSuppressionZone`, `isWorldPosInShipAirPocket`), keyed by `BlockPos.asLong`.
+ *
+ * Open addressing with linear probing over a fixed power-of-two table. Slots are stamped with a generation, so
+ * starting over for a new level or game tick is O(1). Ship transforms are only republished between ticks, so the tick
+ * also covers transform changes. Within a tick each entry carries a fingerprint of the ships covering its position
+ * (their query and shipyard fluid revisions); a lookup under a different fingerprint misses, so a change to one ship
+ * only drops the entries that ship covers.
+ */
+internal class ShipPocketQueryMemo(capacity: Int = DEFAULT_CAPACITY) {
+    private val mask: Int
+    private val keys: LongArray
+    private val values: IntArray
+    private val stamps: IntArray
+    private val shipStamps: LongArray
+    private val maxEntries: Int
+
+    private var generation = 1
+    private var size = 0
+    // Weak, so a thread's memo never keeps an unloaded level alive.
+    private var level: WeakReference<Level>? = null
+    private var tick = Long.MIN_VALUE
+
+    init {
+        require(capacity >= 2 && capacity and (capacity - 1) == 0) { "capacity must be a power of two" }
+        mask = capacity - 1
+        keys = LongArray(capacity)
+        values = IntArray(capacity)
+        stamps = IntArray(capacity)
+        shipStamps = LongArray(capacity)
+        maxEntries = capacity - (capacity shr 2)
+    }
+
+    /** Drops every entry unless they were recorded for the same [level] and [tick]. */
+    fun validate(level: Level, tick: Long) {
+        if (this.level?.get() === level && this.tick == tick) return
+        this.level = WeakReference(level)
+        this.tick = tick
+        reset()
+    }
+
+    /**
+     * The entry for [key] if it was recorded under [shipStamp] and already answers the query kind flagged by
+     * [knownBit], else [QUERY_MEMO_MISS].
+     */
+    fun get(key: Long, knownBit: Int, shipStamp: Long): Int {
+        var slot = slotOf(key)
+        while (stamps[slot] == generation) {
+            if (keys[slot] == key) {
+                val value = values[slot]
+                if (shipStamps[slot] != shipStamp || value and knownBit == 0) break
+                hits.increment()
+                return value
+            }
+            slot = (slot + 1) and mask
+        }
+        misses.increment()
+        return QUERY_MEMO_MISS
+    }
+
+    /**
+     * ORs [bits] into the entry for [key], or replaces it if it was recorded under another [shipStamp]. When the table
+     * is full it starts over rather than growing.
+     */
+    fun merge(key: Long, bits: Int, shipStamp: Long) {
+        var slot = slotOf(key)
+        while (stamps[slot] == generation) {
+            if (keys[slot] == key) {
+                if (shipStamps[slot] == shipStamp) {
+                    values[slot] = values[slot] or bits
+                } else {
+                    shipStamps[slot] = shipStamp
+                    values[slot] = bits
+                }
+                return
+            }
+            slot = (slot + 1) and mask
+        }
+        if (size >= maxEntries) {
+            reset()
+            slot = slotOf(key)
+        }
+        stamps[slot] = generation
+        keys[slot] = key
+        values[slot] = bits
+        shipStamps[slot] = shipStamp
+        size++
+    }
+
+    private fun reset() {
+        size = 0
+        generation++
+        if (generation == 0) {
+            stamps.fill(0)
+            generation = 1
+        }
+    }
+
+    private fun slotOf(key: Long): Int {
+        val h = key * -0x61c8864680b583ebL
+        return (h xor (h ushr 32)).toInt() and mask
+    }
+
+    companion object {
+        const val DEFAULT_CAPACITY = 4096
+
+        // Bumped on every lookup from every querying thread; striped so the threads don't contend on one counter.
+        private val hits = LongAdder()
+        private val misses = LongAdder()
+
+        @JvmStatic
+        fun hits(): Long = hits.sum()
+
+        @JvmStatic
+        fun misses(): Long = misses.sum()
+
+        /** Percentage of memo lookups answered without classifying, or 0 before the first lookup. */
+        @JvmStatic
+        fun hitRatePercent(): Double {
+            val h = hits.sum()
+            val total = h + misses.sum()
+            return if (total == 0L) 0.0 else h * 100.0 / total
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import net.minecraft.world.level.material.Fluid
+import java.util.BitSet
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * The pocket fields the point queries read. Implemented by the live [ShipPocketState] (owned by the level thread) and
+ * by [ShipPocketQueryView] (safe from any thread).
+ */
+internal interface ShipPocketQueryFields {
+    val minX: Int
+    val minY: Int
+    val minZ: Int
+    val sizeX: Int
+    val sizeY: Int
+    val sizeZ: Int
+    val open: BitSet
+    val strictInterior: BitSet
+    val simulationDomain: BitSet
+    val materializedWater: BitSet
+    val waterReachable: BitSet
+    val unreachableVoid: BitSet
+    val floodFluid: Fluid
+    val shapeTemplatePalette: List<ShapeCellTemplate>
+    val templateIndexByVoxel: IntArray
+    val voxelExteriorComponentMask: LongArray
+    val voxelInteriorComponentMask: LongArray
+    val voxelSimulationComponentMask: LongArray
+    val geometryRevision: Long
+    val queryRevision: Long
+}
+
+/**
+ * Immutable snapshot of a ship's [ShipPocketQueryFields], published to [ShipPocketState.queryView] with a single
+ * volatile write whenever query inputs change (see `markPocketQueryStateChanged`).
+ *
+ * Readers off the level thread (chunk meshing, physics, async jobs) take the reference once and see one consistent
+ * revision without locking or cloning. The BitSets here are never mutated; a field whose contents did not change since
+ * the previous view is shared with it rather than copied. Per-voxel arrays are replaced, never patched, by the
+ * writers, so they are always shared.
+ */
+internal class ShipPocketQueryView private constructor(
+    override val minX: Int,
+    override val minY: Int,
+    override val minZ: Int,
+    override val sizeX: Int,
+    override val sizeY: Int,
+    override val sizeZ: Int,
+    override val open: BitSet,
+    override val strictInterior: BitSet,
+    override val simulationDomain: BitSet,
+    override val materializedWater: BitSet,
+    override val waterReachable: BitSet,
+    override val unreachableVoid: BitSet,
+    override val floodFluid: Fluid,
+    override val shapeTemplatePalette: List<ShapeCellTemplate>,
+    override val templateIndexByVoxel: IntArray,
+    override val voxelExteriorComponentMask: LongArray,
+    override val voxelInteriorComponentMask: LongArray,
+    override val voxelSimulationComponentMask: LongArray,
+    override val geometryRevision: Long,
+    override val queryRevision: Long,
+    // Cardinality of simulationDomain, so per-tick buoyancy doesn't rescan it.
+    val simulationDomainCount: Int,
+    // Suppression/air-pocket answers rasterized into world blocks while the ship rests, or null.
+    val worldRaster: ShipPocketWorldRaster?,
+) : ShipPocketQueryFields {
+    /** This view with [raster] attached; everything else is shared. */
+    fun withWorldRaster(raster: ShipPocketWorldRaster?): ShipPocketQueryView {
+        if (raster === worldRaster) return this
+        return ShipPocketQueryView(
+            minX, minY, minZ, sizeX, sizeY, sizeZ,
+            open, strictInterior, simulationDomain, materializedWater, waterReachable, unreachableVoid,
+            floodFluid, shapeTemplatePalette, templateIndexByVoxel,
+            voxelExteriorComponentMask, voxelInteriorComponentMask, voxelSimulationComponentMask,
+            geometryRevision, queryRevision, simulationDomainCount, raster,
+        )
+    }
+
+    companion object {
+        private val published = AtomicLong(0)
+        private val bitSetsCopied = AtomicLong(0)
+        private val bitSetsShared = AtomicLong(0)
+
+        /** Snapshots [state], sharing every BitSet of [previous] whose contents are unchanged. */
+        fun capture(state: ShipPocketState, previous: ShipPocketQueryView?): ShipPocketQueryView {
+            val simulationDomain = freeze(state.simulationDomain, previous?.simulationDomain)
+            val view = ShipPocketQueryView(
+                minX = state.minX,
+                minY = state.minY,
+                minZ = state.minZ,
+                sizeX = state.sizeX,
+                sizeY = state.sizeY,
+                sizeZ = state.sizeZ,
+                open = freeze(state.open, previous?.open),
+                strictInterior = freeze(state.strictInterior, previous?.strictInterior),
+                simulationDomain = simulationDomain,
+                materializedWater = freeze(state.materializedWater, previous?.materializedWater),
+                waterReachable = freeze(state.waterReachable, previous?.waterReachable),
+                unreachableVoid = freeze(state.unreachableVoid, previous?.unreachableVoid),
+                floodFluid = state.floodFluid,
+                shapeTemplatePalette = state.shapeTemplatePalette,
+                templateIndexByVoxel = state.templateIndexByVoxel,
+                voxelExteriorComponentMask = state.voxelExteriorComponentMask,
+                voxelInteriorComponentMask = state.voxelInteriorComponentMask,
+                voxelSimulationComponentMask = state.voxelSimulationComponentMask,
+                geometryRevision = state.geometryRevision,
+                queryRevision = state.queryRevision,
+                simulationDomainCount = if (previous != null && simulationDomain === previous.simulationDomain) {
+                    previous.simulationDomainCount
+                } else {
+                    simulationDomain.cardinality()
+                },
+                worldRaster = null,
+            )
+            published.incrementAndGet()
+            return view
+        }
+
+        private fun freeze(current: BitSet, previous: BitSet?): BitSet {
+            if (previous != null && previous == current) {
+                bitSetsShared.incrementAndGet()
+                return previous
+            }
+            bitSetsCopied.incrementAndGet()
+            return current.clone() as BitSet
+        }
+
+        @JvmStatic
+        fun published(): Long = published.get()
+
+        @JvmStatic
+        fun bitSetsCopied(): Long = bitSetsCopied.get()
+
+        @JvmStatic
+        fun bitSetsShared(): Long = bitSetsShared.get()
+    }
+}
@@ -0,0 +1,527 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet
+import net.minecraft.world.level.material.Fluid
+import net.minecraft.world.phys.AABB
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.util.BitSet
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.InflaterInputStream
+
+/** Geometry half of a replicated pocket state. Left out of a packet when the client already holds it. */
+internal class ReplicatedPocketGeometry(
+    val minX: Int,
+    val minY: Int,
+    val minZ: Int,
+    val sizeX: Int,
+    val sizeY: Int,
+    val sizeZ: Int,
+    val open: BitSet,
+    val strictInterior: BitSet,
+    val simulationDomain: BitSet,
+    // Server template ids used by templateIndexByVoxel, ascending, and the shapes they were built from.
+    val templateIds: IntArray,
+    val templateGeometries: List<ShapeWaterGeometry>,
+    val templateIndexByVoxel: IntArray,
+    val voxelExteriorComponentMask: LongArray,
+    val voxelInteriorComponentMask: LongArray,
+    val voxelSimulationComponentMask: LongArray,
+)
+
+/**
+ * The pocket state a server sends a client: the applied geometry (optional) and water-solve masks, keyed by the
+ * server's `geometryRevision` and water-solve generation.
+ */
+internal class ReplicatedPocketState(
+    val shipId: Long,
+    val geometryRevision: Long,
+    val waterSolveGeneration: Long,
+    // Registry id of the flood fluid; resolved by the receiving side.
+    val floodFluid: String,
+    val geometry: ReplicatedPocketGeometry?,
+    val materializedWater: BitSet,
+    val waterReachable: BitSet,
+    val unreachableVoid: BitSet,
+)
+
+/**
+ * Wire format of [ReplicatedPocketState]: one format-version byte, then a deflated stream. Per-voxel arrays go as runs
+ * of equal values, so open water and solid hull cost a few bytes per run rather than per voxel. Masks go through
+ * [ShipPocketMaskCodec], as XOR deltas when the sender knows a baseline the receiver holds (the state it last sent) and
+ * the bounds match. Decoding and re-encoding a packet against the same baseline reproduces it byte for byte.
+ */
+internal object ShipPocketReplicationCodec {
+    const val FORMAT_VERSION = 3
+
+    // Anything larger than the server's simulation cap is malformed and is never allocated.
+    private const val MAX_VOLUME = MAX_SIM_VOLUME
+    private const val MAX_TEMPLATES = 1 shl 16
+    private const val MAX_TEMPLATE_BOXES = 4096
+
+    /** Encodes [replica], with masks as deltas against [baseline] where that pays off. */
+    fun encode(replica: ReplicatedPocketState, baseline: ShipPocketQueryFields? = null): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        bytes.write(FORMAT_VERSION)
+        DataOutputStream(DeflaterOutputStream(bytes)).use { out ->
+            out.writeLong(replica.shipId)
+            out.writeLong(replica.geometryRevision)
+            out.writeLong(replica.waterSolveGeneration)
+            out.writeUTF(replica.floodFluid)
+            val geometry = replica.geometry
+            val base = usableBaseline(geometry, baseline)
+            out.writeBoolean(geometry != null)
+            if (geometry != null) writeGeometry(out, geometry, base)
+            ShipPocketMaskCodec.write(out, replica.materializedWater, base?.materializedWater)
+            ShipPocketMaskCodec.write(out, replica.waterReachable, base?.waterReachable)
+            ShipPocketMaskCodec.write(out, replica.unreachableVoid, base?.unreachableVoid)
+        }
+        return bytes.toByteArray()
+    }
+
+    /**
+     * Null when [bytes] are truncated, malformed or from another format version, or when they carry deltas and
+     * [baselineFor] (called with the packet's ship id) does not supply the state they were encoded against.
+     */
+    fun decode(
+        bytes: ByteArray,
+        baselineFor: (shipId: Long) -> ShipPocketQueryFields? = { null },
+    ): ReplicatedPocketState? {
+        val packet = parse(bytes) ?: return null
+        return packet.resolve(baselineFor(packet.shipId))
+    }
+
+    /**
+     * Inflates and parses [bytes] without touching any baseline, so it can run off the thread that owns the applied
+     * state. Null when they are truncated, malformed or from another format version.
+     */
+    fun parse(bytes: ByteArray): ParsedPocketPacket? {
+        if (bytes.isEmpty() || bytes[0].toInt() != FORMAT_VERSION) return null
+        return try {
+            DataInputStream(InflaterInputStream(ByteArrayInputStream(bytes, 1, bytes.size - 1))).use { input ->
+                val shipId = input.readLong()
+                val geometryRevision = input.readLong()
+                val waterSolveGeneration = input.readLong()
+                val floodFluid = input.readUTF()
+                val geometry = if (input.readBoolean()) readGeometry(input) ?: return null else null
+                ParsedPocketPacket(
+                    shipId = shipId,
+                    geometryRevision = geometryRevision,
+                    waterSolveGeneration = waterSolveGeneration,
+                    floodFluid = floodFluid,
+                    geometry = geometry,
+                    materializedWater = ShipPocketMaskCodec.readPending(input) ?: return null,
+                    waterReachable = ShipPocketMaskCodec.readPending(input) ?: return null,
+                    unreachableVoid = ShipPocketMaskCodec.readPending(input) ?: return null,
+                )
+            }
+        } catch (_: IOException) {
+            null
+        }
+    }
+
+    private fun usableBaseline(
+        geometry: ReplicatedPocketGeometry?,
+        baseline: ShipPocketQueryFields?,
+    ): ShipPocketQueryFields? {
+        if (baseline == null || geometry == null) return baseline
+        return baseline.takeIf {
+            hasBounds(it, geometry.minX, geometry.minY, geometry.minZ, geometry.sizeX, geometry.sizeY, geometry.sizeZ)
+        }
+    }
+
+    // A baseline only means anything to an XOR when it indexes voxels the same way.
+    internal fun hasBounds(
+        fields: ShipPocketQueryFields,
+        minX: Int,
+        minY: Int,
+        minZ: Int,
+        sizeX: Int,
+        sizeY: Int,
+        sizeZ: Int,
+    ): Boolean {
+        return fields.minX == minX && fields.minY == minY && fields.minZ == minZ &&
+            fields.sizeX == sizeX && fields.sizeY == sizeY && fields.sizeZ == sizeZ
+    }
+
+    private fun writeGeometry(
+        out: DataOutputStream,
+        geometry: ReplicatedPocketGeometry,
+        baseline: ShipPocketQueryFields?,
+    ) {
+        out.writeInt(geometry.minX)
+        out.writeInt(geometry.minY)
+        out.writeInt(geometry.minZ)
+        out.writeInt(geometry.sizeX)
+        out.writeInt(geometry.sizeY)
+        out.writeInt(geometry.sizeZ)
+        ShipPocketMaskCodec.write(out, geometry.open, baseline?.open)
+        ShipPocketMaskCodec.write(out, geometry.strictInterior, baseline?.strictInterior)
+        ShipPocketMaskCodec.write(out, geometry.simulationDomain, baseline?.simulationDomain)
+
+        out.writeInt(geometry.templateIds.size)
+        for (i in geometry.templateIds.indices) {
+            out.writeInt(geometry.templateIds[i])
+            val shape = geometry.templateGeometries[i]
+            out.writeBoolean(shape.fullSolid)
+            out.writeBoolean(shape.refined)
+            out.writeInt(shape.boxes.size)
+            for (box in shape.boxes) {
+                out.writeDouble(box.minX)
+                out.writeDouble(box.minY)
+                out.writeDouble(box.minZ)
+                out.writeDouble(box.maxX)
+                out.writeDouble(box.maxY)
+                out.writeDouble(box.maxZ)
+            }
+        }
+
+        val volume = geometry.sizeX * geometry.sizeY * geometry.sizeZ
+        writeIntRuns(out, geometry.templateIndexByVoxel, volume)
+        writeLongRuns(out, geometry.voxelExteriorComponentMask, volume)
+        writeLongRuns(out, geometry.voxelInteriorComponentMask, volume)
+        writeLongRuns(out, geometry.voxelSimulationComponentMask, volume)
+    }
+
+    private fun readGeometry(input: DataInputStream): ParsedPocketGeometry? {
+        val minX = input.readInt()
+        val minY = input.readInt()
+        val minZ = input.readInt()
+        val sizeX = input.readInt()
+        val sizeY = input.readInt()
+        val sizeZ = input.readInt()
+        if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0) return null
+        if (sizeX.toLong() * sizeY.toLong() * sizeZ.toLong() > MAX_VOLUME) return null
+        val volume = sizeX * sizeY * sizeZ
+        val open = ShipPocketMaskCodec.readPending(input) ?: return null
+        val strictInterior = ShipPocketMaskCodec.readPending(input) ?: return null
+        val simulationDomain = ShipPocketMaskCodec.readPending(input) ?: return null
+
+        val templateCount = input.readInt()
+        if (templateCount !in 0..MAX_TEMPLATES) return null
+        val templateIds = IntArray(templateCount)
+        val templateGeometries = ArrayList<ShapeWaterGeometry>(templateCount)
+        for (i in 0 until templateCount) {
+            templateIds[i] = input.readInt()
+            if (templateIds[i] !in 0 until MAX_TEMPLATES) return null
+            // Strictly ascending, as captured, so voxel entries can be checked by binary search.
+            if (i > 0 && templateIds[i] <= templateIds[i - 1]) return null
+            val fullSolid = input.readBoolean()
+            val refined = input.readBoolean()
+            val boxCount = input.readInt()
+            if (boxCount !in 0..MAX_TEMPLATE_BOXES) return null
+            val boxes = ArrayList<AABB>(boxCount)
+            for (b in 0 until boxCount) {
+                boxes.add(
+                    AABB(
+                        input.readDouble(),
+                        input.readDouble(),
+                        input.readDouble(),
+                        input.readDouble(),
+                        input.readDouble(),
+                        input.readDouble(),
+                    )
+                )
+            }
+            templateGeometries.add(ShapeWaterGeometry(fullSolid = fullSolid, refined = refined, boxes = boxes))
+        }
+        val templateIndexByVoxel = readIntRuns(input, volume) ?: return null
+        if (!usesOnlyListedTemplates(templateIndexByVoxel, templateIds)) return null
+
+        return ParsedPocketGeometry(
+            minX = minX,
+            minY = minY,
+            minZ = minZ,
+            sizeX = sizeX,
+            sizeY = sizeY,
+            sizeZ = sizeZ,
+            open = open,
+            strictInterior = strictInterior,
+            simulationDomain = simulationDomain,
+            templateIds = templateIds,
+            templateGeometries = templateGeometries,
+            templateIndexByVoxel = templateIndexByVoxel,
+            voxelExteriorComponentMask = readLongRuns(input, volume) ?: return null,
+            voxelInteriorComponentMask = readLongRuns(input, volume) ?: return null,
+            voxelSimulationComponentMask = readLongRuns(input, volume) ?: return null,
+        )
+    }
+
+    // applyReplicatedState maps every voxel's template id through the ids sent with the packet.
+    private fun usesOnlyListedTemplates(templateIndexByVoxel: IntArray, templateIds: IntArray): Boolean {
+        for (i in templateIndexByVoxel.indices) {
+            val id = templateIndexByVoxel[i]
+            if (i > 0 && id == templateIndexByVoxel[i - 1]) continue
+            if (templateIds.binarySearch(id) < 0) return false
+        }
+        return true
+    }
+
+    // An array that does not cover the whole volume goes as absent (run count 0) and reads back empty.
+    private fun writeIntRuns(out: DataOutputStream, values: IntArray, volume: Int) {
+        if (values.size != volume) {
+            out.writeInt(0)
+            return
+        }
+        var runs = 0
+        for (i in values.indices) if (i == 0 || values[i] != values[i - 1]) runs++
+        out.writeInt(runs)
+        var start = 0
+        while (start < volume) {
+            var end = start + 1
+            while (end < volume && values[end] == values[start]) end++
+            out.writeInt(end - start)
+            out.writeInt(values[start])
+            start = end
+        }
+    }
+
+    private fun writeLongRuns(out: DataOutputStream, values: LongArray, volume: Int) {
+        if (values.size != volume) {
+            out.writeInt(0)
+            return
+        }
+        var runs = 0
+        for (i in values.indices) if (i == 0 || values[i] != values[i - 1]) runs++
+        out.writeInt(runs)
+        var start = 0
+        while (start < volume) {
+            var end = start + 1
+            while (end < volume && values[end] == values[start]) end++
+            out.writeInt(end - start)
+            out.writeLong(values[start])
+            start = end
+        }
+    }
+
+    private fun readIntRuns(input: DataInputStream, volume: Int): IntArray? {
+        val runs = input.readInt()
+        if (runs == 0) return IntArray(0)
+        if (runs !in 1..volume) return null
+        val values = IntArray(volume)
+        var start = 0
+        for (r in 0 until runs) {
+            val length = input.readInt()
+            if (length !in 1..volume - start) return null
+            values.fill(input.readInt(), start, start + length)
+            start += length
+        }
+        return if (start == volume) values else null
+    }
+
+    private fun readLongRuns(input: DataInputStream, volume: Int): LongArray? {
+        val runs = input.readInt()
+        if (runs == 0) return LongArray(0)
+        if (runs !in 1..volume) return null
+        val values = LongArray(volume)
+        var start = 0
+        for (r in 0 until runs) {
+            val length = input.readInt()
+            if (length !in 1..volume - start) return null
+            values.fill(input.readLong(), start, start + length)
+            start += length
+        }
+        return if (start == volume) values else null
+    }
+}
+
+/**
+ * A replication packet as parsed by [ShipPocketReplicationCodec.parse]. Masks sent as deltas stay unresolved until
+ * [resolve] is handed the receiver's baseline, which is only an XOR per mask.
+ */
+internal class ParsedPocketPacket(
+    val shipId: Long,
+    private val geometryRevision: Long,
+    private val waterSolveGeneration: Long,
+    private val floodFluid: String,
+    private val geometry: ParsedPocketGeometry?,
+    private val materializedWater: ShipPocketMaskCodec.PendingMask,
+    private val waterReachable: ShipPocketMaskCodec.PendingMask,
+    private val unreachableVoid: ShipPocketMaskCodec.PendingMask,
+) {
+    /** Null when a delta was encoded against something other than [baseline]. */
+    fun resolve(baseline: ShipPocketQueryFields?): ReplicatedPocketState? {
+        val base = if (geometry == null) baseline else baseline?.takeIf { geometry.sharesBounds(it) }
+        return ReplicatedPocketState(
+            shipId = shipId,
+            geometryRevision = geometryRevision,
+            waterSolveGeneration = waterSolveGeneration,
+            floodFluid = floodFluid,
+            geometry = geometry?.let { it.resolve(base) ?: return null },
+            materializedWater = materializedWater.resolve(base?.materializedWater) ?: return null,
+            waterReachable = waterReachable.resolve(base?.waterReachable) ?: return null,
+            unreachableVoid = unreachableVoid.resolve(base?.unreachableVoid) ?: return null,
+        )
+    }
+}
+
+/** [ReplicatedPocketGeometry] with its masks not yet resolved against a baseline. */
+internal class ParsedPocketGeometry(
+    private val minX: Int,
+    private val minY: Int,
+    private val minZ: Int,
+    private val sizeX: Int,
+    private val sizeY: Int,
+    private val sizeZ: Int,
+    private val open: ShipPocketMaskCodec.PendingMask,
+    private val strictInterior: ShipPocketMaskCodec.PendingMask,
+    private val simulationDomain: ShipPocketMaskCodec.PendingMask,
+    private val templateIds: IntArray,
+    private val templateGeometries: List<ShapeWaterGeometry>,
+    private val templateIndexByVoxel: IntArray,
+    private val voxelExteriorComponentMask: LongArray,
+    private val voxelInteriorComponentMask: LongArray,
+    private val voxelSimulationComponentMask: LongArray,
+) {
+    fun sharesBounds(fields: ShipPocketQueryFields): Boolean {
+        return ShipPocketReplicationCodec.hasBounds(fields, minX, minY, minZ, sizeX, sizeY, sizeZ)
+    }
+
+    /** [baseline] must already be known to share these bounds. */
+    fun resolve(baseline: ShipPocketQueryFields?): ReplicatedPocketGeometry? {
+        return ReplicatedPocketGeometry(
+            minX = minX,
+            minY = minY,
+            minZ = minZ,
+            sizeX = sizeX,
+            sizeY = sizeY,
+            sizeZ = sizeZ,
+            open = open.resolve(baseline?.open) ?: return null,
+            strictInterior = strictInterior.resolve(baseline?.strictInterior) ?: return null,
+            simulationDomain = simulationDomain.resolve(baseline?.simulationDomain) ?: return null,
+            templateIds = templateIds,
+            templateGeometries = templateGeometries,
+            templateIndexByVoxel = templateIndexByVoxel,
+            voxelExteriorComponentMask = voxelExteriorComponentMask,
+            voxelInteriorComponentMask = voxelInteriorComponentMask,
+            voxelSimulationComponentMask = voxelSimulationComponentMask,
+        )
+    }
+}
+
+/** Snapshot of [view] for replication; the geometry half only when [includeGeometry]. */
+internal fun captureReplicatedState(
+    shipId: Long,
+    view: ShipPocketQueryView,
+    waterSolveGeneration: Long,
+    floodFluidId: String,
+    includeGeometry: Boolean,
+): ReplicatedPocketState {
+    return ReplicatedPocketState(
+        shipId = shipId,
+        geometryRevision = view.geometryRevision,
+        waterSolveGeneration = waterSolveGeneration,
+        floodFluid = floodFluidId,
+        geometry = if (includeGeometry) captureReplicatedGeometry(view) else null,
+        // View BitSets are never mutated, so they are encoded as-is.
+        materializedWater = view.materializedWater,
+        waterReachable = view.waterReachable,
+        unreachableVoid = view.unreachableVoid,
+    )
+}
+
+private fun captureReplicatedGeometry(view: ShipPocketQueryView): ReplicatedPocketGeometry {
+    val volume = view.sizeX * view.sizeY * view.sizeZ
+    val templateIndexByVoxel =
+        if (view.templateIndexByVoxel.size == volume && view.shapeTemplatePalette.isNotEmpty()) {
+            view.templateIndexByVoxel
+        } else {
+            IntArray(0)
+        }
+    val usedIds = IntOpenHashSet()
+    if (templateIndexByVoxel.isNotEmpty()) {
+        for (id in templateIndexByVoxel) usedIds.add(id)
+    }
+    val templateIds = usedIds.toIntArray().also { it.sort() }
+    return ReplicatedPocketGeometry(
+        minX = view.minX,
+        minY = view.minY,
+        minZ = view.minZ,
+        sizeX = view.sizeX,
+        sizeY = view.sizeY,
+        sizeZ = view.sizeZ,
+        open = view.open,
+        strictInterior = view.strictInterior,
+        simulationDomain = view.simulationDomain,
+        templateIds = templateIds,
+        templateGeometries = templateIds.map { view.shapeTemplatePalette[it].geometry },
+        templateIndexByVoxel = templateIndexByVoxel,
+        voxelExteriorComponentMask = view.voxelExteriorComponentMask,
+        voxelInteriorComponentMask = view.voxelInteriorComponentMask,
+        voxelSimulationComponentMask = view.voxelSimulationComponentMask,
+    )
+}
+
+/**
+ * Writes [replica] into a client-side [state] in place of a local solve. Template ids are re-resolved through this
+ * process's [ShapeTemplateRegistry]. Returns false, and leaves [state] alone, for a water update against geometry the
+ * client does not hold.
+ */
+internal fun applyReplicatedState(state: ShipPocketState, replica: ReplicatedPocketState, floodFluid: Fluid): Boolean {
+    val geometry = replica.geometry
+    if (geometry == null) {
+        if (!state.replicated || state.geometryRevision != replica.geometryRevision) return false
+    } else {
+        state.minX = geometry.minX
+        state.minY = geometry.minY
+        state.minZ = geometry.minZ
+        state.sizeX = geometry.sizeX
+        state.sizeY = geometry.sizeY
+        state.sizeZ = geometry.sizeZ
+        val volume = geometry.sizeX * geometry.sizeY * geometry.sizeZ
+        state.open = clampToVolume(geometry.open, volume)
+        state.strictInterior = clampToVolume(geometry.strictInterior, volume)
+        state.simulationDomain = clampToVolume(geometry.simulationDomain, volume)
+        state.interior = state.strictInterior.clone() as BitSet
+        state.exterior = BitSet()
+        state.outsideVoid = BitSet()
+        state.flooded = BitSet()
+        state.faceCondXP = ShortArray(0)
+        state.faceCondYP = ShortArray(0)
+        state.faceCondZP = ShortArray(0)
+
+        var identity = true
+        var maxId = -1
+        for (id in geometry.templateIds) maxId = maxOf(maxId, id)
+        val mapping = IntArray(maxId + 1)
+        for (i in geometry.templateIds.indices) {
+            val local = ShapeTemplateRegistry.templateIdForGeometry(geometry.templateGeometries[i])
+            mapping[geometry.templateIds[i]] = local
+            if (local != geometry.templateIds[i]) identity = false
+        }
+        val templates = geometry.templateIndexByVoxel
+        state.templateIndexByVoxel = if (identity || templates.isEmpty()) {
+            templates
+        } else {
+            IntArray(templates.size) { mapping[templates[it]] }
+        }
+        state.shapeTemplatePalette = if (templates.isEmpty()) emptyList() else ShapeTemplateRegistry.palette()
+        state.voxelExteriorComponentMask = geometry.voxelExteriorComponentMask
+        state.voxelInteriorComponentMask = geometry.voxelInteriorComponentMask
+        state.voxelSimulationComponentMask = geometry.voxelSimulationComponentMask
+        state.componentGraphDegraded = false
+        state.geometryBlockStates = emptyArray()
+        state.floodPlaneByComponent.clear()
+        state.geometryRevision = replica.geometryRevision
+    }
+
+    val volume = state.sizeX * state.sizeY * state.sizeZ
+    state.floodFluid = floodFluid
+    state.materializedWater = clampToVolume(replica.materializedWater, volume)
+    state.waterReachable = clampToVolume(replica.waterReachable, volume)
+    state.unreachableVoid = clampToVolume(replica.unreachableVoid, volume)
+    state.appliedWaterSolveGeneration = replica.waterSolveGeneration
+    state.replicated = true
+    state.dirty = false
+    state.geometryFullRebuildRequested = false
+    state.geometryDirtyPositions.clear()
+    return true
+}
+
+private fun clampToVolume(bits: BitSet, volume: Int): BitSet {
+    if (bits.length() > volume) bits.clear(volume, bits.length())
+    return bits
+}
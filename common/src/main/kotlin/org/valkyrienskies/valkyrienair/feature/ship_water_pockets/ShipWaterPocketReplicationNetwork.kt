@@ -0,0 +1,275 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import dev.architectury.networking.NetworkManager
+import io.netty.buffer.Unpooled
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongArrayList
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import net.minecraft.core.registries.BuiltInRegistries
+import net.minecraft.network.FriendlyByteBuf
+import net.minecraft.resources.ResourceLocation
+import net.minecraft.server.level.ServerLevel
+import net.minecraft.server.level.ServerPlayer
+import net.minecraft.world.level.Level
+import org.valkyrienskies.mod.common.shipObjectWorld
+import org.valkyrienskies.valkyrienair.ValkyrienAirMod
+import org.valkyrienskies.valkyrienair.config.ValkyrienAirConfig
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Server-to-client replication of applied pocket state, so clients apply the server's masks instead of re-running the
+ * geometry and water solves for every loaded ship.
+ *
+ * Clients subscribe per loaded ship. The server answers a subscription with a full snapshot; afterwards, whenever the
+ * ship's published [ShipPocketQueryView] differs from the one a player last received, it sends either a full snapshot
+ * (geometry changed) or just the water masks. Masks are sent as deltas against that last-received view, which the
+ * client still holds as its applied state, so a water update costs bytes in proportion to what changed. A ship whose
+ * snapshot would not fit in one packet is declined and the client keeps solving it locally. So is a subscription the
+ * server won't hold: a ship not loaded in the player's level or out of their view distance, or one past the per-player
+ * cap.
+ */
+internal object ShipPocketReplication {
+    private val STATE_PACKET = ResourceLocation(ValkyrienAirMod.MOD_ID, "ship_pocket_state")
+    private val INTEREST_PACKET = ResourceLocation(ValkyrienAirMod.MOD_ID, "ship_pocket_interest")
+
+    private const val KIND_STATE = 0
+    private const val KIND_DECLINED = 1
+
+    // Below the vanilla 1 MiB custom-payload limit, leaving room for the packet header.
+    private const val MAX_PACKET_BYTES = 1_000_000
+    private const val MAX_INTEREST_IDS = 4096
+    private const val MAX_SUBSCRIPTIONS_PER_PLAYER = 512
+
+    // Server thread: per player, the subscribed ships and the view each one last received (null = nothing sent yet).
+    private val subscriptions = HashMap<UUID, Long2ObjectOpenHashMap<ShipPocketQueryView?>>()
+
+    // Client thread.
+    private var clientLevel: Level? = null
+    private val clientSubscribed = LongOpenHashSet()
+    private val clientDeclined = LongOpenHashSet()
+    private val pendingSubscribe = LongArrayList()
+    private val pendingRelease = LongArrayList()
+
+    private val fullSends = AtomicLong(0)
+    private val waterSends = AtomicLong(0)
+    private val declinedSends = AtomicLong(0)
+    private val bytesSent = AtomicLong(0)
+
+    fun registerCommon() {
+        NetworkManager.registerReceiver(NetworkManager.Side.C2S, INTEREST_PACKET) { buf, context ->
+            val subscribe = readShipIds(buf)
+            val release = readShipIds(buf)
+            context.queue {
+                val player = context.player as? ServerPlayer ?: return@queue
+                val ships = subscriptions.computeIfAbsent(player.uuid) { Long2ObjectOpenHashMap() }
+                for (shipId in release) ships.remove(shipId)
+                for (shipId in subscribe) {
+                    if (!ships.containsKey(shipId) &&
+                        (ships.size >= MAX_SUBSCRIPTIONS_PER_PLAYER || !isShipInRange(player, shipId))
+                    ) {
+                        sendDeclined(player, shipId)
+                        continue
+                    }
+                    // A (re)subscription is always answered with a full snapshot.
+                    ships.put(shipId, null)
+                }
+            }
+        }
+    }
+
+    fun registerClient() {
+        NetworkManager.registerReceiver(NetworkManager.Side.S2C, STATE_PACKET) { buf, context ->
+            if (buf.readByte().toInt() == KIND_DECLINED) {
+                val shipId = buf.readLong()
+                context.queue { clientDeclined.add(shipId) }
+                return@registerReceiver
+            }
+            // Inflated and parsed here on the network thread. Deltas are only resolved on the client thread, against
+            // the applied state that thread sees in packet order.
+            val packet = ShipPocketReplicationCodec.parse(buf.readByteArray()) ?: return@registerReceiver
+            context.queue {
+                val level = context.player?.level() ?: return@queue
+                val replica = packet.resolve(ShipWaterPocketManager.replicatedClientBaseline(level, packet.shipId))
+                if (replica == null || !ShipWaterPocketManager.applyReplicatedClientState(level, replica)) {
+                    // Delta or water update for state we no longer hold; ask for a full snapshot.
+                    clientSubscribed.add(packet.shipId)
+                    pendingSubscribe.add(packet.shipId)
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends [state]'s published view to every subscribed player in [level] whose copy is out of date. Returns whether
+     * anything was encoded. A skipped call loses nothing: the players' last-received views stay behind, so the next
+     * call sends the then-current view.
+     */
+    fun syncShip(level: ServerLevel, shipId: Long, state: ShipPocketState): Boolean {
+        if (subscriptions.isEmpty()) return false
+        val view = state.queryView ?: return false
+        if (view.sizeX <= 0 || view.sizeY <= 0 || view.sizeZ <= 0) return false
+
+        // Players that last received the same view get the same delta, so packets are shared per baseline.
+        var fullPackets: HashMap<ShipPocketQueryView?, ByteArray>? = null
+        var waterPackets: HashMap<ShipPocketQueryView?, ByteArray>? = null
+        for (player in level.players()) {
+            val ships = subscriptions[player.uuid] ?: continue
+            if (!ships.containsKey(shipId)) continue
+            val last = ships.get(shipId)
+            val full = last == null || !sameGeometry(last, view)
+            if (!full && sameWater(last!!, view)) continue
+
+            val packets = if (full) {
+                fullPackets ?: HashMap<ShipPocketQueryView?, ByteArray>().also { fullPackets = it }
+            } else {
+                waterPackets ?: HashMap<ShipPocketQueryView?, ByteArray>().also { waterPackets = it }
+            }
+            val packet = packets.getOrPut(last) { encode(shipId, state, view, last, includeGeometry = full) }
+            if (send(player, shipId, packet)) {
+                (if (full) fullSends else waterSends).incrementAndGet()
+                ships.put(shipId, view)
+            } else {
+                ships.remove(shipId)
+            }
+        }
+        return fullPackets != null || waterPackets != null
+    }
+
+    /** Drops the subscriptions of players who left the server. */
+    fun pruneDisconnected(level: ServerLevel) {
+        if (subscriptions.isEmpty()) return
+        val playerList = level.server.playerList
+        subscriptions.keys.removeIf { playerList.getPlayer(it) == null }
+    }
+
+    /** Whether the client should take [level]'s pocket state from the server rather than solve it. */
+    fun isClientActive(level: Level): Boolean {
+        if (level !== clientLevel) {
+            // New world or dimension: start over, re-subscribing every ship we see.
+            clientLevel = level
+            clientSubscribed.clear()
+            clientDeclined.clear()
+            pendingSubscribe.clear()
+            pendingRelease.clear()
+        }
+        return ValkyrienAirConfig.shipPocketServerReplication && NetworkManager.canServerReceive(INTEREST_PACKET)
+    }
+
+    fun isClientDeclined(shipId: Long): Boolean = clientDeclined.contains(shipId)
+
+    fun subscribeClient(shipId: Long) {
+        if (clientSubscribed.add(shipId)) pendingSubscribe.add(shipId)
+    }
+
+    fun releaseClient(shipId: Long) {
+        clientDeclined.remove(shipId)
+        if (clientSubscribed.remove(shipId)) pendingRelease.add(shipId)
+    }
+
+    /** Sends this tick's subscription changes, if any. */
+    fun flushClient() {
+        if (pendingSubscribe.isEmpty && pendingRelease.isEmpty) return
+        if (NetworkManager.canServerReceive(INTEREST_PACKET)) {
+            val buf = FriendlyByteBuf(Unpooled.buffer())
+            writeShipIds(buf, pendingSubscribe)
+            writeShipIds(buf, pendingRelease)
+            NetworkManager.sendToServer(INTEREST_PACKET, buf)
+        }
+        pendingSubscribe.clear()
+        pendingRelease.clear()
+    }
+
+    private fun sameGeometry(a: ShipPocketQueryView, b: ShipPocketQueryView): Boolean {
+        // Views share unchanged fields by reference, so identity is the cheap and exact test here.
+        return a.geometryRevision == b.geometryRevision &&
+            a.minX == b.minX && a.minY == b.minY && a.minZ == b.minZ &&
+            a.sizeX == b.sizeX && a.sizeY == b.sizeY && a.sizeZ == b.sizeZ &&
+            a.open === b.open &&
+            a.strictInterior === b.strictInterior &&
+            a.simulationDomain === b.simulationDomain &&
+            a.templateIndexByVoxel === b.templateIndexByVoxel &&
+            a.voxelExteriorComponentMask === b.voxelExteriorComponentMask &&
+            a.voxelInteriorComponentMask === b.voxelInteriorComponentMask &&
+            a.voxelSimulationComponentMask === b.voxelSimulationComponentMask
+    }
+
+    private fun sameWater(a: ShipPocketQueryView, b: ShipPocketQueryView): Boolean {
+        return a.floodFluid == b.floodFluid &&
+            a.materializedWater === b.materializedWater &&
+            a.waterReachable === b.waterReachable &&
+            a.unreachableVoid === b.unreachableVoid
+    }
+
+    private fun encode(
+        shipId: Long,
+        state: ShipPocketState,
+        view: ShipPocketQueryView,
+        baseline: ShipPocketQueryView?,
+        includeGeometry: Boolean,
+    ): ByteArray {
+        val replica = captureReplicatedState(
+            shipId = shipId,
+            view = view,
+            waterSolveGeneration = state.appliedWaterSolveGeneration,
+            floodFluidId = BuiltInRegistries.FLUID.getKey(view.floodFluid).toString(),
+            includeGeometry = includeGeometry,
+        )
+        return ShipPocketReplicationCodec.encode(replica, baseline)
+    }
+
+    /** Whether [shipId] is loaded in [player]'s level and within the server view distance of them. */
+    private fun isShipInRange(player: ServerPlayer, shipId: Long): Boolean {
+        val level = player.serverLevel()
+        val aabb = level.shipObjectWorld.loadedShips.getById(shipId)?.worldAABB ?: return false
+        val range = (level.server.playerList.viewDistance + 1) * 16.0
+        val dx = maxOf(aabb.minX() - player.x, player.x - aabb.maxX(), 0.0)
+        val dz = maxOf(aabb.minZ() - player.z, player.z - aabb.maxZ(), 0.0)
+        return dx <= range && dz <= range
+    }
+
+    /** Returns false when the packet was too large and the ship was declined instead. */
+    private fun send(player: ServerPlayer, shipId: Long, packet: ByteArray): Boolean {
+        if (packet.size > MAX_PACKET_BYTES) {
+            sendDeclined(player, shipId)
+            return false
+        }
+        val buf = FriendlyByteBuf(Unpooled.buffer())
+        buf.writeByte(KIND_STATE)
+        buf.writeByteArray(packet)
+        bytesSent.addAndGet(packet.size.toLong())
+        NetworkManager.sendToPlayer(player, STATE_PACKET, buf)
+        return true
+    }
+
+    private fun sendDeclined(player: ServerPlayer, shipId: Long) {
+        val buf = FriendlyByteBuf(Unpooled.buffer())
+        buf.writeByte(KIND_DECLINED)
+        buf.writeLong(shipId)
+        declinedSends.incrementAndGet()
+        NetworkManager.sendToPlayer(player, STATE_PACKET, buf)
+    }
+
+    private fun writeShipIds(buf: FriendlyByteBuf, ids: LongArrayList) {
+        buf.writeVarInt(ids.size)
+        for (i in 0 until ids.size) buf.writeLong(ids.getLong(i))
+    }
+
+    private fun readShipIds(buf: FriendlyByteBuf): LongArray {
+        val count = buf.readVarInt()
+        if (count !in 0..MAX_INTEREST_IDS) return LongArray(0)
+        return LongArray(count) { buf.readLong() }
+    }
+
+    @JvmStatic
+    fun fullSends(): Long = fullSends.get()
+
+    @JvmStatic
+    fun waterSends(): Long = waterSends.get()
+
+    @JvmStatic
+    fun declinedSends(): Long = declinedSends.get()
+
+    @JvmStatic
+    fun bytesSent(): Long = bytesSent.get()
+}
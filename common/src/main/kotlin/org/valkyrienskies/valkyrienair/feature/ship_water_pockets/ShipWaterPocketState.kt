@@ -1,47 +1,55 @@
 package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
 
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
 import net.minecraft.core.Direction
+import net.minecraft.world.level.block.state.BlockState
 import net.minecraft.world.level.material.Fluid
 import net.minecraft.world.level.material.Fluids
 import java.util.BitSet
 import java.util.concurrent.CompletableFuture
 
 internal data class ShipPocketState(
-    var minX: Int = 0,
-    var minY: Int = 0,
-    var minZ: Int = 0,
-    var sizeX: Int = 0,
-    var sizeY: Int = 0,
-    var sizeZ: Int = 0,
-    var open: BitSet = BitSet(),
+    override var minX: Int = 0,
+    override var minY: Int = 0,
+    override var minZ: Int = 0,
+    override var sizeX: Int = 0,
+    override var sizeY: Int = 0,
+    override var sizeZ: Int = 0,
+    override var open: BitSet = BitSet(),
     var exterior: BitSet = BitSet(),
     // Boundary-connected open space that is *not* in the simulation domain.
     // Used to qualify real outside openings for inlets/vents, and to prevent "through-domain" false holes.
     var outsideVoid: BitSet = BitSet(),
     // Strict component-derived interior (no heuristic promotion).
-    var strictInterior: BitSet = BitSet(),
+    override var strictInterior: BitSet = BitSet(),
     // Flood/suppression gameplay domain. Can include promoted leaky-pocket cells.
-    var simulationDomain: BitSet = BitSet(),
+    override var simulationDomain: BitSet = BitSet(),
     var interior: BitSet = BitSet(),
-    var floodFluid: Fluid = Fluids.WATER,
+    override var floodFluid: Fluid = Fluids.WATER,
     var flooded: BitSet = BitSet(),
-    var materializedWater: BitSet = BitSet(),
-    var waterReachable: BitSet = BitSet(),
-    var unreachableVoid: BitSet = BitSet(),
+    override var materializedWater: BitSet = BitSet(),
+    override var waterReachable: BitSet = BitSet(),
+    override var unreachableVoid: BitSet = BitSet(),
     // Face conductance masks (shape-aware connectivity), stored on positive axes only.
     var faceCondXP: ShortArray = ShortArray(0),
     var faceCondYP: ShortArray = ShortArray(0),
     var faceCondZP: ShortArray = ShortArray(0),
-    var shapeTemplatePalette: List<ShapeCellTemplate> = emptyList(),
-    var templateIndexByVoxel: IntArray = IntArray(0),
-    var voxelExteriorComponentMask: LongArray = LongArray(0),
-    var voxelInteriorComponentMask: LongArray = LongArray(0),
-    var voxelSimulationComponentMask: LongArray = LongArray(0),
+    override var shapeTemplatePalette: List<ShapeCellTemplate> = emptyList(),
+    override var templateIndexByVoxel: IntArray = IntArray(0),
+    override var voxelExteriorComponentMask: LongArray = LongArray(0),
+    override var voxelInteriorComponentMask: LongArray = LongArray(0),
+    override var voxelSimulationComponentMask: LongArray = LongArray(0),
     var componentGraphDegraded: Boolean = false,
+    // Block states captured by the last applied geometry; base for incremental patches.
+    var geometryBlockStates: Array<BlockState> = emptyArray(),
+    // Shipyard positions (BlockPos.asLong) changed since the last geometry submission.
+    var geometryDirtyPositions: LongOpenHashSet = LongOpenHashSet(),
+    // Set when a change can't be expressed as dirty positions (bounds, fluid type, failed jobs, ...).
+    var geometryFullRebuildRequested: Boolean = true,
     var buoyancy: BuoyancyMetrics = BuoyancyMetrics(),
     var floodPlaneByComponent: Int2DoubleOpenHashMap = Int2DoubleOpenHashMap(),
-    var geometryRevision: Long = 0,
+    override var geometryRevision: Long = 0,
     var geometrySignature: Long = 0L,
     var geometryInvalidationStamp: Long = 0,
     var pendingGeometryFuture: CompletableFuture<GeometryAsyncResult>? = null,
@@ -54,6 +62,13 @@ internal data class ShipPocketState(
     var requestedWaterSolveGeneration: Long = 0,
     var appliedWaterSolveGeneration: Long = 0,
     var lastWaterSolveSubmitTick: Long = Long.MIN_VALUE,
+    // geometryRevision the in-flight water solve was captured against.
+    var pendingWaterSolveGeometryRevision: Long = 0,
+    // waterSolveInputKey of the in-flight water solve, and of the last applied one (0 until a solve applies).
+    var pendingWaterSolveInputKey: Long = 0L,
+    var appliedWaterSolveInputKey: Long = 0L,
+    // Set while the solve inputs still match appliedWaterSolveInputKey; no solve is captured until one changes.
+    var waterSolveSleeping: Boolean = false,
     var lastWaterSolveApplyTick: Long = Long.MIN_VALUE,
     var consecutiveWaterSolveDiscards: Int = 0,
     var waterSolveJobInFlight: Boolean = false,
@@ -69,15 +84,37 @@ internal data class ShipPocketState(
     var persistDirty: Boolean = true,
     var restoredFromPersistence: Boolean = false,
     var awaitingGeometryValidation: Boolean = false,
+    // Client only: masks come from the server's replication packets, so nothing is solved locally.
+    var replicated: Boolean = false,
     var lastPersistFlushTick: Long = Long.MIN_VALUE,
     var lastFloodUpdateTick: Long = Long.MIN_VALUE,
     var lastWaterReachableUpdateTick: Long = Long.MIN_VALUE,
     var lastMaterializedResyncTick: Long = Long.MIN_VALUE,
+    // Voxel indices whose shipyard block changed since the last materialized-fluid resync.
+    var materializedResyncCells: BitSet = BitSet(),
+    // Next open-cell index of the budgeted materialized consistency sweep, or -1 while idle.
+    var materializedSweepCursor: Int = -1,
+    var lastMaterializedSweepCompleteTick: Long = Long.MIN_VALUE,
+    // Per-stage EWMA of measured server-thread cost, indexed by ShipPocketTickStage.ordinal.
+    var tickStageCostNanos: LongArray = LongArray(ShipPocketTickStage.entries.size),
     // Ship "gravity" for shipyard fluids is discrete (one of the 6 directions). When it changes due to ship
     // rotation, vanilla fluids won't tick automatically; schedule a budgeted wave of fluid ticks so they resettle.
     var lastGravityDownDir: Direction? = null,
     var pendingGravityResettleNextIdx: Int = -1,
-)
+    // Bumped whenever an input of the world-position queries changes (geometry, domain, unreachable or materialized).
+    override var queryRevision: Long = 0,
+    // Bumped on every shipyard block change inside the bounds; ship-fluid answers memoized around this ship key on it.
+    var shipyardFluidRevision: Long = 0,
+    // Immutable snapshot of the query fields for readers on any thread; swapped whole, never mutated.
+    @Volatile var queryView: ShipPocketQueryView? = null,
+    // transformKey mixed with queryRevision as of the last tick; the raster is only built once this holds still.
+    var worldRasterSettleKey: Long = 0L,
+    // Cells the water-solve snapshot always samples (see computeSubmergenceShell), and the open/interior masks they
+    // were computed from; geometry applies replace those masks, which retires the shell.
+    var submergenceShell: BitSet? = null,
+    var submergenceShellOpen: BitSet? = null,
+    var submergenceShellInterior: BitSet? = null,
+) : ShipPocketQueryFields
 
 internal data class BuoyancyMetrics(
     var submergedAirVolume: Double = 0.0,
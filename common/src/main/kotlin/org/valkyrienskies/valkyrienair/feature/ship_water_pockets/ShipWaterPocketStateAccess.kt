@@ -19,12 +19,65 @@ internal data class PointVoidClassification(
     val localComponent: Int = -1,
 )
 
+private val POINT_VOID_CLASSES = PointVoidClass.entries.toTypedArray()
+
+/**
+ * A [PointVoidClassification] packed into a long so the world-position query paths allocate nothing: kind ordinal in
+ * bits 0-1, local component + 1 in bits 2-8 and the voxel index in the high 32 bits.
+ */
+@JvmInline
+internal value class PackedPointClassification(val bits: Long) {
+    val kind: PointVoidClass
+        get() = POINT_VOID_CLASSES[(bits and 0x3L).toInt()]
+
+    val voxelIndex: Int
+        get() = (bits ushr 32).toInt()
+
+    val localComponent: Int
+        get() = ((bits ushr 2) and 0x7FL).toInt() - 1
+
+    val isVoid: Boolean
+        get() = kind == PointVoidClass.INTERIOR_VOID || kind == PointVoidClass.EXTERIOR_VOID
+
+    /** Writes the classified voxel's shipyard position to [out]; no-op for [PointVoidClass.OUT_OF_BOUNDS]. */
+    fun voxelPos(state: ShipPocketQueryFields, out: BlockPos.MutableBlockPos) {
+        if (kind != PointVoidClass.OUT_OF_BOUNDS) posFromIndex(state, voxelIndex, out)
+    }
+
+    fun unpack(state: ShipPocketQueryFields): PointVoidClassification {
+        val idx = voxelIndex
+        if (idx < 0) return PointVoidClassification(kind = kind)
+        val lx = idx % state.sizeX
+        val t = idx / state.sizeX
+        return PointVoidClassification(
+            kind = kind,
+            voxelIndex = idx,
+            voxelX = state.minX + lx,
+            voxelY = state.minY + t % state.sizeY,
+            voxelZ = state.minZ + t / state.sizeY,
+            localComponent = localComponent,
+        )
+    }
+
+    companion object {
+        val OUT_OF_BOUNDS = of(PointVoidClass.OUT_OF_BOUNDS, -1)
+
+        fun of(kind: PointVoidClass, voxelIndex: Int, localComponent: Int = -1): PackedPointClassification {
+            return PackedPointClassification(
+                (voxelIndex.toLong() shl 32) or
+                    (((localComponent + 1).toLong() and 0x7FL) shl 2) or
+                    kind.ordinal.toLong()
+            )
+        }
+    }
+}
+
 private const val POINT_CLASSIFY_EPS = 1e-5
 
-internal fun indexOf(state: ShipPocketState, lx: Int, ly: Int, lz: Int): Int =
+internal fun indexOf(state: ShipPocketQueryFields, lx: Int, ly: Int, lz: Int): Int =
     lx + state.sizeX * (ly + state.sizeY * lz)
 
-internal fun isBoundaryShellIndex(state: ShipPocketState, idx: Int): Boolean {
+internal fun isBoundaryShellIndex(state: ShipPocketQueryFields, idx: Int): Boolean {
     val volume = state.sizeX * state.sizeY * state.sizeZ
     if (idx !in 0 until volume) return false
     val sx = state.sizeX
@@ -38,7 +91,7 @@ internal fun isBoundaryShellIndex(state: ShipPocketState, idx: Int): Boolean {
         lz == 0 || lz + 1 == state.sizeZ
 }
 
-internal fun shouldPreventExteriorWaterlogging(state: ShipPocketState, idx: Int): Boolean {
+internal fun shouldPreventExteriorWaterlogging(state: ShipPocketQueryFields, idx: Int): Boolean {
     val volume = state.sizeX * state.sizeY * state.sizeZ
     if (idx !in 0 until volume) return false
     if (!state.open.get(idx)) return false
@@ -47,7 +100,7 @@ internal fun shouldPreventExteriorWaterlogging(state: ShipPocketState, idx: Int)
     return !state.simulationDomain.get(idx)
 }
 
-internal fun simulationComponentMaskAt(state: ShipPocketState, idx: Int): Long {
+internal fun simulationComponentMaskAt(state: ShipPocketQueryFields, idx: Int): Long {
     if (idx < 0) return 0L
     if (idx < state.voxelSimulationComponentMask.size) {
         val direct = state.voxelSimulationComponentMask[idx]
@@ -71,21 +124,27 @@ internal fun simulationComponentMaskAt(state: ShipPocketState, idx: Int): Long {
 }
 
 internal fun isClassificationInSimulationDomain(
-    state: ShipPocketState,
+    state: ShipPocketQueryFields,
     classification: PointVoidClassification,
-): Boolean {
-    val idx = classification.voxelIndex
+): Boolean = isInSimulationDomain(state, classification.voxelIndex, classification.localComponent)
+
+internal fun isClassificationInSimulationDomain(
+    state: ShipPocketQueryFields,
+    classification: PackedPointClassification,
+): Boolean = isInSimulationDomain(state, classification.voxelIndex, classification.localComponent)
+
+private fun isInSimulationDomain(state: ShipPocketQueryFields, idx: Int, localComponent: Int): Boolean {
     if (idx < 0) return false
     if (!state.open.get(idx)) return false
 
-    if (classification.localComponent >= 0) {
+    if (localComponent >= 0) {
         val simMask = simulationComponentMaskAt(state, idx)
-        return ((simMask ushr classification.localComponent) and 1L) != 0L
+        return ((simMask ushr localComponent) and 1L) != 0L
     }
     return state.simulationDomain.get(idx)
 }
 
-internal fun posFromIndex(state: ShipPocketState, idx: Int, out: BlockPos.MutableBlockPos): BlockPos.MutableBlockPos {
+internal fun posFromIndex(state: ShipPocketQueryFields, idx: Int, out: BlockPos.MutableBlockPos): BlockPos.MutableBlockPos {
     val sx = state.sizeX
     val sy = state.sizeY
     val lx = idx % sx
@@ -110,7 +169,7 @@ internal fun edgeConductance(state: ShipPocketState, idx: Int, lx: Int, ly: Int,
 }
 
 internal fun computeFilteredFaceConductance(
-    state: ShipPocketState,
+    state: ShipPocketQueryFields,
     idxA: Int,
     idxB: Int,
     dirCode: Int,
@@ -147,12 +206,23 @@ internal fun computeFilteredFaceConductance(
 }
 
 internal fun classifyShipPoint(
-    state: ShipPocketState,
+    state: ShipPocketQueryFields,
     x: Double,
     y: Double,
     z: Double,
     out: BlockPos.MutableBlockPos? = null,
 ): PointVoidClassification {
+    val packed = classifyShipPointPacked(state, x, y, z)
+    if (out != null) packed.voxelPos(state, out)
+    return packed.unpack(state)
+}
+
+internal fun classifyShipPointPacked(
+    state: ShipPocketQueryFields,
+    x: Double,
+    y: Double,
+    z: Double,
+): PackedPointClassification {
     val voxelX = Mth.floor(x)
     val voxelY = Mth.floor(y)
     val voxelZ = Mth.floor(z)
@@ -161,10 +231,9 @@ internal fun classifyShipPoint(
     val ly = voxelY - state.minY
     val lz = voxelZ - state.minZ
     if (lx !in 0 until state.sizeX || ly !in 0 until state.sizeY || lz !in 0 until state.sizeZ) {
-        return PointVoidClassification(kind = PointVoidClass.OUT_OF_BOUNDS)
+        return PackedPointClassification.OUT_OF_BOUNDS
     }
 
-    out?.set(voxelX, voxelY, voxelZ)
     val idx = indexOf(state, lx, ly, lz)
 
     val templateIndices = state.templateIndexByVoxel
@@ -174,13 +243,7 @@ internal fun classifyShipPoint(
         if (templateIdx in templates.indices) {
             val template = templates[templateIdx]
             if (template.componentCount <= 0) {
-                return PointVoidClassification(
-                    kind = PointVoidClass.SOLID,
-                    voxelIndex = idx,
-                    voxelX = voxelX,
-                    voxelY = voxelY,
-                    voxelZ = voxelZ,
-                )
+                return PackedPointClassification.of(PointVoidClass.SOLID, idx)
             }
 
             val fx = (x - voxelX.toDouble()).coerceIn(0.0, 0.999999999)
@@ -194,106 +257,87 @@ internal fun classifyShipPoint(
 
             val component = template.componentBySubcell[subIdx].toInt()
             if (component < 0) {
-                return PointVoidClassification(
-                    kind = PointVoidClass.SOLID,
-                    voxelIndex = idx,
-                    voxelX = voxelX,
-                    voxelY = voxelY,
-                    voxelZ = voxelZ,
-                )
+                return PackedPointClassification.of(PointVoidClass.SOLID, idx)
             }
 
             val interiorMask = if (idx < state.voxelInteriorComponentMask.size) state.voxelInteriorComponentMask[idx] else 0L
             if (((interiorMask ushr component) and 1L) != 0L) {
-                return PointVoidClassification(
-                    kind = PointVoidClass.INTERIOR_VOID,
-                    voxelIndex = idx,
-                    voxelX = voxelX,
-                    voxelY = voxelY,
-                    voxelZ = voxelZ,
-                    localComponent = component,
-                )
+                return PackedPointClassification.of(PointVoidClass.INTERIOR_VOID, idx, component)
             }
 
             val exteriorMask = if (idx < state.voxelExteriorComponentMask.size) state.voxelExteriorComponentMask[idx] else 0L
             if (((exteriorMask ushr component) and 1L) != 0L) {
-                return PointVoidClassification(
-                    kind = PointVoidClass.EXTERIOR_VOID,
-                    voxelIndex = idx,
-                    voxelX = voxelX,
-                    voxelY = voxelY,
-                    voxelZ = voxelZ,
-                    localComponent = component,
-                )
+                return PackedPointClassification.of(PointVoidClass.EXTERIOR_VOID, idx, component)
             }
 
             if (state.open.get(idx)) {
                 val fallbackKind = if (state.strictInterior.get(idx)) PointVoidClass.INTERIOR_VOID else PointVoidClass.EXTERIOR_VOID
-                return PointVoidClassification(
-                    kind = fallbackKind,
-                    voxelIndex = idx,
-                    voxelX = voxelX,
-                    voxelY = voxelY,
-                    voxelZ = voxelZ,
-                    localComponent = component,
-                )
+                return PackedPointClassification.of(fallbackKind, idx, component)
             }
         }
     }
 
     if (!state.open.get(idx)) {
-        return PointVoidClassification(
-            kind = PointVoidClass.SOLID,
-            voxelIndex = idx,
-            voxelX = voxelX,
-            voxelY = voxelY,
-            voxelZ = voxelZ,
-        )
+        return PackedPointClassification.of(PointVoidClass.SOLID, idx)
     }
 
-    return PointVoidClassification(
-        kind = if (state.strictInterior.get(idx)) PointVoidClass.INTERIOR_VOID else PointVoidClass.EXTERIOR_VOID,
-        voxelIndex = idx,
-        voxelX = voxelX,
-        voxelY = voxelY,
-        voxelZ = voxelZ,
-        localComponent = 0,
+    return PackedPointClassification.of(
+        if (state.strictInterior.get(idx)) PointVoidClass.INTERIOR_VOID else PointVoidClass.EXTERIOR_VOID,
+        idx,
+        0,
     )
 }
 
 internal fun classifyShipPointWithEpsilon(
-    state: ShipPocketState,
+    state: ShipPocketQueryFields,
     x: Double,
     y: Double,
     z: Double,
     out: BlockPos.MutableBlockPos? = null,
 ): PointVoidClassification {
-    val base = classifyShipPoint(state, x, y, z, out)
-    if (base.kind == PointVoidClass.INTERIOR_VOID || base.kind == PointVoidClass.EXTERIOR_VOID) {
-        return base
-    }
+    val packed = classifyShipPointWithEpsilonPacked(state, x, y, z)
+    if (out != null) packed.voxelPos(state, out)
+    return packed.unpack(state)
+}
+
+/**
+ * [classifyShipPointPacked], but a point that lands in solid or out of bounds is nudged by +-[POINT_CLASSIFY_EPS] on
+ * each axis: an interior hit wins, else the first exterior hit, else the original result.
+ */
+internal fun classifyShipPointWithEpsilonPacked(
+    state: ShipPocketQueryFields,
+    x: Double,
+    y: Double,
+    z: Double,
+): PackedPointClassification {
+    val base = classifyShipPointPacked(state, x, y, z)
+    if (base.isVoid) return base
 
-    var bestExterior: PointVoidClassification? = null
+    var bestExterior = base
+    var foundExterior = false
     val eps = POINT_CLASSIFY_EPS
-    for (dx in doubleArrayOf(-eps, 0.0, eps)) {
-        for (dy in doubleArrayOf(-eps, 0.0, eps)) {
-            for (dz in doubleArrayOf(-eps, 0.0, eps)) {
-                if (dx == 0.0 && dy == 0.0 && dz == 0.0) continue
-                val candidate = classifyShipPoint(state, x + dx, y + dy, z + dz, out)
+    for (dxi in -1..1) {
+        for (dyi in -1..1) {
+            for (dzi in -1..1) {
+                if (dxi == 0 && dyi == 0 && dzi == 0) continue
+                val candidate = classifyShipPointPacked(state, x + dxi * eps, y + dyi * eps, z + dzi * eps)
                 when (candidate.kind) {
                     PointVoidClass.INTERIOR_VOID -> return candidate
-                    PointVoidClass.EXTERIOR_VOID -> if (bestExterior == null) bestExterior = candidate
+                    PointVoidClass.EXTERIOR_VOID -> if (!foundExterior) {
+                        bestExterior = candidate
+                        foundExterior = true
+                    }
                     else -> Unit
                 }
             }
         }
     }
 
-    return bestExterior ?: base
+    return bestExterior
 }
 
 internal fun isOpenAtShipPoint(
-    state: ShipPocketState,
+    state: ShipPocketQueryFields,
     x: Double,
     y: Double,
     z: Double,
@@ -303,7 +347,7 @@ internal fun isOpenAtShipPoint(
     return isOpen(state, tmp)
 }
 
-internal fun isInterior(state: ShipPocketState, shipPos: BlockPos): Boolean {
+internal fun isInterior(state: ShipPocketQueryFields, shipPos: BlockPos): Boolean {
     val lx = shipPos.x - state.minX
     val ly = shipPos.y - state.minY
     val lz = shipPos.z - state.minZ
@@ -312,7 +356,7 @@ internal fun isInterior(state: ShipPocketState, shipPos: BlockPos): Boolean {
     return state.strictInterior.get(idx)
 }
 
-internal fun isOpen(state: ShipPocketState, shipPos: BlockPos): Boolean {
+internal fun isOpen(state: ShipPocketQueryFields, shipPos: BlockPos): Boolean {
     val lx = shipPos.x - state.minX
     val ly = shipPos.y - state.minY
     val lz = shipPos.z - state.minZ
@@ -321,7 +365,7 @@ internal fun isOpen(state: ShipPocketState, shipPos: BlockPos): Boolean {
     return state.open.get(idx)
 }
 
-internal fun isAirPocket(state: ShipPocketState, shipPos: BlockPos): Boolean {
+internal fun isAirPocket(state: ShipPocketQueryFields, shipPos: BlockPos): Boolean {
     val lx = shipPos.x - state.minX
     val ly = shipPos.y - state.minY
     val lz = shipPos.z - state.minZ
@@ -330,7 +374,7 @@ internal fun isAirPocket(state: ShipPocketState, shipPos: BlockPos): Boolean {
     return state.unreachableVoid.get(idx) && !state.materializedWater.get(idx)
 }
 
-internal fun isWorldFluidSuppressionCell(state: ShipPocketState, shipPos: BlockPos): Boolean {
+internal fun isWorldFluidSuppressionCell(state: ShipPocketQueryFields, shipPos: BlockPos): Boolean {
     val lx = shipPos.x - state.minX
     val ly = shipPos.y - state.minY
     val lz = shipPos.z - state.minZ
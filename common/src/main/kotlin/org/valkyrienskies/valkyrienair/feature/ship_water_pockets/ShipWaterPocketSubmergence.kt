@@ -0,0 +1,68 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import java.util.BitSet
+
+/**
+ * Open cells whose world submergence is always sampled: cells on the bounds faces, cells touching a hull block, and
+ * cells on either side of an interior/exterior boundary, which is where the openings are.
+ *
+ * Every other open cell is surrounded by cells of its own kind. Its world submergence follows from the fluid surface
+ * the shell cells see, so the snapshot only samples it when it straddles that surface.
+ */
+internal fun computeSubmergenceShell(open: BitSet, interior: BitSet, sizeX: Int, sizeY: Int, sizeZ: Int): BitSet {
+    val volume = sizeX * sizeY * sizeZ
+    val shell = BitSet(volume)
+    val strideY = sizeX
+    val strideZ = sizeX * sizeY
+
+    var idx = open.nextSetBit(0)
+    while (idx >= 0 && idx < volume) {
+        val lx = idx % sizeX
+        val t = idx / sizeX
+        val ly = t % sizeY
+        val lz = t / sizeY
+        if (lx == 0 || ly == 0 || lz == 0 || lx == sizeX - 1 || ly == sizeY - 1 || lz == sizeZ - 1) {
+            shell.set(idx)
+        } else {
+            val inside = interior.get(idx)
+            fun differs(n: Int): Boolean = !open.get(n) || interior.get(n) != inside
+            if (differs(idx - 1) || differs(idx + 1) ||
+                differs(idx - strideY) || differs(idx + strideY) ||
+                differs(idx - strideZ) || differs(idx + strideZ)
+            ) {
+                shell.set(idx)
+            }
+        }
+        idx = open.nextSetBit(idx + 1)
+    }
+    return shell
+}
+
+internal const val CELL_PROBE_CENTER = 1
+
+/**
+ * Which of a cell's fluid probes lie below a flat fluid surface at world [surfaceY]: the same nine points
+ * getShipCellFluidCoverage samples, the center ([CELL_PROBE_CENTER]) and the eight corners pulled 1e-4 inward (the
+ * bits above it). [baseWorldY] is the world Y of the cell's min corner; [incX], [incY] and [incZ] the world Y change
+ * per block along each ship axis.
+ */
+internal fun cellProbesBelowSurface(
+    baseWorldY: Double,
+    incX: Double,
+    incY: Double,
+    incZ: Double,
+    surfaceY: Double,
+): Int {
+    fun under(u: Double, v: Double, w: Double): Boolean = baseWorldY + incX * u + incY * v + incZ * w < surfaceY
+
+    val lo = 1e-4
+    val hi = 1.0 - lo
+    var probes = if (under(0.5, 0.5, 0.5)) CELL_PROBE_CENTER else 0
+    for (corner in 0 until 8) {
+        val u = if ((corner and 1) != 0) hi else lo
+        val v = if ((corner and 2) != 0) hi else lo
+        val w = if ((corner and 4) != 0) hi else lo
+        if (under(u, v, w)) probes = probes or (CELL_PROBE_CENTER shl (corner + 1))
+    }
+    return probes
+}
@@ -0,0 +1,124 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import it.unimi.dsi.fastutil.HashCommon
+import net.minecraft.world.level.ChunkPos
+import net.minecraft.world.level.material.Fluid
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+// Dropped wholesale past this many columns; rebuilt from the next scans around the ships still afloat.
+private const val SURFACE_CACHE_MAX_COLUMNS = 1 shl 16
+// Columns share invalidation stamps by hash; a collision only turns a record into a no-op.
+private const val SURFACE_CACHE_STAMP_BUCKETS = 1 shl 12
+
+/**
+ * Top-of-fluid heights of world columns, as found by the upward surface scans of exterior submergence sampling.
+ *
+ * Each column remembers one run of fluid: every block from `fromY` up to `topY` holds that fluid at full height except
+ * possibly the top one, whose surface is `surface`. A scan starting anywhere in the run ends at the same surface, so
+ * the cells of a ship resting in still water answer from here instead of walking the column again each solve. Any
+ * block change in the column drops it ([invalidateColumn]).
+ *
+ * Scans of a copied world region may finish after the live column changed. They pass the [revision] the region was
+ * copied at, and [record] refuses them once the column has been invalidated since. The same stamps, kept per chunk,
+ * tell a resting ship whether any fluid around it changed ([fluidRevision]).
+ */
+internal class ShipPocketFluidSurfaceCache {
+    private class Run(val fluid: Fluid, val fromY: Int, val topY: Int, val surface: Double)
+
+    private val columns = ConcurrentHashMap<Long, Run>()
+    private val invalidations = AtomicLong(0)
+    private val stamps = AtomicLongArray(SURFACE_CACHE_STAMP_BUCKETS)
+    private val chunkStamps = AtomicLongArray(SURFACE_CACHE_STAMP_BUCKETS)
+
+    /** The surface a scan of [fluid] starting at (x, y, z) would reach, or NaN if the column doesn't know yet. */
+    fun surfaceAt(x: Int, y: Int, z: Int, fluid: Fluid): Double {
+        val run = columns[ChunkPos.asLong(x, z)]
+        if (run == null || run.fluid != fluid || y < run.fromY || y > run.topY) {
+            misses.incrementAndGet()
+            return Double.NaN
+        }
+        hits.incrementAndGet()
+        return run.surface
+    }
+
+    /**
+     * Records a scan of [fluid] that started at [fromY] and ended in block [topY] at [surface], read from the world
+     * as of [asOf] (a [revision]; live reads pass [Long.MAX_VALUE]).
+     */
+    fun record(x: Int, z: Int, fluid: Fluid, fromY: Int, topY: Int, surface: Double, asOf: Long = Long.MAX_VALUE) {
+        val key = ChunkPos.asLong(x, z)
+        val bucket = stampBucket(key)
+        if (stamps.get(bucket) > asOf) return
+        val previous = columns[key]
+        // A deeper scan of the same run extends it downward rather than replacing it.
+        val from = if (previous != null && previous.fluid == fluid && previous.topY == topY &&
+            previous.surface == surface && previous.fromY <= topY
+        ) {
+            minOf(previous.fromY, fromY)
+        } else {
+            fromY
+        }
+        if (previous == null && columns.size >= SURFACE_CACHE_MAX_COLUMNS) columns.clear()
+        val run = Run(fluid, from, topY, surface)
+        columns[key] = run
+        // An invalidation that slipped in between the check and the put may have missed this run.
+        if (stamps.get(bucket) > asOf) columns.remove(key, run)
+    }
+
+    fun invalidateColumn(x: Int, z: Int) {
+        val key = ChunkPos.asLong(x, z)
+        val revision = invalidations.incrementAndGet()
+        stamps.set(stampBucket(key), revision)
+        chunkStamps.set(stampBucket(ChunkPos.asLong(x shr 4, z shr 4)), revision)
+        columns.remove(key)
+    }
+
+    /** Drops every column of the chunk, for chunks that load, unload or are replaced wholesale. */
+    fun invalidateChunk(chunkX: Int, chunkZ: Int) {
+        val revision = invalidations.incrementAndGet()
+        chunkStamps.set(stampBucket(ChunkPos.asLong(chunkX, chunkZ)), revision)
+        val minX = chunkX shl 4
+        val minZ = chunkZ shl 4
+        for (z in minZ until minZ + 16) {
+            for (x in minX until minX + 16) {
+                val key = ChunkPos.asLong(x, z)
+                stamps.set(stampBucket(key), revision)
+                columns.remove(key)
+            }
+        }
+    }
+
+    /** Bumped by every [invalidateColumn] and [invalidateChunk]; world copies taken now pass it to [record]. */
+    fun revision(): Long = invalidations.get()
+
+    /**
+     * The [revision] of the latest invalidation in the given chunks, or of one in a chunk sharing their stamps. It only
+     * ever grows, so an unchanged value means no fluid in those chunks changed.
+     */
+    fun fluidRevision(minChunkX: Int, minChunkZ: Int, maxChunkX: Int, maxChunkZ: Int): Long {
+        var revision = 0L
+        for (chunkZ in minChunkZ..maxChunkZ) {
+            for (chunkX in minChunkX..maxChunkX) {
+                revision = maxOf(revision, chunkStamps.get(stampBucket(ChunkPos.asLong(chunkX, chunkZ))))
+            }
+        }
+        return revision
+    }
+
+    fun size(): Int = columns.size
+
+    private fun stampBucket(key: Long): Int = HashCommon.mix(key).toInt() and (SURFACE_CACHE_STAMP_BUCKETS - 1)
+
+    companion object {
+        private val hits = AtomicLong(0)
+        private val misses = AtomicLong(0)
+
+        @JvmStatic
+        fun hits(): Long = hits.get()
+
+        @JvmStatic
+        fun misses(): Long = misses.get()
+    }
+}
@@ -0,0 +1,157 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import net.minecraft.core.BlockPos
+import net.minecraft.world.level.BlockGetter
+import net.minecraft.world.level.block.state.BlockState
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+internal val EMPTY_SHAPE_WATER_GEOMETRY = ShapeWaterGeometry(
+    fullSolid = false,
+    refined = false,
+    boxes = emptyList(),
+)
+
+private class ShapeTemplateKey(
+    private val fullSolid: Boolean,
+    private val refined: Boolean,
+    private val boxBits: LongArray,
+) {
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is ShapeTemplateKey) return false
+        if (fullSolid != other.fullSolid) return false
+        if (refined != other.refined) return false
+        return boxBits.contentEquals(other.boxBits)
+    }
+
+    override fun hashCode(): Int {
+        var result = fullSolid.hashCode()
+        result = 31 * result + refined.hashCode()
+        result = 31 * result + boxBits.contentHashCode()
+        return result
+    }
+
+    companion object {
+        fun fromGeometry(geom: ShapeWaterGeometry): ShapeTemplateKey {
+            val bits = LongArray(geom.boxes.size * 6)
+            var i = 0
+            for (box in geom.boxes) {
+                bits[i++] = java.lang.Double.doubleToLongBits(box.minX)
+                bits[i++] = java.lang.Double.doubleToLongBits(box.minY)
+                bits[i++] = java.lang.Double.doubleToLongBits(box.minZ)
+                bits[i++] = java.lang.Double.doubleToLongBits(box.maxX)
+                bits[i++] = java.lang.Double.doubleToLongBits(box.maxY)
+                bits[i++] = java.lang.Double.doubleToLongBits(box.maxZ)
+            }
+            return ShapeTemplateKey(
+                fullSolid = geom.fullSolid,
+                refined = geom.refined,
+                boxBits = bits,
+            )
+        }
+    }
+}
+
+// Read-only prefix of the registry's backing array. Entries below [size] are never replaced.
+private class ShapeTemplatePaletteView(
+    private val templates: Array<ShapeCellTemplate?>,
+    override val size: Int,
+) : AbstractList<ShapeCellTemplate>() {
+    override fun get(index: Int): ShapeCellTemplate {
+        if (index < 0 || index >= size) throw IndexOutOfBoundsException("template id $index, size $size")
+        return templates[index]!!
+    }
+}
+
+/**
+ * Process-wide registry of [ShapeCellTemplate]s shared by every ship and by both server and client geometry jobs.
+ *
+ * Position-independent block states (see [isShapeWaterGeometryPositionIndependent]) map straight to a template id;
+ * everything else is resolved through its sampled [ShapeWaterGeometry]. Ids are stable for the lifetime of the
+ * process, so any `templateIndexByVoxel` array indexes into any later [palette] snapshot.
+ */
+internal object ShapeTemplateRegistry {
+    const val EMPTY_TEMPLATE_ID = 0
+
+    private val lock = Any()
+    private val idByState = ConcurrentHashMap<BlockState, Int>()
+    private val idByShape = ConcurrentHashMap<ShapeTemplateKey, Int>()
+
+    @Volatile
+    private var templates: Array<ShapeCellTemplate?> = arrayOfNulls(64)
+
+    @Volatile
+    private var size: Int = 0
+
+    private val stateHits = AtomicLong(0)
+    private val shapeHits = AtomicLong(0)
+    private val misses = AtomicLong(0)
+
+    init {
+        check(templateIdForGeometry(EMPTY_SHAPE_WATER_GEOMETRY) == EMPTY_TEMPLATE_ID)
+    }
+
+    /** Template id for [state] at [pos]; air always resolves to [EMPTY_TEMPLATE_ID]. */
+    fun templateIdFor(level: BlockGetter, pos: BlockPos, state: BlockState): Int {
+        if (state.isAir) return EMPTY_TEMPLATE_ID
+        if (!isShapeWaterGeometryPositionIndependent(state)) {
+            return templateIdForGeometry(computeShapeWaterGeometry(level, pos, state))
+        }
+
+        val cached = idByState[state]
+        if (cached != null) {
+            stateHits.incrementAndGet()
+            return cached
+        }
+        val id = templateIdForGeometry(computeShapeWaterGeometry(level, pos, state))
+        idByState.putIfAbsent(state, id)
+        return id
+    }
+
+    fun templateIdForGeometry(geom: ShapeWaterGeometry): Int {
+        val key = ShapeTemplateKey.fromGeometry(geom)
+        val cached = idByShape[key]
+        if (cached != null) {
+            shapeHits.incrementAndGet()
+            return cached
+        }
+
+        // Build outside the lock; a racing thread may build the same template, but only one gets an id.
+        val template = buildShapeCellTemplate(geom)
+        synchronized(lock) {
+            idByShape[key]?.let { return it }
+            val id = size
+            var backing = templates
+            if (id >= backing.size) {
+                backing = backing.copyOf(backing.size * 2)
+                templates = backing
+            }
+            backing[id] = template
+            size = id + 1
+            idByShape[key] = id
+            misses.incrementAndGet()
+            return id
+        }
+    }
+
+    fun template(id: Int): ShapeCellTemplate = templates[id]!!
+
+    /** Snapshot covering every id handed out so far. */
+    fun palette(): List<ShapeCellTemplate> {
+        val n = size
+        return ShapeTemplatePaletteView(templates, n)
+    }
+
+    @JvmStatic
+    fun templateCount(): Int = size
+
+    @JvmStatic
+    fun stateHits(): Long = stateHits.get()
+
+    @JvmStatic
+    fun shapeHits(): Long = shapeHits.get()
+
+    @JvmStatic
+    fun misses(): Long = misses.get()
+}
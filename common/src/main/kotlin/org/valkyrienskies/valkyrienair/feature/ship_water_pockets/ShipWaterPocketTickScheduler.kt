@@ -0,0 +1,131 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import java.util.concurrent.atomic.AtomicLong
+
+/** Server-thread stages of the per-ship pocket tick that may be deferred to a later tick when over budget. */
+internal enum class ShipPocketTickStage {
+    GEOMETRY_CAPTURE,
+    WATER_SOLVE_CAPTURE,
+    WATER_SOLVE_SYNC_FALLBACK,
+    MATERIALIZED_SYNC,
+    FLOOD_UPDATE,
+    FLOOD_WRITE_FLUSH,
+    WORLD_RASTER,
+    REPLICATION_SYNC,
+    PERSIST_FLUSH,
+}
+
+/**
+ * Per-level nanosecond budget for the deferrable stages of [ShipWaterPocketManager.tickServerLevel].
+ *
+ * Each stage is admitted only if its recent measured cost for that ship still fits in what is left of the budget.
+ * Skipped stages are not queued anywhere: every stage is driven by persistent ship state (dirty flags, queues,
+ * last-run ticks), so it simply runs on a later tick. Ships are visited in a rotating order, and the first ship of
+ * each tick always gets all of its stages, so a single oversized ship still makes progress.
+ */
+internal class ShipPocketTickScheduler {
+    private var rotationCursor: Int = 0
+    private var tickStartNanos: Long = 0L
+    private var budgetNanos: Long = 0L
+    private var currentOrder: Int = 0
+    private var firstDeferredOrder: Int = -1
+
+    /** Starts a tick over [shipCount] ships; returns the rotation offset to visit them from. */
+    fun beginTick(budgetNanos: Long, shipCount: Int): Int {
+        this.budgetNanos = budgetNanos
+        tickStartNanos = System.nanoTime()
+        currentOrder = 0
+        firstDeferredOrder = -1
+        if (shipCount <= 0) return 0
+        rotationCursor = Math.floorMod(rotationCursor, shipCount)
+        return rotationCursor
+    }
+
+    /** [order] is the ship's position in this tick's visiting order, 0 for the rotation head. */
+    fun beginShip(order: Int) {
+        currentOrder = order
+    }
+
+    fun admit(state: ShipPocketState, stage: ShipPocketTickStage): Boolean {
+        if (currentOrder == 0) return true
+        val elapsed = System.nanoTime() - tickStartNanos
+        val estimate = state.tickStageCostNanos[stage.ordinal]
+        if (elapsed + estimate <= budgetNanos) return true
+
+        deferredByStage[stage.ordinal].incrementAndGet()
+        if (firstDeferredOrder < 0) {
+            firstDeferredOrder = currentOrder
+        }
+        return false
+    }
+
+    fun record(state: ShipPocketState, stage: ShipPocketTickStage, startNanos: Long) {
+        val cost = System.nanoTime() - startNanos
+        val costs = state.tickStageCostNanos
+        val prev = costs[stage.ordinal]
+        // EWMA with a 1/4 weight; the first sample seeds the estimate directly.
+        costs[stage.ordinal] = if (prev == 0L) cost else prev + (cost - prev) / 4
+        nanosByStage[stage.ordinal].addAndGet(cost)
+        runsByStage[stage.ordinal].incrementAndGet()
+    }
+
+    /** The first ship that had work deferred leads the next tick; otherwise the rotation just advances by one. */
+    fun endTick(shipCount: Int) {
+        if (shipCount <= 0) return
+        val advance = if (firstDeferredOrder >= 0) firstDeferredOrder else 1
+        rotationCursor = (rotationCursor + advance) % shipCount
+        val elapsed = System.nanoTime() - tickStartNanos
+        if (elapsed > budgetNanos) {
+            overBudgetTicks.incrementAndGet()
+        }
+    }
+
+    companion object {
+        private val nanosByStage = Array(ShipPocketTickStage.entries.size) { AtomicLong(0) }
+        private val runsByStage = Array(ShipPocketTickStage.entries.size) { AtomicLong(0) }
+        private val deferredByStage = Array(ShipPocketTickStage.entries.size) { AtomicLong(0) }
+        private val overBudgetTicks = AtomicLong(0)
+
+        @JvmStatic
+        fun totalNanos(stage: ShipPocketTickStage): Long = nanosByStage[stage.ordinal].get()
+
+        @JvmStatic
+        fun runs(stage: ShipPocketTickStage): Long = runsByStage[stage.ordinal].get()
+
+        @JvmStatic
+        fun deferred(stage: ShipPocketTickStage): Long = deferredByStage[stage.ordinal].get()
+
+        @JvmStatic
+        fun overBudgetTicks(): Long = overBudgetTicks.get()
+
+        /** Compact `stage=runs/deferred/avgMicros` listing for the periodic diag line. */
+        fun diagSummary(): String {
+            val sb = StringBuilder()
+            for (stage in ShipPocketTickStage.entries) {
+                if (sb.isNotEmpty()) sb.append(", ")
+                val runs = runs(stage)
+                val avgMicros = if (runs > 0) totalNanos(stage) / runs / 1000L else 0L
+                sb.append(stage.name.lowercase()).append('=')
+                    .append(runs).append('/').append(deferred(stage)).append('/').append(avgMicros)
+            }
+            return sb.toString()
+        }
+    }
+}
+
+/**
+ * Runs [block] if [stage] is admitted. [block] returns whether it did real work; no-op passes (nothing queued, job
+ * already in flight) are not recorded so they don't drag the cost estimate down.
+ */
+internal inline fun ShipPocketTickScheduler.runStage(
+    state: ShipPocketState,
+    stage: ShipPocketTickStage,
+    block: () -> Boolean,
+): Boolean {
+    if (!admit(state, stage)) return false
+    val start = System.nanoTime()
+    if (block()) {
+        record(state, stage, start)
+    }
+    return true
+}
@@ -0,0 +1,313 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import net.minecraft.util.Mth
+import org.joml.Vector3d
+import org.valkyrienskies.core.api.ships.properties.ShipTransform
+import java.util.BitSet
+import kotlin.math.abs
+import kotlin.math.sqrt
+
+internal const val WORLD_RASTER_FALSE = 0
+internal const val WORLD_RASTER_TRUE = 1
+// Part of the block answers true and part false; only the exact classification can tell.
+internal const val WORLD_RASTER_MIXED = 2
+
+// Larger rasters cost more to build on the tick thread than the queries they save.
+internal const val WORLD_RASTER_MAX_SHIP_VOLUME = 1 shl 20
+internal const val WORLD_RASTER_MAX_WORLD_VOLUME = 1 shl 18
+
+// How far (in blocks) the ship may drift from the build pose before the raster stops being conservative.
+private const val WORLD_RASTER_POSE_MARGIN = 1.0 / 16.0
+// Covers the +-1e-5 probe offsets of classifyShipPointWithEpsilon.
+private const val WORLD_RASTER_CLASSIFY_EPS = 2e-5
+
+private const val VOXEL_SUPPRESSION_ANY = 1
+private const val VOXEL_SUPPRESSION_ALL = 1 shl 1
+private const val VOXEL_AIR_POCKET_ANY = 1 shl 2
+private const val VOXEL_AIR_POCKET_ALL = 1 shl 3
+
+/**
+ * World-block-aligned answers to the suppression-zone and air-pocket queries for one resting ship.
+ *
+ * Each world block is [WORLD_RASTER_TRUE] only if every point in it classifies as suppression (air pocket), and
+ * [WORLD_RASTER_FALSE] only if none does, for any ship pose within [WORLD_RASTER_POSE_MARGIN] of the build pose; blocks
+ * straddling a hull or shape boundary are [WORLD_RASTER_MIXED]. Immutable once built; a new one is attached to a new
+ * [ShipPocketQueryView] instead of patching it.
+ */
+internal class ShipPocketWorldRaster(
+    val queryRevision: Long,
+    private val pose: ShipTransform,
+    // Upper bound on |p - positionInShip| over the pocket bounds, scaled to world units.
+    private val poseRadius: Double,
+    val minX: Int,
+    val minY: Int,
+    val minZ: Int,
+    val sizeX: Int,
+    val sizeY: Int,
+    val sizeZ: Int,
+    private val suppressionAny: BitSet,
+    private val suppressionAll: BitSet,
+    private val airPocketAny: BitSet,
+    private val airPocketAll: BitSet,
+) {
+    /** True if this raster still answers for [transform] and pocket state at [revision]. */
+    fun matches(transform: ShipTransform, revision: Long): Boolean {
+        if (revision != queryRevision) return false
+        if (transform === pose) return true
+
+        val pis = transform.positionInShip
+        val pis0 = pose.positionInShip
+        if (pis.x() != pis0.x() || pis.y() != pis0.y() || pis.z() != pis0.z()) return false
+        val s = transform.shipToWorldScaling
+        val s0 = pose.shipToWorldScaling
+        if (s.x() != s0.x() || s.y() != s0.y() || s.z() != s0.z()) return false
+
+        val p = transform.positionInWorld
+        val p0 = pose.positionInWorld
+        val dx = p.x() - p0.x()
+        val dy = p.y() - p0.y()
+        val dz = p.z() - p0.z()
+
+        // q and -q are the same rotation. |R(q)v - R(q')v| <= 2|q - q'||v| for unit quaternions.
+        val q = transform.shipToWorldRotation
+        val q0 = pose.shipToWorldRotation
+        val minus = sq(q.x() - q0.x()) + sq(q.y() - q0.y()) + sq(q.z() - q0.z()) + sq(q.w() - q0.w())
+        val plus = sq(q.x() + q0.x()) + sq(q.y() + q0.y()) + sq(q.z() + q0.z()) + sq(q.w() + q0.w())
+        val drift = sqrt(dx * dx + dy * dy + dz * dz) + 2.0 * sqrt(minOf(minus, plus)) * poseRadius
+        return drift <= WORLD_RASTER_POSE_MARGIN
+    }
+
+    fun suppressionAt(x: Int, y: Int, z: Int): Int = lookup(x, y, z, suppressionAny, suppressionAll)
+
+    fun airPocketAt(x: Int, y: Int, z: Int): Int = lookup(x, y, z, airPocketAny, airPocketAll)
+
+    private fun lookup(x: Int, y: Int, z: Int, any: BitSet, all: BitSet): Int {
+        val lx = x - minX
+        val ly = y - minY
+        val lz = z - minZ
+        if (lx !in 0 until sizeX || ly !in 0 until sizeY || lz !in 0 until sizeZ) return WORLD_RASTER_FALSE
+        val idx = lx + sizeX * (ly + sizeY * lz)
+        if (all.get(idx)) return WORLD_RASTER_TRUE
+        return if (any.get(idx)) WORLD_RASTER_MIXED else WORLD_RASTER_FALSE
+    }
+
+    private fun sq(v: Double) = v * v
+}
+
+/**
+ * Rasterizes [state]'s suppression and air-pocket cells into world blocks under [transform]. Returns null if the
+ * ship or its world footprint is over the raster size caps.
+ */
+internal fun buildShipPocketWorldRaster(
+    state: ShipPocketQueryFields,
+    transform: ShipTransform,
+    queryRevision: Long,
+): ShipPocketWorldRaster? {
+    val sizeX = state.sizeX
+    val sizeY = state.sizeY
+    val sizeZ = state.sizeZ
+    if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0) return null
+    val volume = sizeX.toLong() * sizeY.toLong() * sizeZ.toLong()
+    if (volume > WORLD_RASTER_MAX_SHIP_VOLUME) return null
+
+    val shipToWorld = transform.shipToWorld
+    val worldToShip = transform.worldToShip
+
+    // World footprint of the pocket bounds, padded by the pose margin.
+    val tmp = Vector3d()
+    var wMinX = Double.POSITIVE_INFINITY
+    var wMinY = Double.POSITIVE_INFINITY
+    var wMinZ = Double.POSITIVE_INFINITY
+    var wMaxX = Double.NEGATIVE_INFINITY
+    var wMaxY = Double.NEGATIVE_INFINITY
+    var wMaxZ = Double.NEGATIVE_INFINITY
+    var poseRadiusSq = 0.0
+    val pis = transform.positionInShip
+    for (corner in 0 until 8) {
+        val cx = (state.minX + if (corner and 1 != 0) sizeX else 0).toDouble()
+        val cy = (state.minY + if (corner and 2 != 0) sizeY else 0).toDouble()
+        val cz = (state.minZ + if (corner and 4 != 0) sizeZ else 0).toDouble()
+        val rx = cx - pis.x()
+        val ry = cy - pis.y()
+        val rz = cz - pis.z()
+        poseRadiusSq = maxOf(poseRadiusSq, rx * rx + ry * ry + rz * rz)
+        shipToWorld.transformPosition(tmp.set(cx, cy, cz))
+        wMinX = minOf(wMinX, tmp.x)
+        wMinY = minOf(wMinY, tmp.y)
+        wMinZ = minOf(wMinZ, tmp.z)
+        wMaxX = maxOf(wMaxX, tmp.x)
+        wMaxY = maxOf(wMaxY, tmp.y)
+        wMaxZ = maxOf(wMaxZ, tmp.z)
+    }
+    val rasterMinX = Mth.floor(wMinX - WORLD_RASTER_POSE_MARGIN)
+    val rasterMinY = Mth.floor(wMinY - WORLD_RASTER_POSE_MARGIN)
+    val rasterMinZ = Mth.floor(wMinZ - WORLD_RASTER_POSE_MARGIN)
+    val rasterSizeX = Mth.floor(wMaxX + WORLD_RASTER_POSE_MARGIN) - rasterMinX + 1
+    val rasterSizeY = Mth.floor(wMaxY + WORLD_RASTER_POSE_MARGIN) - rasterMinY + 1
+    val rasterSizeZ = Mth.floor(wMaxZ + WORLD_RASTER_POSE_MARGIN) - rasterMinZ + 1
+    val rasterVolume = rasterSizeX.toLong() * rasterSizeY.toLong() * rasterSizeZ.toLong()
+    if (rasterVolume > WORLD_RASTER_MAX_WORLD_VOLUME) return null
+
+    val voxelCodes = computeVoxelQueryCodes(state)
+
+    // Ship-space half extents of a world block grown by the pose margin: |L| * h for the linear part L.
+    val h = 0.5 + WORLD_RASTER_POSE_MARGIN
+    val m = worldToShip
+    val halfX = h * (abs(m.m00()) + abs(m.m10()) + abs(m.m20())) + WORLD_RASTER_CLASSIFY_EPS
+    val halfY = h * (abs(m.m01()) + abs(m.m11()) + abs(m.m21())) + WORLD_RASTER_CLASSIFY_EPS
+    val halfZ = h * (abs(m.m02()) + abs(m.m12()) + abs(m.m22())) + WORLD_RASTER_CLASSIFY_EPS
+
+    val cells = rasterVolume.toInt()
+    val suppressionAny = BitSet(cells)
+    val suppressionAll = BitSet(cells)
+    val airPocketAny = BitSet(cells)
+    val airPocketAll = BitSet(cells)
+
+    var cell = 0
+    for (z in 0 until rasterSizeZ) {
+        for (y in 0 until rasterSizeY) {
+            for (x in 0 until rasterSizeX) {
+                worldToShip.transformPosition(
+                    tmp.set(rasterMinX + x + 0.5, rasterMinY + y + 0.5, rasterMinZ + z + 0.5)
+                )
+                val code = combineVoxelCodes(
+                    state = state,
+                    voxelCodes = voxelCodes,
+                    loX = Mth.floor(tmp.x - halfX) - state.minX,
+                    loY = Mth.floor(tmp.y - halfY) - state.minY,
+                    loZ = Mth.floor(tmp.z - halfZ) - state.minZ,
+                    hiX = Mth.floor(tmp.x + halfX) - state.minX,
+                    hiY = Mth.floor(tmp.y + halfY) - state.minY,
+                    hiZ = Mth.floor(tmp.z + halfZ) - state.minZ,
+                )
+                if (code and VOXEL_SUPPRESSION_ANY != 0) suppressionAny.set(cell)
+                if (code and VOXEL_SUPPRESSION_ALL != 0) suppressionAll.set(cell)
+                if (code and VOXEL_AIR_POCKET_ANY != 0) airPocketAny.set(cell)
+                if (code and VOXEL_AIR_POCKET_ALL != 0) airPocketAll.set(cell)
+                cell++
+            }
+        }
+    }
+
+    return ShipPocketWorldRaster(
+        queryRevision = queryRevision,
+        pose = transform,
+        poseRadius = sqrt(poseRadiusSq) * maxScale(transform),
+        minX = rasterMinX,
+        minY = rasterMinY,
+        minZ = rasterMinZ,
+        sizeX = rasterSizeX,
+        sizeY = rasterSizeY,
+        sizeZ = rasterSizeZ,
+        suppressionAny = suppressionAny,
+        suppressionAll = suppressionAll,
+        airPocketAny = airPocketAny,
+        airPocketAll = airPocketAll,
+    )
+}
+
+private fun maxScale(transform: ShipTransform): Double {
+    val s = transform.shipToWorldScaling
+    return maxOf(abs(s.x()), abs(s.y()), abs(s.z()))
+}
+
+/** ANDs the "all" bits and ORs the "any" bits over the local voxel box lo..hi; cells outside the bounds are false. */
+private fun combineVoxelCodes(
+    state: ShipPocketQueryFields,
+    voxelCodes: ByteArray,
+    loX: Int,
+    loY: Int,
+    loZ: Int,
+    hiX: Int,
+    hiY: Int,
+    hiZ: Int,
+): Int {
+    val sizeX = state.sizeX
+    val sizeY = state.sizeY
+    val sizeZ = state.sizeZ
+    if (hiX < 0 || hiY < 0 || hiZ < 0 || loX >= sizeX || loY >= sizeY || loZ >= sizeZ) return 0
+
+    val clipped = loX < 0 || loY < 0 || loZ < 0 || hiX >= sizeX || hiY >= sizeY || hiZ >= sizeZ
+    var any = 0
+    var all = if (clipped) 0 else VOXEL_SUPPRESSION_ALL or VOXEL_AIR_POCKET_ALL
+    val x0 = maxOf(loX, 0)
+    val x1 = minOf(hiX, sizeX - 1)
+    for (lz in maxOf(loZ, 0)..minOf(hiZ, sizeZ - 1)) {
+        for (ly in maxOf(loY, 0)..minOf(hiY, sizeY - 1)) {
+            val row = sizeX * (ly + sizeY * lz)
+            for (idx in row + x0..row + x1) {
+                val code = voxelCodes[idx].toInt()
+                any = any or code
+                all = all and code
+            }
+        }
+    }
+    return (any and (VOXEL_SUPPRESSION_ANY or VOXEL_AIR_POCKET_ANY)) or all
+}
+
+/**
+ * Per-voxel any/all answers of the suppression and air-pocket classifications, mirroring `classifyShipPoint`: a
+ * shaped voxel is "all" only if it has no solid subcell and every local component present qualifies.
+ */
+internal fun computeVoxelQueryCodes(state: ShipPocketQueryFields): ByteArray {
+    val volume = state.sizeX * state.sizeY * state.sizeZ
+    val codes = ByteArray(volume)
+    val open = state.open
+    val materialized = state.materializedWater
+    val unreachable = state.unreachableVoid
+    val strictInterior = state.strictInterior
+    val templateIndices = state.templateIndexByVoxel
+    val templates = state.shapeTemplatePalette
+    val hasTemplates = templateIndices.size == volume && templates.isNotEmpty()
+
+    val presentMasks = LongArray(templates.size)
+    val hasSolidSubcell = BooleanArray(templates.size)
+    if (hasTemplates) {
+        for (t in templates.indices) {
+            var present = 0L
+            var solid = false
+            for (component in templates[t].componentBySubcell) {
+                if (component < 0) solid = true else present = present or (1L shl component.toInt())
+            }
+            presentMasks[t] = present
+            hasSolidSubcell[t] = solid
+        }
+    }
+
+    var idx = open.nextSetBit(0)
+    while (idx in 0 until volume) {
+        if (!materialized.get(idx)) {
+            val templateIdx = if (hasTemplates) templateIndices[idx] else -1
+            var code = 0
+            if (templateIdx in templates.indices) {
+                if (templates[templateIdx].componentCount > 0) {
+                    val present = presentMasks[templateIdx]
+                    val solid = hasSolidSubcell[templateIdx]
+                    val sim = simulationComponentMaskAt(state, idx)
+                    if (present and sim != 0L) code = code or VOXEL_SUPPRESSION_ANY
+                    if (!solid && present and sim.inv() == 0L) code = code or VOXEL_SUPPRESSION_ALL
+                    if (unreachable.get(idx)) {
+                        val interiorMasks = state.voxelInteriorComponentMask
+                        val exteriorMasks = state.voxelExteriorComponentMask
+                        val interiorMask = if (idx < interiorMasks.size) interiorMasks[idx] else 0L
+                        val exteriorMask = if (idx < exteriorMasks.size) exteriorMasks[idx] else 0L
+                        // Components not claimed by either mask fall back to the voxel's strict-interior bit.
+                        val interior = if (strictInterior.get(idx)) interiorMask or exteriorMask.inv() else interiorMask
+                        if (present and interior != 0L) code = code or VOXEL_AIR_POCKET_ANY
+                        if (!solid && present and interior.inv() == 0L) code = code or VOXEL_AIR_POCKET_ALL
+                    }
+                }
+            } else {
+                if ((simulationComponentMaskAt(state, idx) and 1L) != 0L) {
+                    code = code or VOXEL_SUPPRESSION_ANY or VOXEL_SUPPRESSION_ALL
+                }
+                if (unreachable.get(idx) && strictInterior.get(idx)) {
+                    code = code or VOXEL_AIR_POCKET_ANY or VOXEL_AIR_POCKET_ALL
+                }
+            }
+            codes[idx] = code.toByte()
+        }
+        idx = open.nextSetBit(idx + 1)
+    }
+    return codes
+}
@@ -0,0 +1,129 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import net.minecraft.core.BlockPos
+import net.minecraft.world.level.BlockGetter
+import net.minecraft.world.level.Level
+import net.minecraft.world.level.block.Blocks
+import net.minecraft.world.level.block.entity.BlockEntity
+import net.minecraft.world.level.block.state.BlockState
+import net.minecraft.world.level.chunk.PalettedContainer
+import net.minecraft.world.level.material.FluidState
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Copied block palettes of the world chunk sections around one ship, read by the water-solve sampling on a worker.
+ *
+ * Only sections whose palette may hold a fluid are copied; everything else (air, solid ground, unloaded chunks, outside
+ * the region) reads as air, which is all the fluid sampling can tell apart anyway. Above the captured box, sections are
+ * copied upward while they still hold fluid, so the surface scans that start inside it find the same top as on the
+ * live level. Immutable once captured.
+ */
+internal class ShipPocketWorldFluidRegion private constructor(
+    private val minBuildHeight: Int,
+    private val buildHeight: Int,
+    val seaLevel: Int,
+    // Surface cache of the level, and its revision when the sections were copied.
+    val surfaceCache: ShipPocketFluidSurfaceCache,
+    val surfaceCacheRevision: Long,
+    private val minSectionX: Int,
+    private val minSectionY: Int,
+    private val minSectionZ: Int,
+    private val sectionsX: Int,
+    private val sectionsY: Int,
+    private val sectionsZ: Int,
+    private val sections: Array<PalettedContainer<BlockState>?>,
+) : BlockGetter {
+    override fun getBlockEntity(pos: BlockPos): BlockEntity? = null
+
+    override fun getBlockState(pos: BlockPos): BlockState {
+        val sx = (pos.x shr 4) - minSectionX
+        val sy = (pos.y shr 4) - minSectionY
+        val sz = (pos.z shr 4) - minSectionZ
+        if (sx !in 0 until sectionsX || sy !in 0 until sectionsY || sz !in 0 until sectionsZ) return AIR
+        val states = sections[sx + sectionsX * (sy + sectionsY * sz)] ?: return AIR
+        return states.get(pos.x and 15, pos.y and 15, pos.z and 15)
+    }
+
+    override fun getFluidState(pos: BlockPos): FluidState = getBlockState(pos).fluidState
+
+    override fun getHeight(): Int = buildHeight
+
+    override fun getMinBuildHeight(): Int = minBuildHeight
+
+    companion object {
+        private val AIR: BlockState = Blocks.AIR.defaultBlockState()
+
+        private val captures = AtomicLong(0)
+        private val sectionsCopied = AtomicLong(0)
+
+        /**
+         * Copies the fluid-bearing sections of [level] overlapping the world box, plus the fluid columns above it up to
+         * [scanHeight] blocks over its top. Level thread only.
+         */
+        fun capture(
+            level: Level,
+            surfaceCache: ShipPocketFluidSurfaceCache,
+            minX: Int,
+            minY: Int,
+            minZ: Int,
+            maxX: Int,
+            maxY: Int,
+            maxZ: Int,
+            scanHeight: Int,
+        ): ShipPocketWorldFluidRegion {
+            val surfaceCacheRevision = surfaceCache.revision()
+            val minSectionX = minX shr 4
+            val minSectionZ = minZ shr 4
+            val minSectionY = maxOf(minY shr 4, level.minSection)
+            val boxTopSectionY = minOf(maxY shr 4, level.maxSection - 1)
+            val scanTopSectionY = minOf((maxY + scanHeight) shr 4, level.maxSection - 1)
+            val sectionsX = (maxX shr 4) - minSectionX + 1
+            val sectionsZ = (maxZ shr 4) - minSectionZ + 1
+            val sectionsY = maxOf(0, scanTopSectionY - minSectionY + 1)
+            val sections = arrayOfNulls<PalettedContainer<BlockState>>(sectionsX * sectionsY * sectionsZ)
+            var copied = 0L
+
+            for (sz in 0 until sectionsZ) {
+                for (sx in 0 until sectionsX) {
+                    val chunk = level.chunkSource.getChunkNow(minSectionX + sx, minSectionZ + sz) ?: continue
+                    for (sy in 0 until sectionsY) {
+                        val sectionY = minSectionY + sy
+                        val section = chunk.getSection(level.getSectionIndexFromSectionY(sectionY))
+                        // Palette check only; a stale palette entry just costs a copy.
+                        val hasFluid = !section.hasOnlyAir() && section.maybeHas { !it.fluidState.isEmpty }
+                        if (!hasFluid) {
+                            // No surface scan climbs through a section without fluid.
+                            if (sectionY > boxTopSectionY) break
+                            continue
+                        }
+                        sections[sx + sectionsX * (sy + sectionsY * sz)] = section.states.copy()
+                        copied++
+                    }
+                }
+            }
+
+            captures.incrementAndGet()
+            sectionsCopied.addAndGet(copied)
+            return ShipPocketWorldFluidRegion(
+                minBuildHeight = level.minBuildHeight,
+                buildHeight = level.height,
+                seaLevel = level.seaLevel,
+                surfaceCache = surfaceCache,
+                surfaceCacheRevision = surfaceCacheRevision,
+                minSectionX = minSectionX,
+                minSectionY = minSectionY,
+                minSectionZ = minSectionZ,
+                sectionsX = sectionsX,
+                sectionsY = sectionsY,
+                sectionsZ = sectionsZ,
+                sections = sections,
+            )
+        }
+
+        @JvmStatic
+        fun captures(): Long = captures.get()
+
+        @JvmStatic
+        fun sectionsCopied(): Long = sectionsCopied.get()
+    }
+}
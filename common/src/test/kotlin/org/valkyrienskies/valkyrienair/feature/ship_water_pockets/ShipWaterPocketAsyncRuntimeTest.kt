@@ -6,7 +6,10 @@ import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.Assertions.fail
 import org.junit.jupiter.api.Test
 import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 import kotlin.jvm.functions.Function0
+import kotlin.jvm.functions.Function1
 
 class ShipWaterPocketAsyncRuntimeTest {
     private val runtimeClass =
@@ -15,6 +18,10 @@ class ShipWaterPocketAsyncRuntimeTest {
         Class.forName("org.valkyrienskies.valkyrienair.feature.ship_water_pockets.ShipPocketAsyncSubsystem")
     private val trySubmitMethod =
         runtimeClass.getMethod("trySubmit", subsystemClass, Function0::class.java)
+    private val trySubmitCoalescedMethod =
+        runtimeClass.getMethod("trySubmitCoalesced", subsystemClass, Any::class.java, Function0::class.java)
+    private val trySubmitCancellableMethod =
+        runtimeClass.getMethod("trySubmitCancellable", subsystemClass, Any::class.java, Function1::class.java)
 
     @Test
     fun cancellingReturnedFutureDoesNotLeakPendingSlot() {
@@ -57,6 +64,98 @@ class ShipWaterPocketAsyncRuntimeTest {
         assertTrue(waitForPendingCount(baseline, timeoutMs = 5_000))
     }
 
+    @Test
+    fun queuedJobIsSupersededByNewerSubmissionForSameOwner() {
+        val baseline = pendingJobCount()
+        assertTrue(waitForPendingCount(baseline, timeoutMs = 5_000))
+
+        // Park every worker so the coalesced submissions below stay queued.
+        val workers = threadCount()
+        val started = CountDownLatch(workers)
+        val release = CountDownLatch(1)
+        val blockers = (0 until workers).map {
+            trySubmit("CLIENT_CULL") {
+                started.countDown()
+                release.await(5, TimeUnit.SECONDS)
+            } ?: fail("Blocker submission rejected")
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS))
+
+        val queuedBefore = queuedJobCount()
+        val owner = Any()
+        val older = trySubmitCoalesced("WATER_SOLVER", owner) { 1 } ?: fail("Older submission rejected")
+        val newer = trySubmitCoalesced("WATER_SOLVER", owner) { 2 } ?: fail("Newer submission rejected")
+        assertEquals(queuedBefore + 1, queuedJobCount(), "Superseded job was left in the executor queue")
+        release.countDown()
+
+        assertEquals(2, newer.join())
+        assertTrue(older.isCompletedExceptionally)
+        blockers.forEach { it.join() }
+        assertTrue(waitForPendingCount(baseline, timeoutMs = 5_000))
+    }
+
+    @Test
+    fun cancellingQueuedJobRemovesItFromTheQueue() {
+        val baseline = pendingJobCount()
+        assertTrue(waitForPendingCount(baseline, timeoutMs = 5_000))
+
+        val workers = threadCount()
+        val started = CountDownLatch(workers)
+        val release = CountDownLatch(1)
+        val blockers = (0 until workers).map {
+            trySubmit("CLIENT_CULL") {
+                started.countDown()
+                release.await(5, TimeUnit.SECONDS)
+            } ?: fail("Blocker submission rejected")
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS))
+
+        val queuedBefore = queuedJobCount()
+        val queued = trySubmitCoalesced("WATER_SOLVER", Any()) { 1 } ?: fail("Submission rejected")
+        assertEquals(queuedBefore + 1, queuedJobCount())
+        queued.cancel(false)
+        assertEquals(queuedBefore, queuedJobCount(), "Cancelled job was left in the executor queue")
+
+        release.countDown()
+        blockers.forEach { it.join() }
+        assertTrue(waitForPendingCount(baseline, timeoutMs = 5_000))
+    }
+
+    @Test
+    fun cancellingReturnedFutureStopsRunningJobCooperatively() {
+        val baseline = pendingJobCount()
+        assertTrue(waitForPendingCount(baseline, timeoutMs = 5_000))
+
+        val started = CountDownLatch(1)
+        val taskFn = object : Function1<Any, Any?> {
+            override fun invoke(token: Any): Any? {
+                started.countDown()
+                val isCancelled = token.javaClass.getMethod("isCancelled")
+                // Would spin forever if cancelling the returned future did not reach the running job.
+                while (!(isCancelled.invoke(token) as Boolean)) {
+                    Thread.sleep(1)
+                }
+                return null
+            }
+        }
+        val result = trySubmitCancellableMethod.invoke(null, subsystem("WATER_SOLVER"), Any(), taskFn)
+        val submitted = result as CompletableFuture<*>?
+        assertNotNull(submitted)
+        assertTrue(started.await(5, TimeUnit.SECONDS))
+        submitted!!.cancel(true)
+
+        assertTrue(waitForPendingCount(baseline, timeoutMs = 5_000))
+    }
+
+    private fun trySubmitCoalesced(subsystemName: String, owner: Any, task: () -> Any?): CompletableFuture<Any?>? {
+        val taskFn = object : Function0<Any?> {
+            override fun invoke(): Any? = task()
+        }
+        val submitted = trySubmitCoalescedMethod.invoke(null, subsystem(subsystemName), owner, taskFn)
+        @Suppress("UNCHECKED_CAST")
+        return submitted as CompletableFuture<Any?>?
+    }
+
     private fun trySubmit(subsystemName: String, task: () -> Any?): CompletableFuture<Any?>? {
         val taskFn = object : Function0<Any?> {
             override fun invoke(): Any? = task()
@@ -69,6 +168,14 @@ class ShipWaterPocketAsyncRuntimeTest {
         return runtimeClass.getMethod("pendingJobCount").invoke(null) as Int
     }
 
+    private fun queuedJobCount(): Int {
+        return runtimeClass.getMethod("queuedJobCount").invoke(null) as Int
+    }
+
+    private fun threadCount(): Int {
+        return runtimeClass.getMethod("threadCount").invoke(null) as Int
+    }
+
     private fun maxPendingJobs(): Int {
         return runtimeClass.getMethod("maxPendingJobs").invoke(null) as Int
     }
@@ -0,0 +1,129 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import net.minecraft.SharedConstants
+import net.minecraft.server.Bootstrap
+import net.minecraft.world.level.block.Blocks
+import net.minecraft.world.level.block.state.BlockState
+import net.minecraft.world.level.material.Fluids
+import net.minecraft.world.phys.AABB
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.BeforeAll
+import org.junit.jupiter.api.Test
+import java.util.BitSet
+
+class ShipWaterPocketGeometryPatchTest {
+    companion object {
+        @JvmStatic
+        @BeforeAll
+        fun bootstrapMinecraft() {
+            SharedConstants.tryDetectVersion()
+            Bootstrap.bootStrap()
+        }
+
+        private const val SIZE = 5
+
+        private val SOLID = ShapeWaterGeometry(
+            fullSolid = true,
+            refined = false,
+            boxes = listOf(AABB(0.0, 0.0, 0.0, 1.0, 1.0, 1.0)),
+        )
+    }
+
+    @Test
+    fun patchedGeometryMatchesFullRebuildAfterOpeningHullHole() {
+        val volume = SIZE * SIZE * SIZE
+        val holeIdx = idx(1, 2, 2)
+        val centerIdx = idx(2, 2, 2)
+
+        val (baseStates, baseTemplateIds) = hollowBox()
+        val base = computeGeometryAsync(fullSnapshot(baseStates, baseTemplateIds, BitSet(volume)))
+        assertTrue(base.strictInterior.get(centerIdx))
+        assertFalse(base.exterior.get(centerIdx))
+
+        val holedStates = baseStates.copyOf()
+        val holedTemplateIds = baseTemplateIds.copyOf()
+        holedStates[holeIdx] = Blocks.AIR.defaultBlockState()
+        holedTemplateIds[holeIdx] = ShapeTemplateRegistry.EMPTY_TEMPLATE_ID
+        val full = computeGeometryAsync(fullSnapshot(holedStates, holedTemplateIds, base.simulationDomain))
+
+        val patched = computeGeometryAsync(
+            fullSnapshot(emptyArray(), IntArray(0), base.simulationDomain).copy(
+                patch = GeometryPatchSnapshot(
+                    changedIndices = intArrayOf(holeIdx),
+                    changedPositions = longArrayOf(0L),
+                    changedStates = arrayOf(Blocks.AIR.defaultBlockState()),
+                    changedTemplateIds = intArrayOf(ShapeTemplateRegistry.EMPTY_TEMPLATE_ID),
+                    baseBlockStates = base.blockStates,
+                    baseOpen = base.open,
+                    baseFlooded = base.flooded.clone() as BitSet,
+                    baseMaterialized = base.materializedWater.clone() as BitSet,
+                    baseTemplateIndexByVoxel = base.templateIndexByVoxel,
+                ),
+            ),
+        )
+
+        assertTrue(patched.exterior.get(centerIdx))
+        assertEquals(full.open, patched.open)
+        assertEquals(full.exterior, patched.exterior)
+        assertEquals(full.strictInterior, patched.strictInterior)
+        assertEquals(full.simulationDomain, patched.simulationDomain)
+        assertEquals(full.outsideVoid, patched.outsideVoid)
+        assertArrayEquals(full.faceCondXP, patched.faceCondXP)
+        assertArrayEquals(full.faceCondYP, patched.faceCondYP)
+        assertArrayEquals(full.faceCondZP, patched.faceCondZP)
+        assertArrayEquals(full.blockStates, patched.blockStates)
+        assertArrayEquals(full.templateIndexByVoxel, patched.templateIndexByVoxel)
+    }
+
+    private fun idx(x: Int, y: Int, z: Int): Int = x + SIZE * (y + SIZE * z)
+
+    private fun hollowBox(): Pair<Array<BlockState>, IntArray> {
+        val volume = SIZE * SIZE * SIZE
+        val states = Array(volume) { Blocks.AIR.defaultBlockState() }
+        val templateIds = IntArray(volume)
+        val solidId = ShapeTemplateRegistry.templateIdForGeometry(SOLID)
+        // Single-cell hull one block inside the bounds, so the padding shell stays open like in real captures.
+        for (z in 1 until SIZE - 1) {
+            for (y in 1 until SIZE - 1) {
+                for (x in 1 until SIZE - 1) {
+                    if (x == 2 && y == 2 && z == 2) continue
+                    val i = idx(x, y, z)
+                    states[i] = Blocks.STONE.defaultBlockState()
+                    templateIds[i] = solidId
+                }
+            }
+        }
+        return states to templateIds
+    }
+
+    private fun fullSnapshot(
+        blockStates: Array<BlockState>,
+        templateIds: IntArray,
+        prevSimulationDomain: BitSet,
+    ): GeometryAsyncSnapshot {
+        return GeometryAsyncSnapshot(
+            generation = 1L,
+            invalidationStamp = 0L,
+            geometrySignature = 0L,
+            minX = 0,
+            minY = 0,
+            minZ = 0,
+            sizeX = SIZE,
+            sizeY = SIZE,
+            sizeZ = SIZE,
+            prevMinX = 0,
+            prevMinY = 0,
+            prevMinZ = 0,
+            prevSizeX = SIZE,
+            prevSizeY = SIZE,
+            prevSizeZ = SIZE,
+            prevSimulationDomain = prevSimulationDomain,
+            floodFluid = Fluids.WATER,
+            blockStates = blockStates,
+            templateIds = templateIds,
+        )
+    }
+}
@@ -0,0 +1,159 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import net.minecraft.SharedConstants
+import net.minecraft.server.Bootstrap
+import net.minecraft.world.level.material.Fluid
+import net.minecraft.world.level.material.Fluids
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.BeforeAll
+import org.junit.jupiter.api.Test
+import java.util.BitSet
+import java.util.concurrent.atomic.AtomicReference
+import kotlin.random.Random
+
+class ShipWaterPocketGraphTest {
+    companion object {
+        @BeforeAll
+        @JvmStatic
+        fun bootstrapMinecraft() {
+            SharedConstants.tryDetectVersion()
+            Bootstrap.bootStrap()
+        }
+    }
+
+    @Test
+    fun parallelBoundaryFloodMatchesSequentialBfs() {
+        val sizeX = 13
+        val sizeY = 9
+        val sizeZ = 17
+        val volume = sizeX * sizeY * sizeZ
+        val strideY = sizeX
+        val strideZ = sizeX * sizeY
+
+        for (seed in 0 until 8) {
+            val random = Random(seed)
+            val open = BitSet(volume)
+            for (i in 0 until volume) {
+                if (random.nextFloat() < 0.7f) open.set(i)
+            }
+            // Conductance stored per +X/+Y/+Z face, so both sides of a face read the same value.
+            val condXP = IntArray(volume) { if (random.nextFloat() < 0.8f) 1 else 0 }
+            val condYP = IntArray(volume) { if (random.nextFloat() < 0.8f) 1 else 0 }
+            val condZP = IntArray(volume) { if (random.nextFloat() < 0.8f) 1 else 0 }
+            val edgeCond = { idx: Int, lx: Int, ly: Int, lz: Int, dirCode: Int ->
+                when (dirCode) {
+                    0 -> if (lx > 0) condXP[idx - 1] else 0
+                    1 -> if (lx + 1 < sizeX) condXP[idx] else 0
+                    2 -> if (ly > 0) condYP[idx - strideY] else 0
+                    3 -> if (ly + 1 < sizeY) condYP[idx] else 0
+                    4 -> if (lz > 0) condZP[idx - strideZ] else 0
+                    else -> if (lz + 1 < sizeZ) condZP[idx] else 0
+                }
+            }
+
+            val expected = floodFillFromBoundaryGraph(open, sizeX, sizeY, sizeZ, edgeCond)
+            for (slabs in intArrayOf(1, 2, 5, sizeZ)) {
+                val actual = floodFillFromBoundaryGraphParallel(open, sizeX, sizeY, sizeZ, edgeCond, slabCount = slabs)
+                assertEquals(expected, actual, "seed $seed, $slabs slabs")
+            }
+        }
+    }
+
+    @Test
+    fun parallelPressureSolveMatchesSerialSolve() {
+        val sizeX = 72
+        val sizeY = 64
+        val sizeZ = 64
+        val volume = sizeX * sizeY * sizeZ
+        assertTrue(volume >= PARALLEL_REACHABILITY_MIN_VOLUME)
+        val waterLine = 40
+        val random = Random(7)
+
+        // A leaky box hull in noisy open water, submerged below the water line.
+        val open = BitSet(volume)
+        val interior = BitSet(volume)
+        val submerged = BitSet(volume)
+        val coverage = DoubleArray(volume)
+        for (lz in 0 until sizeZ) for (ly in 0 until sizeY) for (lx in 0 until sizeX) {
+            val idx = lx + sizeX * (ly + sizeY * lz)
+            val inBox = lx in 8..63 && ly in 8..55 && lz in 8..55
+            val inside = lx in 9..62 && ly in 9..54 && lz in 9..54
+            val isOpen = when {
+                inside -> random.nextFloat() < 0.9f
+                inBox -> random.nextFloat() < 0.02f
+                else -> random.nextFloat() < 0.85f
+            }
+            if (!isOpen) continue
+            open.set(idx)
+            if (inside) interior.set(idx)
+            if (ly < waterLine) {
+                submerged.set(idx)
+                coverage[idx] = 1.0
+            } else if (ly == waterLine) {
+                coverage[idx] = 0.5
+            }
+        }
+        val outsideVoid = open.clone() as BitSet
+        outsideVoid.andNot(interior)
+
+        val snapshot = WaterSolveSnapshot(
+            generation = 1L,
+            geometryRevision = 1L,
+            captureTick = 0L,
+            transformKey = 0L,
+            minX = -36,
+            minY = 0,
+            minZ = 100,
+            sizeX = sizeX,
+            sizeY = sizeY,
+            sizeZ = sizeZ,
+            open = open,
+            interior = interior,
+            exterior = outsideVoid,
+            outsideVoid = outsideVoid,
+            materializedWater = BitSet(),
+            floodFluid = Fluids.WATER,
+            faceCondXP = ShortArray(0),
+            faceCondYP = ShortArray(0),
+            faceCondZP = ShortArray(0),
+            templatePalette = emptyList(),
+            templateIndexByVoxel = IntArray(0),
+            voxelExteriorComponentMask = LongArray(0),
+            voxelInteriorComponentMask = LongArray(0),
+            submerged = submerged,
+            submergedCoverage = coverage,
+            dominantFloodFluid = Fluids.WATER,
+            surfaceYByCell = DoubleArray(volume) { waterLine.toDouble() },
+            openingFaceSamples = Long2ObjectOpenHashMap(),
+            baseWorldY = 0.0,
+            incX = 0.0,
+            incY = 1.0,
+            incZ = 0.0,
+        )
+
+        fun solve(parallel: Boolean): Pair<BitSet, BuoyancyMetrics> {
+            val out = BitSet(volume)
+            val buoyancy = BuoyancyMetrics()
+            ShipWaterPocketManager.computeWaterReachableWithPressurePrepared(
+                snapshot,
+                out,
+                buoyancy,
+                AtomicReference<Fluid?>(),
+                parallelReachability = parallel,
+            )
+            return out to buoyancy
+        }
+
+        val (serialReachable, serialBuoyancy) = solve(parallel = false)
+        val (parallelReachable, parallelBuoyancy) = solve(parallel = true)
+        assertFalse(serialReachable.isEmpty)
+        assertEquals(serialReachable, parallelReachable)
+        val serialUnreachable = (open.clone() as BitSet).apply { andNot(serialReachable) }
+        val parallelUnreachable = (open.clone() as BitSet).apply { andNot(parallelReachable) }
+        assertEquals(serialUnreachable, parallelUnreachable)
+        assertEquals(serialBuoyancy, parallelBuoyancy)
+    }
+}
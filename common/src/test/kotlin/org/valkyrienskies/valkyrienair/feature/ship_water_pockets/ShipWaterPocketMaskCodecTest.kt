@@ -0,0 +1,93 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.util.BitSet
+import kotlin.random.Random
+
+class ShipWaterPocketMaskCodecTest {
+    // Slab-shaped open space: long runs per row, like a hull interior.
+    private fun hullMask(sizeX: Int, sizeY: Int, sizeZ: Int): BitSet {
+        val bits = BitSet(sizeX * sizeY * sizeZ)
+        for (z in 1 until sizeZ - 1) {
+            for (y in 1 until sizeY / 2) {
+                val row = sizeX * (y + sizeY * z)
+                bits.set(row + 1, row + sizeX - 1)
+            }
+        }
+        return bits
+    }
+
+    private fun randomMask(volume: Int, p: Float, seed: Int): BitSet {
+        val random = Random(seed)
+        return BitSet(volume).also { bits ->
+            for (i in 0 until volume) if (random.nextFloat() < p) bits.set(i)
+        }
+    }
+
+    @Test
+    fun fullMasksRoundTrip() {
+        val masks = listOf(
+            BitSet(),
+            BitSet().also { it.set(0) },
+            BitSet().also { it.set(4095, 4097) },
+            BitSet().also { it.set(63, 65); it.set(100_000) },
+            hullMask(40, 20, 30),
+            randomMask(10_000, 0.5f, 1),
+            randomMask(10_000, 0.01f, 2),
+        )
+        for ((i, mask) in masks.withIndex()) {
+            val encoded = ShipPocketMaskCodec.encode(mask, null)
+            assertFalse(ShipPocketMaskCodec.isDelta(encoded), "mask $i")
+            assertEquals(mask, ShipPocketMaskCodec.decode(encoded, null), "mask $i")
+        }
+    }
+
+    @Test
+    fun smallChangesEncodeAsSmallDeltas() {
+        val previous = hullMask(64, 32, 64)
+        val current = previous.clone() as BitSet
+        val random = Random(3)
+        repeat(40) { current.flip(random.nextInt(64 * 32 * 64)) }
+
+        val full = ShipPocketMaskCodec.encode(current, null)
+        val delta = ShipPocketMaskCodec.encode(current, previous)
+        assertTrue(ShipPocketMaskCodec.isDelta(delta))
+        assertTrue(delta.size < full.size / 4, "delta=${delta.size} full=${full.size}")
+        assertEquals(current, ShipPocketMaskCodec.decode(delta, previous))
+
+        // An unchanged mask costs a handful of bytes regardless of the hull's size.
+        assertTrue(ShipPocketMaskCodec.encode(current, current).size <= 8)
+    }
+
+    @Test
+    fun unrelatedBaselineFallsBackToFull() {
+        val previous = randomMask(20_000, 0.5f, 4)
+        val current = randomMask(20_000, 0.5f, 5)
+        val encoded = ShipPocketMaskCodec.encode(current, previous)
+        assertFalse(ShipPocketMaskCodec.isDelta(encoded))
+        assertEquals(current, ShipPocketMaskCodec.decode(encoded, null))
+    }
+
+    @Test
+    fun deltaNeedsTheBaselineItWasWrittenAgainst() {
+        val previous = hullMask(32, 16, 32)
+        val current = (previous.clone() as BitSet).also { it.flip(777) }
+        val delta = ShipPocketMaskCodec.encode(current, previous)
+        assertTrue(ShipPocketMaskCodec.isDelta(delta))
+
+        assertNull(ShipPocketMaskCodec.decode(delta, null))
+        assertNull(ShipPocketMaskCodec.decode(delta, current))
+    }
+
+    @Test
+    fun malformedInputIsRejected() {
+        val encoded = ShipPocketMaskCodec.encode(randomMask(5_000, 0.3f, 6), null)
+        assertNull(ShipPocketMaskCodec.decode(encoded.copyOf(encoded.size / 2), null))
+        assertNull(ShipPocketMaskCodec.decode(encoded.copyOf().also { it[0] = 7 }, null))
+        assertNull(ShipPocketMaskCodec.decode(ByteArray(0), null))
+    }
+}
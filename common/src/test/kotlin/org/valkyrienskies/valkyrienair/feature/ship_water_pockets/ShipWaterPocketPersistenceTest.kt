@@ -7,10 +7,16 @@ import net.minecraft.server.Bootstrap
 import net.minecraft.world.level.material.Fluids
 import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNotNull
+import org.junit.jupiter.api.Assertions.assertNull
 import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.BeforeAll
 import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.nio.file.Files
+import java.nio.file.Path
 import java.util.BitSet
+import java.util.concurrent.Executor
 
 class ShipWaterPocketPersistenceTest {
     companion object {
@@ -24,7 +30,6 @@ class ShipWaterPocketPersistenceTest {
 
     @Test
     fun v3RoundTripPreservesOutsideVoid() {
-        val volume = 2 * 2 * 1
         val open = bitSetOf(0, 1, 2, 3)
         val simulationDomain = bitSetOf(1, 2)
         val outsideVoid = bitSetOf(0, 3)
@@ -52,12 +57,12 @@ class ShipWaterPocketPersistenceTest {
             materializedWater = materialized,
             waterReachable = waterReachable,
             unreachableVoid = unreachableVoid,
-            faceCondXP = ShortArray(volume),
-            faceCondYP = ShortArray(volume),
-            faceCondZP = ShortArray(volume),
-            voxelExteriorComponentMask = longArrayOf(0x01),
-            voxelInteriorComponentMask = longArrayOf(0x02),
-            voxelSimulationComponentMask = longArrayOf(0x04),
+            faceCondXP = ShortArray(4),
+            faceCondYP = ShortArray(4),
+            faceCondZP = ShortArray(4),
+            voxelExteriorComponentMask = LongArray(1).also { it[0] = 0x01 },
+            voxelInteriorComponentMask = LongArray(1).also { it[0] = 0x02 },
+            voxelSimulationComponentMask = LongArray(1).also { it[0] = 0x04 },
             floodPlaneByComponent = floodPlanes,
             geometryRevision = 11L,
             geometrySignature = 12L,
@@ -126,6 +131,7 @@ class ShipWaterPocketPersistenceTest {
             open = open,
             simulationDomain = simulationDomain,
             outsideVoid = BitSet(),
+            // Wrong-sized conductance, as left behind by older saves.
             faceCondXP = ShortArray(1),
             faceCondYP = ShortArray(1),
             faceCondZP = ShortArray(1),
@@ -173,9 +179,9 @@ class ShipWaterPocketPersistenceTest {
             materializedWater = materialized,
             waterReachable = waterReachable,
             unreachableVoid = unreachableVoid,
-            faceCondXP = ShortArray(volume),
-            faceCondYP = ShortArray(volume),
-            faceCondZP = ShortArray(volume),
+            faceCondXP = ShortArray(4),
+            faceCondYP = ShortArray(4),
+            faceCondZP = ShortArray(4),
             voxelExteriorComponentMask = LongArray(0),
             voxelInteriorComponentMask = LongArray(0),
             voxelSimulationComponentMask = LongArray(0),
@@ -200,6 +206,109 @@ class ShipWaterPocketPersistenceTest {
         assertTrue(isSubset(loaded.materializedWater, loaded.simulationDomain))
     }
 
+    @Test
+    fun fileStoreRewritesOnlyChangedShips(@TempDir directory: Path) {
+        val state = smallPersistedState()
+        val store = ShipPocketFileStore(directory, legacy = null, io = Executor { it.run() })
+        store.putState(1L, state)
+        store.putState(2L, state)
+        store.save(awaitWrites = true)
+        assertTrue(Files.isRegularFile(directory.resolve("1.dat")))
+        assertTrue(Files.isRegularFile(directory.resolve("2.dat")))
+
+        Files.delete(directory.resolve("2.dat"))
+        store.putState(1L, state.copy(waterReachable = bitSetOf(4)))
+        store.save(awaitWrites = true)
+        assertFalse(Files.exists(directory.resolve("2.dat")))
+        Files.list(directory).use { files -> assertTrue(files.noneMatch { it.toString().endsWith(".tmp") }) }
+
+        val reopened = ShipPocketFileStore(directory, legacy = null, io = Executor { it.run() })
+        assertEquals(bitSetOf(4), reopened.getState(1L)?.waterReachable)
+        assertNull(reopened.getState(2L))
+    }
+
+    @Test
+    fun fileStoreMigratesLegacyEntriesOnceWritten(@TempDir directory: Path) {
+        val state = smallPersistedState()
+        val legacy = ShipPocketSavedData.createEmpty()
+        legacy.putState(3L, state)
+        val store = ShipPocketFileStore(directory, legacy, io = Executor { it.run() })
+        assertNotNull(store.getState(3L))
+
+        store.putState(3L, state)
+        store.save(awaitWrites = true)
+        // Dropped from the old storage only on the save after the file landed.
+        assertNotNull(legacy.getState(3L))
+        store.save(awaitWrites = true)
+        assertNull(legacy.getState(3L))
+
+        val reopened = ShipPocketFileStore(directory, legacy, io = Executor { it.run() })
+        assertNotNull(reopened.getState(3L))
+    }
+
+    @Test
+    fun fileStoreDropsReleasedShipsOnceWritten(@TempDir directory: Path) {
+        val store = ShipPocketFileStore(directory, legacy = null, io = Executor { it.run() })
+        store.putState(8L, smallPersistedState())
+        store.release(8L)
+        store.save(awaitWrites = true)
+        assertTrue(Files.isRegularFile(directory.resolve("8.dat")))
+
+        // Rewritten behind the store's back: only a store that dropped its entry reads the new one.
+        val other = ShipPocketFileStore(directory, legacy = null, io = Executor { it.run() })
+        other.putState(8L, smallPersistedState().copy(waterReachable = bitSetOf(5)))
+        other.save(awaitWrites = true)
+        assertEquals(bitSetOf(5), store.getState(8L)?.waterReachable)
+    }
+
+    @Test
+    fun entriesNeverAskedForAreSavedBackAsLoaded() {
+        val data = ShipPocketSavedData.createEmpty()
+        data.putState(5L, smallPersistedState())
+        data.putState(6L, smallPersistedState().copy(waterReachable = bitSetOf(2)))
+        val saved = data.save(CompoundTag())
+
+        val loaded = ShipPocketSavedData.load(saved)
+        assertEquals(bitSetOf(2), loaded.getState(6L)?.waterReachable)
+        val resaved = loaded.save(CompoundTag())
+        // Ship 5 was never decoded, so its entry goes back out exactly as it came in.
+        val shipFive = { tag: CompoundTag ->
+            tag.getList("ships", 10).map { it as CompoundTag }.single { it.getLong("ship_id") == 5L }
+        }
+        assertEquals(shipFive(saved), shipFive(resaved))
+        assertNotNull(ShipPocketSavedData.load(resaved).getState(5L))
+    }
+
+    @Test
+    fun fileStorePrefetchReadsOnTheIoExecutor(@TempDir directory: Path) {
+        val writer = ShipPocketFileStore(directory, legacy = null, io = Executor { it.run() })
+        writer.putState(7L, smallPersistedState())
+        writer.save(awaitWrites = true)
+
+        val queued = ArrayDeque<Runnable>()
+        val store = ShipPocketFileStore(directory, legacy = null, io = Executor { queued.addLast(it) })
+        assertFalse(store.prefetch(7L))
+        assertFalse(store.prefetch(7L))
+        assertEquals(1, queued.size)
+        queued.removeFirst().run()
+        assertTrue(store.prefetch(7L))
+        assertNotNull(store.getState(7L))
+    }
+
+    private fun smallPersistedState(): PersistedShipPocketState {
+        return basePersistedState(
+            sizeX = 3,
+            sizeY = 3,
+            sizeZ = 3,
+            open = fullBitSet(27),
+            simulationDomain = fullBitSet(27),
+            outsideVoid = BitSet(),
+            faceCondXP = ShortArray(27),
+            faceCondYP = ShortArray(27),
+            faceCondZP = ShortArray(27),
+        )
+    }
+
     private fun persistAndLoad(
         persisted: PersistedShipPocketState,
         shipId: Long,
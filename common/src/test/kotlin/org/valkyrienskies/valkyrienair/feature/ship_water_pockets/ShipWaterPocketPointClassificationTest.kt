@@ -0,0 +1,94 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import net.minecraft.core.BlockPos
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Assumptions.assumeTrue
+import org.junit.jupiter.api.Test
+import java.lang.management.ManagementFactory
+import java.util.BitSet
+import kotlin.random.Random
+
+class ShipWaterPocketPointClassificationTest {
+    private fun randomState(seed: Int): ShipPocketState {
+        val sizeX = 7
+        val sizeY = 5
+        val sizeZ = 6
+        val volume = sizeX * sizeY * sizeZ
+        val random = Random(seed)
+        fun randomBits(p: Float) = BitSet(volume).also { bits ->
+            for (i in 0 until volume) if (random.nextFloat() < p) bits.set(i)
+        }
+        val open = randomBits(0.7f)
+        return ShipPocketState(
+            minX = -40,
+            minY = 60,
+            minZ = 300,
+            sizeX = sizeX,
+            sizeY = sizeY,
+            sizeZ = sizeZ,
+            open = open,
+            strictInterior = randomBits(0.5f).also { it.and(open) },
+            simulationDomain = randomBits(0.5f).also { it.and(open) },
+            materializedWater = randomBits(0.2f),
+            unreachableVoid = randomBits(0.6f).also { it.and(open) },
+        )
+    }
+
+    @Test
+    fun packedClassificationMatchesUnpacked() {
+        val state = randomState(3)
+        val random = Random(17)
+        val out = BlockPos.MutableBlockPos()
+        val packedOut = BlockPos.MutableBlockPos()
+        for (i in 0 until 2000) {
+            // Snap half the samples to voxel faces so the epsilon probes matter.
+            val x = state.minX - 1 + random.nextDouble() * (state.sizeX + 2)
+            val y = state.minY - 1 + random.nextDouble() * (state.sizeY + 2)
+            val z = state.minZ - 1 + random.nextDouble() * (state.sizeZ + 2)
+            val px = if (i and 1 == 0) Math.rint(x) else x
+
+            val unpacked = classifyShipPointWithEpsilon(state, px, y, z, out)
+            val packed = classifyShipPointWithEpsilonPacked(state, px, y, z)
+            assertEquals(unpacked, packed.unpack(state), "sample $i")
+            assertEquals(
+                isClassificationInSimulationDomain(state, unpacked),
+                isClassificationInSimulationDomain(state, packed),
+                "sample $i",
+            )
+            if (packed.kind != PointVoidClass.OUT_OF_BOUNDS) {
+                packed.voxelPos(state, packedOut)
+                assertEquals(BlockPos(unpacked.voxelX, unpacked.voxelY, unpacked.voxelZ), packedOut.immutable())
+                assertEquals(out.immutable(), packedOut.immutable())
+            }
+        }
+    }
+
+    @Test
+    fun packedClassificationDoesNotAllocate() {
+        val threadBean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+        assumeTrue(threadBean != null && threadBean.isThreadAllocatedMemorySupported)
+        threadBean!!.isThreadAllocatedMemoryEnabled = true
+
+        val state = randomState(5)
+        val threadId = Thread.currentThread().id
+        fun run(iterations: Int): Long {
+            var sink = 0L
+            for (i in 0 until iterations) {
+                val x = state.minX + (i % 70) * 0.1
+                val y = state.minY + (i % 50) * 0.1
+                val z = state.minZ + (i % 60) * 0.1
+                sink += classifyShipPointWithEpsilonPacked(state, x, y, z).bits
+            }
+            return sink
+        }
+
+        run(200_000)
+        val before = threadBean.getThreadAllocatedBytes(threadId)
+        val sink = run(200_000)
+        val allocated = threadBean.getThreadAllocatedBytes(threadId) - before
+
+        // A boxed result or probe array per call would be megabytes here; allow for unrelated JVM noise.
+        assertTrue(allocated < 64 * 1024, "allocated $allocated bytes (sink $sink)")
+    }
+}
@@ -0,0 +1,66 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import net.minecraft.core.BlockPos
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+
+class ShipWaterPocketQueryMemoTest {
+    private companion object {
+        const val SHIP_STAMP = 0x5EEDL
+    }
+
+    @Test
+    fun answersOnlyQueryKindsThatWereRecorded() {
+        val memo = ShipPocketQueryMemo(capacity = 64)
+        val key = BlockPos.asLong(12, -3, 40)
+
+        assertEquals(QUERY_MEMO_MISS, memo.get(key, QUERY_MEMO_AIR_POCKET_KNOWN, SHIP_STAMP))
+        memo.merge(key, QUERY_MEMO_AIR_POCKET_KNOWN or QUERY_MEMO_AIR_POCKET, SHIP_STAMP)
+        assertEquals(QUERY_MEMO_MISS, memo.get(key, QUERY_MEMO_SUPPRESSION_KNOWN, SHIP_STAMP))
+
+        memo.merge(key, QUERY_MEMO_SUPPRESSION_KNOWN, SHIP_STAMP)
+        val value = memo.get(key, QUERY_MEMO_SUPPRESSION_KNOWN, SHIP_STAMP)
+        assertEquals(0, value and QUERY_MEMO_SUPPRESSION)
+        assertEquals(QUERY_MEMO_AIR_POCKET, value and QUERY_MEMO_AIR_POCKET)
+    }
+
+    @Test
+    fun collidingKeysAndOverflowStayConsistent() {
+        val memo = ShipPocketQueryMemo(capacity = 16)
+        // More distinct keys than the table holds: it starts over instead of growing, so every answer is either
+        // exactly what was recorded or a miss.
+        for (i in 0 until 100) {
+            memo.merge(
+                BlockPos.asLong(i, i and 7, -i),
+                QUERY_MEMO_FLUID_KNOWN or (i shl QUERY_MEMO_FLUID_ID_SHIFT),
+                SHIP_STAMP,
+            )
+            for (j in 0..i) {
+                val cached = memo.get(BlockPos.asLong(j, j and 7, -j), QUERY_MEMO_FLUID_KNOWN, SHIP_STAMP)
+                if (cached != QUERY_MEMO_MISS) {
+                    assertEquals(j, cached ushr QUERY_MEMO_FLUID_ID_SHIFT)
+                }
+            }
+            val latest = memo.get(BlockPos.asLong(i, i and 7, -i), QUERY_MEMO_FLUID_KNOWN, SHIP_STAMP)
+            assertEquals(i, latest ushr QUERY_MEMO_FLUID_ID_SHIFT)
+        }
+    }
+
+    @Test
+    fun entriesRecordedForOtherShipRevisionsMiss() {
+        val memo = ShipPocketQueryMemo(capacity = 64)
+        val covered = BlockPos.asLong(0, 64, 0)
+        val elsewhere = BlockPos.asLong(100, 64, 0)
+        memo.merge(covered, QUERY_MEMO_AIR_POCKET_KNOWN or QUERY_MEMO_AIR_POCKET, SHIP_STAMP)
+        memo.merge(elsewhere, QUERY_MEMO_AIR_POCKET_KNOWN, 0L)
+
+        // The ship covering `covered` changed; the other entry is untouched.
+        val changed = SHIP_STAMP + 1
+        assertEquals(QUERY_MEMO_MISS, memo.get(covered, QUERY_MEMO_AIR_POCKET_KNOWN, changed))
+        assertEquals(QUERY_MEMO_AIR_POCKET_KNOWN, memo.get(elsewhere, QUERY_MEMO_AIR_POCKET_KNOWN, 0L))
+
+        // Recording under the new stamp replaces the stale answer instead of OR-ing into it.
+        memo.merge(covered, QUERY_MEMO_AIR_POCKET_KNOWN, changed)
+        assertEquals(QUERY_MEMO_AIR_POCKET_KNOWN, memo.get(covered, QUERY_MEMO_AIR_POCKET_KNOWN, changed))
+    }
+}
@@ -0,0 +1,72 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import net.minecraft.core.BlockPos
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNotSame
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.util.BitSet
+
+class ShipWaterPocketQueryViewTest {
+    private fun state(): ShipPocketState {
+        val volume = 4 * 3 * 2
+        val open = BitSet(volume).also { it.set(0, volume) }
+        return ShipPocketState(
+            minX = 10,
+            minY = 20,
+            minZ = 30,
+            sizeX = 4,
+            sizeY = 3,
+            sizeZ = 2,
+            open = open,
+            strictInterior = BitSet().also { it.set(5) },
+            simulationDomain = BitSet().also { it.set(5, 9) },
+            unreachableVoid = BitSet().also { it.set(5) },
+        )
+    }
+
+    @Test
+    fun viewIsDetachedFromLaterStateMutation() {
+        val state = state()
+        val view = ShipPocketQueryView.capture(state, null)
+
+        state.materializedWater.set(5)
+        state.unreachableVoid.clear(5)
+
+        assertFalse(view.materializedWater.get(5))
+        assertTrue(view.unreachableVoid.get(5))
+        assertTrue(isAirPocket(view, BlockPos(11, 21, 30)))
+        assertFalse(isAirPocket(state, BlockPos(11, 21, 30)))
+    }
+
+    @Test
+    fun unchangedMasksAreSharedWithThePreviousView() {
+        val state = state()
+        val first = ShipPocketQueryView.capture(state, null)
+        state.materializedWater.set(6)
+        state.queryRevision++
+        val second = ShipPocketQueryView.capture(state, first)
+
+        assertSame(first.open, second.open)
+        assertSame(first.simulationDomain, second.simulationDomain)
+        assertSame(first.unreachableVoid, second.unreachableVoid)
+        assertNotSame(first.materializedWater, second.materializedWater)
+        assertTrue(second.materializedWater.get(6))
+        assertEquals(4, second.simulationDomainCount)
+        assertEquals(state.queryRevision, second.queryRevision)
+    }
+
+    @Test
+    fun viewClassifiesLikeTheState() {
+        val state = state()
+        val view = ShipPocketQueryView.capture(state, null)
+        for (idx in 0 until 24) {
+            val x = state.minX + idx % 4 + 0.5
+            val y = state.minY + (idx / 4) % 3 + 0.5
+            val z = state.minZ + idx / 12 + 0.5
+            assertEquals(classifyShipPointPacked(state, x, y, z), classifyShipPointPacked(view, x, y, z))
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import net.minecraft.world.level.material.Fluids
+import net.minecraft.world.phys.AABB
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNotNull
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.util.BitSet
+import kotlin.random.Random
+
+class ShipWaterPocketReplicationTest {
+    private val slab = ShapeWaterGeometry(
+        fullSolid = false,
+        refined = false,
+        boxes = listOf(AABB(0.0, 0.0, 0.0, 1.0, 0.5, 1.0)),
+    )
+
+    // Template ids cover only part of each row so the run encoding carries more than one run.
+    private fun serverState(seed: Int): ShipPocketState {
+        val sizeX = 20
+        val sizeY = 5
+        val sizeZ = 6
+        val volume = sizeX * sizeY * sizeZ
+        val random = Random(seed)
+        fun randomBits(p: Float) = BitSet(volume).also { bits ->
+            for (i in 0 until volume) if (random.nextFloat() < p) bits.set(i)
+        }
+        val open = randomBits(0.7f)
+        val slabId = ShapeTemplateRegistry.templateIdForGeometry(slab)
+        val templates = IntArray(volume)
+        val simulationMask = LongArray(volume)
+        for (i in 0 until volume step 7) {
+            if (i % sizeX < 16) templates[i] = slabId
+            simulationMask[i] = 1L
+        }
+        return ShipPocketState(
+            minX = -40,
+            minY = 60,
+            minZ = 300,
+            sizeX = sizeX,
+            sizeY = sizeY,
+            sizeZ = sizeZ,
+            open = open,
+            strictInterior = randomBits(0.5f).also { it.and(open) },
+            simulationDomain = randomBits(0.5f).also { it.and(open) },
+            materializedWater = randomBits(0.2f),
+            waterReachable = randomBits(0.3f),
+            unreachableVoid = randomBits(0.6f).also { it.and(open) },
+            shapeTemplatePalette = ShapeTemplateRegistry.palette(),
+            templateIndexByVoxel = templates,
+            voxelSimulationComponentMask = simulationMask,
+            geometryRevision = 12,
+            appliedWaterSolveGeneration = 34,
+        )
+    }
+
+    private fun encode(state: ShipPocketState, includeGeometry: Boolean): ByteArray {
+        val view = ShipPocketQueryView.capture(state, null)
+        val replica = captureReplicatedState(
+            shipId = 7L,
+            view = view,
+            waterSolveGeneration = state.appliedWaterSolveGeneration,
+            floodFluidId = "minecraft:water",
+            includeGeometry = includeGeometry,
+        )
+        return ShipPocketReplicationCodec.encode(replica)
+    }
+
+    @Test
+    fun decodeThenEncodeIsByteExact() {
+        for (includeGeometry in listOf(true, false)) {
+            val bytes = encode(serverState(1), includeGeometry)
+            val decoded = ShipPocketReplicationCodec.decode(bytes)
+            assertNotNull(decoded)
+            assertArrayEquals(bytes, ShipPocketReplicationCodec.encode(decoded!!), "geometry=$includeGeometry")
+        }
+    }
+
+    @Test
+    fun loopbackClientAnswersLikeTheServer() {
+        val server = serverState(2)
+        val replica = ShipPocketReplicationCodec.decode(encode(server, includeGeometry = true))!!
+        val client = ShipPocketState()
+        assertTrue(applyReplicatedState(client, replica, Fluids.WATER))
+
+        assertTrue(client.replicated)
+        assertEquals(server.geometryRevision, client.geometryRevision)
+        assertEquals(server.appliedWaterSolveGeneration, client.appliedWaterSolveGeneration)
+        assertEquals(server.open, client.open)
+        assertEquals(server.simulationDomain, client.simulationDomain)
+        assertEquals(server.waterReachable, client.waterReachable)
+        assertEquals(server.unreachableVoid, client.unreachableVoid)
+        assertTrue(server.templateIndexByVoxel.contentEquals(client.templateIndexByVoxel))
+        assertTrue(server.voxelSimulationComponentMask.contentEquals(client.voxelSimulationComponentMask))
+
+        val random = Random(9)
+        for (i in 0 until 2000) {
+            val x = server.minX - 1 + random.nextDouble() * (server.sizeX + 2)
+            val y = server.minY - 1 + random.nextDouble() * (server.sizeY + 2)
+            val z = server.minZ - 1 + random.nextDouble() * (server.sizeZ + 2)
+            val expected = classifyShipPointWithEpsilonPacked(server, x, y, z)
+            val actual = classifyShipPointWithEpsilonPacked(client, x, y, z)
+            assertEquals(expected, actual, "sample $i")
+            assertEquals(
+                isClassificationInSimulationDomain(server, expected),
+                isClassificationInSimulationDomain(client, actual),
+                "sample $i",
+            )
+        }
+    }
+
+    @Test
+    fun waterUpdateNeedsTheGeometryItWasSolvedAgainst() {
+        val server = serverState(3)
+        val water = ShipPocketReplicationCodec.decode(encode(server, includeGeometry = false))!!
+        val client = ShipPocketState()
+        assertFalse(applyReplicatedState(client, water, Fluids.WATER))
+        assertFalse(client.replicated)
+
+        val full = ShipPocketReplicationCodec.decode(encode(server, includeGeometry = true))!!
+        assertTrue(applyReplicatedState(client, full, Fluids.WATER))
+        server.unreachableVoid.clear(0, 40)
+        val update = ShipPocketReplicationCodec.decode(encode(server, includeGeometry = false))!!
+        assertTrue(applyReplicatedState(client, update, Fluids.WATER))
+        assertEquals(server.unreachableVoid, client.unreachableVoid)
+    }
+
+    @Test
+    fun serverTemplateIdsAreRemappedToLocalOnes() {
+        val server = serverState(4)
+        val slabId = ShapeTemplateRegistry.templateIdForGeometry(slab)
+        val decoded = ShipPocketReplicationCodec.decode(encode(server, includeGeometry = true))!!
+        val geometry = decoded.geometry!!
+
+        // Pretend the server registered the slab under an id this process has never handed out.
+        val foreignId = ShapeTemplateRegistry.templateCount() + 500
+        val toForeign = IntArray(slabId + 1).also { it[slabId] = foreignId }
+        val foreign = ReplicatedPocketState(
+            shipId = decoded.shipId,
+            geometryRevision = decoded.geometryRevision,
+            waterSolveGeneration = decoded.waterSolveGeneration,
+            floodFluid = decoded.floodFluid,
+            geometry = ReplicatedPocketGeometry(
+                minX = geometry.minX,
+                minY = geometry.minY,
+                minZ = geometry.minZ,
+                sizeX = geometry.sizeX,
+                sizeY = geometry.sizeY,
+                sizeZ = geometry.sizeZ,
+                open = geometry.open,
+                strictInterior = geometry.strictInterior,
+                simulationDomain = geometry.simulationDomain,
+                templateIds = intArrayOf(ShapeTemplateRegistry.EMPTY_TEMPLATE_ID, foreignId),
+                templateGeometries = listOf(EMPTY_SHAPE_WATER_GEOMETRY, slab),
+                templateIndexByVoxel = geometry.templateIndexByVoxel.mapValues(toForeign),
+                voxelExteriorComponentMask = geometry.voxelExteriorComponentMask,
+                voxelInteriorComponentMask = geometry.voxelInteriorComponentMask,
+                voxelSimulationComponentMask = geometry.voxelSimulationComponentMask,
+            ),
+            materializedWater = decoded.materializedWater,
+            waterReachable = decoded.waterReachable,
+            unreachableVoid = decoded.unreachableVoid,
+        )
+
+        val client = ShipPocketState()
+        assertTrue(applyReplicatedState(client, foreign, Fluids.WATER))
+        assertTrue(server.templateIndexByVoxel.contentEquals(client.templateIndexByVoxel))
+    }
+
+    @Test
+    fun waterUpdatesAreDeltasAgainstTheLastSentView() {
+        val server = serverState(6)
+        val sent = ShipPocketQueryView.capture(server, null)
+        val client = ShipPocketState()
+        val full = ShipPocketReplicationCodec.decode(encode(server, includeGeometry = true))!!
+        assertTrue(applyReplicatedState(client, full, Fluids.WATER))
+
+        server.unreachableVoid.clear(10, 14)
+        server.materializedWater.set(50)
+        server.appliedWaterSolveGeneration++
+        val next = ShipPocketQueryView.capture(server, sent)
+        val replica = captureReplicatedState(
+            shipId = 7L,
+            view = next,
+            waterSolveGeneration = server.appliedWaterSolveGeneration,
+            floodFluidId = "minecraft:water",
+            includeGeometry = false,
+        )
+        val delta = ShipPocketReplicationCodec.encode(replica, sent)
+        assertTrue(delta.size < ShipPocketReplicationCodec.encode(replica).size, "delta=${delta.size}")
+
+        val decoded = ShipPocketReplicationCodec.decode(delta) { client }
+        assertNotNull(decoded)
+        assertArrayEquals(delta, ShipPocketReplicationCodec.encode(decoded!!, client))
+        assertTrue(applyReplicatedState(client, decoded, Fluids.WATER))
+        assertEquals(server.unreachableVoid, client.unreachableVoid)
+        assertEquals(server.materializedWater, client.materializedWater)
+
+        // A client that missed the previous packet cannot resolve the delta and has to resubscribe.
+        assertNull(ShipPocketReplicationCodec.decode(delta) { null })
+        assertNull(ShipPocketReplicationCodec.decode(delta) { ShipPocketState() })
+
+        // Parsing needs no baseline; only resolving the parsed packet does.
+        val parsed = ShipPocketReplicationCodec.parse(delta)
+        assertNotNull(parsed)
+        assertEquals(7L, parsed!!.shipId)
+        assertNull(parsed.resolve(null))
+        assertEquals(server.materializedWater, parsed.resolve(sent)!!.materializedWater)
+    }
+
+    @Test
+    fun malformedPacketsAreRejected() {
+        val bytes = encode(serverState(5), includeGeometry = true)
+        assertNull(ShipPocketReplicationCodec.decode(bytes.copyOf(bytes.size / 2)))
+        assertNull(ShipPocketReplicationCodec.decode(bytes.copyOf().also { it[0] = 99 }))
+        assertNull(ShipPocketReplicationCodec.decode(ByteArray(0)))
+    }
+
+    @Test
+    fun voxelsNamingUnlistedTemplatesAreRejected() {
+        val replica = captureReplicatedState(
+            shipId = 7L,
+            view = ShipPocketQueryView.capture(serverState(6), null),
+            waterSolveGeneration = 1L,
+            floodFluidId = "minecraft:water",
+            includeGeometry = true,
+        )
+        val geometry = replica.geometry!!
+        val unlisted = geometry.templateIds.last() + 1
+        val forged = ReplicatedPocketState(
+            shipId = replica.shipId,
+            geometryRevision = replica.geometryRevision,
+            waterSolveGeneration = replica.waterSolveGeneration,
+            floodFluid = replica.floodFluid,
+            geometry = ReplicatedPocketGeometry(
+                minX = geometry.minX,
+                minY = geometry.minY,
+                minZ = geometry.minZ,
+                sizeX = geometry.sizeX,
+                sizeY = geometry.sizeY,
+                sizeZ = geometry.sizeZ,
+                open = geometry.open,
+                strictInterior = geometry.strictInterior,
+                simulationDomain = geometry.simulationDomain,
+                templateIds = geometry.templateIds,
+                templateGeometries = geometry.templateGeometries,
+                templateIndexByVoxel = geometry.templateIndexByVoxel.copyOf().also { it[3] = unlisted },
+                voxelExteriorComponentMask = geometry.voxelExteriorComponentMask,
+                voxelInteriorComponentMask = geometry.voxelInteriorComponentMask,
+                voxelSimulationComponentMask = geometry.voxelSimulationComponentMask,
+            ),
+            materializedWater = replica.materializedWater,
+            waterReachable = replica.waterReachable,
+            unreachableVoid = replica.unreachableVoid,
+        )
+        assertNull(ShipPocketReplicationCodec.parse(ShipPocketReplicationCodec.encode(forged)))
+    }
+}
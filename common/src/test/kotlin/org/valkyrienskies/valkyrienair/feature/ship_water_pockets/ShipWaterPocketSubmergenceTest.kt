@@ -0,0 +1,91 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.util.BitSet
+
+class ShipWaterPocketSubmergenceTest {
+    // A hollow cube hull with walls at [wallMin, wallMax] inside bounds of [size]^3, padded with open exterior.
+    private class HollowHull(val size: Int, val wallMin: Int, val wallMax: Int) {
+        val open = BitSet(size * size * size)
+        val interior = BitSet(size * size * size)
+
+        init {
+            for (z in 0 until size) for (y in 0 until size) for (x in 0 until size) {
+                val inCube = x in wallMin..wallMax && y in wallMin..wallMax && z in wallMin..wallMax
+                val onWall = inCube && (x == wallMin || x == wallMax || y == wallMin || y == wallMax ||
+                    z == wallMin || z == wallMax)
+                if (onWall) continue
+                open.set(index(x, y, z))
+                if (inCube) interior.set(index(x, y, z))
+            }
+        }
+
+        fun index(x: Int, y: Int, z: Int): Int = x + size * (y + size * z)
+
+        fun shell(): BitSet = computeSubmergenceShell(open, interior, size, size, size)
+    }
+
+    @Test
+    fun shellCoversBoundsFacesAndBothSidesOfTheHull() {
+        val hull = HollowHull(size = 9, wallMin = 2, wallMax = 6)
+        val shell = hull.shell()
+
+        assertTrue(shell.get(hull.index(0, 4, 4)))
+        assertTrue(shell.get(hull.index(1, 4, 4)))
+        assertTrue(shell.get(hull.index(3, 3, 3)))
+        assertFalse(shell.get(hull.index(4, 4, 4)))
+        assertFalse(shell.get(hull.index(1, 1, 1)))
+        assertTrue(isSubset(shell, hull.open))
+    }
+
+    @Test
+    fun openingsPutBothSidesInTheShell() {
+        val hull = HollowHull(size = 9, wallMin = 2, wallMax = 6)
+        // Knock a hole in the +X wall; the hole cell joins the exterior.
+        hull.open.set(hull.index(6, 4, 4))
+        val shell = hull.shell()
+
+        assertTrue(shell.get(hull.index(5, 4, 4)))
+        assertTrue(shell.get(hull.index(6, 4, 4)))
+        // Outside the hole nothing differs from its neighbours any more.
+        assertFalse(shell.get(hull.index(7, 4, 4)))
+    }
+
+    @Test
+    fun shellGrowsWithHullSurfaceRatherThanVolume() {
+        val small = HollowHull(size = 20, wallMin = 1, wallMax = 18)
+        val large = HollowHull(size = 40, wallMin = 1, wallMax = 38)
+        val smallShell = small.shell().cardinality()
+        val largeShell = large.shell().cardinality()
+
+        // Doubling every side roughly quadruples the shell while the open volume grows eightfold.
+        assertTrue(largeShell < smallShell * 5, "small=$smallShell large=$largeShell")
+        assertTrue(largeShell * 3 < large.open.cardinality(), "shell=$largeShell open=${large.open.cardinality()}")
+    }
+
+    @Test
+    fun flatSeaProbesMatchTheCellsHeightAgainstTheSurface() {
+        // Level ship: a cell at world Y [62, 63) under a surface at 64 is fully under, at [64, 65) fully dry.
+        assertEquals(9, Integer.bitCount(cellProbesBelowSurface(62.0, 0.0, 1.0, 0.0, surfaceY = 64.0)))
+        assertEquals(0, cellProbesBelowSurface(64.0, 0.0, 1.0, 0.0, surfaceY = 64.0))
+
+        // Surface through the middle of the cell: the four low corners are under, the center (at 63.5) is not.
+        val straddling = cellProbesBelowSurface(63.0, 0.0, 1.0, 0.0, surfaceY = 63.5)
+        assertEquals(4, Integer.bitCount(straddling))
+        assertEquals(0, straddling and CELL_PROBE_CENTER)
+
+        // Rolled 90 degrees about Z: ship +X now points down, so only the high-X corners reach below 62.25.
+        val rolled = cellProbesBelowSurface(63.0, -1.0, 0.0, 0.0, surfaceY = 62.25)
+        assertEquals(4, Integer.bitCount(rolled))
+        assertTrue((rolled and CELL_PROBE_CENTER) == 0)
+    }
+
+    private fun isSubset(subset: BitSet, superset: BitSet): Boolean {
+        val rest = subset.clone() as BitSet
+        rest.andNot(superset)
+        return rest.isEmpty
+    }
+}
@@ -0,0 +1,110 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import net.minecraft.SharedConstants
+import net.minecraft.server.Bootstrap
+import net.minecraft.world.level.material.Fluids
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.BeforeAll
+import org.junit.jupiter.api.Test
+
+class ShipWaterPocketSurfaceCacheTest {
+    companion object {
+        @BeforeAll
+        @JvmStatic
+        fun bootstrapMinecraft() {
+            SharedConstants.tryDetectVersion()
+            Bootstrap.bootStrap()
+        }
+    }
+
+    @Test
+    fun scansStartingInsideARecordedRunShareItsSurface() {
+        val cache = ShipPocketFluidSurfaceCache()
+        cache.record(3, -7, Fluids.WATER, fromY = 40, topY = 62, surface = 63.0)
+
+        assertEquals(63.0, cache.surfaceAt(3, 40, -7, Fluids.WATER))
+        assertEquals(63.0, cache.surfaceAt(3, 62, -7, Fluids.WATER))
+        assertTrue(cache.surfaceAt(3, 39, -7, Fluids.WATER).isNaN())
+        assertTrue(cache.surfaceAt(3, 63, -7, Fluids.WATER).isNaN())
+        assertTrue(cache.surfaceAt(3, 50, -7, Fluids.LAVA).isNaN())
+        assertTrue(cache.surfaceAt(4, 50, -7, Fluids.WATER).isNaN())
+    }
+
+    @Test
+    fun deeperScansOfTheSameRunExtendIt() {
+        val cache = ShipPocketFluidSurfaceCache()
+        cache.record(0, 0, Fluids.WATER, fromY = 55, topY = 62, surface = 62.875)
+        cache.record(0, 0, Fluids.WATER, fromY = 30, topY = 62, surface = 62.875)
+        assertEquals(62.875, cache.surfaceAt(0, 58, 0, Fluids.WATER))
+        assertEquals(62.875, cache.surfaceAt(0, 30, 0, Fluids.WATER))
+
+        // A different surface means the column changed under the old run; only the new scan is trusted.
+        cache.record(0, 0, Fluids.WATER, fromY = 60, topY = 61, surface = 62.0)
+        assertTrue(cache.surfaceAt(0, 58, 0, Fluids.WATER).isNaN())
+        assertEquals(62.0, cache.surfaceAt(0, 60, 0, Fluids.WATER))
+    }
+
+    @Test
+    fun blockChangesDropTheirColumnOnly() {
+        val cache = ShipPocketFluidSurfaceCache()
+        cache.record(1, 1, Fluids.WATER, fromY = 50, topY = 62, surface = 63.0)
+        cache.record(1, 2, Fluids.WATER, fromY = 50, topY = 62, surface = 63.0)
+        cache.invalidateColumn(1, 1)
+
+        assertTrue(cache.surfaceAt(1, 55, 1, Fluids.WATER).isNaN())
+        assertEquals(63.0, cache.surfaceAt(1, 55, 2, Fluids.WATER))
+        assertEquals(1, cache.size())
+    }
+
+    @Test
+    fun chunkChangesDropEveryColumnOfTheChunk() {
+        val cache = ShipPocketFluidSurfaceCache()
+        val copiedAt = cache.revision()
+        cache.record(16, 0, Fluids.WATER, fromY = 50, topY = 62, surface = 63.0)
+        cache.record(31, 15, Fluids.WATER, fromY = 50, topY = 62, surface = 63.0)
+        cache.record(32, 0, Fluids.WATER, fromY = 50, topY = 62, surface = 63.0)
+        val resting = cache.fluidRevision(1, 0, 1, 0)
+        cache.invalidateChunk(1, 0)
+
+        assertTrue(cache.surfaceAt(16, 55, 0, Fluids.WATER).isNaN())
+        assertTrue(cache.surfaceAt(31, 55, 15, Fluids.WATER).isNaN())
+        assertEquals(63.0, cache.surfaceAt(32, 55, 0, Fluids.WATER))
+        assertTrue(cache.fluidRevision(1, 0, 1, 0) > resting)
+
+        // Scans of a copy taken before the chunk was replaced don't come back either.
+        cache.record(20, 7, Fluids.WATER, fromY = 50, topY = 62, surface = 63.0, asOf = copiedAt)
+        assertTrue(cache.surfaceAt(20, 55, 7, Fluids.WATER).isNaN())
+    }
+
+    @Test
+    fun scansOfAnOlderWorldCopyDoNotOutliveLaterBlockChanges() {
+        val cache = ShipPocketFluidSurfaceCache()
+        val copiedAt = cache.revision()
+        cache.invalidateColumn(5, 5)
+
+        // Read from the copy before the change landed: the live column may differ now.
+        cache.record(5, 5, Fluids.WATER, fromY = 50, topY = 62, surface = 63.0, asOf = copiedAt)
+        assertTrue(cache.surfaceAt(5, 55, 5, Fluids.WATER).isNaN())
+
+        // A column the change didn't touch still takes the older scan.
+        cache.record(9, -4, Fluids.WATER, fromY = 50, topY = 62, surface = 63.0, asOf = copiedAt)
+        assertEquals(63.0, cache.surfaceAt(9, 55, -4, Fluids.WATER))
+
+        cache.record(5, 5, Fluids.WATER, fromY = 50, topY = 62, surface = 63.0, asOf = cache.revision())
+        assertEquals(63.0, cache.surfaceAt(5, 55, 5, Fluids.WATER))
+    }
+
+    @Test
+    fun fluidRevisionOnlyMovesForChangesInsideItsChunks() {
+        val cache = ShipPocketFluidSurfaceCache()
+        val resting = cache.fluidRevision(0, 0, 1, 1)
+
+        cache.invalidateColumn(40, 40)
+        assertEquals(resting, cache.fluidRevision(0, 0, 1, 1))
+
+        cache.invalidateColumn(17, 3)
+        assertEquals(cache.revision(), cache.fluidRevision(0, 0, 1, 1))
+        assertTrue(cache.fluidRevision(0, 0, 1, 1) > resting)
+    }
+}
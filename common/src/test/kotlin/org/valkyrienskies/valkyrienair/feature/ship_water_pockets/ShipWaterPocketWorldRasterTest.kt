@@ -0,0 +1,64 @@
+package org.valkyrienskies.valkyrienair.feature.ship_water_pockets
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import java.util.BitSet
+import kotlin.random.Random
+
+class ShipWaterPocketWorldRasterTest {
+    @Test
+    fun voxelCodesAgreeWithPointClassification() {
+        val sizeX = 6
+        val sizeY = 5
+        val sizeZ = 4
+        val volume = sizeX * sizeY * sizeZ
+
+        for (seed in 0 until 4) {
+            val random = Random(seed)
+            fun randomBits(p: Float) = BitSet(volume).also { bits ->
+                for (i in 0 until volume) if (random.nextFloat() < p) bits.set(i)
+            }
+            val open = randomBits(0.7f)
+            val state = ShipPocketState(
+                minX = 100,
+                minY = -20,
+                minZ = 7,
+                sizeX = sizeX,
+                sizeY = sizeY,
+                sizeZ = sizeZ,
+                open = open,
+                strictInterior = randomBits(0.5f).also { it.and(open) },
+                simulationDomain = randomBits(0.5f).also { it.and(open) },
+                materializedWater = randomBits(0.2f),
+                unreachableVoid = randomBits(0.6f).also { it.and(open) },
+            )
+
+            val codes = computeVoxelQueryCodes(state)
+            for (idx in 0 until volume) {
+                val lx = idx % sizeX
+                val ly = (idx / sizeX) % sizeY
+                val lz = idx / (sizeX * sizeY)
+                val classification = classifyShipPoint(
+                    state,
+                    state.minX + lx + 0.5,
+                    state.minY + ly + 0.5,
+                    state.minZ + lz + 0.5,
+                )
+                val inQueryDomain = classification.kind != PointVoidClass.SOLID &&
+                    classification.kind != PointVoidClass.OUT_OF_BOUNDS &&
+                    !state.materializedWater.get(idx)
+                val suppression = inQueryDomain && isClassificationInSimulationDomain(state, classification)
+                val airPocket = inQueryDomain &&
+                    classification.kind == PointVoidClass.INTERIOR_VOID &&
+                    state.unreachableVoid.get(idx)
+
+                // Untemplated voxels are uniform, so "any" and "all" both equal the point answer.
+                val code = codes[idx].toInt()
+                assertEquals(suppression, code and 0b0001 != 0, "seed $seed idx $idx suppression any")
+                assertEquals(suppression, code and 0b0010 != 0, "seed $seed idx $idx suppression all")
+                assertEquals(airPocket, code and 0b0100 != 0, "seed $seed idx $idx air any")
+                assertEquals(airPocket, code and 0b1000 != 0, "seed $seed idx $idx air all")
+            }
+        }
+    }
+}
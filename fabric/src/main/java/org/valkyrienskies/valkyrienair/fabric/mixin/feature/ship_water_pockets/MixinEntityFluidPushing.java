@@ -9,6 +9,7 @@ import net.minecraft.world.level.Level;
 import net.minecraft.world.level.material.Fluid;
 import net.minecraft.world.level.material.FluidState;
 import net.minecraft.world.level.material.Fluids;
+import net.minecraft.world.phys.AABB;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.Unique;
@@ -39,6 +40,18 @@ public abstract class MixinEntityFluidPushing {
 
         valkyrienair$ignoreWorldWaterInAirPocket =
             ((ShipWaterPocketEntityDuck) (Object) this).vs$isInShipAirPocketForWorldWater();
+
+        final AABB bb = ((Entity) (Object) this).getBoundingBox();
+        ShipWaterPocketManager.beginEntityFluidBlocks(level, bb.minX, bb.minY, bb.minZ, bb.maxX, bb.maxY, bb.maxZ);
+    }
+
+    @Inject(
+        method = "updateFluidHeightAndDoFluidPushing",
+        at = @At("RETURN")
+    )
+    private void valkyrienair$endWaterPocketFluidPushOverride(final TagKey<Fluid> tagKey, final double d,
+        final CallbackInfoReturnable<Boolean> cir) {
+        ShipWaterPocketManager.endEntityFluidBlocks();
     }
 
     @WrapOperation(
@@ -57,7 +70,7 @@ public abstract class MixinEntityFluidPushing {
             return Fluids.EMPTY.defaultFluidState();
         }
 
-        return ShipWaterPocketManager.overrideWaterFluidState(level, blockPos, original);
+        return ShipWaterPocketManager.overrideEntityFluidState(level, blockPos, original);
     }
 }
 
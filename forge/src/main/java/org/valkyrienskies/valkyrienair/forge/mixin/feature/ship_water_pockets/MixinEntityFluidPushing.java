@@ -8,6 +8,7 @@ import net.minecraft.world.entity.Entity;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.material.FluidState;
 import net.minecraft.world.level.material.Fluids;
+import net.minecraft.world.phys.AABB;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
@@ -36,6 +37,20 @@ public abstract class MixinEntityFluidPushing {
 
         valkyrienair$ignoreWorldWaterInAirPocket =
             ((ShipWaterPocketEntityDuck) (Object) this).vs$isInShipAirPocketForWorldWater();
+
+        final Entity self = (Entity) (Object) this;
+        final AABB bb = self.getBoundingBox();
+        ShipWaterPocketManager.beginEntityFluidBlocks(self.level(), bb.minX, bb.minY, bb.minZ, bb.maxX, bb.maxY, bb.maxZ);
+    }
+
+    @Inject(
+        method = "updateFluidHeightAndDoFluidPushing(Ljava/util/function/Predicate;)V",
+        remap = false,
+        at = @At("RETURN")
+    )
+    private void valkyrienair$endWaterPocketFluidPushOverride(final Predicate<FluidState> predicate,
+        final CallbackInfo ci) {
+        ShipWaterPocketManager.endEntityFluidBlocks();
     }
 
     @Group(name = "valkyrienair$fluidStateForWaterPockets", min = 1, max = 1)
@@ -79,6 +94,6 @@ public abstract class MixinEntityFluidPushing {
             return Fluids.EMPTY.defaultFluidState();
         }
 
-        return ShipWaterPocketManager.overrideWaterFluidState(level, blockPos, original);
+        return ShipWaterPocketManager.overrideEntityFluidState(level, blockPos, original);
     }
 }
@@ -11,6 +11,14 @@ object ValkyrienAirForgeConfig {
     private val enableShipWaterPocketsValue: ForgeConfigSpec.BooleanValue
     private val shipPocketFloodRateMultiplierValue: ForgeConfigSpec.DoubleValue
     private val shipPocketParticleSpeedMultiplierValue: ForgeConfigSpec.DoubleValue
+    private val shipPocketServerTickBudgetMsValue: ForgeConfigSpec.DoubleValue
+    private val shipPocketAsyncThreadsValue: ForgeConfigSpec.IntValue
+    private val shipPocketWorldRasterValue: ForgeConfigSpec.BooleanValue
+    private val shipPocketShellSubmergenceSamplingValue: ForgeConfigSpec.BooleanValue
+    private val shipPocketFlatSeaFastPathValue: ForgeConfigSpec.BooleanValue
+    private val shipPocketAsyncWorldSamplingValue: ForgeConfigSpec.BooleanValue
+    private val shipPocketSleepingShipsValue: ForgeConfigSpec.BooleanValue
+    private val shipPocketServerReplicationValue: ForgeConfigSpec.BooleanValue
 
     init {
         val builder = ForgeConfigSpec.Builder()
@@ -38,6 +46,52 @@ object ValkyrienAirForgeConfig {
                 0.1,
                 5.0
             )
+        shipPocketServerTickBudgetMsValue = builder
+            .comment(
+                "Server-thread time budget per dimension per tick for ship pocket work, in milliseconds. " +
+                    "Work over budget is carried over to later ticks."
+            )
+            .defineInRange(
+                "server_tick_budget_ms",
+                ValkyrienAirConfig.shipPocketServerTickBudgetMs,
+                0.5,
+                50.0
+            )
+        shipPocketAsyncThreadsValue = builder
+            .comment("Async pocket worker threads. 0 = size from available cores. Requires a restart.")
+            .defineInRange(
+                "async_threads",
+                ValkyrienAirConfig.shipPocketAsyncThreads,
+                0,
+                64
+            )
+        shipPocketWorldRasterValue = builder
+            .comment(
+                "Precompute world-block answers for ship air pockets while a ship is resting. " +
+                    "Speeds up world fluid queries around idle ships at a small memory cost."
+            )
+            .define("world_raster", ValkyrienAirConfig.shipPocketWorldRaster)
+        shipPocketShellSubmergenceSamplingValue = builder
+            .comment(
+                "Sample world water only around ship hulls and openings and infer the rest. " +
+                    "Disable to sample every open cell of every ship."
+            )
+            .define("shell_submergence_sampling", ValkyrienAirConfig.shipPocketShellSubmergenceSampling)
+        shipPocketFlatSeaFastPathValue = builder
+            .comment("Compute submergence from the sea level for ships floating in open, flat sea.")
+            .define("flat_sea_fast_path", ValkyrienAirConfig.shipPocketFlatSeaFastPath)
+        shipPocketAsyncWorldSamplingValue = builder
+            .comment("Sample world fluid for ship pocket water solves on worker threads, from copied chunk sections.")
+            .define("async_world_sampling", ValkyrienAirConfig.shipPocketAsyncWorldSampling)
+        shipPocketSleepingShipsValue = builder
+            .comment("Skip ship pocket water solves while a ship, its blocks and the fluid around it stay unchanged.")
+            .define("sleeping_ships", ValkyrienAirConfig.shipPocketSleepingShips)
+        shipPocketServerReplicationValue = builder
+            .comment(
+                "Client: use ship pocket state sent by the server instead of solving it locally. " +
+                    "Falls back to local solving on servers without support."
+            )
+            .define("server_replication", ValkyrienAirConfig.shipPocketServerReplication)
         builder.pop()
 
         spec = builder.build()
@@ -57,5 +111,13 @@ object ValkyrienAirForgeConfig {
         ValkyrienAirConfig.enableShipWaterPockets = enableShipWaterPocketsValue.get()
         ValkyrienAirConfig.shipPocketFloodRateMultiplier = shipPocketFloodRateMultiplierValue.get()
         ValkyrienAirConfig.shipPocketParticleSpeedMultiplier = shipPocketParticleSpeedMultiplierValue.get()
+        ValkyrienAirConfig.shipPocketServerTickBudgetMs = shipPocketServerTickBudgetMsValue.get()
+        ValkyrienAirConfig.shipPocketAsyncThreads = shipPocketAsyncThreadsValue.get()
+        ValkyrienAirConfig.shipPocketWorldRaster = shipPocketWorldRasterValue.get()
+        ValkyrienAirConfig.shipPocketShellSubmergenceSampling = shipPocketShellSubmergenceSamplingValue.get()
+        ValkyrienAirConfig.shipPocketFlatSeaFastPath = shipPocketFlatSeaFastPathValue.get()
+        ValkyrienAirConfig.shipPocketAsyncWorldSampling = shipPocketAsyncWorldSamplingValue.get()
+        ValkyrienAirConfig.shipPocketSleepingShips = shipPocketSleepingShipsValue.get()
+        ValkyrienAirConfig.shipPocketServerReplication = shipPocketServerReplicationValue.get()
     }
 }